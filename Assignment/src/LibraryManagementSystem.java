@@ -1,9 +1,36 @@
-import java.util.ArrayList;
+import msr.BookRecord;
+import msr.BookStatus;
+import msr.BookStore;
+import msr.BookField;
+import msr.BookFilter;
+import msr.BulkImporter;
+import msr.BulkResult;
+import msr.CatalogEngine;
+import msr.CatalogExporter;
+import msr.CatalogMetrics;
+import msr.CatalogPersistence;
+import msr.CatalogScript;
+import msr.CirculationEngine;
+import msr.CompactBookStore;
+import msr.SearchIndex;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 // Model class representing a Book
-class Book {
+class Book implements BookRecord {
     private int id;
     private String title;
     private String author;
@@ -60,10 +87,62 @@ class Book {
 
 // Main class handling the application logic
 public class LibraryManagementSystem {
-    private static List<Book> books = new ArrayList<>();
+    // Shared catalog engine; -Dlibrary.storage=compact keeps books in dictionary-encoded arrays
+    // instead of one object each
+    private static CatalogEngine<Book> books;
+    // Keyword index, built on the first keyword search so startup does not read every book
+    private static SearchIndex searchIndex;
     private static Scanner scanner = new Scanner(System.in);
+    private static final int SEARCH_RESULT_LIMIT = 20;
+    // Spellings offered when a title or author is not found
+    private static final int SIMILAR_LIMIT = 5;
+    private static final int PAGE_SIZE = 20;
+    // Buffered standard output for listings, flushed once per page instead of once per line
+    private static final PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16));
 
     public static void main(String[] args) {
+        // Headless script: --batch <file|-> [--format text|json]
+        // Scripts get the same durability as interactive use; a script that can simply be re-run
+        // may trade it for speed with -Dlibrary.durability=PER_INTERVAL
+        boolean batch = args.length >= 2 && args[0].equals("--batch");
+        // Restore the catalog saved by earlier runs
+        try {
+            books = CatalogEngine.openDefault(Book::new, "compact".equals(System.getProperty("library.storage"))
+                    ? new CompactBookStore<>(Book::new) : new BookStore<>());
+        } catch (IOException e) {
+            System.out.println("Could not load the saved catalog: " + e.getMessage());
+            return;
+        }
+        // Headless bulk import: --import <file.csv> [--rejects <file>]
+        if (args.length >= 2 && args[0].equals("--import")) {
+            Path csv = Paths.get(args[1]);
+            Path rejects = args.length >= 4 && args[2].equals("--rejects") ? Paths.get(args[3]) : defaultRejectsPath(csv);
+            boolean ok = runImport(csv, rejects);
+            closePersistence();
+            if (!ok) {
+                System.exit(1);
+            }
+            return;
+        }
+        // Headless dump: --export <file.csv|file.jsonl>[.gz]
+        if (args.length >= 2 && args[0].equals("--export")) {
+            boolean ok = runExport(Paths.get(args[1]));
+            closePersistence();
+            if (!ok) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (batch) {
+            String format = args.length >= 4 && args[2].equals("--format") ? args[3] : "text";
+            boolean ok = runBatch(args[1], format);
+            closePersistence();
+            if (!ok) {
+                System.exit(1);
+            }
+            return;
+        }
         int choice = 0;
         do {
             printMenu();
@@ -90,12 +169,30 @@ public class LibraryManagementSystem {
                     deleteBook();
                     break;
                 case 6:
+                    importBooks();
+                    break;
+                case 7:
+                    bulkChange();
+                    break;
+                case 8:
+                    exportBooks();
+                    break;
+                case 9:
                     System.out.println("Exiting system. Goodbye!");
                     break;
                 default:
-                    System.out.println("Please choose a valid option between 1 and 6.");
+                    System.out.println("Please choose a valid option between 1 and 9.");
             }
-        } while (choice != 6);
+        } while (choice != 9);
+        closePersistence();
+    }
+
+    private static void closePersistence() {
+        try {
+            books.close();
+        } catch (IOException e) {
+            System.out.println("Could not save the catalog: " + e.getMessage());
+        }
     }
 
     // Display the main menu options
@@ -103,10 +200,13 @@ public class LibraryManagementSystem {
         System.out.println("\n----- Library Management System -----");
         System.out.println("1. Add a Book");
         System.out.println("2. View All Books");
-        System.out.println("3. Search Book by ID or Title");
+        System.out.println("3. Search Book by ID, Title, Author or Keyword");
         System.out.println("4. Update Book Details");
         System.out.println("5. Delete a Book Record");
-        System.out.println("6. Exit");
+        System.out.println("6. Import Books from CSV");
+        System.out.println("7. Bulk Update or Delete by Filter");
+        System.out.println("8. Export Books to CSV or JSON Lines");
+        System.out.println("9. Exit");
         System.out.print("Enter your choice: ");
     }
 
@@ -136,33 +236,84 @@ public class LibraryManagementSystem {
             String genre = scanner.nextLine().trim();
             System.out.print("Enter Availability Status (Available/Checked Out): ");
             String status = scanner.nextLine().trim();
-            if (!status.equalsIgnoreCase("Available") && !status.equalsIgnoreCase("Checked Out")) {
+            if (!BookStatus.isValid(status)) {
                 System.out.println("Availability status must be either 'Available' or 'Checked Out'.");
                 return;
             }
-            Book book = new Book(id, title, author, genre, capitalizeStatus(status));
-            books.add(book);
+            Book book = books.addBook(id, title, author, genre, status);
+            if (book == null) {
+                System.out.println("Book ID already exists. Please use a unique ID.");
+                return;
+            }
+            if (searchIndex != null) {
+                searchIndex.add(book);
+            }
             System.out.println("Book added successfully!");
         } catch (NumberFormatException e) {
             System.out.println("Invalid input for Book ID. It should be an integer.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ".");
         }
     }
 
-    // Display all books in the system
+    // Display the books in an ID range (all of them by default) in ID order, one page at a time
     private static void viewBooks() {
         if (books.isEmpty()) {
             System.out.println("No books in the system.");
-        } else {
-            System.out.println("\n----- List of Books -----");
-            for (Book book : books) {
-                System.out.println(book);
+            return;
+        }
+        int from;
+        int to;
+        try {
+            from = readId("List from ID (Enter for the first book): ", Integer.MIN_VALUE);
+            to = readId("List up to ID (Enter for the last book): ", Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input. Book ID should be an integer.");
+            return;
+        }
+        System.out.println("\n----- List of Books -----");
+        boolean firstPage = true;
+        while (true) {
+            long start = books.metrics().start();
+            // One extra ID tells whether another page follows
+            int[] ids = books.idsBetween(from, to, PAGE_SIZE + 1);
+            int shown = Math.min(ids.length, PAGE_SIZE);
+            int listed = 0;
+            for (int i = 0; i < shown; i++) {
+                Book book = books.read(ids[i]);
+                if (book != null) {
+                    out.println(book);
+                    listed++;
+                }
+            }
+            books.metrics().record(CatalogMetrics.Operation.LIST, start, listed);
+            out.flush();
+            if (firstPage && ids.length == 0) {
+                System.out.println("No books in that ID range.");
+            }
+            firstPage = false;
+            if (ids.length <= PAGE_SIZE) {
+                return;
+            }
+            // Resume after the last book shown, so books added or deleted meanwhile do not shift the pages
+            from = ids[shown - 1] + 1;
+            System.out.print("Press Enter for the next page, or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
             }
         }
     }
 
-    // Search for a book by either ID or Title
+    // Read an optional ID; a blank answer gives the default
+    private static int readId(String prompt, int blank) {
+        System.out.print(prompt);
+        String text = scanner.nextLine().trim();
+        return text.isEmpty() ? blank : Integer.parseInt(text);
+    }
+
+    // Search for a book by ID, exact Title, or ranked keywords
     private static void searchBook() {
-        System.out.println("Search by: 1. ID  2. Title");
+        System.out.println("Search by: 1. ID  2. Title  3. Keyword (title, author, genre)  4. Author");
         System.out.print("Enter choice: ");
         String choice = scanner.nextLine();
         if (choice.equals("1")) {
@@ -181,20 +332,86 @@ public class LibraryManagementSystem {
             }
         } else if (choice.equals("2")) {
             System.out.print("Enter Title to search: ");
-            String title = scanner.nextLine().trim();
-            boolean found = false;
-            for (Book book : books) {
-                if (book.getTitle().equalsIgnoreCase(title)) {
-                    System.out.println("Book found: ");
-                    System.out.println(book);
-                    found = true;
+            String title = scanner.nextLine();
+            List<Book> found = books.findByTitle(title);
+            for (Book book : found) {
+                System.out.println("Book found: ");
+                System.out.println(book);
+            }
+            if (found.isEmpty()) {
+                showSimilarTitles(title);
+            }
+        } else if (choice.equals("3")) {
+            System.out.print("Enter keywords to search: ");
+            String query = scanner.nextLine().trim();
+            long start = books.metrics().start();
+            int[] ids = searchIndex().search(query, SEARCH_RESULT_LIMIT);
+            books.metrics().record(CatalogMetrics.Operation.SEARCH, start, ids.length);
+            if (ids.length == 0) {
+                System.out.println("No book found matching the provided keywords.");
+            } else {
+                System.out.println("Books found (best match first): ");
+                for (int id : ids) {
+                    System.out.println(findBookById(id));
                 }
             }
-            if (!found) {
-                System.out.println("No book found with the provided title.");
+        } else if (choice.equals("4")) {
+            System.out.print("Enter Author to search: ");
+            String author = scanner.nextLine().trim();
+            int[] ids = books.idsWhere(BookField.AUTHOR, author);
+            if (ids.length > 0) {
+                showBooks("Books by " + author + ": ", ids);
+            } else {
+                showSimilarAuthors(author);
             }
         } else {
-            System.out.println("Invalid choice. Please select 1 or 2.");
+            System.out.println("Invalid choice. Please select 1, 2, 3 or 4.");
+        }
+    }
+
+    // Offer the titles closest to a misspelt one, with their books
+    private static void showSimilarTitles(String title) {
+        List<String> similar = books.similarTitles(title, CatalogEngine.editsFor(title), SIMILAR_LIMIT);
+        if (similar.isEmpty()) {
+            System.out.println("No book found with the provided title.");
+            return;
+        }
+        System.out.println("No exact match. Did you mean (closest first): ");
+        int shown = 0;
+        for (String match : similar) {
+            for (Book book : books.findByTitle(match)) {
+                if (shown++ == SEARCH_RESULT_LIMIT) {
+                    return;
+                }
+                System.out.println(book);
+            }
+        }
+    }
+
+    // Offer the books of the authors closest to a misspelt one
+    private static void showSimilarAuthors(String author) {
+        List<String> similar = books.similarAuthors(author, CatalogEngine.editsFor(author), SIMILAR_LIMIT);
+        if (similar.isEmpty()) {
+            System.out.println("No book found by the provided author.");
+            return;
+        }
+        System.out.println("No exact match. Did you mean (closest first): ");
+        for (String match : similar) {
+            showBooks(match + ": ", books.idsWhere(BookField.AUTHOR, match));
+        }
+    }
+
+    // A heading and up to SEARCH_RESULT_LIMIT of the books
+    private static void showBooks(String heading, int[] ids) {
+        System.out.println(heading);
+        for (int i = 0; i < Math.min(ids.length, SEARCH_RESULT_LIMIT); i++) {
+            Book book = books.read(ids[i]);
+            if (book != null) {
+                System.out.println(book);
+            }
+        }
+        if (ids.length > SEARCH_RESULT_LIMIT) {
+            System.out.println("... and " + (ids.length - SEARCH_RESULT_LIMIT) + " more");
         }
     }
 
@@ -203,36 +420,30 @@ public class LibraryManagementSystem {
         System.out.print("Enter the Book ID to update: ");
         try {
             int id = Integer.parseInt(scanner.nextLine());
-            Book book = findBookById(id);
-            if (book == null) {
+            if (!books.contains(id)) {
                 System.out.println("No book found with the provided ID.");
                 return;
             }
             System.out.println("Leave a field blank if you do not wish to update it.");
             System.out.print("Enter new Title: ");
             String newTitle = scanner.nextLine().trim();
-            if (!newTitle.isEmpty()) {
-                book.setTitle(newTitle);
-            }
             System.out.print("Enter new Author: ");
             String newAuthor = scanner.nextLine().trim();
-            if (!newAuthor.isEmpty()) {
-                book.setAuthor(newAuthor);
-            }
             System.out.print("Enter new Genre: ");
             String newGenre = scanner.nextLine().trim();
-            if (!newGenre.isEmpty()) {
-                book.setGenre(newGenre);
-            }
             System.out.print("Enter new Availability Status (Available/Checked Out): ");
             String newStatus = scanner.nextLine().trim();
-            if (!newStatus.isEmpty()) {
-                if (!newStatus.equalsIgnoreCase("Available") && !newStatus.equalsIgnoreCase("Checked Out")) {
-                    System.out.println("Invalid availability status. Update aborted.");
-                    return;
-                } else {
-                    book.setAvailabilityStatus(capitalizeStatus(newStatus));
-                }
+            if (!newStatus.isEmpty() && !BookStatus.isValid(newStatus)) {
+                System.out.println("Invalid availability status. Update aborted.");
+                return;
+            }
+            Book book = books.updateBook(id, newTitle, newAuthor, newGenre, newStatus);
+            if (book == null) {
+                System.out.println("No book found with the provided ID.");
+                return;
+            }
+            if (searchIndex != null) {
+                searchIndex.update(book);
             }
             System.out.println("Book details updated successfully!");
         } catch (NumberFormatException e) {
@@ -245,9 +456,11 @@ public class LibraryManagementSystem {
         System.out.print("Enter the Book ID to delete: ");
         try {
             int id = Integer.parseInt(scanner.nextLine());
-            Book book = findBookById(id);
+            Book book = books.deleteBook(id);
             if (book != null) {
-                books.remove(book);
+                if (searchIndex != null) {
+                    searchIndex.remove(id);
+                }
                 System.out.println("Book deleted successfully!");
             } else {
                 System.out.println("No book found with the provided ID.");
@@ -257,23 +470,158 @@ public class LibraryManagementSystem {
         }
     }
 
-    // Helper method to find a book by its ID
-    private static Book findBookById(int id) {
-        for (Book b : books) {
-            if (b.getId() == id) {
-                return b;
+    // Update or delete every book that matches a filter, after saying how many that is
+    private static void bulkChange() {
+        System.out.println("Filter on author, genre and status, e.g. genre=Fiction & status=Available");
+        System.out.print("Enter the filter: ");
+        BookFilter filter;
+        try {
+            filter = BookFilter.parse(scanner.nextLine());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid filter: " + e.getMessage());
+            return;
+        }
+        int count = books.count(filter);
+        if (count == 0) {
+            System.out.println("No books match the filter.");
+            return;
+        }
+        System.out.print(count + " books match. Enter U to update them, D to delete them or anything else to cancel: ");
+        String action = scanner.nextLine().trim();
+        BulkResult result;
+        if (action.equalsIgnoreCase("U")) {
+            System.out.println("Leave a field blank if you do not wish to update it.");
+            System.out.print("Enter new Title: ");
+            String newTitle = scanner.nextLine().trim();
+            System.out.print("Enter new Author: ");
+            String newAuthor = scanner.nextLine().trim();
+            System.out.print("Enter new Genre: ");
+            String newGenre = scanner.nextLine().trim();
+            System.out.print("Enter new Availability Status (Available/Checked Out): ");
+            String newStatus = scanner.nextLine().trim();
+            if (!newStatus.isEmpty() && !BookStatus.isValid(newStatus)) {
+                System.out.println("Invalid availability status. Update aborted.");
+                return;
+            }
+            if (newTitle.isEmpty() && newAuthor.isEmpty() && newGenre.isEmpty() && newStatus.isEmpty()) {
+                System.out.println("Nothing to update.");
+                return;
             }
+            result = books.updateWhere(filter, newTitle, newAuthor, newGenre, newStatus);
+        } else if (action.equalsIgnoreCase("D")) {
+            System.out.print("Delete " + count + " books? This cannot be undone. Type yes to confirm: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                System.out.println("Bulk delete cancelled.");
+                return;
+            }
+            result = books.deleteWhere(filter);
+        } else {
+            System.out.println("Bulk change cancelled.");
+            return;
+        }
+        // The keyword index is rebuilt on the next keyword search
+        searchIndex = null;
+        System.out.println("Bulk change finished: " + result);
+    }
+
+    // Run a command script (see CatalogScript), loans included, from a file or stdin for "-"; output goes to stdout
+    // and the summary to stderr. Returns false if the script could not be read or a command failed.
+    private static boolean runBatch(String source, String format) {
+        CatalogScript.Format outputFormat;
+        try {
+            outputFormat = CatalogScript.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown output format '" + format + "'; use text or json.");
+            return false;
+        }
+        try (CirculationEngine<Book> circulation = CirculationEngine.openDefault(books);
+             InputStream in = source.equals("-") ? System.in : Files.newInputStream(Paths.get(source))) {
+            CatalogScript<Book> script = new CatalogScript<>(books, circulation, outputFormat, out);
+            CatalogScript.Result result = script.run(in);
+            System.err.println("Batch finished: " + result);
+            return result.getFailed() == 0;
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Batch failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Bulk import books from a CSV file of id,title,author,genre,status rows
+    private static void importBooks() {
+        System.out.print("Enter path of the CSV file to import: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("File path cannot be empty.");
+            return;
+        }
+        Path csv = Paths.get(path);
+        runImport(csv, defaultRejectsPath(csv));
+    }
+
+    // Stream the file through the parallel importer; rejected rows go to the rejects file
+    private static boolean runImport(Path csv, Path rejects) {
+        BulkImporter<Book> importer = new BulkImporter<>(Book::new, books::contains, batch -> {
+            books.addBooks(batch);
+            if (searchIndex != null) {
+                for (Book book : batch) {
+                    searchIndex.add(book);
+                }
+            }
+        });
+        try {
+            BulkImporter.Result result = importer.run(csv, rejects, System.out::println);
+            System.out.println("Import finished: " + result);
+            if (result.getRejected() > 0) {
+                System.out.println("Rejected rows were written to " + rejects);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Import failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Dump every book to a file; the extension picks the format
+    private static void exportBooks() {
+        System.out.print("Enter path of the file to export to (.csv or .jsonl, add .gz to compress): ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("File path cannot be empty.");
+            return;
+        }
+        runExport(Paths.get(path));
+    }
+
+    // Stream a capture of the catalog through the parallel exporter
+    private static boolean runExport(Path file) {
+        try {
+            CatalogExporter.Result result = CatalogExporter.forPath(file).run(books.capture(), file, System.out::println);
+            System.out.println("Export finished: " + result);
+            return true;
+        } catch (IllegalArgumentException | IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+            return false;
         }
-        return null;
     }
 
-    // Helper method to ensure proper capitalization of status
-    private static String capitalizeStatus(String status) {
-        if (status.equalsIgnoreCase("available")) {
-            return "Available";
-        } else if (status.equalsIgnoreCase("checked out")) {
-            return "Checked Out";
+    private static Path defaultRejectsPath(Path csv) {
+        return Paths.get(csv + ".rejects.csv");
+    }
+
+    // Helper method to build the keyword index on first use
+    private static SearchIndex searchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex();
+            for (Book book : books) {
+                searchIndex.add(book);
+            }
         }
-        return status;
+        return searchIndex;
+    }
+
+    // Helper method to find a book by its ID
+    private static Book findBookById(int id) {
+        return books.findBookById(id);
     }
 }
@@ -1,19 +1,38 @@
 import javafx.application.Application;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
         import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
         import javafx.stage.Stage;
+import msr.Autocomplete;
+import msr.BackgroundSearch;
+import msr.BookField;
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.PagedBookList;
+import msr.TypeAheadFilter;
 
 import javax.swing.text.TableView;
+import java.io.IOException;
 
 // Model class representing a Book
 public class LibraryManagementUI extends Application {
-    // Observable list to hold Book objects
-    private final ObservableList<Book> bookList = FXCollections.observableArrayList();
+    // Shared catalog engine; it also keeps the catalog across restarts
+    private CatalogEngine<Book> books;
+    // Table rows, read from the catalog a page at a time
+    private PagedBookList<Book> rows;
+    // Ranked full-text search over title, author and genre, run off the FX thread
+    private BackgroundSearch search;
+    // Streams substring matches into the table while the user types
+    private TypeAheadFilter<Book> filter;
+    // Title and author completions for the form, from the values already in the catalog
+    private Autocomplete autocomplete;
+    // True while the rows are ranked search results rather than type-ahead matches
+    private boolean rankedResults;
+    private static final int SEARCH_RESULT_LIMIT = 200;
 
     // TableView for displaying books
     private TableView<Book> tableView;
@@ -21,6 +40,7 @@ public class LibraryManagementUI extends Application {
     // Form fields for input
     private TextField idField, titleField, authorField, genreField;
     private ComboBox<String> statusBox;
+    private TextField searchField;
 
     public static void main(String[] args) {
         launch(args);
@@ -30,12 +50,30 @@ public class LibraryManagementUI extends Application {
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Library Management System");
 
+        // Restore the catalog saved by earlier runs
+        try {
+            books = CatalogEngine.openDefault(Book::new, new BookStore<>());
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Storage Error", "Could not load the saved catalog: " + e.getMessage());
+            Platform.exit();
+            return;
+        }
+        rows = new PagedBookList<>(books);
+        // Show every add, update and delete as it commits, from this window or any other writer
+        rows.follow();
+        filter = new TypeAheadFilter<>(books, rows, this::applySort);
+        search = new BackgroundSearch(books, books.metrics());
+        autocomplete = new Autocomplete(books);
+
         // Build the table view
         tableView = new TableView<>();
-        tableView.setItems(bookList);
+        tableView.setItems(rows);
         tableView.setPrefHeight(300);
         setupTableColumns();
 
+        // Build the keyword search bar
+        HBox searchPane = createSearchPane();
+
         // Build the form to add/update books
         GridPane form = createFormPane();
 
@@ -45,7 +83,7 @@ public class LibraryManagementUI extends Application {
         // Main layout
         VBox mainLayout = new VBox(10);
         mainLayout.setPadding(new Insets(15));
-        mainLayout.getChildren().addAll(tableView, form, buttonPane);
+        mainLayout.getChildren().addAll(searchPane, tableView, form, buttonPane);
 
         // Apply external CSS (optional – see sample CSS at the end)
         Scene scene = new Scene(mainLayout, 800, 600);
@@ -55,29 +93,42 @@ public class LibraryManagementUI extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() throws IOException {
+        if (books != null) {
+            books.close();
+        }
+    }
+
     // Set up TableView columns
     private void setupTableColumns() {
         TableColumn<Book, Integer> idCol = new TableColumn<>("Book ID");
         idCol.setCellValueFactory(new PropertyValueFactory<>("id"));
         idCol.setPrefWidth(80);
+        idCol.setUserData(BookField.ID);
 
         TableColumn<Book, String> titleCol = new TableColumn<>("Title");
         titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
         titleCol.setPrefWidth(200);
+        titleCol.setUserData(BookField.TITLE);
 
         TableColumn<Book, String> authorCol = new TableColumn<>("Author");
         authorCol.setCellValueFactory(new PropertyValueFactory<>("author"));
         authorCol.setPrefWidth(150);
+        authorCol.setUserData(BookField.AUTHOR);
 
         TableColumn<Book, String> genreCol = new TableColumn<>("Genre");
         genreCol.setCellValueFactory(new PropertyValueFactory<>("genre"));
         genreCol.setPrefWidth(120);
+        genreCol.setUserData(BookField.GENRE);
 
         TableColumn<Book, String> statusCol = new TableColumn<>("Status");
         statusCol.setCellValueFactory(new PropertyValueFactory<>("availabilityStatus"));
         statusCol.setPrefWidth(120);
+        statusCol.setUserData(BookField.STATUS);
 
         tableView.getColumns().addAll(idCol, titleCol, authorCol, genreCol, statusCol);
+        tableView.setSortPolicy(t -> applySort());
 
         // When a row is clicked, load the details into the form
         tableView.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
@@ -87,6 +138,60 @@ public class LibraryManagementUI extends Application {
         });
     }
 
+    // Create search bar for ranked keyword search
+    private HBox createSearchPane() {
+        searchField = new TextField();
+        searchField.setPromptText("Search title, author or genre");
+        searchField.setPrefWidth(300);
+        searchField.textProperty().addListener((obs, oldText, newText) -> {
+            rankedResults = false;
+            search.cancel();
+            filter.textChanged(newText);
+        });
+        searchField.setOnAction(e -> runSearch());
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> runSearch());
+        Button showAllButton = new Button("Show All");
+        showAllButton.setOnAction(e -> {
+            searchField.clear();
+            runSearch();
+        });
+
+        HBox searchPane = new HBox(10);
+        searchPane.getChildren().addAll(searchField, searchButton, showAllButton);
+        return searchPane;
+    }
+
+    // Show the ranked matches for the search text, or every book when it is blank;
+    // while typing, the type-ahead filter shows unranked substring matches instead
+    private void runSearch() {
+        filter.cancel();
+        search.cancel();
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            applySort();
+            return;
+        }
+        rankedResults = true;
+        // Built and queried in the background; the results replace the rows when they are ready
+        search.search(query, SEARCH_RESULT_LIMIT, rows::showOnly);
+    }
+
+    // Sort the whole catalog by the primary sort column; search and filter results keep their order
+    private boolean applySort() {
+        if (!searchField.getText().trim().isEmpty()) {
+            return true;
+        }
+        if (tableView.getSortOrder().isEmpty()) {
+            rows.showAll();
+        } else {
+            TableColumn<Book, ?> column = tableView.getSortOrder().get(0);
+            rows.sortBy((BookField) column.getUserData(),
+                    column.getSortType() == TableColumn.SortType.ASCENDING);
+        }
+        return true;
+    }
+
     // Create form for book details input
     private GridPane createFormPane() {
         GridPane form = new GridPane();
@@ -106,6 +211,8 @@ public class LibraryManagementUI extends Application {
         statusBox = new ComboBox<>();
         statusBox.getItems().addAll("Available", "Checked Out");
         statusBox.setValue("Available");
+        autocomplete.attach(titleField, BookField.TITLE);
+        autocomplete.attach(authorField, BookField.AUTHOR);
 
         form.add(idLabel, 0, 0);
         form.add(idField, 1, 0);
@@ -175,8 +282,21 @@ public class LibraryManagementUI extends Application {
                 return;
             }
 
-            Book newBook = new Book(id, title, author, genre, status);
-            bookList.add(newBook);
+            Book newBook = books.addBook(id, title, author, genre, status);
+            if (newBook == null) {
+                showAlert(Alert.AlertType.ERROR, "Duplicate ID", "A book with this ID already exists.");
+                return;
+            }
+            search.bookAdded(newBook);
+            autocomplete.bookAdded(newBook);
+            // The table picks up the new book from the change feed; search results are rerun
+            if (!searchField.getText().trim().isEmpty()) {
+                if (rankedResults) {
+                    runSearch();
+                } else {
+                    filter.rerun();
+                }
+            }
             clearForm();
             showAlert(Alert.AlertType.INFORMATION, "Success", "Book added successfully!");
         } catch (NumberFormatException ex) {
@@ -208,12 +328,19 @@ public class LibraryManagementUI extends Application {
                 return;
             }
 
-            selected.setId(id); // If you allow changing ID
-            selected.setTitle(title);
-            selected.setAuthor(author);
-            selected.setGenre(genre);
-            selected.setAvailabilityStatus(status);
-            tableView.refresh();
+            int oldId = selected.getId();
+            // If you allow changing ID
+            if (!books.changeBookId(oldId, id)) {
+                showAlert(Alert.AlertType.ERROR, "Duplicate ID", "A book with this ID already exists.");
+                return;
+            }
+            Book updated = books.updateBook(id, title, author, genre, status);
+            if (updated == null) {
+                showAlert(Alert.AlertType.ERROR, "Selection Error", "The selected book no longer exists.");
+                return;
+            }
+            search.bookChanged(selected, updated);
+            autocomplete.bookChanged(selected, updated);
             clearForm();
             showAlert(Alert.AlertType.INFORMATION, "Success", "Book updated successfully!");
         } catch (NumberFormatException ex) {
@@ -228,18 +355,16 @@ public class LibraryManagementUI extends Application {
             showAlert(Alert.AlertType.ERROR, "Selection Error", "No book selected to delete.");
             return;
         }
-        bookList.remove(selected);
+        books.deleteBook(selected.getId());
+        search.bookRemoved(selected.getId());
+        autocomplete.bookRemoved(selected);
         clearForm();
         showAlert(Alert.AlertType.INFORMATION, "Success", "Book deleted successfully!");
     }
 
     // Find a book by its ID in the list
     private Book findBookById(int id) {
-        for (Book b : bookList) {
-            if (b.getId() == id)
-                return b;
-        }
-        return null;
+        return books.findBookById(id);
     }
 
     // Utility method to display alert dialogs
@@ -253,7 +378,7 @@ public class LibraryManagementUI extends Application {
 }
 
 // Model class with JavaFX properties
-class Book {
+class Book implements BookRecord {
     private int id;
     private String title;
     private String author;
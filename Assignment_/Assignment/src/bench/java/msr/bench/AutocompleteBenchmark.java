@@ -0,0 +1,130 @@
+package msr.bench;
+
+import msr.PrefixTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Title and author completions from PrefixTrie: top-8 lookups for the prefixes typed in the
+// first keystrokes, and the remove-and-add an update does. Entries are made-up titles of two to
+// five words and authors drawn with a skewed popularity, so some authors have thousands of books.
+// The setup prints each trie's footprint.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="AutocompleteBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class AutocompleteBenchmark {
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ra", "ne", "tu", "si", "ver", "dor", "an",
+            "el", "is", "or", "un", "mar", "bel", "th", "gr", "st", "wy"};
+    private static final int K = 8;
+
+    @Param({"5000000"})
+    int size;
+
+    @Param({"1", "2", "4"})
+    int prefixLength;
+
+    PrefixTrie titles;
+    PrefixTrie authors;
+    String[] titleSample;
+    String[] authorSample;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Random random = new Random(42);
+        String[] words = new String[2000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(random, 2 + random.nextInt(3));
+        }
+        String[] firstNames = new String[300];
+        for (int i = 0; i < firstNames.length; i++) {
+            firstNames[i] = capitalize(word(random, 2 + random.nextInt(2)));
+        }
+        String[] lastNames = new String[3000];
+        for (int i = 0; i < lastNames.length; i++) {
+            lastNames[i] = capitalize(word(random, 2 + random.nextInt(3)));
+        }
+        titles = new PrefixTrie();
+        authors = new PrefixTrie();
+        titleSample = new String[4096];
+        authorSample = new String[4096];
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            StringBuilder title = new StringBuilder(capitalize(words[random.nextInt(words.length)]));
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                title.append(' ').append(words[random.nextInt(words.length)]);
+            }
+            // Skewed: low indexes are much more likely
+            int author = random.nextInt(random.nextInt(firstNames.length * lastNames.length) + 1);
+            String name = firstNames[author % firstNames.length] + " " + lastNames[author / firstNames.length];
+            titles.add(title.toString());
+            authors.add(name);
+            if (i < titleSample.length) {
+                titleSample[i] = title.toString();
+                authorSample[i] = name;
+            }
+        }
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%n%,d entries built in %,d ms%n", size, ms);
+        report("titles", titles);
+        report("authors", authors);
+    }
+
+    private void report(String name, PrefixTrie trie) {
+        System.out.printf("%s: %,d distinct, %,d bytes (%.1f per entry, %.1f per distinct value)%n", name,
+                trie.size(), trie.sizeInBytes(), trie.sizeInBytes() / (double) size,
+                trie.sizeInBytes() / (double) trie.size());
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < syllables; s++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private String prefix(String[] sample) {
+        String value = sample[ThreadLocalRandom.current().nextInt(sample.length)];
+        return value.substring(0, Math.min(prefixLength, value.length()));
+    }
+
+    @Benchmark
+    public List<String> completeTitle() {
+        return titles.complete(prefix(titleSample), K);
+    }
+
+    @Benchmark
+    public List<String> completeAuthor() {
+        return authors.complete(prefix(authorSample), K);
+    }
+
+    // What an edited title costs: the old value out, the new one in
+    @Benchmark
+    public void updateTitle() {
+        String title = titleSample[ThreadLocalRandom.current().nextInt(titleSample.length)];
+        titles.remove(title);
+        titles.add(title);
+    }
+}
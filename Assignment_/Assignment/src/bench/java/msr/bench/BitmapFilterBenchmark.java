@@ -0,0 +1,88 @@
+package msr.bench;
+
+import msr.BookFilter;
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Multi-field filters answered from the bitmap indexes versus a scan that tests every book with
+// BookFilter.matches (equalsIgnoreCase per field). Each call returns the first page of 20 IDs,
+// or all of them when there are fewer. Sample books have 50,000 authors and 40 genres, and every
+// third one is checked out; an author's books are all in one genre.
+//   author: genre=G & status=Available & author=A   (about 130 or 13 matches)
+//   genre:  genre=G & status=Available               (about 1/60 of the catalog)
+//   not:    genre=G & !status=Checked Out & !author=A
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="BitmapFilterBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BitmapFilterBenchmark {
+    private static final int PAGE = 20;
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    @Param({"author", "genre", "not"})
+    String query;
+
+    CatalogEngine<PlainBook> engine;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        // The first query builds the indexes
+        engine.count(filter());
+    }
+
+    BookFilter filter() {
+        int author = ThreadLocalRandom.current().nextInt(50_000);
+        String genre = "genre=Genre " + author % 40;
+        switch (query) {
+            case "author":
+                return BookFilter.parse(genre + " & status=Available & author=Author " + author);
+            case "genre":
+                return BookFilter.parse(genre + " & status=Available");
+            default:
+                return BookFilter.parse(genre + " & !status=Checked Out & !author=Author " + author);
+        }
+    }
+
+    @Benchmark
+    public int[] bitmap() {
+        return engine.idsMatching(filter(), Integer.MIN_VALUE, PAGE);
+    }
+
+    @Benchmark
+    public int[] scan() {
+        BookFilter filter = filter();
+        int[] page = new int[PAGE];
+        int found = 0;
+        for (BookRecord book : engine.capture()) {
+            if (filter.matches(book) && found < PAGE) {
+                page[found++] = book.getId();
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,59 @@
+package msr.bench;
+
+import msr.Book;
+
+import java.lang.management.ManagementFactory;
+
+// Allocation and retained heap of msr.Book with lazy properties versus eagerly created ones.
+// The field strings are built before measuring so only the book objects are counted; the first
+// <bound> books have their title property requested, as the visible rows of a table would.
+// Run each mode in a fresh JVM: BookAllocationBenchmark <lazy|eager> <count> [bound]
+public class BookAllocationBenchmark {
+    public static void main(String[] args) {
+        String mode = args[0];
+        int count = Integer.parseInt(args[1]);
+        int bound = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        PlainBook[] fields = new PlainBook[count];
+        for (int id = 0; id < count; id++) {
+            fields[id] = PlainBook.sample(id);
+        }
+        Object[] books = new Object[count];
+
+        long before = usedHeap();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            PlainBook f = fields[i];
+            if (mode.equals("eager")) {
+                EagerBook book = new EagerBook(f.getId(), f.getTitle(), f.getAuthor(), f.getGenre(), f.getAvailabilityStatus());
+                if (i < bound) {
+                    book.titleProperty();
+                }
+                books[i] = book;
+            } else {
+                Book book = new Book(f.getId(), f.getTitle(), f.getAuthor(), f.getGenre(), f.getAvailabilityStatus());
+                if (i < bound) {
+                    book.titleProperty();
+                }
+                books[i] = book;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long after = usedHeap();
+        System.out.printf("%-6s books=%,d bound=%,d allocated=%,d MB (%.1f bytes/book) retained=%,d MB (%.1f bytes/book) %.0f ms%n",
+                mode, books.length, bound, allocated >> 20, (double) allocated / count,
+                (after - before) >> 20, (double) (after - before) / count, nanos / 1e6);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,147 @@
+package msr.bench;
+
+import msr.BookFilter;
+import msr.BookStore;
+import msr.BulkResult;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Bulk jobs on a large catalog: a status change for one genre (1 in 40 books) through
+// updateWhere, the same change as one updateBook() per book, every book through a predicate
+// that the bitmap indexes cannot answer, and deleting a genre. Each job flips between two values
+// so every run changes every book it matches. A background thread keeps making single-book
+// updates with a pause between them and prints their latency, to show interactive writes are not
+// starved while the jobs run.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="BulkUpdateBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BulkUpdateBenchmark {
+    private static final BookFilter GENRE = BookFilter.parse("genre=Genre 3");
+    private static final BookFilter DELETED_GENRE = BookFilter.parse("genre=Genre 5");
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+    private List<PlainBook> deletedGenre;
+    private boolean checkedOut;
+    private volatile boolean stop;
+    private Thread interactive;
+    private final long[] latencies = new long[1 << 16];
+    private volatile int samples;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        deletedGenre = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            PlainBook book = PlainBook.sample(id);
+            engine.add(book);
+            if (DELETED_GENRE.matches(book)) {
+                deletedGenre.add(book);
+            }
+        }
+        // The first query builds the indexes
+        engine.count(GENRE);
+        interactive = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!stop) {
+                long start = System.nanoTime();
+                engine.updateBook(random.nextInt(size), null, null, null,
+                        random.nextBoolean() ? "Available" : "Checked Out");
+                int n = samples;
+                latencies[n & (latencies.length - 1)] = System.nanoTime() - start;
+                samples = n + 1;
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "interactive");
+        interactive.setDaemon(true);
+        interactive.start();
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() {
+        if (engine.size() < size) {
+            engine.addBooks(deletedGenre);
+        }
+        samples = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        int n = Math.min(samples, latencies.length);
+        if (n == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        System.out.printf("%ninteractive updates: %d, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", n,
+                sorted[n / 2] / 1e6, sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopInteractive() throws InterruptedException {
+        stop = true;
+        interactive.join();
+    }
+
+    private String nextStatus() {
+        checkedOut = !checkedOut;
+        return checkedOut ? "Checked Out" : "Available";
+    }
+
+    @Benchmark
+    public BulkResult genre() {
+        return engine.updateWhere(GENRE, null, null, null, nextStatus());
+    }
+
+    // The same change the way it was done before: one update per book
+    @Benchmark
+    public int genrePerBook() {
+        String status = nextStatus();
+        int changed = 0;
+        for (int id : engine.idsMatching(GENRE)) {
+            if (engine.updateBook(id, null, null, null, status) != null) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // Every book, found by a parallel scan rather than the indexes
+    @Benchmark
+    public BulkResult everyBook() {
+        return engine.updateWhere(book -> book.getId() >= 0, null, null, null, nextStatus());
+    }
+
+    @Benchmark
+    public BulkResult deleteGenre() {
+        return engine.deleteWhere(DELETED_GENRE);
+    }
+}
@@ -0,0 +1,200 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogStore;
+import msr.CompactBookStore;
+import msr.PagedBookList;
+import msr.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Single-threaded JMH suite for every catalog operation, on both store layouts, from 10^3 to
+// 10^7 books. Add and delete are timed in batches of BATCH operations so the catalog can be put
+// back between iterations; everything else is timed per operation.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="CatalogBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class CatalogBenchmark {
+    // At most the smallest catalog size, so a delete batch never runs out of books
+    static final int BATCH = 1_000;
+    private static final int SCROLL_WINDOW = 1_000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"object", "compact"})
+    String store;
+
+    CatalogStore<PlainBook> books;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        books = store.equals("compact") ? new CompactBookStore<>(PlainBook::new) : new BookStore<>();
+        for (int id = 0; id < size; id++) {
+            books.add(PlainBook.sample(id));
+        }
+    }
+
+    int randomId() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    // findBookById
+    @Benchmark
+    public PlainBook lookupById() {
+        return books.read(randomId());
+    }
+
+    // The CLI's exact-title search: a scan of every book
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int titleScan() {
+        String title = "Title of book number " + randomId();
+        int found = 0;
+        for (PlainBook book : books) {
+            if (book.getTitle().equalsIgnoreCase(title)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // The ranked keyword search used by all three front ends
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] keywordSearch(Search search) {
+        return search.index.search("number " + randomId(), 20);
+    }
+
+    // Change one field and write the book back
+    @Benchmark
+    public void update() {
+        PlainBook b = books.read(randomId());
+        books.update(new PlainBook(b.getId(), b.getTitle(), b.getAuthor(), b.getGenre(),
+                b.getAvailabilityStatus().equals("Available") ? "Checked Out" : "Available"));
+    }
+
+    // viewBooks: visit every book
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void listAll(Blackhole bh) {
+        for (PlainBook book : books) {
+            bh.consume(book);
+        }
+    }
+
+    // What a TableView does while scrolling: read a window of rows through the paged list
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void tableScroll(Table table, Blackhole bh) {
+        int first = ThreadLocalRandom.current().nextInt(Math.max(1, size - SCROLL_WINDOW));
+        int last = Math.min(size, first + SCROLL_WINDOW);
+        for (int i = first; i < last; i++) {
+            bh.consume(table.rows.get(i));
+        }
+    }
+
+    // BATCH adds of new IDs; the teardown removes them again
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = BATCH)
+    @Measurement(iterations = 30, batchSize = BATCH)
+    public boolean add(Added added) {
+        return books.add(PlainBook.sample(size + added.next++));
+    }
+
+    // BATCH deletes of existing IDs; the teardown adds them back
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = BATCH)
+    @Measurement(iterations = 30, batchSize = BATCH)
+    public PlainBook delete(Deleted deleted) {
+        PlainBook removed = books.remove(deleted.ids[deleted.next]);
+        deleted.removed[deleted.next++] = removed;
+        return removed;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Search {
+        SearchIndex index;
+
+        @Setup(Level.Trial)
+        public void build(CatalogBenchmark catalog) {
+            index = new SearchIndex();
+            for (PlainBook book : catalog.books) {
+                index.add(book);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Table {
+        PagedBookList<PlainBook> rows;
+
+        @Setup(Level.Trial)
+        public void open(CatalogBenchmark catalog) {
+            rows = new PagedBookList<>(catalog.books);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Added {
+        int next;
+
+        @TearDown(Level.Iteration)
+        public void undo(CatalogBenchmark catalog) {
+            for (int i = 0; i < next; i++) {
+                catalog.books.remove(catalog.size + i);
+            }
+            next = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Deleted {
+        final int[] ids = new int[BATCH];
+        final PlainBook[] removed = new PlainBook[BATCH];
+        int next;
+
+        @Setup(Level.Iteration)
+        public void pick(CatalogBenchmark catalog) {
+            // Distinct IDs spread over the catalog, so every delete finds a book
+            int step = catalog.size / BATCH;
+            int offset = ThreadLocalRandom.current().nextInt(step);
+            for (int i = 0; i < BATCH; i++) {
+                ids[i] = offset + i * step;
+            }
+            next = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void undo(CatalogBenchmark catalog) {
+            for (int i = 0; i < next; i++) {
+                if (removed[i] != null) {
+                    catalog.books.add(removed[i]);
+                }
+            }
+        }
+    }
+}
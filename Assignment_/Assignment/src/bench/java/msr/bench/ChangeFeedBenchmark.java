@@ -0,0 +1,122 @@
+package msr.bench;
+
+import javafx.collections.ListChangeListener;
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.PagedBookList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One animation frame of a table following the catalog while other terminals flip statuses at
+// 10,000 per second (about 167 flips per 60 Hz frame, a tenth of them to rows on screen): the
+// flips, then the table's work for the frame and a redraw of the visible rows. "coalesced"
+// applies the frame's changes from the change feed; "fullRefresh" invalidates every row once per
+// frame, the cheapest form of what a refresh per change did. Prints the row changes the table
+// was sent per frame. Runs without a display: the changes are applied by calling applyChanges().
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="ChangeFeedBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ChangeFeedBenchmark {
+    private static final int FLIPS_PER_FRAME = 10_000 / 60;
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({"1000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+    PagedBookList<PlainBook> rows;
+    private long frames;
+    private long rowsSet;
+    private long fullInvalidations;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        rows = new PagedBookList<>(engine);
+        rows.follow(false);
+        rows.addListener((ListChangeListener<PlainBook>) c -> {
+            while (c.next()) {
+                if (c.getRemovedSize() == size) {
+                    fullInvalidations++;
+                } else if (c.wasReplaced()) {
+                    rowsSet += c.getAddedSize();
+                }
+            }
+        });
+        redraw();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        if (frames > 0) {
+            System.out.printf("%n%.1f rows set and %.2f full invalidations per frame%n",
+                    (double) rowsSet / frames, (double) fullInvalidations / frames);
+        }
+        frames = 0;
+        rowsSet = 0;
+        fullInvalidations = 0;
+    }
+
+    // A frame's worth of status flips from elsewhere, one in ten to a row on screen
+    private void flip() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < FLIPS_PER_FRAME; i++) {
+            int id = random.nextInt(10) == 0 ? random.nextInt(VISIBLE_ROWS) : random.nextInt(size);
+            engine.updateBook(id, null, null, null, random.nextBoolean() ? "Available" : "Checked Out");
+        }
+    }
+
+    private int redraw() {
+        int n = 0;
+        for (int i = 0; i < VISIBLE_ROWS; i++) {
+            n += rows.get(i).getAvailabilityStatus().length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int coalesced() {
+        flip();
+        rows.applyChanges();
+        frames++;
+        return redraw();
+    }
+
+    @Benchmark
+    public int fullRefresh() {
+        flip();
+        rows.applyChanges();
+        rows.showAll();
+        frames++;
+        return redraw();
+    }
+
+    // What the flips cost by themselves, including publishing them to the feed
+    @Benchmark
+    public int flipsOnly() {
+        flip();
+        rows.applyChanges();
+        return 0;
+    }
+}
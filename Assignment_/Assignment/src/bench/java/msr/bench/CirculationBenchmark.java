@@ -0,0 +1,159 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.CatalogPersistence;
+import msr.CirculationEngine;
+import msr.Loan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Two measurements for CirculationEngine:
+// - durable checkout+return transactions per hour from 1 to 16 threads, with the catalog and the
+//   loan log both fsyncing in a temporary data directory (the target is 50,000 checkouts/hour);
+// - the cost of finding newly overdue loans among many open ones as the clock moves on an hour
+//   at a time, next to one scan of the catalog for Checked Out books.
+// Usage: CirculationBenchmark [books] [secondsPerRun]
+public class CirculationBenchmark {
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3.0;
+        durableTransactions(seconds);
+        overdueDetection(books);
+    }
+
+    private static void durableTransactions(double seconds) throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("circulation-bench");
+        System.setProperty(CatalogPersistence.DATA_DIR_PROPERTY, dir.toString());
+        int books = 10_000;
+        try (CatalogEngine<PlainBook> catalog = CatalogEngine.openDefault(PlainBook::new, new BookStore<>());
+             CirculationEngine<PlainBook> circulation = CirculationEngine.openDefault(catalog)) {
+            for (int id = 0; id < books; id++) {
+                catalog.add(PlainBook.sample(id));
+            }
+            System.out.println("Durable checkout + return, fsynced, in " + dir);
+            for (int threads : THREADS) {
+                LongAdder done = new LongAdder();
+                CountDownLatch start = new CountDownLatch(1);
+                long deadline = (long) (seconds * 1e9);
+                Thread[] workers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    workers[t] = new Thread(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        long begin = System.nanoTime();
+                        while (System.nanoTime() - begin < deadline) {
+                            int id = random.nextInt(books);
+                            if (id % 3 == 0) {
+                                // Checked out in the sample data
+                                continue;
+                            }
+                            try {
+                                circulation.checkout(id, random.nextInt(1000));
+                                circulation.returnBook(id);
+                                done.increment();
+                            } catch (IllegalArgumentException e) {
+                                // Another thread has this book right now
+                            }
+                        }
+                    });
+                    workers[t].start();
+                }
+                start.countDown();
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                System.out.printf("%3d threads: %,12.0f checkouts/hour (each with its return)%n", threads,
+                        done.sum() / seconds * 3600);
+            }
+        }
+    }
+
+    private static void overdueDetection(int books) {
+        CatalogEngine<PlainBook> catalog = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < books; id++) {
+            catalog.add(PlainBook.sample(id));
+        }
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        CirculationEngine<PlainBook> circulation = new CirculationEngine<>(catalog, clock);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Every available book on loan (two thirds of the samples), due over the next two weeks
+        int loans = 0;
+        for (int id = 0; id < books; id++) {
+            if (id % 3 == 0) {
+                continue;
+            }
+            long minutes = random.nextLong(Duration.ofDays(14).toMinutes());
+            circulation.checkout(id, random.nextInt(100_000), clock.instant().plus(Duration.ofMinutes(minutes)));
+            loans++;
+        }
+        System.out.printf("%nOverdue detection, %,d books, %,d open loans%n", books, loans);
+        long pollNanos = 0;
+        long expired = 0;
+        int polls = 0;
+        for (int hour = 0; hour < 14 * 24; hour++) {
+            clock.advance(Duration.ofHours(1));
+            long start = System.nanoTime();
+            List<Loan> batch = circulation.pollOverdue();
+            pollNanos += System.nanoTime() - start;
+            expired += batch.size();
+            polls++;
+        }
+        System.out.printf("pollOverdue: %,d polls, %,d loans expired, %.1f us per poll, %.2f us per expired loan%n",
+                polls, expired, pollNanos / 1e3 / polls, pollNanos / 1e3 / Math.max(1, expired));
+        // What finding them took before: read every book's status
+        long start = System.nanoTime();
+        int checkedOut = 0;
+        for (PlainBook book : catalog) {
+            if (book.getAvailabilityStatus().equals("Checked Out")) {
+                checkedOut++;
+            }
+        }
+        System.out.printf("catalog scan: %.1f ms for %,d checked-out books (and no due dates)%n",
+                (System.nanoTime() - start) / 1e6, checkedOut);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
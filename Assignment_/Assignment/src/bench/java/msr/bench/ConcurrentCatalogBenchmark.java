@@ -0,0 +1,84 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Multi-threaded JMH suite for the shared CatalogEngine: lookups alone, and lookups racing
+// updates, adds and deletes in one group. Override the thread counts with -t / -tg.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="ConcurrentCatalogBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class ConcurrentCatalogBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public PlainBook lookupById() {
+        return engine.findBookById(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public PlainBook mixedLookup() {
+        return engine.findBookById(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public PlainBook mixedUpdate() {
+        return engine.updateBook(randomId(), null, null, null,
+                ThreadLocalRandom.current().nextBoolean() ? "Available" : "Checked Out");
+    }
+
+    // Deletes a book and adds it back, so the catalog keeps its size
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public PlainBook mixedDeleteAndAdd() {
+        PlainBook removed = engine.deleteBook(randomId());
+        if (removed != null) {
+            engine.addBook(removed.getId(), removed.getTitle(), removed.getAuthor(), removed.getGenre(),
+                    removed.getAvailabilityStatus());
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,24 @@
+package msr.bench;
+
+import javafx.beans.property.*;
+
+// The previous msr.Book, which created all five properties up front; the baseline for BookAllocationBenchmark
+public class EagerBook {
+    private final IntegerProperty id;
+    private final StringProperty title;
+    private final StringProperty author;
+    private final StringProperty genre;
+    private final StringProperty availabilityStatus;
+
+    public EagerBook(int id, String title, String author, String genre, String availabilityStatus) {
+        this.id = new SimpleIntegerProperty(id);
+        this.title = new SimpleStringProperty(title);
+        this.author = new SimpleStringProperty(author);
+        this.genre = new SimpleStringProperty(genre);
+        this.availabilityStatus = new SimpleStringProperty(availabilityStatus);
+    }
+
+    public StringProperty titleProperty() {
+        return title;
+    }
+}
@@ -0,0 +1,137 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogEngine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of the shared CatalogEngine from 1 to 32 threads on mixed read/update workloads,
+// against the same store behind one mutex (what synchronizing the old CRUD code would give).
+// The catalog is in memory only, so the numbers show locking cost rather than fsync cost.
+// Usage: EngineScalingBenchmark [books] [secondsPerRun]
+public class EngineScalingBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+    private static final int[] READ_PERCENT = {95, 80, 50};
+
+    public static void main(String[] args) throws InterruptedException {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        CatalogEngine<PlainBook> engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < books; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        BookStore<PlainBook> plain = new BookStore<>();
+        for (int id = 0; id < books; id++) {
+            plain.add(PlainBook.sample(id));
+        }
+        Locked locked = new Locked(plain);
+        System.out.printf("%d books, %d cores, %.1f s per run; million ops/sec%n", books,
+                Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("%-6s %-8s", "reads", "catalog");
+        for (int threads : THREADS) {
+            System.out.printf("%9s", threads + "T");
+        }
+        System.out.println();
+        for (int readPercent : READ_PERCENT) {
+            for (Catalog catalog : new Catalog[]{locked, new Striped(engine)}) {
+                System.out.printf("%-6s %-8s", readPercent + "%", catalog.name());
+                for (int threads : THREADS) {
+                    System.out.printf("%9.2f", run(catalog, books, readPercent, threads, seconds) / 1e6);
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    private static double run(Catalog catalog, int books, int readPercent, int threads, double seconds)
+            throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long begin = System.nanoTime();
+                long done = 0;
+                do {
+                    for (int i = 0; i < 256; i++) {
+                        int id = random.nextInt(books);
+                        if (random.nextInt(100) < readPercent) {
+                            catalog.read(id);
+                        } else {
+                            catalog.update(id, random.nextBoolean() ? "Available" : "Checked Out");
+                        }
+                    }
+                    done += 256;
+                } while (System.nanoTime() - begin < deadline);
+                ops.add(done);
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private interface Catalog {
+        String name();
+
+        void read(int id);
+
+        void update(int id, String status);
+    }
+
+    private static final class Striped implements Catalog {
+        private final CatalogEngine<PlainBook> engine;
+
+        Striped(CatalogEngine<PlainBook> engine) {
+            this.engine = engine;
+        }
+
+        public String name() {
+            return "engine";
+        }
+
+        public void read(int id) {
+            engine.findBookById(id);
+        }
+
+        public void update(int id, String status) {
+            engine.updateBook(id, null, null, null, status);
+        }
+    }
+
+    // The same copy-out reads and replace-on-update writes, all under one monitor
+    private static final class Locked implements Catalog {
+        private final BookStore<PlainBook> store;
+
+        Locked(BookStore<PlainBook> store) {
+            this.store = store;
+        }
+
+        public String name() {
+            return "mutex";
+        }
+
+        public synchronized void read(int id) {
+            PlainBook b = store.read(id);
+            new PlainBook(b.getId(), b.getTitle(), b.getAuthor(), b.getGenre(), b.getAvailabilityStatus());
+        }
+
+        public synchronized void update(int id, String status) {
+            PlainBook b = store.read(id);
+            store.update(new PlainBook(id, b.getTitle(), b.getAuthor(), b.getGenre(), status));
+        }
+    }
+}
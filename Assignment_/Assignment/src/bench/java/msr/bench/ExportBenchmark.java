@@ -0,0 +1,99 @@
+package msr.bench;
+
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.CatalogExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Dumping the whole catalog to a file: CatalogExporter as CSV, gzipped CSV and JSON Lines,
+// against the way a listing was written before, one "Book ID: ..." line per book built with
+// string concatenation and printed through a buffered PrintWriter. Prints the file size of
+// each run; the GC profiler shows the bytes allocated per dump.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="ExportBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ExportBenchmark {
+    @Param({"1000000", "10000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+    private Path dir;
+
+    @Setup
+    public void fill() throws IOException {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        dir = Files.createTempDirectory("export-bench");
+    }
+
+    @TearDown
+    public void clean() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                System.out.printf("%n%s: %,d bytes", file.getFileName(), Files.size(file));
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private CatalogExporter.Result export(String name) throws IOException {
+        Path file = dir.resolve(name);
+        return CatalogExporter.forPath(file).run(engine.capture(), file, line -> { });
+    }
+
+    @Benchmark
+    public CatalogExporter.Result csv() throws IOException {
+        return export("books.csv");
+    }
+
+    @Benchmark
+    public CatalogExporter.Result csvGzip() throws IOException {
+        return export("books.csv.gz");
+    }
+
+    @Benchmark
+    public CatalogExporter.Result jsonLines() throws IOException {
+        return export("books.jsonl");
+    }
+
+    @Benchmark
+    public long printed() throws IOException {
+        long rows = 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("books.txt"), StandardCharsets.UTF_8))) {
+            for (BookRecord book : engine.capture()) {
+                out.println("Book ID: " + book.getId() + ", Title: " + book.getTitle() + ", Author: "
+                        + book.getAuthor() + ", Genre: " + book.getGenre() + ", Status: "
+                        + book.getAvailabilityStatus());
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,32 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogStore;
+import msr.CompactBookStore;
+
+import java.lang.management.ManagementFactory;
+
+// Retained heap of a catalog held as one object per book versus the dictionary-encoded arrays.
+// Run each store in a fresh JVM: FootprintBenchmark <object|compact> <count>
+public class FootprintBenchmark {
+    public static void main(String[] args) {
+        String mode = args[0];
+        int count = Integer.parseInt(args[1]);
+        long before = usedHeap();
+        CatalogStore<PlainBook> store = mode.equals("compact")
+                ? new CompactBookStore<>(PlainBook::new) : new BookStore<>();
+        for (int id = 0; id < count; id++) {
+            store.add(PlainBook.sample(id));
+        }
+        long after = usedHeap();
+        System.out.printf("%-8s books=%,d retained=%,d MB (%.1f bytes/book)%n",
+                mode, store.size(), (after - before) >> 20, (double) (after - before) / count);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
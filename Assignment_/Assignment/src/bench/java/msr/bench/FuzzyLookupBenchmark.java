@@ -0,0 +1,188 @@
+package msr.bench;
+
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Misspelt title and author lookups: the 5 nearest spellings from similarTitles/similarAuthors,
+// for titles and authors of real books with one or two random typing mistakes (a wrong, missing,
+// extra or swapped letter), against comparing the misspelt title with every title in a capture.
+// Titles and authors are made up like AutocompleteBenchmark's. The setup prints how long the
+// first lookup, which builds the tries, took.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="FuzzyLookupBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class FuzzyLookupBenchmark {
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ra", "ne", "tu", "si", "ver", "dor", "an",
+            "el", "is", "or", "un", "mar", "bel", "th", "gr", "st", "wy"};
+    private static final int LIMIT = 5;
+
+    @Param({"5000000"})
+    int size;
+
+    @Param({"1", "2"})
+    int mistakes;
+
+    CatalogEngine<PlainBook> engine;
+    String[] titleQueries;
+    String[] authorQueries;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Random random = new Random(42);
+        String[] words = new String[2000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(random, 2 + random.nextInt(3));
+        }
+        String[] firstNames = new String[300];
+        for (int i = 0; i < firstNames.length; i++) {
+            firstNames[i] = capitalize(word(random, 2 + random.nextInt(2)));
+        }
+        String[] lastNames = new String[3000];
+        for (int i = 0; i < lastNames.length; i++) {
+            lastNames[i] = capitalize(word(random, 2 + random.nextInt(3)));
+        }
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        titleQueries = new String[4096];
+        authorQueries = new String[4096];
+        for (int id = 0; id < size; id++) {
+            StringBuilder title = new StringBuilder(capitalize(words[random.nextInt(words.length)]));
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                title.append(' ').append(words[random.nextInt(words.length)]);
+            }
+            // Skewed: low indexes are much more likely
+            int author = random.nextInt(random.nextInt(firstNames.length * lastNames.length) + 1);
+            String name = firstNames[author % firstNames.length] + " " + lastNames[author / firstNames.length];
+            engine.add(new PlainBook(id, title.toString(), name, "Genre " + (id % 40), "Available"));
+            if (id < titleQueries.length) {
+                titleQueries[id] = misspell(random, title.toString());
+                authorQueries[id] = misspell(random, name);
+            }
+        }
+        long start = System.nanoTime();
+        engine.similarTitles("", 1, 1);
+        System.out.printf("%nTitle and author tries built in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private String misspell(Random random, String value) {
+        StringBuilder sb = new StringBuilder(value);
+        for (int m = 0; m < mistakes; m++) {
+            int at = random.nextInt(sb.length() - 1);
+            char letter = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.setCharAt(at, letter);
+                    break;
+                case 1:
+                    sb.deleteCharAt(at);
+                    break;
+                case 2:
+                    sb.insert(at, letter);
+                    break;
+                default:
+                    // A swap is two edits, so it only stands in for the second mistake
+                    if (mistakes - m >= 2) {
+                        char c = sb.charAt(at);
+                        sb.setCharAt(at, sb.charAt(at + 1));
+                        sb.setCharAt(at + 1, c);
+                        m++;
+                    } else {
+                        sb.setCharAt(at, letter);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < syllables; s++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String pick(String[] queries) {
+        return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+    }
+
+    @Benchmark
+    public List<String> title() {
+        String query = pick(titleQueries);
+        return engine.similarTitles(query, CatalogEngine.editsFor(query), LIMIT);
+    }
+
+    @Benchmark
+    public List<String> author() {
+        String query = pick(authorQueries);
+        return engine.similarAuthors(query, CatalogEngine.editsFor(query), LIMIT);
+    }
+
+    // The same title lookup without an index: the edit distance to every title, stopping each
+    // comparison once it is out of reach
+    @Benchmark
+    public List<String> scan() {
+        String query = pick(titleQueries).toLowerCase(Locale.ROOT);
+        int maxEdits = CatalogEngine.editsFor(query);
+        List<String> found = new ArrayList<>();
+        for (BookRecord book : engine.capture()) {
+            String title = book.getTitle();
+            if (Math.abs(title.length() - query.length()) <= maxEdits
+                    && distance(query, title.toLowerCase(Locale.ROOT), maxEdits) <= maxEdits) {
+                found.add(title);
+            }
+        }
+        return found;
+    }
+
+    private static int distance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int min = i;
+            for (int j = 1; j <= b.length(); j++) {
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1,
+                        previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                min = Math.min(min, current[j]);
+            }
+            if (min > max) {
+                return min;
+            }
+            int[] t = previous;
+            previous = current;
+            current = t;
+        }
+        return previous[b.length()];
+    }
+}
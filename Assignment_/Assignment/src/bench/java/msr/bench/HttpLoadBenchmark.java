@@ -0,0 +1,112 @@
+package msr.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load test for CatalogServer. Seeds the catalog over POST, then keeps <connections>
+// requests in flight (90% GET /books/{id}, 10% PUT of the status) for the given time and reports
+// throughput and latency percentiles. Start the server in its own JVM, e.g.
+//   java -Dlibrary.durability=PER_INTERVAL -cp ... msr.CatalogServer --port 8080
+// Usage: HttpLoadBenchmark <baseUrl> [connections] [seconds] [seedBooks]
+public class HttpLoadBenchmark {
+    private static final int MAX_SAMPLES = 20_000_000;
+
+    public static void main(String[] args) throws Exception {
+        String base = args[0];
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        int seedBooks = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+        ExecutorService callbacks = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(callbacks).build();
+
+        // Seed with a few hundred requests in flight; IDs that already exist just answer 409
+        AtomicInteger nextSeed = new AtomicInteger();
+        CompletableFuture<?>[] seeders = new CompletableFuture<?>[256];
+        for (int i = 0; i < seeders.length; i++) {
+            seeders[i] = new CompletableFuture<Void>();
+            seed(client, base, nextSeed, seedBooks, (CompletableFuture<Void>) seeders[i]);
+        }
+        CompletableFuture.allOf(seeders).join();
+
+        long[] latencies = new long[MAX_SAMPLES];
+        AtomicInteger samples = new AtomicInteger();
+        LongAdder errors = new LongAdder();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        CompletableFuture<?>[] users = new CompletableFuture<?>[connections];
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            users[i] = done;
+            loop(client, base, seedBooks, end, latencies, samples, errors, done);
+        }
+        CompletableFuture.allOf(users).join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int n = Math.min(samples.get(), MAX_SAMPLES);
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        System.out.printf("%,d connections, %.0f s: %,d requests, %,.0f req/s, errors %,d%n",
+                connections, elapsed, n, n / elapsed, errors.sum());
+        System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                pct(sorted, 50), pct(sorted, 90), pct(sorted, 99), pct(sorted, 99.9), sorted[n - 1] / 1e6);
+        callbacks.shutdown();
+    }
+
+    // Requests are chained from each completion; done completes when there is nothing left to send
+    private static void seed(HttpClient client, String base, AtomicInteger next, int count, CompletableFuture<Void> done) {
+        int id = next.getAndIncrement();
+        if (id >= count) {
+            done.complete(null);
+            return;
+        }
+        String body = "{\"id\":" + id + ",\"title\":\"Title of book number " + id + "\",\"author\":\"Author "
+                + (id % 5000) + "\",\"genre\":\"Genre " + (id % 40) + "\",\"availabilityStatus\":\"Available\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/books"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> seed(client, base, next, count, done));
+    }
+
+    // One simulated client: issue a request, record its latency, repeat until the deadline
+    private static void loop(HttpClient client, String base, int books, long end, long[] latencies,
+                             AtomicInteger samples, LongAdder errors, CompletableFuture<Void> done) {
+        if (System.nanoTime() >= end) {
+            done.complete(null);
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = random.nextInt(books);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(base + "/books/" + id));
+        if (random.nextInt(10) == 0) {
+            builder.header("Content-Type", "application/json").PUT(HttpRequest.BodyPublishers.ofString(
+                    random.nextBoolean() ? "{\"availabilityStatus\":\"Checked Out\"}" : "{\"availabilityStatus\":\"Available\"}"));
+        }
+        long sent = System.nanoTime();
+        client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, failure) -> {
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.increment();
+                    } else {
+                        int i = samples.getAndIncrement();
+                        if (i < latencies.length) {
+                            latencies[i] = System.nanoTime() - sent;
+                        }
+                    }
+                    loop(client, base, books, end, latencies, samples, errors, done);
+                });
+    }
+
+    private static double pct(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p / 100 * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,94 @@
+package msr.bench;
+
+import jdk.jfr.Recording;
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.CatalogMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of CatalogMetrics on the cheapest engine operations, which is where it shows the most:
+//   off - recording switched off (the baseline: one volatile read per operation)
+//   on  - histograms and counters, no Flight Recorder recording running
+//   jfr - as on, with a recording that has the msr.CatalogOperation event enabled
+// recordOnly times start() plus record() around nothing, i.e. the fixed cost per operation.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="MetricsOverheadBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class MetricsOverheadBenchmark {
+    private static final int SIZE = 100_000;
+
+    @Param({"off", "on", "jfr"})
+    String instrumentation;
+
+    CatalogEngine<PlainBook> engine;
+    Recording recording;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < SIZE; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        engine.metrics().setEnabled(!instrumentation.equals("off"));
+        if (instrumentation.equals("jfr")) {
+            recording = new Recording();
+            recording.enable("msr.CatalogOperation");
+            recording.setToDisk(true);
+            recording.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRecording() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(SIZE);
+    }
+
+    @Benchmark
+    public PlainBook lookupById() {
+        return engine.findBookById(randomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public PlainBook lookupById4Threads() {
+        return engine.findBookById(randomId());
+    }
+
+    @Benchmark
+    public PlainBook update() {
+        return engine.updateBook(randomId(), null, null, null,
+                ThreadLocalRandom.current().nextBoolean() ? "Available" : "Checked Out");
+    }
+
+    @Benchmark
+    public void recordOnly() {
+        CatalogMetrics metrics = engine.metrics();
+        metrics.record(CatalogMetrics.Operation.FIND, metrics.start(), 1);
+    }
+}
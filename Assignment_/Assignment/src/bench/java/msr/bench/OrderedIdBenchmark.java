@@ -0,0 +1,103 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.IdTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The ordered ID index behind listings: a 20-book page from a random cursor, a 500-ID range and
+// a table page by rank, against one page found by reading every ID (as listings did before the
+// index), plus what keeping the index adds to an add and delete pair. Prints the index footprint.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="OrderedIdBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class OrderedIdBenchmark {
+    private static final int PAGE = 20;
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        // IDs 0, 2, 4, ... so adds can go in between
+        for (int i = 0; i < size; i++) {
+            engine.add(PlainBook.sample(2 * i));
+        }
+        long start = System.nanoTime();
+        engine.idsAfter(Integer.MIN_VALUE, 1);
+        System.out.printf("%nIndex built in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        int[] ids = engine.ids();
+        Arrays.sort(ids);
+        System.out.printf("Index size: %.1f bytes per book%n", (double) IdTree.build(ids).sizeInBytes() / size);
+        next = 1;
+    }
+
+    private int randomId() {
+        return 2 * ThreadLocalRandom.current().nextInt(size);
+    }
+
+    @Benchmark
+    public int[] page() {
+        return engine.idsAfter(randomId(), PAGE);
+    }
+
+    @Benchmark
+    public int[] range() {
+        int from = randomId();
+        return engine.idsBetween(from, from + 1000, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int[] tablePage() {
+        return engine.idsByRank(ThreadLocalRandom.current().nextInt(size), 64);
+    }
+
+    // One page without the index: read every ID and keep those just above the cursor
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] pageByScan() {
+        int after = randomId();
+        int[] ids = engine.ids();
+        int n = 0;
+        for (int id : ids) {
+            if (id > after && id <= after + 2 * PAGE) {
+                ids[n++] = id;
+            }
+        }
+        int[] page = Arrays.copyOf(ids, n);
+        Arrays.sort(page);
+        return page;
+    }
+
+    // An add and a delete of an odd ID, so the catalog keeps its size
+    @Benchmark
+    public PlainBook addAndDelete() {
+        int id = next;
+        next = (next + 2 * 7919) % (2 * size) | 1;
+        engine.addBook(id, "Title", "Author", "Genre", "Available");
+        return engine.deleteBook(id);
+    }
+}
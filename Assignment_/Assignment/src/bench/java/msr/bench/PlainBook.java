@@ -0,0 +1,42 @@
+package msr.bench;
+
+import msr.BookRecord;
+
+// Field-only book, the same shape as the CLI's Book, used by the harnesses
+public class PlainBook implements BookRecord {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final String genre;
+    private final String availabilityStatus;
+
+    public PlainBook(int id, String title, String author, String genre, String availabilityStatus) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.genre = genre;
+        this.availabilityStatus = availabilityStatus;
+    }
+
+    // Deterministic synthetic book
+    public static PlainBook sample(int id) {
+        return new PlainBook(id, "Title of book number " + id, "Author " + (id % 50_000),
+                "Genre " + (id % 40), id % 3 == 0 ? "Checked Out" : "Available");
+    }
+
+    public int getId() {
+        return id;
+    }
+    public String getTitle() {
+        return title;
+    }
+    public String getAuthor() {
+        return author;
+    }
+    public String getGenre() {
+        return genre;
+    }
+    public String getAvailabilityStatus() {
+        return availabilityStatus;
+    }
+}
@@ -0,0 +1,102 @@
+package msr.bench;
+
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Title lookups through the engine's query cache versus the scan they used to be, and what
+// invalidation adds to an update. The skewed workload asks for one of 1,000 popular titles 90% of
+// the time and for any title otherwise, with one update for every ten lookups.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="QueryCacheBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class QueryCacheBenchmark {
+    private static final int POPULAR = 1000;
+
+    @Param({"1000000"})
+    int size;
+
+    CatalogEngine<PlainBook> engine;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        for (int id = 0; id < POPULAR; id++) {
+            engine.findByTitle(title(id));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println();
+        System.out.println(engine.metrics().getTitleCache());
+    }
+
+    private static String title(int id) {
+        return "Title of book number " + id;
+    }
+
+    // A title asked for before and unchanged since
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<PlainBook> hit() {
+        return engine.findByTitle(title(ThreadLocalRandom.current().nextInt(POPULAR)));
+    }
+
+    // The same lookup without the cache
+    @Benchmark
+    public int scan() {
+        String title = title(ThreadLocalRandom.current().nextInt(POPULAR));
+        int found = 0;
+        for (BookRecord book : engine.capture()) {
+            if (book.getTitle().equalsIgnoreCase(title)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int skewed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = random.nextInt(10) < 9 ? random.nextInt(POPULAR) : random.nextInt(size);
+        if (random.nextInt(11) == 0) {
+            return engine.updateBook(id, null, null, null, random.nextBoolean() ? "Available" : "Checked Out") == null
+                    ? 0 : 1;
+        }
+        return engine.findByTitle(title(id)).size();
+    }
+
+    // A status change, which drops the cached result for the book's title
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PlainBook update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return engine.updateBook(random.nextInt(POPULAR), null, null, null,
+                random.nextBoolean() ? "Available" : "Checked Out");
+    }
+}
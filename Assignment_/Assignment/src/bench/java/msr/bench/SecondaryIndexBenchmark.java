@@ -0,0 +1,117 @@
+package msr.bench;
+
+import msr.BookField;
+import msr.BookRecord;
+import msr.BookStatus;
+import msr.BookStore;
+import msr.CatalogEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Secondary indexes in CatalogEngine: what maintaining them adds to an update that moves a book
+// to another author, genre and status, and what the queries cost with them versus the full scan
+// they replace (indexed=false). Sample books have 50,000 authors and 40 genres.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="SecondaryIndexBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SecondaryIndexBenchmark {
+    @Param({"1000000", "10000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean indexed;
+
+    CatalogEngine<PlainBook> engine;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        engine = new CatalogEngine<>(PlainBook::new, new BookStore<>());
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        if (indexed) {
+            // The first query builds the indexes
+            engine.count(BookField.GENRE, "Genre 0");
+        }
+    }
+
+    private static String randomAuthor() {
+        return "Author " + ThreadLocalRandom.current().nextInt(50_000);
+    }
+
+    private static String randomGenre() {
+        return "Genre " + ThreadLocalRandom.current().nextInt(40);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PlainBook update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return engine.updateBook(random.nextInt(size), null, randomAuthor(), randomGenre(),
+                random.nextBoolean() ? "Available" : "Checked Out");
+    }
+
+    // All books by one author (about 20 or 200 of them)
+    @Benchmark
+    public int booksByAuthor() {
+        String author = randomAuthor();
+        if (indexed) {
+            return engine.idsWhere(BookField.AUTHOR, author).length;
+        }
+        int found = 0;
+        for (BookRecord book : engine.capture()) {
+            if (book.getAuthor().equalsIgnoreCase(author)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // How many Available titles in one genre
+    @Benchmark
+    public int availableInGenre() {
+        String genre = randomGenre();
+        if (indexed) {
+            return engine.count(genre, BookStatus.AVAILABLE);
+        }
+        int found = 0;
+        for (BookRecord book : engine.capture()) {
+            if (book.getGenre().equalsIgnoreCase(genre) && BookStatus.parse(book.getAvailabilityStatus()) == BookStatus.AVAILABLE) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // Books per genre
+    @Benchmark
+    public Map<String, Integer> genreFacets() {
+        if (indexed) {
+            return engine.facets(BookField.GENRE);
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (BookRecord book : engine.capture()) {
+            counts.merge(book.getGenre(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
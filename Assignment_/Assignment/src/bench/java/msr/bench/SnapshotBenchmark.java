@@ -0,0 +1,93 @@
+package msr.bench;
+
+import msr.BookRecord;
+import msr.BookStore;
+import msr.CatalogEngine;
+import msr.CatalogStore;
+import msr.CompactBookStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Writers while full listings run: update latency with a background thread that keeps taking a
+// capture of the whole catalog and reading every book in it (scanning=true), against the same
+// updates with nothing else running, and what taking a capture costs by itself.
+// Run with: mvn -Pbench compile exec:exec -Djmh.args="SnapshotBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SnapshotBenchmark {
+    @Param({"10000000"})
+    int size;
+
+    @Param({"object", "compact"})
+    String store;
+
+    @Param({"false", "true"})
+    boolean scanning;
+
+    CatalogEngine<PlainBook> engine;
+    private volatile boolean stop;
+    private Thread scanner;
+    volatile long scanned;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        CatalogStore<PlainBook> backing = store.equals("compact")
+                ? new CompactBookStore<>(PlainBook::new) : new BookStore<>();
+        engine = new CatalogEngine<>(PlainBook::new, backing);
+        for (int id = 0; id < size; id++) {
+            engine.add(PlainBook.sample(id));
+        }
+        if (scanning) {
+            scanner = new Thread(() -> {
+                while (!stop) {
+                    long n = 0;
+                    for (BookRecord book : engine.capture()) {
+                        n += book.getTitle().length();
+                    }
+                    scanned += n;
+                }
+            }, "scanner");
+            scanner.setDaemon(true);
+            scanner.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopScanning() throws InterruptedException {
+        stop = true;
+        if (scanner != null) {
+            scanner.join();
+        }
+    }
+
+    @Benchmark
+    public PlainBook update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return engine.updateBook(random.nextInt(size), null, null, null,
+                random.nextBoolean() ? "Available" : "Checked Out");
+    }
+
+    // The point-in-time copy a listing starts from
+    @Benchmark
+    public int capture() {
+        return engine.capture().size();
+    }
+}
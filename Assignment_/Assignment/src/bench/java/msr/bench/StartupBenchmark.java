@@ -0,0 +1,105 @@
+package msr.bench;
+
+import msr.BookStore;
+import msr.MappedCatalog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+
+// Startup cost of loading a catalog from text (parse + one Book per row) versus opening the
+// mapped binary catalog. Run each load mode in a fresh JVM so RSS is comparable:
+//   StartupBenchmark generate <count> <dir>
+//   StartupBenchmark text <dir>
+//   StartupBenchmark mapped <dir>
+public class StartupBenchmark {
+    private static final int LOOKUPS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args[0];
+        switch (mode) {
+            case "generate":
+                generate(Integer.parseInt(args[1]), Path.of(args[2]));
+                break;
+            case "text":
+                loadText(Path.of(args[1]));
+                break;
+            case "mapped":
+                loadMapped(Path.of(args[1]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    private static void generate(int count, Path dir) throws Exception {
+        Files.createDirectories(dir);
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("catalog.csv"))) {
+            for (int id = 0; id < count; id++) {
+                PlainBook b = PlainBook.sample(id);
+                out.write(id + "," + b.getTitle() + "," + b.getAuthor() + "," + b.getGenre() + ","
+                        + b.getAvailabilityStatus());
+                out.newLine();
+            }
+        }
+        List<PlainBook> books = new AbstractList<PlainBook>() {
+            @Override
+            public PlainBook get(int index) {
+                return PlainBook.sample(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+        MappedCatalog.write(dir.resolve("catalog.dat"), 0, books);
+    }
+
+    private static void loadText(Path dir) throws Exception {
+        long start = System.nanoTime();
+        BookStore<PlainBook> store = new BookStore<>();
+        try (BufferedReader in = Files.newBufferedReader(dir.resolve("catalog.csv"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(",");
+                store.add(new PlainBook(Integer.parseInt(f[0]), f[1], f[2], f[3], f[4]));
+            }
+        }
+        report("text", start, store);
+    }
+
+    private static void loadMapped(Path dir) throws Exception {
+        long start = System.nanoTime();
+        BookStore<PlainBook> store = new BookStore<>();
+        store.attachBase(MappedCatalog.open(dir.resolve("catalog.dat")), PlainBook::new);
+        report("mapped", start, store);
+    }
+
+    private static void report(String mode, long start, BookStore<PlainBook> store) throws Exception {
+        long ready = System.nanoTime();
+        long readyRss = rssMegabytes();
+        Random random = new Random(42);
+        int size = store.size();
+        long checksum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            checksum += store.get(random.nextInt(size)).getTitle().length();
+        }
+        long done = System.nanoTime();
+        System.out.printf("%-7s books=%d startup=%.0f ms rss=%d MB | %d random lookups=%.0f ms rss=%d MB (checksum %d)%n",
+                mode, size, (ready - start) / 1e6, readyRss, LOOKUPS, (done - ready) / 1e6, rssMegabytes(), checksum);
+    }
+
+    private static long rssMegabytes() throws Exception {
+        for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", "")) / 1024;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,87 @@
+package msr.bench;
+
+import msr.BookRecord;
+import msr.Durability;
+import msr.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Sustained appends per second for each durability mode and writer thread count.
+// Usage: WalBenchmark [seconds-per-run] [dir]
+public class WalBenchmark {
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 3;
+        Path root = args.length > 1 ? Path.of(args[1]) : Files.createTempDirectory("wal-bench");
+        System.out.printf("%-14s %8s %14s%n", "mode", "threads", "ops/sec");
+        for (Durability mode : Durability.values()) {
+            for (int threads : THREADS) {
+                Path dir = root.resolve(mode + "-" + threads);
+                double rate = run(dir, mode, threads, seconds * 1000);
+                System.out.printf("%-14s %8d %14.0f%n", mode, threads, rate);
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static double run(Path dir, Durability mode, int threads, long millis) throws Exception {
+        AtomicLong ops = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, mode, 100)) {
+            long start = System.nanoTime();
+            long deadline = start + millis * 1_000_000;
+            for (int t = 0; t < threads; t++) {
+                int base = t * 10_000_000;
+                Thread writer = new Thread(() -> {
+                    int i = 0;
+                    while (System.nanoTime() < deadline) {
+                        log.append(WriteAheadLog.Op.UPDATE, new SampleBook(base + i++));
+                        ops.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+                writer.start();
+            }
+            done.await();
+            log.sync();
+            return ops.get() / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static final class SampleBook implements BookRecord {
+        private final int id;
+
+        SampleBook(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+        public String getTitle() {
+            return "The Left Hand of Darkness " + id;
+        }
+        public String getAuthor() {
+            return "Ursula K. Le Guin";
+        }
+        public String getGenre() {
+            return "Science Fiction";
+        }
+        public String getAvailabilityStatus() {
+            return "Available";
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package msr;
+
+import javafx.application.Platform;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Completion dropdowns for the title and author fields of the book forms, so an existing
+// spelling can be picked instead of typed again as a near-duplicate. Titles and authors are kept
+// in two PrefixTries, built from a capture of the store and then kept in step by the forms via
+// bookAdded/bookChanged/bookRemoved; suggestions are the most common values with the typed
+// prefix. The tries belong to one worker thread: updates are queued to it and lookups run on
+// it, so the FX thread never waits or locks. A result that a later keystroke has overtaken is
+// dropped.
+public class Autocomplete {
+    public static final int MAX_SUGGESTIONS = 8;
+
+    private final PrefixTrie titles = new PrefixTrie();
+    private final PrefixTrie authors = new PrefixTrie();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "autocomplete");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public Autocomplete(CatalogStore<? extends BookRecord> store) {
+        Collection<BookRecord> image = store.capture();
+        worker.execute(() -> {
+            List<String> imageTitles = new ArrayList<>(image.size());
+            List<String> imageAuthors = new ArrayList<>(image.size());
+            for (BookRecord book : image) {
+                imageTitles.add(book.getTitle());
+                imageAuthors.add(book.getAuthor());
+            }
+            titles.addAll(imageTitles);
+            authors.addAll(imageAuthors);
+        });
+    }
+
+    // Show completions under field as it is typed in; field must be TITLE or AUTHOR
+    public void attach(TextField field, BookField which) {
+        if (which != BookField.TITLE && which != BookField.AUTHOR) {
+            throw new IllegalArgumentException(which + " has no completions");
+        }
+        new Dropdown(field, which == BookField.TITLE ? titles : authors);
+    }
+
+    public void bookAdded(BookRecord book) {
+        String title = book.getTitle();
+        String author = book.getAuthor();
+        worker.execute(() -> {
+            titles.add(title);
+            authors.add(author);
+        });
+    }
+
+    public void bookChanged(BookRecord old, BookRecord updated) {
+        bookRemoved(old);
+        bookAdded(updated);
+    }
+
+    public void bookRemoved(BookRecord book) {
+        String title = book.getTitle();
+        String author = book.getAuthor();
+        worker.execute(() -> {
+            titles.remove(title);
+            authors.remove(author);
+        });
+    }
+
+    // The popup of one field; FX thread only, apart from the lookups it queues
+    private final class Dropdown {
+        private final TextField field;
+        private final PrefixTrie trie;
+        private final ContextMenu menu = new ContextMenu();
+        // Bumped on every keystroke; read by the worker to skip lookups that are already stale
+        private volatile long generation;
+        // True while a picked suggestion is written into the field
+        private boolean picking;
+
+        Dropdown(TextField field, PrefixTrie trie) {
+            this.field = field;
+            this.trie = trie;
+            field.textProperty().addListener((obs, oldText, text) -> textChanged(text));
+            field.focusedProperty().addListener((obs, was, focused) -> {
+                if (!focused) {
+                    menu.hide();
+                }
+            });
+        }
+
+        private void textChanged(String text) {
+            long current = ++generation;
+            String prefix = text == null ? "" : text.trim();
+            // Text set by the program (a loaded or cleared form) is not typing
+            if (picking || prefix.isEmpty() || !field.isFocused()) {
+                menu.hide();
+                return;
+            }
+            worker.execute(() -> {
+                if (current != generation) {
+                    return;
+                }
+                List<String> found = trie.complete(prefix, MAX_SUGGESTIONS);
+                Platform.runLater(() -> show(current, prefix, found));
+            });
+        }
+
+        private void show(long current, String prefix, List<String> found) {
+            if (current != generation || !field.isFocused()) {
+                return;
+            }
+            // Nothing to offer if the only match is what is already typed
+            if (found.isEmpty() || (found.size() == 1 && found.get(0).equalsIgnoreCase(prefix))) {
+                menu.hide();
+                return;
+            }
+            menu.getItems().clear();
+            for (String value : found) {
+                MenuItem item = new MenuItem(value);
+                item.setMnemonicParsing(false);
+                item.setOnAction(e -> pick(value));
+                menu.getItems().add(item);
+            }
+            if (!menu.isShowing()) {
+                menu.show(field, Side.BOTTOM, 0, 0);
+            }
+        }
+
+        private void pick(String value) {
+            picking = true;
+            field.setText(value);
+            field.positionCaret(value.length());
+            picking = false;
+            menu.hide();
+        }
+    }
+}
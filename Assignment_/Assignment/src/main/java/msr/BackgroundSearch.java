@@ -0,0 +1,96 @@
+package msr;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Ranked keyword search for the windows' search bars, kept off the FX thread. The SearchIndex
+// belongs to one worker thread, like Autocomplete's tries: it is built there from a capture of
+// the store on the first search, kept in step by bookAdded/bookChanged/bookRemoved, which queue
+// the change to the worker, and queried there. Results are handed to the FX thread with
+// Platform.runLater; a search that a later search or cancel() has overtaken is dropped.
+public class BackgroundSearch {
+    private final CatalogStore<? extends BookRecord> store;
+    private final CatalogMetrics metrics;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "keyword-search");
+        t.setDaemon(true);
+        return t;
+    });
+    // Worker thread only; null until the first search
+    private SearchIndex index;
+    // Bumped on every search and cancel; a result is only shown if nothing bumped it since
+    private volatile long generation;
+
+    // Searches are recorded in metrics as SEARCH operations
+    public BackgroundSearch(CatalogStore<? extends BookRecord> store, CatalogMetrics metrics) {
+        this.store = store;
+        this.metrics = metrics;
+    }
+
+    // Find the IDs of up to limit books matching query, best first, and pass them to onResult on
+    // the FX thread. Call on the FX thread.
+    public void search(String query, int limit, Consumer<int[]> onResult) {
+        long search = ++generation;
+        worker.execute(() -> {
+            if (generation != search) {
+                return;
+            }
+            long start = metrics.start();
+            int[] ids = index().search(query, limit);
+            metrics.record(CatalogMetrics.Operation.SEARCH, start, ids.length);
+            Platform.runLater(() -> {
+                if (generation == search) {
+                    onResult.accept(ids);
+                }
+            });
+        });
+    }
+
+    // Drop the result of the search still running, e.g. because the text was edited
+    public void cancel() {
+        generation++;
+    }
+
+    public void bookAdded(BookRecord book) {
+        worker.execute(() -> {
+            if (index != null) {
+                index.add(book);
+            }
+        });
+    }
+
+    // The ID may have changed too
+    public void bookChanged(BookRecord old, BookRecord updated) {
+        int oldId = old.getId();
+        worker.execute(() -> {
+            if (index != null) {
+                index.remove(oldId);
+                index.add(updated);
+            }
+        });
+    }
+
+    public void bookRemoved(int id) {
+        worker.execute(() -> {
+            if (index != null) {
+                index.remove(id);
+            }
+        });
+    }
+
+    // Build the index on the first search rather than at startup. Changes queued before the
+    // build are already in the capture; re-adding them later just replaces the same version.
+    private SearchIndex index() {
+        if (index == null) {
+            SearchIndex built = new SearchIndex();
+            for (BookRecord book : store.capture()) {
+                built.add(book);
+            }
+            index = built;
+        }
+        return index;
+    }
+}
@@ -2,68 +2,111 @@ package msr;
 
 import javafx.beans.property.*;
 
-public class Book {
-    private final IntegerProperty id;
-    private final StringProperty title;
-    private final StringProperty author;
-    private final StringProperty genre;
-    private final StringProperty availabilityStatus; // "Available" or "Checked Out"
+// Values are kept in plain fields; each JavaFX property is created the first time something asks
+// for it (a bound table cell, a listener) and from then on holds the value, so rows that are never
+// shown or bound cost one small object instead of six.
+public class Book implements BookRecord {
+    private int id;
+    private IntegerProperty idProperty;
+    private String title;
+    private StringProperty titleProperty;
+    private String author;
+    private StringProperty authorProperty;
+    private String genre;
+    private StringProperty genreProperty;
+    private String availabilityStatus; // "Available" or "Checked Out"
+    private StringProperty availabilityStatusProperty;
 
     public Book(int id, String title, String author, String genre, String availabilityStatus) {
-        this.id = new SimpleIntegerProperty(id);
-        this.title = new SimpleStringProperty(title);
-        this.author = new SimpleStringProperty(author);
-        this.genre = new SimpleStringProperty(genre);
-        this.availabilityStatus = new SimpleStringProperty(availabilityStatus);
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.genre = genre;
+        this.availabilityStatus = availabilityStatus;
     }
 
     public int getId() {
-        return id.get();
+        return idProperty == null ? id : idProperty.get();
     }
     public void setId(int id) {
-        this.id.set(id);
+        if (idProperty == null) {
+            this.id = id;
+        } else {
+            idProperty.set(id);
+        }
     }
     public IntegerProperty idProperty() {
-        return id;
+        if (idProperty == null) {
+            idProperty = new SimpleIntegerProperty(this, "id", id);
+        }
+        return idProperty;
     }
 
     public String getTitle() {
-        return title.get();
+        return titleProperty == null ? title : titleProperty.get();
     }
     public void setTitle(String title) {
-        this.title.set(title);
+        if (titleProperty == null) {
+            this.title = title;
+        } else {
+            titleProperty.set(title);
+        }
     }
     public StringProperty titleProperty() {
-        return title;
+        if (titleProperty == null) {
+            titleProperty = new SimpleStringProperty(this, "title", title);
+        }
+        return titleProperty;
     }
 
     public String getAuthor() {
-        return author.get();
+        return authorProperty == null ? author : authorProperty.get();
     }
     public void setAuthor(String author) {
-        this.author.set(author);
+        if (authorProperty == null) {
+            this.author = author;
+        } else {
+            authorProperty.set(author);
+        }
     }
     public StringProperty authorProperty() {
-        return author;
+        if (authorProperty == null) {
+            authorProperty = new SimpleStringProperty(this, "author", author);
+        }
+        return authorProperty;
     }
 
     public String getGenre() {
-        return genre.get();
+        return genreProperty == null ? genre : genreProperty.get();
     }
     public void setGenre(String genre) {
-        this.genre.set(genre);
+        if (genreProperty == null) {
+            this.genre = genre;
+        } else {
+            genreProperty.set(genre);
+        }
     }
     public StringProperty genreProperty() {
-        return genre;
+        if (genreProperty == null) {
+            genreProperty = new SimpleStringProperty(this, "genre", genre);
+        }
+        return genreProperty;
     }
 
     public String getAvailabilityStatus() {
-        return availabilityStatus.get();
+        return availabilityStatusProperty == null ? availabilityStatus : availabilityStatusProperty.get();
     }
     public void setAvailabilityStatus(String availabilityStatus) {
-        this.availabilityStatus.set(availabilityStatus);
+        if (availabilityStatusProperty == null) {
+            this.availabilityStatus = availabilityStatus;
+        } else {
+            availabilityStatusProperty.set(availabilityStatus);
+        }
     }
     public StringProperty availabilityStatusProperty() {
-        return availabilityStatus;
+        if (availabilityStatusProperty == null) {
+            availabilityStatusProperty = new SimpleStringProperty(this, "availabilityStatus", availabilityStatus);
+        }
+        return availabilityStatusProperty;
     }
 }
@@ -0,0 +1,8 @@
+package msr;
+
+// Creates a book of the caller's Book class; all of them share this constructor shape,
+// so callers can simply pass Book::new
+@FunctionalInterface
+public interface BookFactory<B extends BookRecord> {
+    B create(int id, String title, String author, String genre, String availabilityStatus);
+}
@@ -0,0 +1,22 @@
+package msr;
+
+// The searchable and sortable fields of a book
+public enum BookField {
+    ID, TITLE, AUTHOR, GENRE, STATUS;
+
+    // The field's value as text (the ID in decimal)
+    public String text(BookRecord book) {
+        switch (this) {
+            case ID:
+                return Integer.toString(book.getId());
+            case TITLE:
+                return book.getTitle();
+            case AUTHOR:
+                return book.getAuthor();
+            case GENRE:
+                return book.getGenre();
+            default:
+                return book.getAvailabilityStatus();
+        }
+    }
+}
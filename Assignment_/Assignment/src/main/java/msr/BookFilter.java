@@ -0,0 +1,207 @@
+package msr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+// A condition on the indexed fields of a book (author, genre, status): field = value tests,
+// ignoring case and surrounding spaces, combined with and, or and not. CatalogEngine answers it
+// from its bitmap indexes; matches() (or test(), as a Predicate) is the same test on one book.
+// The text form, read by parse() and written by toString(), is e.g.
+//   genre=Fiction & status=Available & !(author=Jane Austen | author="Smith & Jones")
+// where ! binds tighter than &, and & tighter than |. Values run to the next & | or ) unless
+// quoted.
+public final class BookFilter implements Predicate<BookRecord> {
+    enum Kind { IS, AND, OR, NOT }
+
+    final Kind kind;
+    final BookField field;
+    final String value;
+    final BookFilter[] operands;
+
+    private BookFilter(Kind kind, BookField field, String value, BookFilter... operands) {
+        this.kind = kind;
+        this.field = field;
+        this.value = value;
+        this.operands = operands;
+    }
+
+    // Books whose field has this value
+    public static BookFilter is(BookField field, String value) {
+        if (!SecondaryIndex.isIndexed(field)) {
+            throw new IllegalArgumentException("Field should be author, genre or status");
+        }
+        return new BookFilter(Kind.IS, field, value == null ? "" : value.trim());
+    }
+
+    public static BookFilter and(BookFilter... operands) {
+        return operands.length == 1 ? operands[0] : new BookFilter(Kind.AND, null, null, operands.clone());
+    }
+
+    public static BookFilter or(BookFilter... operands) {
+        return operands.length == 1 ? operands[0] : new BookFilter(Kind.OR, null, null, operands.clone());
+    }
+
+    public static BookFilter not(BookFilter operand) {
+        return new BookFilter(Kind.NOT, null, null, operand);
+    }
+
+    // Read the text form; throws IllegalArgumentException if it is malformed
+    public static BookFilter parse(String text) {
+        Parser parser = new Parser(text);
+        BookFilter filter = parser.or();
+        parser.skipSpaces();
+        if (parser.pos < text.length()) {
+            throw new IllegalArgumentException("Unexpected '" + text.charAt(parser.pos) + "' in filter at "
+                    + (parser.pos + 1));
+        }
+        return filter;
+    }
+
+    @Override
+    public boolean test(BookRecord book) {
+        return matches(book);
+    }
+
+    public boolean matches(BookRecord book) {
+        switch (kind) {
+            case IS:
+                return field.text(book).trim().equalsIgnoreCase(value);
+            case AND:
+                for (BookFilter operand : operands) {
+                    if (!operand.matches(book)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (BookFilter operand : operands) {
+                    if (operand.matches(book)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return !operands[0].matches(book);
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case IS:
+                boolean plain = !value.isEmpty() && value.chars().noneMatch(c -> "&|()!=\"".indexOf(c) >= 0);
+                return field.name().toLowerCase() + "=" + (plain ? value : "\"" + value.replace("\"", "\"\"") + "\"");
+            case NOT:
+                return "!" + (operands[0].kind == Kind.IS || operands[0].kind == Kind.NOT ? operands[0]
+                        : "(" + operands[0] + ")");
+            default:
+                StringBuilder sb = new StringBuilder();
+                for (BookFilter operand : operands) {
+                    if (sb.length() > 0) {
+                        sb.append(kind == Kind.AND ? " & " : " | ");
+                    }
+                    boolean group = kind == Kind.AND && operand.kind == Kind.OR;
+                    sb.append(group ? "(" + operand + ")" : operand.toString());
+                }
+                return sb.toString();
+        }
+    }
+
+    // Recursive descent over the text form
+    private static final class Parser {
+        final String text;
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        BookFilter or() {
+            List<BookFilter> operands = new ArrayList<>();
+            operands.add(and());
+            while (accept('|')) {
+                operands.add(and());
+            }
+            return BookFilter.or(operands.toArray(new BookFilter[0]));
+        }
+
+        BookFilter and() {
+            List<BookFilter> operands = new ArrayList<>();
+            operands.add(unary());
+            while (accept('&')) {
+                operands.add(unary());
+            }
+            return BookFilter.and(operands.toArray(new BookFilter[0]));
+        }
+
+        BookFilter unary() {
+            if (accept('!')) {
+                return not(unary());
+            }
+            if (accept('(')) {
+                BookFilter inner = or();
+                if (!accept(')')) {
+                    throw new IllegalArgumentException("Missing ')' in filter");
+                }
+                return inner;
+            }
+            int start = pos;
+            while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            if (!accept('=')) {
+                throw new IllegalArgumentException("Expected field=value in filter at " + (start + 1));
+            }
+            for (BookField field : BookField.values()) {
+                if (field.name().equalsIgnoreCase(name) && SecondaryIndex.isIndexed(field)) {
+                    return is(field, value());
+                }
+            }
+            throw new IllegalArgumentException("Field should be author, genre or status");
+        }
+
+        String value() {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                StringBuilder sb = new StringBuilder();
+                pos++;
+                while (true) {
+                    if (pos == text.length()) {
+                        throw new IllegalArgumentException("Unterminated quote in filter");
+                    }
+                    char c = text.charAt(pos++);
+                    if (c == '"') {
+                        if (pos < text.length() && text.charAt(pos) == '"') {
+                            pos++;
+                        } else {
+                            return sb.toString();
+                        }
+                    }
+                    sb.append(c);
+                }
+            }
+            int start = pos;
+            while (pos < text.length() && "&|)".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        boolean accept(char c) {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package msr;
+
+// Read-only view of a book. The Book classes of the CLI and of both JavaFX apps implement it,
+// so the catalog structures in this package can be shared between them.
+public interface BookRecord {
+    int getId();
+    String getTitle();
+    String getAuthor();
+    String getGenre();
+    String getAvailabilityStatus(); // "Available" or "Checked Out"
+}
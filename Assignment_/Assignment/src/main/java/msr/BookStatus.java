@@ -0,0 +1,48 @@
+package msr;
+
+// Availability of a book; the label is the form shown to users and stored in Book
+public enum BookStatus {
+    AVAILABLE("Available"),
+    CHECKED_OUT("Checked Out");
+
+    private static final BookStatus[] VALUES = values();
+
+    private final String label;
+
+    BookStatus(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    // Parse a status in any letter case, or return null if it is neither status
+    public static BookStatus parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        // The labels differ in length, so at most one case-insensitive compare is needed
+        int length = text.length();
+        if (length == 9 && text.equalsIgnoreCase("Available")) {
+            return AVAILABLE;
+        }
+        if (length == 11 && text.equalsIgnoreCase("Checked Out")) {
+            return CHECKED_OUT;
+        }
+        return null;
+    }
+
+    public static boolean isValid(String text) {
+        return parse(text) != null;
+    }
+
+    // Status with a stored code, as written by code()
+    public static BookStatus fromCode(int code) {
+        return VALUES[code];
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+}
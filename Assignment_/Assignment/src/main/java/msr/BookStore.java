@@ -0,0 +1,345 @@
+package msr;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Catalog store keyed by book ID.
+// Records live in a dense slot list and an IntIndex maps each ID to its slot, so lookup, insert
+// and delete are all O(1).
+// A store can also sit on top of a read-only MappedCatalog base: base records are turned into
+// Book objects only when first looked up, and from then on live in the slot list like any other.
+// The slot list is a SnapshotList, so capture() shares the stored records instead of copying
+// them; a record must therefore not be changed in place while a capture is still being read
+// (the engine always stores a new object instead).
+public class BookStore<B extends BookRecord> implements CatalogStore<B> {
+    private final SnapshotList<B> records = new SnapshotList<>();
+    private final IntIndex slots;
+
+    // Optional mapped base layer; a set bit in baseGone marks a base slot that was deleted
+    // or has moved into the slot list
+    private MappedCatalog base;
+    private BookFactory<B> factory;
+    private long[] baseGone;
+    // Fenwick tree of gone counts per 64-slot word of baseGone, for positional access
+    private int[] goneTree;
+    private int baseLive;
+
+    public BookStore() {
+        this(Collections.emptyList());
+    }
+
+    // Start from a list of books; later changes to the list do not reach the store
+    public BookStore(List<B> records) {
+        this.slots = new IntIndex(records.size());
+        for (B book : records) {
+            if (slots.put(book.getId(), this.records.size()) != IntIndex.MISSING) {
+                throw new IllegalArgumentException("Duplicate book ID: " + book.getId());
+            }
+            this.records.add(book);
+        }
+    }
+
+    // Serve the records of a mapped catalog without loading them; the store must be empty
+    @Override
+    public void attachBase(MappedCatalog base, BookFactory<B> factory) {
+        if (!records.isEmpty() || this.base != null) {
+            throw new IllegalStateException("A base can only be attached to an empty store");
+        }
+        this.base = base;
+        this.factory = factory;
+        this.baseGone = new long[(base.size() + 63) >>> 6];
+        this.goneTree = new int[baseGone.length + 1];
+        this.baseLive = base.size();
+    }
+
+    @Override
+    public int size() {
+        return records.size() + baseLive;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return slots.containsKey(id) || baseSlotOf(id) >= 0;
+    }
+
+    // Find a book by its ID, or null if there is none
+    @Override
+    public B get(int id) {
+        int slot = slots.get(id);
+        if (slot != IntIndex.MISSING) {
+            return records.get(slot);
+        }
+        int baseSlot = baseSlotOf(id);
+        return baseSlot < 0 ? null : promote(baseSlot);
+    }
+
+    // Untouched base records come back as transient copies that the store does not keep
+    @Override
+    public B read(int id) {
+        int slot = slots.get(id);
+        if (slot != IntIndex.MISSING) {
+            return records.get(slot);
+        }
+        int baseSlot = baseSlotOf(id);
+        return baseSlot < 0 ? null : base.materialize(baseSlot, factory);
+    }
+
+    @Override
+    public int[] ids() {
+        int[] ids = new int[size()];
+        int n = 0;
+        for (B b : records) {
+            ids[n++] = b.getId();
+        }
+        if (base != null) {
+            for (int slot = nextLive(base, baseGone, 0); slot < base.size(); slot = nextLive(base, baseGone, slot + 1)) {
+                ids[n++] = base.idAt(slot);
+            }
+        }
+        return ids;
+    }
+
+    // Position order is the slot list followed by the untouched base records in file order
+    @Override
+    public int idAt(int position) {
+        if (position < records.size()) {
+            return records.get(position).getId();
+        }
+        return base.idAt(selectLiveBaseSlot(position - records.size()));
+    }
+
+    // Add a book; returns false if its ID is already taken
+    @Override
+    public boolean add(B book) {
+        int id = book.getId();
+        if (contains(id)) {
+            return false;
+        }
+        slots.put(id, records.size());
+        records.add(book);
+        return true;
+    }
+
+    // Remove a book by ID and return it, or null if there is none.
+    // The last record is moved into the freed slot instead of shifting the list.
+    @Override
+    public B remove(int id) {
+        int slot = slots.remove(id);
+        if (slot == IntIndex.MISSING) {
+            int baseSlot = baseSlotOf(id);
+            if (baseSlot < 0) {
+                return null;
+            }
+            markGone(baseSlot);
+            return base.materialize(baseSlot, factory);
+        }
+        int lastSlot = records.size() - 1;
+        B removed = records.get(slot);
+        if (slot != lastSlot) {
+            B last = records.get(lastSlot);
+            records.set(slot, last);
+            slots.put(last.getId(), slot);
+        }
+        records.remove(lastSlot);
+        return removed;
+    }
+
+    // Books in the slot list are stored by reference, so in-place changes need no write-back;
+    // a different object with the same ID replaces the stored one, and a changed transient copy
+    // of a base record takes the base record's place
+    @Override
+    public void update(B book) {
+        int slot = slots.get(book.getId());
+        if (slot != IntIndex.MISSING) {
+            if (records.get(slot) != book) {
+                records.set(slot, book);
+            }
+        } else {
+            int baseSlot = baseSlotOf(book.getId());
+            if (baseSlot >= 0) {
+                markGone(baseSlot);
+                slots.put(book.getId(), records.size());
+                records.add(book);
+            }
+        }
+    }
+
+    // Re-key a book whose ID was changed in place; returns false if newId is already taken
+    public boolean changeId(int oldId, int newId) {
+        if (oldId == newId) {
+            return true;
+        }
+        if (contains(newId)) {
+            return false;
+        }
+        int slot = slots.remove(oldId);
+        if (slot == IntIndex.MISSING) {
+            return false;
+        }
+        slots.put(newId, slot);
+        return true;
+    }
+
+    public void clear() {
+        records.clear();
+        slots.clear();
+        base = null;
+        baseLive = 0;
+    }
+
+    // Read-only view of the records in the slot list (touched base records only)
+    public List<B> records() {
+        return Collections.unmodifiableList(records);
+    }
+
+    // Consistent copy of the whole store that another thread can read later, in O(n / 1024): the
+    // slot list is snapshotted and its records copied only as they are iterated, untouched base
+    // records are read from the immutable mapping on demand
+    @Override
+    public Collection<BookRecord> capture() {
+        List<B> loaded = records.snapshot();
+        MappedCatalog frozenBase = baseLive == 0 ? null : base;
+        long[] gone = frozenBase == null ? null : Arrays.copyOf(baseGone, baseGone.length);
+        int total = loaded.size() + (frozenBase == null ? 0 : baseLive);
+        return new AbstractCollection<BookRecord>() {
+            @Override
+            public int size() {
+                return total;
+            }
+
+            @Override
+            public Iterator<BookRecord> iterator() {
+                Iterator<B> first = loaded.iterator();
+                return new Iterator<BookRecord>() {
+                    private int next = nextLive(frozenBase, gone, 0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return first.hasNext() || (frozenBase != null && next < frozenBase.size());
+                    }
+
+                    @Override
+                    public BookRecord next() {
+                        if (first.hasNext()) {
+                            B b = first.next();
+                            return new WriteAheadLog.Entry(b.getId(), b.getTitle(), b.getAuthor(), b.getGenre(),
+                                    b.getAvailabilityStatus());
+                        }
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        BookRecord book = frozenBase.materialize(next, WriteAheadLog.Entry::new);
+                        next = nextLive(frozenBase, gone, next + 1);
+                        return book;
+                    }
+                };
+            }
+        };
+    }
+
+    // Iterates the slot list, then every untouched base record as a transient copy
+    @Override
+    public Iterator<B> iterator() {
+        Iterator<B> loaded = records().iterator();
+        if (base == null || baseLive == 0) {
+            return loaded;
+        }
+        return new Iterator<B>() {
+            private int next = nextLive(base, baseGone, 0);
+
+            @Override
+            public boolean hasNext() {
+                return loaded.hasNext() || next < base.size();
+            }
+
+            @Override
+            public B next() {
+                if (loaded.hasNext()) {
+                    return loaded.next();
+                }
+                if (next >= base.size()) {
+                    throw new NoSuchElementException();
+                }
+                B book = base.materialize(next, factory);
+                next = nextLive(base, baseGone, next + 1);
+                return book;
+            }
+        };
+    }
+
+    private static int nextLive(MappedCatalog base, long[] gone, int from) {
+        if (base == null) {
+            return 0;
+        }
+        int slot = from;
+        while (slot < base.size() && (gone[slot >>> 6] & (1L << slot)) != 0) {
+            slot++;
+        }
+        return slot;
+    }
+
+    private int baseSlotOf(int id) {
+        if (base == null || baseLive == 0) {
+            return -1;
+        }
+        int slot = base.slotOf(id);
+        return slot < 0 || isGone(slot) ? -1 : slot;
+    }
+
+    private B promote(int baseSlot) {
+        B book = base.materialize(baseSlot, factory);
+        markGone(baseSlot);
+        slots.put(book.getId(), records.size());
+        records.add(book);
+        return book;
+    }
+
+    private boolean isGone(int baseSlot) {
+        return (baseGone[baseSlot >>> 6] & (1L << baseSlot)) != 0;
+    }
+
+    private void markGone(int baseSlot) {
+        baseGone[baseSlot >>> 6] |= 1L << baseSlot;
+        baseLive--;
+        for (int i = (baseSlot >>> 6) + 1; i < goneTree.length; i += i & -i) {
+            goneTree[i]++;
+        }
+    }
+
+    // Base slot of the rank-th (0-based) untouched base record, in O(log n)
+    private int selectLiveBaseSlot(int rank) {
+        if (rank < 0 || rank >= baseLive) {
+            throw new IndexOutOfBoundsException("Position " + rank + " past the end of the base");
+        }
+        // Descend the Fenwick tree to the word holding the record; each word covers 64 slots
+        int words = goneTree.length - 1;
+        int word = 0;
+        int remaining = rank;
+        for (int step = Integer.highestOneBit(words); step > 0; step >>= 1) {
+            int next = word + step;
+            if (next <= words) {
+                int live = step * 64 - goneTree[next];
+                if (live <= remaining) {
+                    word = next;
+                    remaining -= live;
+                }
+            }
+        }
+        // Then pick the remaining-th clear bit inside that word
+        long liveBits = ~baseGone[word];
+        for (int i = 0; i < remaining; i++) {
+            liveBits &= liveBits - 1;
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(liveBits);
+    }
+}
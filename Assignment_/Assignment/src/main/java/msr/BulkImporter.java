@@ -0,0 +1,302 @@
+package msr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+// Streams a CSV catalog dump (id,title,author,genre,status) into the catalog.
+// The file is read in chunks of records; chunks are parsed and validated in parallel, then handed
+// back in file order to a single inserter that checks ID uniqueness and inserts each chunk as one
+// batch. At most two chunks per worker are in flight, so memory stays bounded whatever the file
+// size. A record is one line, or several when a quoted field holds line breaks (RFC 4180).
+// Bad rows go to the reject file with the line number they start on and the reason.
+public class BulkImporter<B extends BookRecord> {
+    public static final int CHUNK_LINES = 8192;
+    // Most lines one record may span, so a stray quote cannot swallow the rest of the file
+    private static final int MAX_RECORD_LINES = 100;
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final BookFactory<B> factory;
+    private final IntPredicate idTaken;
+    private final Consumer<List<B>> sink;
+    private final int workers;
+
+    // idTaken tells whether an ID already exists; sink inserts one validated batch at a time
+    public BulkImporter(BookFactory<B> factory, IntPredicate idTaken, Consumer<List<B>> sink) {
+        this(factory, idTaken, sink, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkImporter(BookFactory<B> factory, IntPredicate idTaken, Consumer<List<B>> sink, int workers) {
+        this.factory = factory;
+        this.idTaken = idTaken;
+        this.sink = sink;
+        this.workers = Math.max(1, workers);
+    }
+
+    // Import csv, writing rejected rows to rejects; progress receives a status line about once a second
+    public Result run(Path csv, Path rejects, Consumer<String> progress) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "bulk-import");
+            t.setDaemon(true);
+            return t;
+        });
+        Result result = new Result();
+        long start = System.nanoTime();
+        long lastProgress = start;
+        Deque<Future<Chunk<B>>> inFlight = new ArrayDeque<>();
+        IntIndex batchIds = new IntIndex(CHUNK_LINES);
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter rejectOut = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+            long lineNo = 0;
+            boolean eof = false;
+            while (!eof || !inFlight.isEmpty()) {
+                // Keep the workers busy, but never read more than 2 chunks per worker ahead
+                while (!eof && inFlight.size() < workers * 2) {
+                    List<String> records = new ArrayList<>(CHUNK_LINES);
+                    long[] recordLines = new long[CHUNK_LINES];
+                    String line;
+                    while (records.size() < CHUNK_LINES && (line = in.readLine()) != null) {
+                        recordLines[records.size()] = ++lineNo;
+                        String record = line;
+                        for (int spanned = 1; spanned < MAX_RECORD_LINES && quoteOpen(record)
+                                && (line = in.readLine()) != null; spanned++) {
+                            record = record + "\n" + line;
+                            lineNo++;
+                        }
+                        records.add(record);
+                    }
+                    eof = records.size() < CHUNK_LINES;
+                    if (!records.isEmpty()) {
+                        inFlight.add(pool.submit(() -> parse(records, recordLines)));
+                    }
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                insert(await(inFlight.poll()), batchIds, rejectOut, result);
+
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    result.seconds = (now - start) / 1e9;
+                    progress.accept(result.toString());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    // Ordered stage: uniqueness against the catalog and earlier rows, then one batch insert
+    private void insert(Chunk<B> chunk, IntIndex batchIds, BufferedWriter rejectOut, Result result) throws IOException {
+        List<B> batch = new ArrayList<>(chunk.books.size());
+        batchIds.clear();
+        for (int i = 0; i < chunk.books.size(); i++) {
+            B book = chunk.books.get(i);
+            if (idTaken.test(book.getId()) || batchIds.put(book.getId(), i) != IntIndex.MISSING) {
+                reject(rejectOut, chunk.bookLines[i], "Book ID already exists", chunk.bookText.get(i));
+                result.rejected++;
+            } else {
+                batch.add(book);
+            }
+        }
+        for (String line : chunk.rejects) {
+            rejectOut.write(line);
+            rejectOut.newLine();
+        }
+        result.rejected += chunk.rejects.size();
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+        result.imported += batch.size();
+        result.rows += chunk.rows;
+    }
+
+    // Parallel stage: split, validate and build books for one chunk of records, which start on
+    // the given lines
+    private Chunk<B> parse(List<String> records, long[] recordLines) {
+        Chunk<B> chunk = new Chunk<>(records.size());
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder rejectLine = new StringBuilder();
+        for (int i = 0; i < records.size(); i++) {
+            long lineNo = recordLines[i];
+            String text = records.get(i);
+            if (text.isEmpty()) {
+                continue;
+            }
+            chunk.rows++;
+            String error = split(text, fields);
+            if (error == null && fields.size() != 5) {
+                error = "Expected 5 fields (id,title,author,genre,status) but found " + fields.size();
+            }
+            int id = 0;
+            if (error == null) {
+                try {
+                    id = Integer.parseInt(fields.get(0).trim());
+                } catch (NumberFormatException e) {
+                    if (lineNo == 1) {
+                        // A header row
+                        chunk.rows--;
+                        continue;
+                    }
+                    error = "Book ID should be an integer";
+                }
+            }
+            String title = error == null ? fields.get(1).trim() : null;
+            String author = error == null ? fields.get(2).trim() : null;
+            BookStatus status = error == null ? BookStatus.parse(fields.get(4).trim()) : null;
+            if (error == null && title.isEmpty()) {
+                error = "Title cannot be empty";
+            } else if (error == null && author.isEmpty()) {
+                error = "Author cannot be empty";
+            } else if (error == null && status == null) {
+                error = "Availability status must be either 'Available' or 'Checked Out'";
+            }
+            if (error != null) {
+                rejectLine.setLength(0);
+                chunk.rejects.add(formatReject(rejectLine, lineNo, error, text));
+                continue;
+            }
+            chunk.add(factory.create(id, title, author, fields.get(3).trim(), status.label()), lineNo, text);
+        }
+        return chunk;
+    }
+
+    // Split one CSV record into fields; handles quoted fields with commas, doubled quotes and
+    // line breaks. Returns an error message, or null on success.
+    static String split(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (ch == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else {
+                field.append(ch);
+            }
+        }
+        if (quoted) {
+            return "Unterminated quoted field";
+        }
+        fields.add(field.toString());
+        return null;
+    }
+
+    // Whether a record read so far ends inside a quoted field, by the rules split() uses, so the
+    // next line belongs to it too
+    static boolean quoteOpen(String record) {
+        return record.indexOf('"') >= 0 && split(record, new ArrayList<>(5)) != null;
+    }
+
+    private static String formatReject(StringBuilder out, long lineNo, String reason, String text) {
+        return out.append(lineNo).append(",\"").append(reason.replace("\"", "\"\"")).append("\",").append(text).toString();
+    }
+
+    private static void reject(BufferedWriter out, long lineNo, String reason, String text) throws IOException {
+        out.write(formatReject(new StringBuilder(), lineNo, reason, text));
+        out.newLine();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Import failed: " + cause, cause);
+        }
+    }
+
+    // Output of the parallel stage for one chunk
+    private static final class Chunk<B> {
+        final List<B> books;
+        final long[] bookLines;
+        final List<String> bookText;
+        final List<String> rejects = new ArrayList<>();
+        int rows;
+
+        Chunk(int capacity) {
+            books = new ArrayList<>(capacity);
+            bookLines = new long[capacity];
+            bookText = new ArrayList<>(capacity);
+        }
+
+        void add(B book, long lineNo, String text) {
+            bookLines[books.size()] = lineNo;
+            books.add(book);
+            bookText.add(text);
+        }
+    }
+
+    // Counts for one import run
+    public static final class Result {
+        private long rows;
+        private long imported;
+        private long rejected;
+        private double seconds;
+
+        public long getRows() {
+            return rows;
+        }
+        public long getImported() {
+            return imported;
+        }
+        public long getRejected() {
+            return rejected;
+        }
+        public double getSeconds() {
+            return seconds;
+        }
+        public double getRowsPerSecond() {
+            return seconds > 0 ? rows / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows processed, %,d imported, %,d rejected in %.1f s (%,.0f rows/sec)",
+                    rows, imported, rejected, seconds, getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package msr;
+
+// Outcome of a bulk update or delete (see CatalogEngine.updateWhere and deleteWhere)
+public class BulkResult {
+    private final int matched;
+    private final int changed;
+    private final long elapsedNanos;
+
+    BulkResult(int matched, int changed, long elapsedNanos) {
+        this.matched = matched;
+        this.changed = changed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Books that matched when the catalog was searched
+    public int getMatched() {
+        return matched;
+    }
+
+    // Books updated or deleted
+    public int getChanged() {
+        return changed;
+    }
+
+    // Books that matched but were left alone: changed or deleted by someone else before their
+    // batch ran, or already holding the new values
+    public int getSkipped() {
+        return matched - changed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return matched + " matched, " + changed + " changed, " + getSkipped() + " skipped in "
+                + getElapsedMillis() + " ms";
+    }
+}
@@ -0,0 +1,38 @@
+package msr;
+
+// One committed change to the catalog, as published on a ChangeFeed.
+// It names the book but does not carry it: a consumer that coalesces several changes to the same
+// book reads the current version once, after the last of them.
+public final class CatalogChange {
+    public enum Kind {
+        ADDED, UPDATED, REMOVED
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    private final int id;
+
+    CatalogChange(long sequence, Kind kind, int id) {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.id = id;
+    }
+
+    // Position in the feed: 0 for the first change published, then one more per change
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + ": " + kind + " " + id;
+    }
+}
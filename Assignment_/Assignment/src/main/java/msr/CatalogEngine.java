@@ -0,0 +1,1068 @@
+package msr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Thread-safe catalog shared by the CLI, the JavaFX apps and any number of worker threads.
+// The engine wraps a single-threaded CatalogStore:
+// - Reads run optimistically under a StampedLock and only take the read lock when a write
+//   overlapped them. They return detached copies, so callers never share a record with a writer.
+// - Listings, exports and other full scans read a capture(): a copy-on-write snapshot of the
+//   store, so they see one consistent version of the catalog while writes keep committing.
+// - Each write first takes one of STRIPES per-ID locks, which orders all writes to the same ID
+//   (the check-then-act of add/update/delete, and the order their log entries are written in),
+//   then holds the exclusive store lock only for the O(1) change to the store itself. Logging,
+//   which can wait on an fsync, happens after the store lock is released, so writers to
+//   different IDs share group commits instead of queueing behind each other. The stripe locks
+//   are fair, so a bulk batch that holds all of them cannot starve single-book writers.
+// The CRUD methods validate their input and log to the attached CatalogPersistence; the
+// CatalogStore methods are the raw, unlogged operations used for recovery and bulk loading.
+// updateWhere and deleteWhere change every book that matches a predicate, in parallel batches.
+// The CRUD methods are also timed into the engine's CatalogMetrics; the front ends add their
+// searches and listings, which run outside the engine.
+// similarTitles and similarAuthors answer misspelt lookups from PrefixTries of every title and
+// author, built on the first such lookup and then maintained like the other indexes.
+// Title lookups are answered from a QueryCache; every store change invalidates the cached results
+// for the old and new title of the book it touches, under the write lock.
+// Every store change is also published on the engine's ChangeFeed, in commit order, so views of
+// the catalog (e.g. a table) can follow writes made by any thread.
+public class CatalogEngine<B extends BookRecord> implements CatalogStore<B>, AutoCloseable {
+    private static final int STRIPES = 64;
+    private static final int TITLE_CACHE_ENTRIES = 10_000;
+    private static final int TITLE_CACHE_BOOKS = 100_000;
+    private static final int CHANGE_FEED_CAPACITY = 1 << 16;
+    // Books per batch (one hold of the stripe locks and one log write) in a bulk change, and per
+    // hold of the store lock
+    private static final int BULK_BATCH = 1024;
+    private static final int BULK_LOCK_BATCH = 256;
+
+    private final BookFactory<B> factory;
+    private final CatalogStore<B> store;
+    private final StampedLock lock = new StampedLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // Runs the batches of bulk changes on half the cores; its threads start on demand and time out
+    // when idle
+    private final ForkJoinPool bulkPool =
+            new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final CatalogMetrics metrics;
+    private volatile CatalogPersistence<B> persistence;
+    // Author/genre/status indexes, built on the first query and then maintained by every write;
+    // guarded by lock like the store
+    private SecondaryIndex secondary;
+    private final ReentrantLock secondaryBuild = new ReentrantLock();
+    // Every ID in order, built on the first ordered listing and then maintained like secondary
+    private IdTree ordered;
+    private final ReentrantLock orderedBuild = new ReentrantLock();
+    // Every title and author, built together on the first similar-spelling lookup and then
+    // maintained like secondary
+    private PrefixTrie titleTrie;
+    private PrefixTrie authorTrie;
+    private final ReentrantLock spellingBuild = new ReentrantLock();
+    // Books by title (folded with titleKey), weighed by the books they hold
+    private final QueryCache<String, BookRecord[]> titleCache =
+            new QueryCache<>(TITLE_CACHE_ENTRIES, TITLE_CACHE_BOOKS, found -> found.length + 1);
+    private final ChangeFeed changes = new ChangeFeed(CHANGE_FEED_CAPACITY);
+    // One per index being built off the lock (see buildIndex); guarded by lock
+    private final List<Journal> journals = new ArrayList<>(2);
+
+    public CatalogEngine(BookFactory<B> factory, CatalogStore<B> store) {
+        this.factory = factory;
+        this.store = store;
+        this.metrics = new CatalogMetrics(this::size, titleCache);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock(true);
+        }
+    }
+
+    // Engine over store, restored from and logging to the default data directory, with its
+    // metrics published over JMX
+    public static <B extends BookRecord> CatalogEngine<B> openDefault(BookFactory<B> factory, CatalogStore<B> store)
+            throws IOException {
+        CatalogEngine<B> engine = new CatalogEngine<>(factory, store);
+        engine.persistence = CatalogPersistence.openDefault(factory, engine);
+        engine.metrics.register();
+        return engine;
+    }
+
+    // Adds, updates and deletes as they commit, including raw store changes
+    public ChangeFeed changes() {
+        return changes;
+    }
+
+    public CatalogMetrics metrics() {
+        return metrics;
+    }
+
+    // Validate and add a new book; returns a copy of it, or null if the ID is already taken
+    public B addBook(int id, String title, String author, String genre, String status) {
+        long start = metrics.start();
+        B added = insert(id, title, author, genre, status);
+        metrics.record(CatalogMetrics.Operation.ADD, start, added == null ? 0 : 1);
+        return added;
+    }
+
+    private B insert(int id, String title, String author, String genre, String status) {
+        B book = factory.create(id, requireText(title, "Title"), requireText(author, "Author"),
+                genre == null ? "" : clean(genre), statusLabel(status));
+        ReentrantLock stripe = stripeOf(id);
+        stripe.lock();
+        try {
+            long stamp = lock.writeLock();
+            try {
+                if (!storeAdd(book)) {
+                    return null;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (persistence != null) {
+                persistence.logAdd(book);
+            }
+        } finally {
+            stripe.unlock();
+        }
+        return copyOf(book);
+    }
+
+    // Add a validated batch (e.g. from BulkImporter) with one log write; books whose ID is
+    // taken by then are skipped. Returns the number added. Not timed: one sample per batch
+    // would distort the per-book ADD latencies.
+    public int addBooks(List<B> batch) {
+        // Every stripe, in index order, so no single-book write can slip between store and log
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            List<B> added = new ArrayList<>(batch.size());
+            long stamp = lock.writeLock();
+            try {
+                for (B book : batch) {
+                    if (storeAdd(book)) {
+                        added.add(book);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (persistence != null) {
+                persistence.logAddAll(added);
+            }
+            return added.size();
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    // Change the given fields of a book; null or blank arguments keep the current value.
+    // Returns a copy of the updated book, or null if there is no book with this ID.
+    public B updateBook(int id, String title, String author, String genre, String status) {
+        long start = metrics.start();
+        B updated = change(id, title, author, genre, status);
+        metrics.record(CatalogMetrics.Operation.UPDATE, start, updated == null ? 0 : 1);
+        return updated;
+    }
+
+    private B change(int id, String title, String author, String genre, String status) {
+        String newStatus = isBlank(status) ? null : statusLabel(status);
+        ReentrantLock stripe = stripeOf(id);
+        stripe.lock();
+        try {
+            // Writes to this ID are excluded by the stripe, so the book cannot change under us
+            B current = read(id);
+            if (current == null) {
+                return null;
+            }
+            B updated = factory.create(id,
+                    isBlank(title) ? current.getTitle() : clean(title),
+                    isBlank(author) ? current.getAuthor() : clean(author),
+                    isBlank(genre) ? current.getGenre() : clean(genre),
+                    newStatus == null ? current.getAvailabilityStatus() : newStatus);
+            return replace(updated);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Move a book from one status to the other as one step, e.g. for a checkout that must not
+    // race another. Returns a copy of the changed book, or null if there is no book with this ID
+    // or it is not in the expected status.
+    public B changeStatus(int id, BookStatus expected, BookStatus status) {
+        long start = metrics.start();
+        B updated = null;
+        ReentrantLock stripe = stripeOf(id);
+        stripe.lock();
+        try {
+            B current = read(id);
+            if (current != null && BookStatus.parse(current.getAvailabilityStatus()) == expected) {
+                updated = replace(factory.create(id, current.getTitle(), current.getAuthor(), current.getGenre(),
+                        status.label()));
+            }
+        } finally {
+            stripe.unlock();
+        }
+        metrics.record(CatalogMetrics.Operation.UPDATE, start, updated == null ? 0 : 1);
+        return updated;
+    }
+
+    // Store and log a new version of a book; called with its stripe held
+    private B replace(B updated) {
+        long stamp = lock.writeLock();
+        try {
+            storeUpdate(updated);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (persistence != null) {
+            persistence.logUpdate(updated);
+        }
+        return copyOf(updated);
+    }
+
+    // Move a book to a new ID; returns false if there is no such book or newId is taken
+    public boolean changeBookId(int oldId, int newId) {
+        long start = metrics.start();
+        boolean moved = move(oldId, newId);
+        metrics.record(CatalogMetrics.Operation.UPDATE, start, moved ? 1 : 0);
+        return moved;
+    }
+
+    private boolean move(int oldId, int newId) {
+        if (oldId == newId) {
+            return contains(oldId);
+        }
+        // Take both stripes in index order so two opposite changes cannot deadlock
+        int a = indexOf(oldId);
+        int b = indexOf(newId);
+        ReentrantLock first = stripes[Math.min(a, b)];
+        ReentrantLock second = stripes[Math.max(a, b)];
+        first.lock();
+        second.lock();
+        try {
+            B moved;
+            long stamp = lock.writeLock();
+            try {
+                if (store.contains(newId)) {
+                    return false;
+                }
+                B old = storeRemove(oldId);
+                if (old == null) {
+                    return false;
+                }
+                moved = factory.create(newId, old.getTitle(), old.getAuthor(), old.getGenre(),
+                        old.getAvailabilityStatus());
+                storeAdd(moved);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (persistence != null) {
+                persistence.logIdChange(oldId, moved);
+            }
+            return true;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    // Delete a book; returns a copy of it, or null if there was none
+    public B deleteBook(int id) {
+        long start = metrics.start();
+        B removed = erase(id);
+        metrics.record(CatalogMetrics.Operation.DELETE, start, removed == null ? 0 : 1);
+        return removed;
+    }
+
+    private B erase(int id) {
+        ReentrantLock stripe = stripeOf(id);
+        stripe.lock();
+        try {
+            B removed;
+            long stamp = lock.writeLock();
+            try {
+                removed = storeRemove(id);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (removed != null && persistence != null) {
+                persistence.logDelete(id);
+            }
+            return removed == null ? null : copyOf(removed);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Set the given fields on every book that matches where; null or blank arguments keep the
+    // current value. A BookFilter is answered from the bitmap indexes, any other predicate by a
+    // parallel scan of a capture; a book changed in the meantime is only updated if it still
+    // matches. where is only given copies. See bulk() for how the work is split.
+    public BulkResult updateWhere(Predicate<? super BookRecord> where, String title, String author, String genre,
+            String status) {
+        String newTitle = isBlank(title) ? null : clean(title);
+        String newAuthor = isBlank(author) ? null : clean(author);
+        String newGenre = isBlank(genre) ? null : clean(genre);
+        String newStatus = isBlank(status) ? null : statusLabel(status);
+        return bulk(where, current -> {
+            String t = newTitle == null ? current.getTitle() : newTitle;
+            String a = newAuthor == null ? current.getAuthor() : newAuthor;
+            String g = newGenre == null ? current.getGenre() : newGenre;
+            String s = newStatus == null ? current.getAvailabilityStatus() : newStatus;
+            if (t.equals(current.getTitle()) && a.equals(current.getAuthor()) && g.equals(current.getGenre())
+                    && s.equals(current.getAvailabilityStatus())) {
+                return current;
+            }
+            return factory.create(current.getId(), t, a, g, s);
+        });
+    }
+
+    // Delete every book that matches where; see updateWhere
+    public BulkResult deleteWhere(Predicate<? super BookRecord> where) {
+        return bulk(where, null);
+    }
+
+    // Bulk update (change returns the new version of a book, or the book itself to leave it) or
+    // delete (change is null). The matching IDs, ascending, are cut into BULK_BATCH batches that
+    // run as tasks on the engine's fork-join pool of half the cores, leaving the other half to
+    // interactive requests. A batch is prepared without locks: each book is read, tested and changed. It is
+    // then committed under every stripe lock, taking the store lock for BULK_LOCK_BATCH books at a
+    // time so reads get in between, and logged with one write; a book that changed since it was
+    // read is tested and changed again. The stripe locks are fair, so a single-book write that
+    // queued during a batch commit goes before the next batch; it waits for at most one commit.
+    // Not timed, like addBooks.
+    private BulkResult bulk(Predicate<? super BookRecord> where, UnaryOperator<B> change) {
+        long start = System.nanoTime();
+        int[] ids = where instanceof BookFilter
+                ? idsMatching((BookFilter) where)
+                : bulkPool.submit(() -> capture().parallelStream().filter(where).mapToInt(BookRecord::getId).toArray())
+                        .join();
+        List<ForkJoinTask<Integer>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.length; from += BULK_BATCH) {
+            int batchFrom = from;
+            int batchTo = Math.min(ids.length, from + BULK_BATCH);
+            batches.add(bulkPool.submit(() -> bulkBatch(ids, batchFrom, batchTo, where, change)));
+        }
+        int changed = 0;
+        for (ForkJoinTask<Integer> batch : batches) {
+            changed += batch.join();
+        }
+        return new BulkResult(ids.length, changed, System.nanoTime() - start);
+    }
+
+    // One batch of a bulk change, ids[from, to); returns the number of books changed
+    @SuppressWarnings("unchecked")
+    private int bulkBatch(int[] ids, int from, int to, Predicate<? super BookRecord> where, UnaryOperator<B> change) {
+        int n = to - from;
+        // The copy each book was prepared from, whether it matched, and its new version
+        Object[] seen = new Object[n];
+        boolean[] matched = new boolean[n];
+        Object[] next = change == null ? null : new Object[n];
+        for (int i = 0; i < n; i++) {
+            B current = read(ids[from + i]);
+            if (current != null && where.test(current)) {
+                seen[i] = current;
+                matched[i] = true;
+                if (change != null) {
+                    next[i] = change.apply(current);
+                }
+            } else {
+                seen[i] = current;
+            }
+        }
+        List<B> updated = change == null ? null : new ArrayList<>(n);
+        int[] deleted = change == null ? new int[n] : null;
+        int deletedCount = 0;
+        // Every stripe, in index order, so no single-book write can slip between store and log
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            for (int i = 0; i < n; i += BULK_LOCK_BATCH) {
+                int end = Math.min(n, i + BULK_LOCK_BATCH);
+                long stamp = lock.writeLock();
+                try {
+                    for (int k = i; k < end; k++) {
+                        int id = ids[from + k];
+                        B current = store.read(id);
+                        if (current == null) {
+                            continue;
+                        }
+                        B prepared = (B) seen[k];
+                        B result = next == null ? null : (B) next[k];
+                        if (prepared == null || !sameBook(prepared, current)) {
+                            // Changed since the batch was prepared: decide again on a copy
+                            prepared = copyOf(current);
+                            if (!where.test(prepared)) {
+                                continue;
+                            }
+                            result = change == null ? null : change.apply(prepared);
+                        } else if (!matched[k]) {
+                            continue;
+                        }
+                        if (change == null) {
+                            storeRemove(id);
+                            deleted[deletedCount++] = id;
+                        } else if (result != prepared) {
+                            storeUpdate(result);
+                            updated.add(result);
+                        }
+                    }
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+            if (persistence != null) {
+                if (change == null) {
+                    persistence.logDeleteAll(deleted, deletedCount);
+                } else {
+                    persistence.logUpdateAll(updated);
+                }
+            }
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+        return change == null ? deletedCount : updated.size();
+    }
+
+    private static boolean sameBook(BookRecord a, BookRecord b) {
+        return a.getTitle().equals(b.getTitle()) && a.getAuthor().equals(b.getAuthor())
+                && a.getGenre().equals(b.getGenre()) && a.getAvailabilityStatus().equals(b.getAvailabilityStatus());
+    }
+
+    // A copy of the book with this ID, or null if there is none
+    public B findBookById(int id) {
+        long start = metrics.start();
+        B book = read(id);
+        metrics.record(CatalogMetrics.Operation.FIND, start, book == null ? 0 : 1);
+        return book;
+    }
+
+    // Copies of the books whose title is title, ignoring case and surrounding spaces, in store
+    // order. Repeated lookups are served from the title cache; a miss scans the catalog.
+    public List<B> findByTitle(String title) {
+        long start = metrics.start();
+        String wanted = title == null ? "" : clean(title);
+        BookRecord[] found = titleCache.get(titleKey(wanted), key -> scanTitle(wanted));
+        List<B> books = new ArrayList<>(found.length);
+        for (BookRecord book : found) {
+            books.add(copyOf(book));
+        }
+        metrics.record(CatalogMetrics.Operation.SEARCH, start, books.size());
+        return books;
+    }
+
+    private BookRecord[] scanTitle(String title) {
+        List<BookRecord> found = new ArrayList<>();
+        for (BookRecord book : capture()) {
+            if (book.getTitle().equalsIgnoreCase(title)) {
+                found.add(book);
+            }
+        }
+        return found.toArray(new BookRecord[0]);
+    }
+
+    // Up to limit titles within maxEdits (0 to PrefixTrie.MAX_EDITS) typing mistakes of title,
+    // ignoring case: the closest first, then those shared by the most books. For a title that
+    // findByTitle does not know; answered from the title trie, not by comparing every title.
+    public List<String> similarTitles(String title, int maxEdits, int limit) {
+        long start = metrics.start();
+        List<String> found = querySpelling(() -> titleTrie.similar(title, maxEdits, limit));
+        metrics.record(CatalogMetrics.Operation.SEARCH, start, found.size());
+        return found;
+    }
+
+    // Up to limit authors within maxEdits typing mistakes of author, ranked like similarTitles
+    public List<String> similarAuthors(String author, int maxEdits, int limit) {
+        long start = metrics.start();
+        List<String> found = querySpelling(() -> authorTrie.similar(author, maxEdits, limit));
+        metrics.record(CatalogMetrics.Operation.SEARCH, start, found.size());
+        return found;
+    }
+
+    // How many typing mistakes to allow in a lookup of text: none for one or two characters (two
+    // edits would match every short value), one up to five, and two from six characters on
+    public static int editsFor(String text) {
+        int length = text == null ? 0 : text.trim().length();
+        return length <= 2 ? 0 : length <= 5 ? 1 : PrefixTrie.MAX_EDITS;
+    }
+
+    // Titles that are equalsIgnoreCase share a key: each char is folded the way that comparison
+    // folds it, so a write to a book can invalidate exactly the lookups that could match it
+    private static String titleKey(String title) {
+        char[] folded = title.toCharArray();
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(folded[i]));
+        }
+        return new String(folded);
+    }
+
+    // IDs of up to limit books with an ID above afterId, ascending: one page of a listing whose
+    // pages stay stable while books are added and deleted between them. O(log n + limit), from the
+    // ordered ID index.
+    public int[] idsAfter(int afterId, int limit) {
+        return queryOrdered(tree -> tree.after(afterId, limit));
+    }
+
+    // IDs of up to limit books with fromId <= ID <= toId, ascending; resume with fromId set to one
+    // past the last ID returned. O(log n + limit).
+    public int[] idsBetween(int fromId, int toId, int limit) {
+        return queryOrdered(tree -> tree.range(fromId, toId, limit));
+    }
+
+    // IDs of up to count books in ID order, starting with the rank-th smallest (0-based), e.g. for
+    // a table sorted by ID. O(log n + count).
+    public int[] idsByRank(int rank, int count) {
+        return queryOrdered(tree -> tree.fromRank(rank, count));
+    }
+
+    // IDs of the books whose author, genre or status is value (ignoring case), ascending
+    public int[] idsWhere(BookField field, String value) {
+        return querySecondary(index -> index.ids(field, value));
+    }
+
+    // IDs of up to limit books that match filter with an ID above afterId, ascending: one page of
+    // the filter's results, like idsAfter. Answered from the bitmap indexes, never by a scan.
+    public int[] idsMatching(BookFilter filter, int afterId, int limit) {
+        return querySecondary(index -> index.page(filter, afterId, limit));
+    }
+
+    // IDs of every book that matches filter, ascending
+    public int[] idsMatching(BookFilter filter) {
+        return querySecondary(index -> index.matching(filter).toArray());
+    }
+
+    // Number of books that match filter
+    public int count(BookFilter filter) {
+        return querySecondary(index -> index.matching(filter).cardinality());
+    }
+
+    // Number of books whose author, genre or status is value; O(1)
+    public int count(BookField field, String value) {
+        return querySecondary(index -> index.count(field, value));
+    }
+
+    // Number of books in a genre with the given status; O(1)
+    public int count(String genre, BookStatus status) {
+        return querySecondary(index -> index.count(genre, status));
+    }
+
+    // Books per author, genre or status, largest first
+    public Map<String, Integer> facets(BookField field) {
+        return querySecondary(index -> index.facets(field));
+    }
+
+    // Run a query on the ordered ID index under the read lock, building it first if needed.
+    // The build sorts every ID, off the lock (see buildIndex).
+    private <T> T queryOrdered(Function<IdTree, T> query) {
+        while (true) {
+            long stamp = lock.readLock();
+            try {
+                if (ordered != null) {
+                    return query.apply(ordered);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            buildIndex(orderedBuild, () -> ordered != null, books -> {
+                int[] ids = new int[books.size()];
+                int n = 0;
+                for (BookRecord book : books) {
+                    ids[n++] = book.getId();
+                }
+                Arrays.sort(ids);
+                return IdTree.build(ids);
+            }, (tree, old, book) -> {
+                if (old == null) {
+                    tree.add(book.getId());
+                } else if (book == null) {
+                    tree.remove(old.getId());
+                }
+            }, tree -> ordered = tree);
+        }
+    }
+
+    // Run a query on the title and author tries under the read lock, building them first if needed.
+    // The build reads every book, off the lock (see buildIndex).
+    private <T> T querySpelling(Supplier<T> query) {
+        while (true) {
+            long stamp = lock.readLock();
+            try {
+                if (titleTrie != null) {
+                    return query.get();
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            buildIndex(spellingBuild, () -> titleTrie != null, books -> {
+                List<String> titles = new ArrayList<>(books.size());
+                List<String> authors = new ArrayList<>(books.size());
+                for (BookRecord book : books) {
+                    titles.add(book.getTitle());
+                    authors.add(book.getAuthor());
+                }
+                PrefixTrie[] tries = {new PrefixTrie(), new PrefixTrie()};
+                tries[0].addAll(titles);
+                tries[1].addAll(authors);
+                return tries;
+            }, (tries, old, book) -> moveSpelling(tries[0], tries[1], old, book), tries -> {
+                titleTrie = tries[0];
+                authorTrie = tries[1];
+            });
+        }
+    }
+
+    // Run a query on the secondary indexes under the read lock, building them first if needed.
+    // The build reads every book, off the lock (see buildIndex).
+    private <T> T querySecondary(Function<SecondaryIndex, T> query) {
+        while (true) {
+            long stamp = lock.readLock();
+            try {
+                if (secondary != null) {
+                    return query.apply(secondary);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            buildIndex(secondaryBuild, () -> secondary != null, image -> {
+                SecondaryIndex index = new SecondaryIndex();
+                for (BookRecord book : image) {
+                    index.added(book);
+                }
+                return index;
+            }, (index, old, book) -> {
+                if (old == null) {
+                    index.added(book);
+                } else if (book == null) {
+                    index.removed(old);
+                } else {
+                    index.changed(old, book);
+                }
+            }, index -> secondary = index);
+        }
+    }
+
+    // Build a lazy index unless built says it exists already, without making readers and writers
+    // wait for it: a capture is taken and a journal of the writes after it is started under the
+    // write lock (O(n / 1024)), the index is built from the capture with no lock held, and the
+    // write lock is taken again only to replay the journal onto it and publish it. The change feed
+    // would name the books written meanwhile, but not the versions the capture holds, which the
+    // indexes need to take a book out again. Builders of one index queue on its build lock, so it
+    // is built once.
+    private <I> void buildIndex(ReentrantLock buildLock, BooleanSupplier built,
+            Function<Collection<BookRecord>, I> build, Replay<I> replay, Consumer<I> publish) {
+        buildLock.lock();
+        try {
+            while (true) {
+                Journal journal = new Journal();
+                Collection<BookRecord> image;
+                long stamp = lock.writeLock();
+                try {
+                    if (built.getAsBoolean()) {
+                        return;
+                    }
+                    image = store.capture();
+                    journals.add(journal);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                I index;
+                try {
+                    index = build.apply(image);
+                } catch (RuntimeException | Error e) {
+                    stamp = lock.writeLock();
+                    journals.remove(journal);
+                    lock.unlockWrite(stamp);
+                    throw e;
+                }
+                stamp = lock.writeLock();
+                try {
+                    journals.remove(journal);
+                    // Otherwise attachBase replaced the catalog under the build; start over
+                    if (!journal.replaced) {
+                        for (BookRecord[] write : journal.writes) {
+                            replay.apply(index, write[0], write[1]);
+                        }
+                        publish.accept(index);
+                        return;
+                    }
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    // Applies one journalled write to an index built from an earlier capture
+    private interface Replay<I> {
+        // old is null for an add, book is null for a remove
+        void apply(I index, BookRecord old, BookRecord book);
+    }
+
+    // Store writes made since an index build took its capture, oldest first, as {old, new} pairs
+    private static final class Journal {
+        final List<BookRecord[]> writes = new ArrayList<>();
+        // Set by attachBase: the capture no longer describes the catalog
+        boolean replaced;
+    }
+
+    // Canonical label for a status typed in any case ("available" -> "Available")
+    public static String capitalizeStatus(String status) {
+        BookStatus parsed = BookStatus.parse(status);
+        return parsed != null ? parsed.label() : status;
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = store.size();
+        if (lock.validate(stamp)) {
+            return size;
+        }
+        stamp = lock.readLock();
+        try {
+            return store.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean found = store.contains(id);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            } catch (RuntimeException e) {
+                // A write moved the structure under the optimistic read; retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return store.contains(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Same as read(): the engine never hands out the stored record itself
+    @Override
+    public B get(int id) {
+        return read(id);
+    }
+
+    @Override
+    public B read(int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                B copy = copyOf(store.read(id));
+                if (lock.validate(stamp)) {
+                    return copy;
+                }
+            } catch (RuntimeException e) {
+                // A write moved the structure under the optimistic read; retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return copyOf(store.read(id));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int[] ids() {
+        long stamp = lock.readLock();
+        try {
+            return store.ids();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int idAt(int position) {
+        long stamp = lock.readLock();
+        try {
+            return store.idAt(position);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Raw add without validation or logging (used by recovery)
+    @Override
+    public boolean add(B book) {
+        long stamp = lock.writeLock();
+        try {
+            return storeAdd(book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Raw update without logging
+    @Override
+    public void update(B book) {
+        long stamp = lock.writeLock();
+        try {
+            storeUpdate(book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Raw remove without logging (used by recovery)
+    @Override
+    public B remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            return storeRemove(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void attachBase(MappedCatalog base, BookFactory<B> factory) {
+        long stamp = lock.writeLock();
+        try {
+            store.attachBase(base, factory);
+            for (Journal journal : journals) {
+                journal.replaced = true;
+            }
+            secondary = null;
+            ordered = null;
+            titleTrie = null;
+            authorTrie = null;
+            titleCache.clear();
+            changes.discard();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Point-in-time snapshot of the catalog. Taking it holds the read lock for O(n / 1024) steps;
+    // after that, reading it never blocks writers and writers never change what it shows.
+    @Override
+    public Collection<BookRecord> capture() {
+        long stamp = lock.readLock();
+        try {
+            return store.capture();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Iterates a capture taken now, as copies
+    @Override
+    public Iterator<B> iterator() {
+        Iterator<BookRecord> image = capture().iterator();
+        return new Iterator<B>() {
+            @Override
+            public boolean hasNext() {
+                return image.hasNext();
+            }
+
+            @Override
+            public B next() {
+                return copyOf(image.next());
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        bulkPool.shutdown();
+        if (persistence != null) {
+            persistence.close();
+        }
+    }
+
+    // Store changes that keep the secondary, ID and spelling indexes (if built) and the title
+    // cache in step and publish the change; called with the write lock. Indexes are updated before
+    // the store, so a write that fails leaves no stored change behind that the log never saw. If
+    // any step throws, the indexes it may have reached are dropped (see dropIndexes).
+    private boolean storeAdd(B book) {
+        if (store.contains(book.getId())) {
+            return false;
+        }
+        try {
+            spellingChanged(null, book);
+            if (secondary != null) {
+                secondary.added(book);
+            }
+            if (ordered != null) {
+                ordered.add(book.getId());
+            }
+            store.add(book);
+        } catch (RuntimeException | Error e) {
+            dropIndexes();
+            throw e;
+        }
+        journal(null, book);
+        titleCache.invalidate(titleKey(book.getTitle()));
+        changes.publish(CatalogChange.Kind.ADDED, book.getId());
+        return true;
+    }
+
+    private void storeUpdate(B book) {
+        BookRecord old = store.read(book.getId());
+        try {
+            if (old != null) {
+                spellingChanged(old, book);
+                if (secondary != null) {
+                    secondary.changed(old, book);
+                }
+            }
+            store.update(book);
+        } catch (RuntimeException | Error e) {
+            dropIndexes();
+            throw e;
+        }
+        if (old != null && !old.getTitle().equals(book.getTitle())) {
+            titleCache.invalidate(titleKey(old.getTitle()));
+        }
+        if (old != null) {
+            journal(old, book);
+        }
+        titleCache.invalidate(titleKey(book.getTitle()));
+        changes.publish(CatalogChange.Kind.UPDATED, book.getId());
+    }
+
+    private B storeRemove(int id) {
+        BookRecord current = store.read(id);
+        if (current == null) {
+            return null;
+        }
+        B removed;
+        try {
+            spellingChanged(current, null);
+            if (secondary != null) {
+                secondary.removed(current);
+            }
+            if (ordered != null) {
+                ordered.remove(id);
+            }
+            removed = store.remove(id);
+        } catch (RuntimeException | Error e) {
+            dropIndexes();
+            throw e;
+        }
+        journal(current, null);
+        titleCache.invalidate(titleKey(removed.getTitle()));
+        changes.publish(CatalogChange.Kind.REMOVED, id);
+        return removed;
+    }
+
+    // Record a store write for the index builds running off the lock, if any
+    private void journal(BookRecord old, BookRecord book) {
+        for (int i = 0; i < journals.size(); i++) {
+            journals.get(i).writes.add(new BookRecord[] {old, book});
+        }
+    }
+
+    // Drop every lazy index after a store change failed partway, since some of them may already
+    // show the change the store never made. Undoing each step could fail the same way; the next
+    // query instead rebuilds the index from the store, off the lock.
+    private void dropIndexes() {
+        secondary = null;
+        ordered = null;
+        titleTrie = null;
+        authorTrie = null;
+    }
+
+    // Move the title and author of old (null for an add) to those of book (null for a remove) in
+    // the spelling tries, if built
+    private void spellingChanged(BookRecord old, BookRecord book) {
+        if (titleTrie != null) {
+            moveSpelling(titleTrie, authorTrie, old, book);
+        }
+    }
+
+    private static void moveSpelling(PrefixTrie titles, PrefixTrie authors, BookRecord old, BookRecord book) {
+        if (old == null || book == null || !old.getTitle().equals(book.getTitle())) {
+            if (old != null) {
+                titles.remove(old.getTitle());
+            }
+            if (book != null) {
+                titles.add(book.getTitle());
+            }
+        }
+        if (old == null || book == null || !old.getAuthor().equals(book.getAuthor())) {
+            if (old != null) {
+                authors.remove(old.getAuthor());
+            }
+            if (book != null) {
+                authors.add(book.getAuthor());
+            }
+        }
+    }
+
+    private B copyOf(BookRecord book) {
+        return book == null ? null : factory.create(book.getId(), book.getTitle(), book.getAuthor(),
+                book.getGenre(), book.getAvailabilityStatus());
+    }
+
+    private ReentrantLock stripeOf(int id) {
+        return stripes[indexOf(id)];
+    }
+
+    private static int indexOf(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private static String requireText(String value, String field) {
+        if (isBlank(value)) {
+            throw new IllegalArgumentException(field + " cannot be empty");
+        }
+        return clean(value);
+    }
+
+    // Trimmed of Unicode whitespace as well (e.g. U+3000), which trim() leaves in place
+    private static String clean(String value) {
+        return value.trim().strip();
+    }
+
+    private static String statusLabel(String status) {
+        BookStatus parsed = status == null ? null : BookStatus.parse(status.trim());
+        if (parsed == null) {
+            throw new IllegalArgumentException("Availability status must be either 'Available' or 'Checked Out'");
+        }
+        return parsed.label();
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || clean(s).isEmpty();
+    }
+}
@@ -0,0 +1,477 @@
+package msr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Streams a catalog dump to a file as CSV (id,title,author,genre,status with a header row, the
+// format BulkImporter reads) or JSON Lines (one book object per line, as Json writes it),
+// optionally gzipped. CSV fields with commas, quotes or line breaks are quoted; BulkImporter
+// reads them back as they were, except that a \r\n or \r inside a field comes back as \n.
+// Books are taken from a capture in store order, CHUNK_ROWS at a time. Chunks are encoded in
+// parallel into reusable direct buffers, without building a String per row, then written to a
+// FileChannel in order by the calling thread. Two buffers per worker are recycled for the whole
+// run, so memory stays the same whatever the catalog size.
+// With gzip every chunk is also compressed in parallel, into a gzip member of its own; a file of
+// concatenated members is a valid gzip file for gunzip and GZIPInputStream.
+// The file is written under a temporary name and renamed into place once fsynced, so readers
+// never see a partial dump.
+public class CatalogExporter {
+    public enum Format {
+        CSV, JSON_LINES
+    }
+
+    public static final int CHUNK_ROWS = 8192;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 20;
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final byte[] CSV_HEADER = ascii("id,title,author,genre,status\n");
+    private static final byte[] JSON_ID = ascii("{\"id\":");
+    private static final byte[] JSON_TITLE = ascii(",\"title\":");
+    private static final byte[] JSON_AUTHOR = ascii(",\"author\":");
+    private static final byte[] JSON_GENRE = ascii(",\"genre\":");
+    private static final byte[] JSON_STATUS = ascii(",\"availabilityStatus\":");
+    private static final byte[] JSON_NULL = ascii("null");
+    // Deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private final Format format;
+    private final boolean gzip;
+    private final int workers;
+
+    public CatalogExporter(Format format, boolean gzip) {
+        this(format, gzip, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CatalogExporter(Format format, boolean gzip, int workers) {
+        this.format = format;
+        this.gzip = gzip;
+        this.workers = Math.max(1, workers);
+    }
+
+    // Exporter for the file name: .csv or .jsonl (or .ndjson), with .gz added for gzip
+    public static CatalogExporter forPath(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return new CatalogExporter(Format.CSV, gzip);
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return new CatalogExporter(Format.JSON_LINES, gzip);
+        }
+        throw new IllegalArgumentException("Export file name must end in .csv or .jsonl, optionally followed by .gz");
+    }
+
+    // Export books (normally a capture) to target, replacing it; progress receives a status line
+    // about once a second
+    public Result run(Collection<? extends BookRecord> books, Path target, Consumer<String> progress) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "catalog-export");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Chunk> free = new ArrayDeque<>();
+        for (int i = 0; i < workers * 2; i++) {
+            free.add(new Chunk());
+        }
+        Deque<Future<ByteBuffer>> inFlight = new ArrayDeque<>();
+        Deque<Chunk> inFlightChunks = new ArrayDeque<>();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Result result = new Result();
+        long start = System.nanoTime();
+        long lastProgress = start;
+        boolean written = false;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Iterator<? extends BookRecord> source = books.iterator();
+            boolean header = format == Format.CSV;
+            boolean eof = false;
+            while (!eof || !inFlight.isEmpty()) {
+                // The first chunk is submitted even when there are no books, for the header and gzip member
+                while (!eof && !free.isEmpty()) {
+                    Chunk chunk = free.poll();
+                    chunk.fill(source, header);
+                    header = false;
+                    eof = !source.hasNext();
+                    inFlight.add(pool.submit(chunk::encode));
+                    inFlightChunks.add(chunk);
+                }
+                ByteBuffer bytes = await(inFlight.poll());
+                Chunk chunk = inFlightChunks.poll();
+                result.bytes += bytes.remaining();
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                result.rows += chunk.count;
+                free.add(chunk);
+
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    result.seconds = (now - start) / 1e9;
+                    progress.accept(result.toString());
+                }
+            }
+            out.force(true);
+            written = true;
+        } finally {
+            pool.shutdownNow();
+            if (!written) {
+                Files.deleteIfExists(temp);
+            }
+            // A worker still running after a failure keeps its chunk; its deflater is then left to the GC
+            for (Chunk chunk : free) {
+                chunk.close();
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Export failed: " + cause, cause);
+        }
+    }
+
+    // Up to CHUNK_ROWS books and the reusable buffers they are encoded and compressed into.
+    // Rows are built in a heap array, whose byte stores the JIT compiles far better than
+    // ByteBuffer.put, then copied in one go into the direct buffer that is written or compressed.
+    // The copy runs on the worker, so the channel is handed a direct buffer and copies nothing.
+    private final class Chunk {
+        final BookRecord[] books = new BookRecord[CHUNK_ROWS];
+        int count;
+        boolean header;
+        byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        int length;
+        // The chars of one field, read out of the String in one call instead of a charAt() each
+        char[] chars = new char[256];
+        ByteBuffer text = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        ByteBuffer compressed;
+        final Deflater deflater;
+        final CRC32 crc;
+
+        Chunk() {
+            if (gzip) {
+                compressed = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                deflater = new Deflater(Deflater.BEST_SPEED, true);
+                crc = new CRC32();
+            } else {
+                deflater = null;
+                crc = null;
+            }
+        }
+
+        // Take the next books from source; runs on the exporting thread, which owns the iterator
+        void fill(Iterator<? extends BookRecord> source, boolean header) {
+            this.header = header;
+            count = 0;
+            while (count < CHUNK_ROWS && source.hasNext()) {
+                books[count++] = source.next();
+            }
+        }
+
+        // Bytes to write for the chunk, ready to read; runs on a worker
+        ByteBuffer encode() {
+            length = 0;
+            if (header) {
+                put(CSV_HEADER);
+            }
+            for (int i = 0; i < count; i++) {
+                BookRecord book = books[i];
+                books[i] = null;
+                reserve(book);
+                if (format == Format.CSV) {
+                    csvRow(book);
+                } else {
+                    jsonLine(book);
+                }
+            }
+            if (text.capacity() < length) {
+                text = ByteBuffer.allocateDirect(Math.max(text.capacity() * 2, length));
+            }
+            text.clear();
+            text.put(bytes, 0, length).flip();
+            return gzip ? compress() : text;
+        }
+
+        // Make room for the longest encoding of book: six bytes per char (a JSON \\u escape)
+        // plus the field names and separators
+        private void reserve(BookRecord book) {
+            int needed = 6 * (length(book.getTitle()) + length(book.getAuthor()) + length(book.getGenre())
+                    + length(book.getAvailabilityStatus())) + 128;
+            if (bytes.length - length < needed) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + needed));
+            }
+        }
+
+        // id,title,author,genre,status; a field holding a comma, quote or line break is quoted,
+        // with its quotes doubled, and a null field is left empty
+        private void csvRow(BookRecord book) {
+            putInt(book.getId());
+            bytes[length++] = ',';
+            csvField(book.getTitle());
+            bytes[length++] = ',';
+            csvField(book.getAuthor());
+            bytes[length++] = ',';
+            csvField(book.getGenre());
+            bytes[length++] = ',';
+            csvField(book.getAvailabilityStatus());
+            bytes[length++] = '\n';
+        }
+
+        private void csvField(String s) {
+            if (s == null) {
+                return;
+            }
+            int n = load(s);
+            boolean quoted = false;
+            for (int i = 0; i < n && !quoted; i++) {
+                char c = chars[i];
+                quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quoted) {
+                putUtf8(0, n);
+                return;
+            }
+            bytes[length++] = '"';
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (chars[i] == '"') {
+                    // Up to and including the quote, which is then written again
+                    putUtf8(start, i + 1);
+                    start = i;
+                }
+            }
+            putUtf8(start, n);
+            bytes[length++] = '"';
+        }
+
+        // The same object Json.writeBook writes, followed by a newline
+        private void jsonLine(BookRecord book) {
+            put(JSON_ID);
+            putInt(book.getId());
+            put(JSON_TITLE);
+            jsonString(book.getTitle());
+            put(JSON_AUTHOR);
+            jsonString(book.getAuthor());
+            put(JSON_GENRE);
+            jsonString(book.getGenre());
+            put(JSON_STATUS);
+            jsonString(book.getAvailabilityStatus());
+            bytes[length++] = '}';
+            bytes[length++] = '\n';
+        }
+
+        private void jsonString(String s) {
+            if (s == null) {
+                put(JSON_NULL);
+                return;
+            }
+            int n = load(s);
+            bytes[length++] = '"';
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                char c = chars[i];
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+                putUtf8(start, i);
+                bytes[length++] = '\\';
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        bytes[length++] = (byte) c;
+                        break;
+                    case '\n':
+                        bytes[length++] = 'n';
+                        break;
+                    case '\r':
+                        bytes[length++] = 'r';
+                        break;
+                    case '\t':
+                        bytes[length++] = 't';
+                        break;
+                    default:
+                        bytes[length++] = 'u';
+                        bytes[length++] = '0';
+                        bytes[length++] = '0';
+                        bytes[length++] = HEX[c >> 4];
+                        bytes[length++] = HEX[c & 0xF];
+                }
+                start = i + 1;
+            }
+            putUtf8(start, n);
+            bytes[length++] = '"';
+        }
+
+        // Copy the chars of s into chars and return how many there are
+        private int load(String s) {
+            int n = s.length();
+            if (n > chars.length) {
+                chars = new char[Math.max(n, chars.length * 2)];
+            }
+            s.getChars(0, n, chars, 0);
+            return n;
+        }
+
+        // chars[from..to) as UTF-8; an unpaired surrogate becomes '?', as in String.getBytes
+        private void putUtf8(int from, int to) {
+            byte[] b = bytes;
+            int p = length;
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | c >> 6);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                } else if (!Character.isSurrogate(c)) {
+                    b[p++] = (byte) (0xE0 | c >> 12);
+                    b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars[i + 1])) {
+                    int cp = Character.toCodePoint(c, chars[++i]);
+                    b[p++] = (byte) (0xF0 | cp >> 18);
+                    b[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    b[p++] = '?';
+                }
+            }
+            length = p;
+        }
+
+        private void put(byte[] constant) {
+            System.arraycopy(constant, 0, bytes, length, constant.length);
+            length += constant.length;
+        }
+
+        // Decimal digits of value, without building a String
+        private void putInt(int value) {
+            long v = value;
+            if (v < 0) {
+                bytes[length++] = '-';
+                v = -v;
+            }
+            int digits = 1;
+            for (long rest = v / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            length += digits;
+            for (int i = length - 1; i >= length - digits; i--) {
+                bytes[i] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+        }
+
+        // text as one gzip member
+        private ByteBuffer compress() {
+            crc.reset();
+            crc.update(text.duplicate());
+            int length = text.remaining();
+            deflater.reset();
+            deflater.setInput(text);
+            deflater.finish();
+            compressed.clear();
+            compressed.put(GZIP_HEADER);
+            while (!deflater.finished()) {
+                if (compressed.remaining() < 64) {
+                    compressed = grow(compressed, compressed.capacity());
+                }
+                deflater.deflate(compressed);
+            }
+            if (compressed.remaining() < 8) {
+                compressed = grow(compressed, 8);
+            }
+            compressed.putInt((int) crc.getValue());
+            compressed.putInt(length);
+            compressed.flip();
+            return compressed;
+        }
+
+        void close() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    // A larger direct buffer holding what buffer has written so far, with at least needed bytes free
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+        ByteBuffer bigger = ByteBuffer.allocateDirect(capacity).order(buffer.order());
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static int length(String s) {
+        return s == null ? 4 : s.length();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Counts for one export run
+    public static final class Result {
+        private long rows;
+        private long bytes;
+        private double seconds;
+
+        public long getRows() {
+            return rows;
+        }
+        // Bytes written to the file, after compression
+        public long getBytes() {
+            return bytes;
+        }
+        public double getSeconds() {
+            return seconds;
+        }
+        public double getRowsPerSecond() {
+            return seconds > 0 ? rows / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows exported, %,d bytes written in %.1f s (%,.0f rows/sec)",
+                    rows, bytes, seconds, getRowsPerSecond());
+        }
+    }
+}
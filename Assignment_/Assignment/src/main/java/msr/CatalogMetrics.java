@@ -0,0 +1,131 @@
+package msr;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Always-on instrumentation of catalog operations: a latency histogram and result counter per
+// operation, a catalog-size gauge and the engine's title cache statistics, published over JMX,
+// and CatalogOperationEvents for JFR.
+// Callers bracket an operation with start() and record(); recording is a clock read, a few
+// uncontended atomic adds and, only while a recording has the event enabled, one JFR commit.
+public class CatalogMetrics implements CatalogMetricsMXBean {
+    public static final String OBJECT_NAME = "msr:type=CatalogMetrics";
+
+    public enum Operation {
+        ADD, FIND, SEARCH, UPDATE, DELETE, LIST
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final IntSupplier catalogSize;
+    private final QueryCache<?, ?> titleCache;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] results = new LongAdder[OPERATIONS.length];
+    private volatile boolean enabled = true;
+    private volatile long resetAt = System.nanoTime();
+
+    public CatalogMetrics(IntSupplier catalogSize, QueryCache<?, ?> titleCache) {
+        this.catalogSize = catalogSize;
+        this.titleCache = titleCache;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            results[i] = new LongAdder();
+        }
+    }
+
+    // Start time to pass to record(); 0 while recording is off
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Record an operation that began at start and returned or changed this many books
+    public void record(Operation operation, long start, int resultCount) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        latencies[operation.ordinal()].record(nanos);
+        results[operation.ordinal()].add(resultCount);
+        CatalogOperationEvent event = new CatalogOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation.name();
+            event.latency = nanos;
+            event.results = resultCount;
+            event.commit();
+        }
+    }
+
+    public OperationStats stats(Operation operation) {
+        double seconds = (System.nanoTime() - resetAt) / 1e9;
+        return new OperationStats(operation, latencies[operation.ordinal()].snapshot(),
+                results[operation.ordinal()].sum(), seconds);
+    }
+
+    // Publish on the platform MBean server, replacing an earlier registration under the name
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public int getCatalogSize() {
+        return catalogSize.getAsInt();
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> stats = new ArrayList<>(OPERATIONS.length);
+        for (Operation operation : OPERATIONS) {
+            stats.add(stats(operation));
+        }
+        return stats;
+    }
+
+    @Override
+    public long getSecondsSinceReset() {
+        return (System.nanoTime() - resetAt) / 1_000_000_000L;
+    }
+
+    @Override
+    public QueryCacheStats getTitleCache() {
+        return titleCache.stats();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Clear all histograms and counters; operations in flight may land on either side
+    @Override
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i].reset();
+            results[i].reset();
+        }
+        titleCache.resetStats();
+        resetAt = System.nanoTime();
+    }
+}
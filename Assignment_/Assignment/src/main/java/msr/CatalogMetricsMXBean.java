@@ -0,0 +1,26 @@
+package msr;
+
+import java.util.List;
+
+// Management interface of CatalogMetrics, published under CatalogMetrics.OBJECT_NAME.
+// As an MXBean it only uses open types, so jconsole, VisualVM and any JMX client can read it
+// without the application's classes.
+public interface CatalogMetricsMXBean {
+    // Books in the catalog right now
+    int getCatalogSize();
+
+    // Latency and throughput of every operation since the last reset
+    List<OperationStats> getOperations();
+
+    long getSecondsSinceReset();
+
+    // Hit ratio, evictions and load latency of the title-lookup cache
+    QueryCacheStats getTitleCache();
+
+    // Recording can be switched off at run time; gauges keep working
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void reset();
+}
@@ -0,0 +1,180 @@
+package msr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Durable storage for a catalog store: every change is appended to the write-ahead log, and after
+// enough changes a snapshot is written in the background so older log segments can be deleted.
+// On open the newest snapshot is memory-mapped as the store's base layer, so records are only
+// read from it when touched, and the log tail after it is replayed on top.
+public class CatalogPersistence<B extends BookRecord> implements AutoCloseable {
+    public static final String DATA_DIR_PROPERTY = "library.dataDir";
+    public static final String DURABILITY_PROPERTY = "library.durability";
+    private static final long SYNC_INTERVAL_MILLIS = 100;
+    private static final int SNAPSHOT_EVERY_OPS = 100_000;
+
+    private final Path dir;
+    private final CatalogStore<B> store;
+    private final WriteAheadLog log;
+    private final MappedCatalog base;
+    private final ExecutorService snapshotter;
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private final AtomicInteger opsSinceSnapshot = new AtomicInteger();
+
+    private CatalogPersistence(Path dir, CatalogStore<B> store, WriteAheadLog log, MappedCatalog base) {
+        this.dir = dir;
+        this.store = store;
+        this.log = log;
+        this.base = base;
+        this.snapshotter = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshotter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Load the catalog from dir into the (empty) store and start logging to it
+    public static <B extends BookRecord> CatalogPersistence<B> open(Path dir, Durability durability,
+                                                                   BookFactory<B> factory, CatalogStore<B> store)
+            throws IOException {
+        MappedCatalog base = CatalogSnapshot.openLatest(dir);
+        long snapshotSeq = 0;
+        if (base != null) {
+            store.attachBase(base, factory);
+            snapshotSeq = base.seq();
+        }
+        long lastSeq = WriteAheadLog.replay(dir, snapshotSeq, entry -> {
+            if (entry.getOp() == WriteAheadLog.Op.MOVE) {
+                store.remove(entry.getFromId());
+            }
+            store.remove(entry.getId());
+            if (entry.getOp() != WriteAheadLog.Op.DELETE) {
+                store.add(copy(factory, entry));
+            }
+        });
+        WriteAheadLog log = new WriteAheadLog(dir, lastSeq, durability, SYNC_INTERVAL_MILLIS);
+        return new CatalogPersistence<>(dir, store, log, base);
+    }
+
+    // Open using the library.dataDir and library.durability system properties
+    public static <B extends BookRecord> CatalogPersistence<B> openDefault(BookFactory<B> factory, CatalogStore<B> store)
+            throws IOException {
+        Durability durability = Durability.valueOf(System.getProperty(DURABILITY_PROPERTY, Durability.PER_BATCH.name()));
+        return open(defaultDir(), durability, factory, store);
+    }
+
+    // The library.dataDir directory, "library-data" by default
+    public static Path defaultDir() {
+        return Path.of(System.getProperty(DATA_DIR_PROPERTY, "library-data"));
+    }
+
+    public void logAdd(B book) {
+        log.append(WriteAheadLog.Op.ADD, book);
+        afterWrite();
+    }
+
+    // Log a batch of new books with one sync for the whole batch
+    public void logAddAll(List<B> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.appendAll(WriteAheadLog.Op.ADD, batch);
+        opsSinceSnapshot.addAndGet(batch.size() - 1);
+        afterWrite();
+    }
+
+    public void logUpdate(B book) {
+        log.append(WriteAheadLog.Op.UPDATE, book);
+        afterWrite();
+    }
+
+    // Log a batch of updates with one sync for the whole batch
+    public void logUpdateAll(List<B> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.appendAll(WriteAheadLog.Op.UPDATE, batch);
+        opsSinceSnapshot.addAndGet(batch.size() - 1);
+        afterWrite();
+    }
+
+    public void logDelete(int id) {
+        log.appendDelete(id);
+        afterWrite();
+    }
+
+    // Log the deletes of the first count IDs with one sync for the whole batch
+    public void logDeleteAll(int[] ids, int count) {
+        if (count == 0) {
+            return;
+        }
+        log.appendDeleteAll(ids, count);
+        opsSinceSnapshot.addAndGet(count - 1);
+        afterWrite();
+    }
+
+    // Log an in-place ID change as one record, so a crash cannot keep the delete of the old ID
+    // without the add of the new one
+    public void logIdChange(int oldId, B book) {
+        log.appendMove(oldId, book);
+        afterWrite();
+    }
+
+    // Callers change the store before logging the change, and the log is rotated before the image
+    // is captured, so every change up to seq is in the image. Changes logged after the rotation may
+    // be in the image too; replaying them is harmless because log entries carry whole records.
+    // Only the writing and fsync of the snapshot happen in the background. Safe to call from
+    // several threads as long as the store itself is (see CatalogEngine).
+    private void afterWrite() {
+        if (opsSinceSnapshot.incrementAndGet() < SNAPSHOT_EVERY_OPS || !snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        opsSinceSnapshot.set(0);
+        long seq;
+        try {
+            seq = log.rotate();
+        } catch (IOException e) {
+            snapshotRunning.set(false);
+            throw new UncheckedIOException(e);
+        }
+        Collection<BookRecord> image = store.capture();
+        snapshotter.execute(() -> {
+            try {
+                CatalogSnapshot.write(dir, seq, image);
+                log.deleteSegmentsUpTo(seq);
+                CatalogSnapshot.deleteOlderThan(dir, seq);
+            } catch (IOException e) {
+                // The log still holds every change, so a failed snapshot only delays compaction
+                System.err.println("Catalog snapshot failed: " + e.getMessage());
+            } finally {
+                snapshotRunning.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (base != null) {
+            base.close();
+        }
+    }
+
+    private static <B extends BookRecord> B copy(BookFactory<B> factory, BookRecord b) {
+        return factory.create(b.getId(), b.getTitle(), b.getAuthor(), b.getGenre(), b.getAvailabilityStatus());
+    }
+}
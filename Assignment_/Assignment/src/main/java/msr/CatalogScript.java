@@ -0,0 +1,699 @@
+package msr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Runs a script of catalog commands without prompts, one command per line, fields separated by
+// tabs so titles may contain spaces and commas. Blank lines and lines starting with # are skipped.
+//   add     id  title  author  genre  status
+//   update  id  [title  [author  [genre  [status]]]]   empty fields keep the current value
+//   delete  id
+//   find    id
+//   title   exact title (case-insensitive)
+//   search  keywords  [limit]
+//   similar title|author  value  [limit]              books under the limit spellings nearest a
+//           misspelt title or author (1-2 typing mistakes), closest first
+//   list    [afterId  [limit]]                        books in ID order, one page per command
+//   range   fromId  toId  [afterId  [limit]]          books with fromId <= ID <= toId, one page
+//   where   author|genre|status  value               books with that value (ignoring case)
+//   count   author|genre|status  value  [status]     how many, optionally only those in status
+//   facets  author|genre|status                      books per value, largest first
+//   filter  expression  [afterId  [limit]]           books matching a BookFilter, e.g.
+//           genre=Fiction & status=Available & !author=X, one page in ID order
+//   bulkupdate  expression  [title  [author  [genre  [status]]]]
+//           set the non-empty fields on every book matching a BookFilter, in parallel batches
+//   bulkdelete  expression                            delete every book matching a BookFilter
+//   export  path                                      dump every book to a .csv or .jsonl file,
+//           gzipped if the name ends in .gz (see CatalogExporter)
+//   checkout  id  patronId  [days]                    lend a book (see CirculationEngine)
+//   return    id
+//   loans     patronId
+//   overdue                                           every open loan past its due date
+// Input is parsed straight from a byte buffer; lines are only decoded field by field, and IDs
+// are read from the bytes without creating strings. All output goes to one buffered writer.
+// A failed command is reported in order with its line number and does not stop the script.
+public class CatalogScript<B extends BookRecord> {
+    public enum Format {
+        // "Book ID: 1, Title: ..." lines, as printed by the interactive CLI
+        TEXT,
+        // JSON Lines: one object per book and one status object per command
+        JSON
+    }
+
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 6;
+
+    private final CatalogEngine<B> engine;
+    private final Format format;
+    private final Writer out;
+    private final CirculationEngine<B> circulation;
+    // Built on the first search, then kept in step with the script's own changes
+    private SearchIndex searchIndex;
+
+    // Input buffer and the field boundaries of the current line in it
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount;
+    private long lineNo;
+
+    public CatalogScript(CatalogEngine<B> engine, Format format, Writer out) {
+        this(engine, null, format, out);
+    }
+
+    // circulation may be null, in which case the loan commands fail
+    public CatalogScript(CatalogEngine<B> engine, CirculationEngine<B> circulation, Format format, Writer out) {
+        this.engine = engine;
+        this.circulation = circulation;
+        this.format = format;
+        this.out = out;
+    }
+
+    // Run every command in in; the writer is flushed but not closed
+    public Result run(InputStream in) throws IOException {
+        Result result = new Result();
+        long start = System.nanoTime();
+        int filled = 0;
+        int scanned = 0;
+        int lineStart = 0;
+        while (true) {
+            for (; scanned < filled; scanned++) {
+                if (buf[scanned] == '\n') {
+                    runLine(lineStart, scanned, result);
+                    lineStart = scanned + 1;
+                }
+            }
+            if (lineStart > 0) {
+                // Move the partial last line to the front before reading more
+                System.arraycopy(buf, lineStart, buf, 0, filled - lineStart);
+                filled -= lineStart;
+                scanned -= lineStart;
+                lineStart = 0;
+            }
+            if (filled == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = in.read(buf, filled, buf.length - filled);
+            if (n < 0) {
+                if (filled > 0) {
+                    runLine(0, filled, result);
+                }
+                break;
+            }
+            filled += n;
+        }
+        out.flush();
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    private void runLine(int from, int to, Result result) throws IOException {
+        lineNo++;
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from || buf[from] == '#') {
+            return;
+        }
+        split(from, to);
+        result.commands++;
+        try {
+            execute();
+        } catch (IllegalArgumentException e) {
+            result.failed++;
+            fail(e.getMessage());
+        }
+    }
+
+    private void split(int from, int to) {
+        fieldCount = 0;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || (buf[i] == '\t' && fieldCount < MAX_FIELDS - 1)) {
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    private void execute() throws IOException {
+        String command = text(0).trim().toLowerCase(Locale.ROOT);
+        switch (command) {
+            case "add":
+                add();
+                break;
+            case "update":
+                update();
+                break;
+            case "delete":
+                delete();
+                break;
+            case "find":
+                find();
+                break;
+            case "title":
+                title();
+                break;
+            case "search":
+                search();
+                break;
+            case "similar":
+                similar();
+                break;
+            case "list":
+                list();
+                break;
+            case "range":
+                range();
+                break;
+            case "where":
+                where();
+                break;
+            case "count":
+                count();
+                break;
+            case "facets":
+                facets();
+                break;
+            case "filter":
+                filter();
+                break;
+            case "bulkupdate":
+                bulkUpdate();
+                break;
+            case "bulkdelete":
+                bulkDelete();
+                break;
+            case "export":
+                export();
+                break;
+            case "checkout":
+                checkout();
+                break;
+            case "return":
+                returnBook();
+                break;
+            case "loans":
+                loans();
+                break;
+            case "overdue":
+                overdue();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command '" + command + "'");
+        }
+    }
+
+    private void add() throws IOException {
+        requireFields(6, "add needs id, title, author, genre and status");
+        B book = engine.addBook(id(1), text(2), text(3), text(4), text(5));
+        if (book == null) {
+            throw new IllegalArgumentException("Book ID already exists");
+        }
+        if (searchIndex != null) {
+            searchIndex.add(book);
+        }
+        written("Book added", book);
+    }
+
+    private void update() throws IOException {
+        requireFields(2, "update needs an id");
+        B book = engine.updateBook(id(1), optional(2), optional(3), optional(4), optional(5));
+        if (book == null) {
+            throw new IllegalArgumentException("No book found with the provided ID");
+        }
+        if (searchIndex != null) {
+            searchIndex.update(book);
+        }
+        written("Book updated", book);
+    }
+
+    private void delete() throws IOException {
+        requireFields(2, "delete needs an id");
+        int id = id(1);
+        if (engine.deleteBook(id) == null) {
+            throw new IllegalArgumentException("No book found with the provided ID");
+        }
+        if (searchIndex != null) {
+            searchIndex.remove(id);
+        }
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"deleted\":" + id + "}\n");
+        } else {
+            out.write("Book deleted: " + id + "\n");
+        }
+    }
+
+    private void find() throws IOException {
+        requireFields(2, "find needs an id");
+        B book = engine.findBookById(id(1));
+        if (book != null) {
+            book(book);
+        }
+        done(book == null ? 0 : 1);
+    }
+
+    private void title() throws IOException {
+        requireFields(2, "title needs the title to look for");
+        List<B> found = engine.findByTitle(text(1));
+        for (B book : found) {
+            book(book);
+        }
+        done(found.size());
+    }
+
+    private void search() throws IOException {
+        requireFields(2, "search needs keywords");
+        int limit = fieldCount > 2 ? positive(2, "Limit") : DEFAULT_SEARCH_LIMIT;
+        long start = engine.metrics().start();
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex();
+            for (BookRecord book : engine.capture()) {
+                searchIndex.add(book);
+            }
+        }
+        int[] ids = searchIndex.search(text(1), limit);
+        engine.metrics().record(CatalogMetrics.Operation.SEARCH, start, ids.length);
+        int found = 0;
+        for (int id : ids) {
+            B book = engine.read(id);
+            if (book != null) {
+                book(book);
+                found++;
+            }
+        }
+        done(found);
+    }
+
+    private void similar() throws IOException {
+        requireFields(3, "similar needs title or author and the value to look for");
+        String field = text(1).trim();
+        String value = text(2);
+        int limit = fieldCount > 3 ? positive(3, "Limit") : DEFAULT_SEARCH_LIMIT;
+        int edits = CatalogEngine.editsFor(value);
+        int found = 0;
+        if (field.equalsIgnoreCase("title")) {
+            for (String title : engine.similarTitles(value, edits, limit)) {
+                for (B book : engine.findByTitle(title)) {
+                    book(book);
+                    found++;
+                }
+            }
+        } else if (field.equalsIgnoreCase("author")) {
+            for (String author : engine.similarAuthors(value, edits, limit)) {
+                for (int id : engine.idsWhere(BookField.AUTHOR, author)) {
+                    B book = engine.read(id);
+                    if (book != null) {
+                        book(book);
+                        found++;
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("similar looks up a title or an author");
+        }
+        done(found);
+    }
+
+    // One page in ID order; the status line carries the cursor for the next page, if any
+    private void list() throws IOException {
+        int after = fieldCount > 1 && fieldEnd[1] > fieldStart[1] ? id(1) : Integer.MIN_VALUE;
+        int limit = fieldCount > 2 ? positive(2, "Limit") : Integer.MAX_VALUE;
+        long start = engine.metrics().start();
+        // One extra ID tells whether another page follows
+        int[] ids = engine.idsAfter(after, limit == Integer.MAX_VALUE ? limit : limit + 1);
+        int shown = Math.min(ids.length, limit);
+        int listed = 0;
+        for (int i = 0; i < shown; i++) {
+            B book = engine.read(ids[i]);
+            // A book deleted since the IDs were read is left out
+            if (book != null) {
+                book(book);
+                listed++;
+            }
+        }
+        engine.metrics().record(CatalogMetrics.Operation.LIST, start, listed);
+        done(listed, ids.length > limit ? ids[shown - 1] : null, "list\t", limit);
+    }
+
+    // One page of an ID range, in ID order, with the cursor for the next page like list
+    private void range() throws IOException {
+        requireFields(3, "range needs the first and last ID");
+        int from = id(1);
+        int to = id(2);
+        if (fieldCount > 3 && fieldEnd[3] > fieldStart[3]) {
+            int after = id(3);
+            if (after == Integer.MAX_VALUE) {
+                done(0);
+                return;
+            }
+            from = Math.max(from, after + 1);
+        }
+        int limit = fieldCount > 4 ? positive(4, "Limit") : DEFAULT_SEARCH_LIMIT;
+        long start = engine.metrics().start();
+        int[] ids = engine.idsBetween(from, to, limit == Integer.MAX_VALUE ? limit : limit + 1);
+        int shown = Math.min(ids.length, limit);
+        int listed = 0;
+        for (int i = 0; i < shown; i++) {
+            B book = engine.read(ids[i]);
+            if (book != null) {
+                book(book);
+                listed++;
+            }
+        }
+        engine.metrics().record(CatalogMetrics.Operation.LIST, start, listed);
+        done(listed, ids.length > limit ? ids[shown - 1] : null, "range\t" + id(1) + "\t" + to + "\t", limit);
+    }
+
+    private void where() throws IOException {
+        requireFields(3, "where needs a field and a value");
+        int found = 0;
+        for (int id : engine.idsWhere(indexedField(1), text(2).trim())) {
+            B book = engine.read(id);
+            if (book != null) {
+                book(book);
+                found++;
+            }
+        }
+        done(found);
+    }
+
+    // One page of a filter's matches in ID order, paged like list
+    private void filter() throws IOException {
+        requireFields(2, "filter needs an expression");
+        BookFilter filter = BookFilter.parse(text(1));
+        int after = fieldCount > 2 && fieldEnd[2] > fieldStart[2] ? id(2) : Integer.MIN_VALUE;
+        int limit = fieldCount > 3 ? positive(3, "Limit") : DEFAULT_SEARCH_LIMIT;
+        long start = engine.metrics().start();
+        int[] ids = engine.idsMatching(filter, after, limit == Integer.MAX_VALUE ? limit : limit + 1);
+        int shown = Math.min(ids.length, limit);
+        int found = 0;
+        for (int i = 0; i < shown; i++) {
+            B book = engine.read(ids[i]);
+            if (book != null) {
+                book(book);
+                found++;
+            }
+        }
+        engine.metrics().record(CatalogMetrics.Operation.SEARCH, start, found);
+        done(found, ids.length > limit ? ids[shown - 1] : null, "filter\t" + filter + "\t", limit);
+    }
+
+    private void bulkUpdate() throws IOException {
+        requireFields(3, "bulkupdate needs an expression and at least one field to set");
+        BookFilter filter = BookFilter.parse(text(1));
+        bulkDone("Bulk update", engine.updateWhere(filter, optional(2), optional(3), optional(4), optional(5)));
+    }
+
+    private void bulkDelete() throws IOException {
+        requireFields(2, "bulkdelete needs an expression");
+        bulkDone("Bulk delete", engine.deleteWhere(BookFilter.parse(text(1))));
+    }
+
+    private void bulkDone(String what, BulkResult result) throws IOException {
+        // Rebuilt from the catalog on the next search
+        searchIndex = null;
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"matched\":" + result.getMatched()
+                    + ",\"changed\":" + result.getChanged() + ",\"skipped\":" + result.getSkipped() + "}\n");
+        } else {
+            out.write(what + ": " + result + "\n");
+        }
+    }
+
+    private void export() throws IOException {
+        requireFields(2, "export needs a file path");
+        Path file = Paths.get(text(1).trim());
+        CatalogExporter.Result result;
+        try {
+            result = CatalogExporter.forPath(file).run(engine.capture(), file, line -> { });
+        } catch (IOException e) {
+            // A file that cannot be written fails this command, not the script
+            throw new IllegalArgumentException("Export failed: " + e.getMessage(), e);
+        }
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"exported\":" + result.getRows()
+                    + ",\"bytes\":" + result.getBytes() + "}\n");
+        } else {
+            out.write("Export: " + result + "\n");
+        }
+    }
+
+    private void count() throws IOException {
+        requireFields(3, "count needs a field and a value");
+        BookField field = indexedField(1);
+        String value = text(2).trim();
+        int count;
+        if (fieldCount > 3) {
+            BookStatus status = BookStatus.parse(text(3).trim());
+            if (field != BookField.GENRE || status == null) {
+                throw new IllegalArgumentException("count can only split a genre by 'Available' or 'Checked Out'");
+            }
+            count = engine.count(value, status);
+        } else {
+            count = engine.count(field, value);
+        }
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"count\":" + count + "}\n");
+        } else {
+            out.write(count + "\n");
+        }
+    }
+
+    private void facets() throws IOException {
+        requireFields(2, "facets needs a field");
+        Map<String, Integer> facets = engine.facets(indexedField(1));
+        for (Map.Entry<String, Integer> facet : facets.entrySet()) {
+            if (format == Format.JSON) {
+                out.write("{\"line\":" + lineNo + ",\"value\":" + Json.string(facet.getKey()) + ",\"count\":"
+                        + facet.getValue() + "}\n");
+            } else {
+                out.write(facet.getKey() + ": " + facet.getValue() + "\n");
+            }
+        }
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"count\":" + facets.size() + "}\n");
+        }
+    }
+
+    private BookField indexedField(int field) {
+        String name = text(field).trim();
+        for (BookField f : BookField.values()) {
+            if (f.name().equalsIgnoreCase(name) && SecondaryIndex.isIndexed(f)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Field should be author, genre or status");
+    }
+
+    private void checkout() throws IOException {
+        requireFields(3, "checkout needs a book id and a patron id");
+        int bookId = id(1);
+        int patronId = id(2);
+        Loan loan = fieldCount > 3
+                ? circulation().checkout(bookId, patronId, Duration.ofDays(positive(3, "Loan days")))
+                : circulation().checkout(bookId, patronId);
+        loan("Book checked out", loan);
+    }
+
+    private void returnBook() throws IOException {
+        requireFields(2, "return needs a book id");
+        loan("Book returned", circulation().returnBook(id(1)));
+    }
+
+    private void loans() throws IOException {
+        requireFields(2, "loans needs a patron id");
+        loans(circulation().loansOf(id(1)));
+    }
+
+    private void overdue() throws IOException {
+        loans(circulation().overdue());
+    }
+
+    private void loans(List<Loan> loans) throws IOException {
+        for (Loan loan : loans) {
+            loan(null, loan);
+        }
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"count\":" + loans.size() + "}\n");
+        } else if (loans.isEmpty()) {
+            out.write("No loans found.\n");
+        }
+    }
+
+    private CirculationEngine<B> circulation() {
+        if (circulation == null) {
+            throw new IllegalArgumentException("Loans are not available in this session");
+        }
+        return circulation;
+    }
+
+    // A loan, as the result of a checkout or return (what) or as one row of a query (null)
+    private void loan(String what, Loan loan) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + (what == null ? "" : ",\"ok\":true") + ",\"loan\":{\"bookId\":"
+                    + loan.getBookId() + ",\"patronId\":" + loan.getPatronId() + ",\"checkedOut\":\""
+                    + loan.getCheckedOut() + "\",\"due\":\"" + loan.getDue() + "\"}}\n");
+        } else {
+            out.write(what == null ? loan + "\n" : what + ": " + loan + "\n");
+        }
+    }
+
+    private void written(String what, BookRecord book) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"book\":");
+            Json.writeBook(out, book);
+            out.write("}\n");
+        } else {
+            out.write(what + ": ");
+            writeText(book);
+        }
+    }
+
+    private void book(BookRecord book) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"book\":");
+            Json.writeBook(out, book);
+            out.write("}\n");
+        } else {
+            writeText(book);
+        }
+    }
+
+    // Status line closing a query: how many books it printed and, for list, the next cursor
+    private void done(int count) throws IOException {
+        done(count, null, null, 0);
+    }
+
+    // nextAfter, if not null, is the cursor of the next page, which pageCommand plus the cursor
+    // and limit fetches
+    private void done(int count, Integer nextAfter, String pageCommand, int limit) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":true,\"count\":" + count
+                    + (nextAfter == null ? "" : ",\"next\":" + nextAfter) + "}\n");
+        } else if (nextAfter != null) {
+            out.write("Next page: " + pageCommand + nextAfter + "\t" + limit + "\n");
+        } else if (count == 0) {
+            out.write("No books found.\n");
+        }
+    }
+
+    private void fail(String message) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"line\":" + lineNo + ",\"ok\":false,\"error\":" + Json.string(message) + "}\n");
+        } else {
+            out.write("Line " + lineNo + ": " + message + ".\n");
+        }
+    }
+
+    private void writeText(BookRecord book) throws IOException {
+        out.write("Book ID: ");
+        out.write(Integer.toString(book.getId()));
+        out.write(", Title: ");
+        out.write(book.getTitle());
+        out.write(", Author: ");
+        out.write(book.getAuthor());
+        out.write(", Genre: ");
+        out.write(book.getGenre());
+        out.write(", Status: ");
+        out.write(book.getAvailabilityStatus());
+        out.write('\n');
+    }
+
+    private void requireFields(int count, String message) {
+        if (fieldCount < count) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private String text(int field) {
+        return new String(buf, fieldStart[field], fieldEnd[field] - fieldStart[field], StandardCharsets.UTF_8);
+    }
+
+    // A field that may be missing or empty, in which case the current value is kept
+    private String optional(int field) {
+        return field < fieldCount ? text(field) : null;
+    }
+
+    // Parse a decimal int straight from the bytes, allowing surrounding spaces
+    private int id(int field) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        while (i < end && buf[i] == ' ') {
+            i++;
+        }
+        while (end > i && buf[end - 1] == ' ') {
+            end--;
+        }
+        boolean negative = i < end && buf[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 10) {
+            throw new IllegalArgumentException("Book ID should be an integer");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Book ID should be an integer");
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Book ID should be an integer");
+        }
+        return (int) value;
+    }
+
+    private int positive(int field, String what) {
+        try {
+            int n = Integer.parseInt(text(field).trim());
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(what + " should be a positive integer");
+    }
+
+    // Counts for one script run
+    public static final class Result {
+        private long commands;
+        private long failed;
+        private double seconds;
+
+        public long getCommands() {
+            return commands;
+        }
+        public long getFailed() {
+            return failed;
+        }
+        public double getSeconds() {
+            return seconds;
+        }
+        public double getCommandsPerSecond() {
+            return seconds > 0 ? commands / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d commands run, %,d failed in %.1f s (%,.0f commands/sec)",
+                    commands, failed, seconds, getCommandsPerSecond());
+        }
+    }
+}
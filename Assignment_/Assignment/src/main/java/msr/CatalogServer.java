@@ -0,0 +1,438 @@
+package msr;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Headless JSON-over-HTTP access to a CatalogEngine, on the JDK's built-in HTTP server.
+//   GET    /books?offset=&limit=   every book (or one page), streamed as a JSON array
+//   POST   /books                  add {"id","title","author","genre","availabilityStatus"}
+//   GET    /books/{id}             one book
+//   PUT    /books/{id}             change the given fields (and the ID, if "id" differs)
+//   DELETE /books/{id}             remove a book
+//   GET    /search?q=&limit=       ranked keyword search over title, author and genre
+// The server's selector thread only parses requests; each request then runs on its own virtual
+// thread when the JDK has them (21+), otherwise on a cached pool. Idle keep-alive connections
+// hold no thread, so the number of open connections is bounded by file descriptors, not threads.
+public class CatalogServer<B extends BookRecord> implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 4096;
+    // The JDK server closes idle keep-alive connections beyond 200 by default
+    private static final String MAX_IDLE_CONNECTIONS = "sun.net.httpserver.maxIdleConnections";
+    private static final int KEEP_ALIVE_CONNECTIONS = 20_000;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final CatalogEngine<B> engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // The keyword index is built on the first search and then follows the engine's change feed,
+    // so changes reach it in commit order whichever request thread finishes first. Searches share
+    // it; catching up with the feed takes it alone.
+    private final ReadWriteLock searchLock = new ReentrantReadWriteLock();
+    private SearchIndex searchIndex;
+    private ChangeFeed.Subscription searchChanges;
+    private final ChangeFeed.Listener searchListener = new ChangeFeed.Listener() {
+        @Override
+        public void changed(CatalogChange change) {
+            // Feed entries name the book; the version to index is whatever is stored now
+            B book = engine.read(change.getId());
+            if (book == null) {
+                searchIndex.remove(change.getId());
+            } else {
+                searchIndex.add(book);
+            }
+        }
+
+        @Override
+        public void missed(long count) {
+            searchIndex = buildSearchIndex();
+        }
+    };
+
+    public CatalogServer(CatalogEngine<B> engine, InetSocketAddress address) throws IOException {
+        this.engine = engine;
+        // Read once, when the first server is created; an explicit -D setting wins
+        if (System.getProperty(MAX_IDLE_CONNECTIONS) == null) {
+            System.setProperty(MAX_IDLE_CONNECTIONS, Integer.toString(KEEP_ALIVE_CONNECTIONS));
+        }
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/books", this::handleBooks);
+        server.createContext("/search", this::handleSearch);
+    }
+
+    // Usage: CatalogServer [--port N]; the catalog is opened from -Dlibrary.dataDir
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[i + 1]);
+            }
+        }
+        CatalogEngine<Book> engine = CatalogEngine.openDefault(Book::new, new BookStore<>());
+        CatalogServer<Book> server = new CatalogServer<>(engine, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                engine.close();
+            } catch (IOException e) {
+                System.err.println("Could not save the catalog: " + e.getMessage());
+            }
+        }));
+        server.start();
+        System.out.println("Serving " + engine.size() + " books on port " + server.port());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Stop accepting requests and give running ones a moment to finish
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchLock.writeLock().lock();
+        try {
+            if (searchChanges != null) {
+                searchChanges.close();
+            }
+        } finally {
+            searchLock.writeLock().unlock();
+        }
+    }
+
+    // One virtual thread per request on JDKs that have them; the build targets 11, so look it up
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "catalog-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void handleBooks(HttpExchange exchange) throws IOException {
+        try {
+            String rest = exchange.getRequestURI().getPath().substring("/books".length());
+            String method = exchange.getRequestMethod();
+            if (rest.isEmpty() || rest.equals("/")) {
+                if (method.equals("GET")) {
+                    listBooks(exchange);
+                } else if (method.equals("POST")) {
+                    addBook(exchange);
+                } else {
+                    methodNotAllowed(exchange, "GET, POST");
+                }
+                return;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(rest.substring(1));
+            } catch (NumberFormatException e) {
+                sendError(exchange, 404, "No such resource");
+                return;
+            }
+            switch (method) {
+                case "GET":
+                    B book = engine.findBookById(id);
+                    if (book == null) {
+                        sendError(exchange, 404, "No book with ID " + id);
+                    } else {
+                        send(exchange, 200, Json.book(book));
+                    }
+                    break;
+                case "PUT":
+                    updateBook(exchange, id);
+                    break;
+                case "DELETE":
+                    deleteBook(exchange, id);
+                    break;
+                default:
+                    methodNotAllowed(exchange, "GET, PUT, DELETE");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Stream the books of a consistent capture without building the whole response in memory
+    private void listBooks(HttpExchange exchange) throws IOException {
+        Map<String, String> query = queryOf(exchange);
+        long offset = longParam(query, "offset", 0);
+        long limit = longParam(query, "limit", Long.MAX_VALUE);
+        long start = engine.metrics().start();
+        Iterator<BookRecord> books = engine.capture().iterator();
+        long n = 0;
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write('[');
+            for (long skipped = 0; skipped < offset && books.hasNext(); skipped++) {
+                books.next();
+            }
+            for (; n < limit && books.hasNext(); n++) {
+                if (n > 0) {
+                    out.write(',');
+                }
+                Json.writeBook(out, books.next());
+            }
+            out.write(']');
+        } finally {
+            engine.metrics().record(CatalogMetrics.Operation.LIST, start, (int) Math.min(n, Integer.MAX_VALUE));
+        }
+    }
+
+    private void addBook(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = Json.parseObject(readBody(exchange));
+        String idText = fields.get("id");
+        if (idText == null) {
+            sendError(exchange, 400, "Book ID is required");
+            return;
+        }
+        B book = engine.addBook(parseId(idText), fields.get("title"), fields.get("author"), fields.get("genre"),
+                fields.get("availabilityStatus"));
+        if (book == null) {
+            sendError(exchange, 409, "Book ID already exists");
+            return;
+        }
+        indexChanged();
+        exchange.getResponseHeaders().set("Location", "/books/" + book.getId());
+        send(exchange, 201, Json.book(book));
+    }
+
+    private void updateBook(HttpExchange exchange, int id) throws IOException {
+        Map<String, String> fields = Json.parseObject(readBody(exchange));
+        int newId = fields.get("id") == null ? id : parseId(fields.get("id"));
+        String status = fields.get("availabilityStatus");
+        // Check everything that can fail before the ID change, so a bad request changes nothing
+        if (status != null && !status.trim().isEmpty() && !BookStatus.isValid(status.trim())) {
+            sendError(exchange, 400, "Availability status must be either 'Available' or 'Checked Out'");
+            return;
+        }
+        if (newId != id && !engine.changeBookId(id, newId)) {
+            if (engine.contains(id)) {
+                sendError(exchange, 409, "Book ID " + newId + " already exists");
+            } else {
+                sendError(exchange, 404, "No book with ID " + id);
+            }
+            return;
+        }
+        B book = engine.updateBook(newId, fields.get("title"), fields.get("author"), fields.get("genre"), status);
+        if (book == null) {
+            sendError(exchange, 404, "No book with ID " + id);
+            return;
+        }
+        indexChanged();
+        send(exchange, 200, Json.book(book));
+    }
+
+    private void deleteBook(HttpExchange exchange, int id) throws IOException {
+        drain(exchange);
+        if (engine.deleteBook(id) == null) {
+            sendError(exchange, 404, "No book with ID " + id);
+            return;
+        }
+        indexChanged();
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                methodNotAllowed(exchange, "GET");
+                return;
+            }
+            Map<String, String> query = queryOf(exchange);
+            String q = query.getOrDefault("q", "");
+            int limit = (int) Math.min(longParam(query, "limit", DEFAULT_SEARCH_LIMIT), 10_000);
+            long start = engine.metrics().start();
+            int[] ids = search(q, limit);
+            engine.metrics().record(CatalogMetrics.Operation.SEARCH, start, ids.length);
+            StringBuilder sb = new StringBuilder(ids.length * 96 + 2).append('[');
+            boolean first = true;
+            for (int id : ids) {
+                B book = engine.findBookById(id);
+                // A book deleted after the search ran is left out
+                if (book != null) {
+                    if (!first) {
+                        sb.append(',');
+                    }
+                    Json.writeBook(sb, book);
+                    first = false;
+                }
+            }
+            send(exchange, 200, sb.append(']').toString());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Search an index that has seen every change committed before the call
+    private int[] search(String q, int limit) {
+        searchLock.readLock().lock();
+        try {
+            if (searchIndex != null && searchChanges.backlog() == 0) {
+                return searchIndex.search(q, limit);
+            }
+        } finally {
+            searchLock.readLock().unlock();
+        }
+        searchLock.writeLock().lock();
+        try {
+            if (searchIndex == null) {
+                // Subscribe first: a change racing the capture is then applied again, never lost
+                searchChanges = engine.changes().subscribe();
+                searchIndex = buildSearchIndex();
+            }
+            searchChanges.poll(Integer.MAX_VALUE, searchListener);
+            return searchIndex.search(q, limit);
+        } finally {
+            searchLock.writeLock().unlock();
+        }
+    }
+
+    // Apply a change just committed to the keyword index (if built), so the feed does not run far
+    // ahead of it between searches. Skipped while the index is busy: the next search catches up.
+    private void indexChanged() {
+        if (!searchLock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (searchIndex != null) {
+                searchChanges.poll(Integer.MAX_VALUE, searchListener);
+            }
+        } finally {
+            searchLock.writeLock().unlock();
+        }
+    }
+
+    private SearchIndex buildSearchIndex() {
+        SearchIndex index = new SearchIndex();
+        for (BookRecord book : engine.capture()) {
+            index.add(book);
+        }
+        return index;
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Book ID should be an integer");
+        }
+    }
+
+    private static long longParam(Map<String, String> query, String name, long defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long n = Long.parseLong(value);
+            if (n < 0) {
+                throw new NumberFormatException();
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + name + "' should be a non-negative integer");
+        }
+    }
+
+    private static Map<String, String> queryOf(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                body.write(buf, 0, n);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+                }
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    // A connection can only be reused once the request body has been read to the end
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buf = new byte[8192];
+            while (in.read(buf) > 0) {
+                // discard
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "{\"error\":" + Json.string(message) + "}");
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        drain(exchange);
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendError(exchange, 405, "Method not allowed");
+    }
+}
@@ -0,0 +1,84 @@
+package msr;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Point-in-time copies of the whole catalog in MappedCatalog format, named after the last log
+// sequence number they cover. Files are written under a temporary name and renamed into place
+// once fsynced, so a snapshot is either complete or absent; the directory is fsynced after the
+// rename, so the snapshot cannot vanish in a crash once the log segments it covers are deleted.
+public final class CatalogSnapshot {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".dat";
+
+    private CatalogSnapshot() {
+    }
+
+    // Write a snapshot of the books as of log sequence number seq; it is durable on return
+    public static Path write(Path dir, long seq, Collection<? extends BookRecord> books) throws IOException {
+        Path target = dir.resolve(String.format("%s%020d%s", PREFIX, seq, SUFFIX));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        MappedCatalog.write(temp, seq, books);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(dir);
+        return target;
+    }
+
+    // Force the entries of dir (e.g. a rename into it) to disk
+    static void syncDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Some platforms (e.g. Windows) cannot open a directory; their renames are not synced
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    // Map the newest snapshot in dir, or return null if there is none
+    public static MappedCatalog openLatest(Path dir) throws IOException {
+        List<Path> snapshots = list(dir);
+        return snapshots.isEmpty() ? null : MappedCatalog.open(snapshots.get(snapshots.size() - 1));
+    }
+
+    // Remove every snapshot older than the one for seq. A snapshot that is still mapped may not be
+    // deletable on every platform; it is then left for a later call.
+    public static void deleteOlderThan(Path dir, long seq) throws IOException {
+        for (Path snapshot : list(dir)) {
+            if (seqOf(snapshot) < seq) {
+                try {
+                    Files.deleteIfExists(snapshot);
+                } catch (IOException e) {
+                    // Still in use; retried after the next snapshot
+                }
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+                files.forEach(snapshots::add);
+            }
+        }
+        snapshots.sort((a, b) -> Long.compare(seqOf(a), seqOf(b)));
+        return snapshots;
+    }
+
+    private static long seqOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,43 @@
+package msr;
+
+import java.util.Collection;
+
+// Book storage keyed by ID, implemented by the object-per-book BookStore and the
+// array-based CompactBookStore
+public interface CatalogStore<B extends BookRecord> extends Iterable<B> {
+    int size();
+
+    boolean isEmpty();
+
+    boolean contains(int id);
+
+    // Find a book by its ID, or null if there is none
+    B get(int id);
+
+    // Look up a book without making the store hold on to it (for display); a book read this way
+    // that is then changed must be written back with update()
+    B read(int id);
+
+    // IDs of every book, in store order
+    int[] ids();
+
+    // ID of the book at a position in store order, 0 <= position < size()
+    int idAt(int position);
+
+    // Add a book; returns false if its ID is already taken
+    boolean add(B book);
+
+    // Store the fields of a book returned by get() or read() after it was changed in place,
+    // or of a new object with the ID of a stored book
+    void update(B book);
+
+    // Remove a book by ID and return it, or null if there is none
+    B remove(int id);
+
+    // Serve (or load) the records of a mapped catalog; the store must be empty
+    void attachBase(MappedCatalog base, BookFactory<B> factory);
+
+    // Consistent copy of the whole store that another thread can read later, while the store keeps
+    // changing. May run alongside other reads and captures, but not alongside a write.
+    Collection<BookRecord> capture();
+}
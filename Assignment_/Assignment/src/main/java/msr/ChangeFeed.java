@@ -0,0 +1,121 @@
+package msr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded ring buffer of CatalogChanges with any number of independent readers.
+// The writer never waits for a reader: it overwrites the oldest slot once the ring is full, and a
+// reader that falls more than the capacity behind is told how many changes it missed and skips to
+// the newest, so it knows to re-read its state in full. Nothing is stored while no one is
+// subscribed. Publishing is single-writer (the engine publishes under its write lock); polling a
+// Subscription is lock-free and each Subscription belongs to one reader thread.
+public class ChangeFeed {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<CatalogChange> ring;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    // Sequence of the next change; every change below it is in the ring or was overwritten
+    private volatile long tail;
+
+    // Feed that keeps the last capacity changes (rounded up to a power of two)
+    public ChangeFeed(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        this.capacity = size < capacity ? size << 1 : size;
+        this.mask = this.capacity - 1;
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Sequence the next change will get
+    public long published() {
+        return tail;
+    }
+
+    // Start reading at the next change published
+    public Subscription subscribe() {
+        subscribers.incrementAndGet();
+        return new Subscription(tail);
+    }
+
+    // Append a change; called by the single writer
+    void publish(CatalogChange.Kind kind, int id) {
+        if (subscribers.get() == 0) {
+            return;
+        }
+        long sequence = tail;
+        // The slot is set before tail moves past it, so a reader that sees the new tail sees it
+        ring.lazySet((int) sequence & mask, new CatalogChange(sequence, kind, id));
+        tail = sequence + 1;
+    }
+
+    // Make every subscriber miss what came before, e.g. when the whole catalog was replaced
+    void discard() {
+        tail += capacity + 1;
+    }
+
+    // Receives the changes of one poll, oldest first
+    public interface Listener {
+        void changed(CatalogChange change);
+
+        // count changes were overwritten before they were read (or the catalog was replaced);
+        // whatever the reader derived from the catalog must be rebuilt
+        void missed(long count);
+    }
+
+    // One reader's position in the feed
+    public final class Subscription implements AutoCloseable {
+        private long next;
+        private boolean closed;
+
+        private Subscription(long next) {
+            this.next = next;
+        }
+
+        // Hand up to max changes published since the last poll to listener; returns how many
+        // changes were delivered or missed, 0 if there was nothing new
+        public int poll(int max, Listener listener) {
+            long end = tail;
+            if (end - next > capacity) {
+                long missed = end - next;
+                next = end;
+                listener.missed(missed);
+                return (int) Math.min(missed, Integer.MAX_VALUE);
+            }
+            int n = 0;
+            while (next < end && n < max) {
+                CatalogChange change = ring.get((int) next & mask);
+                if (change == null || change.getSequence() != next) {
+                    // Overwritten between reading tail and reading the slot
+                    long now = tail;
+                    long missed = now - next;
+                    next = now;
+                    listener.missed(missed);
+                    return n + (int) Math.min(missed, Integer.MAX_VALUE - n);
+                }
+                next++;
+                n++;
+                listener.changed(change);
+            }
+            return n;
+        }
+
+        // Changes published that this subscription has not polled yet
+        public long backlog() {
+            return tail - next;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                subscribers.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package msr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Checkouts and returns of catalog books by patrons, with a loan record and due date for each.
+// A checkout records the loan and then moves the book from Available to Checked Out in the
+// catalog (see CatalogEngine.changeStatus); a return records the return and then makes the book
+// available again. The catalog and the loan log are synced separately, so a crash between the two
+// steps, or a catalog running with PER_INTERVAL durability, can leave them disagreeing; open()
+// settles that in favour of the loan log (see reconcile).
+// Open loans sit in a priority queue ordered by due date, so finding the loans that became
+// overdue costs O(expired log n) instead of a scan of the catalog. Returned loans are left in
+// the queue and skipped when they reach its head; the queue is rebuilt if they ever outnumber
+// the open loans.
+// Loans are kept in loans.log in the catalog's data directory, one fsynced line per checkout or
+// return; the log is rewritten with only the open loans (and the returns open() had to apply)
+// each time it is opened.
+public class CirculationEngine<B extends BookRecord> implements AutoCloseable {
+    public static final Duration DEFAULT_LOAN_PERIOD = Duration.ofDays(14);
+    private static final String LOG_FILE = "loans.log";
+
+    private final CatalogEngine<B> catalog;
+    private final Clock clock;
+    private final FileChannel log;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Loan> loansByBook = new HashMap<>();
+    private final Map<Integer, List<Loan>> loansByPatron = new HashMap<>();
+    private final PriorityQueue<Loan> dueQueue = new PriorityQueue<>(Comparator.comparingLong(Loan::dueMillis));
+    // Open loans past their due date, in the order they became overdue
+    private final Map<Integer, Loan> overdue = new LinkedHashMap<>();
+    private int returnedInQueue;
+
+    // In-memory circulation, e.g. for tests and benchmarks; nothing is written to disk
+    public CirculationEngine(CatalogEngine<B> catalog, Clock clock) {
+        this(catalog, clock, null);
+    }
+
+    private CirculationEngine(CatalogEngine<B> catalog, Clock clock, FileChannel log) {
+        this.catalog = catalog;
+        this.clock = clock;
+        this.log = log;
+    }
+
+    // Restore the open loans from dir and keep logging to it
+    public static <B extends BookRecord> CirculationEngine<B> open(CatalogEngine<B> catalog, Path dir, Clock clock)
+            throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(LOG_FILE);
+        Map<Integer, Loan> open = new LinkedHashMap<>();
+        Set<Integer> returned = new LinkedHashSet<>();
+        if (Files.exists(file)) {
+            replay(file, open, returned);
+        }
+        List<Integer> madeAvailable = reconcile(catalog, open, returned);
+        // Compact: write the open loans to a new file and swap it in. Returns that reconcile had to
+        // apply stay until an open finds them already in the catalog, in case its change is not yet
+        // synced.
+        Path tmp = dir.resolve(LOG_FILE + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Loan loan : open.values()) {
+                out.write(checkoutLine(loan));
+            }
+            for (int bookId : madeAvailable) {
+                out.write(returnLine(bookId));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel log = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        CirculationEngine<B> engine = new CirculationEngine<>(catalog, clock, log);
+        for (Loan loan : open.values()) {
+            engine.index(loan);
+        }
+        return engine;
+    }
+
+    // Circulation for catalog in the library.dataDir directory, on the system clock
+    public static <B extends BookRecord> CirculationEngine<B> openDefault(CatalogEngine<B> catalog) throws IOException {
+        return open(catalog, CatalogPersistence.defaultDir(), Clock.systemUTC());
+    }
+
+    // Lend a book for the default loan period
+    public Loan checkout(int bookId, int patronId) {
+        return checkout(bookId, patronId, DEFAULT_LOAN_PERIOD);
+    }
+
+    public Loan checkout(int bookId, int patronId, Duration period) {
+        return checkout(bookId, patronId, clock.instant().plus(period));
+    }
+
+    // Lend an available book to a patron until due. Throws IllegalArgumentException if there is
+    // no such book or it is not available.
+    public Loan checkout(int bookId, int patronId, Instant due) {
+        lock.lock();
+        try {
+            if (loansByBook.containsKey(bookId)) {
+                throw new IllegalArgumentException("Book is already checked out");
+            }
+            B book = catalog.read(bookId);
+            if (book == null) {
+                throw new IllegalArgumentException("No book found with the provided ID");
+            }
+            if (BookStatus.parse(book.getAvailabilityStatus()) != BookStatus.AVAILABLE) {
+                throw new IllegalArgumentException("Book is already checked out");
+            }
+            // The loan goes to the log first: if the status change is lost, open() redoes it
+            Loan loan = new Loan(bookId, patronId, clock.millis(), due.toEpochMilli());
+            append(checkoutLine(loan));
+            if (catalog.changeStatus(bookId, BookStatus.AVAILABLE, BookStatus.CHECKED_OUT) == null) {
+                // Edited or deleted since the check above; take the loan back without a return,
+                // which would have open() make the book available
+                append("C " + bookId + "\n");
+                throw new IllegalArgumentException(catalog.contains(bookId)
+                        ? "Book is already checked out" : "No book found with the provided ID");
+            }
+            index(loan);
+            return loan;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Close the loan of a book and make it available again; returns the closed loan. Throws
+    // IllegalArgumentException if the book is not on loan.
+    public Loan returnBook(int bookId) {
+        lock.lock();
+        try {
+            Loan loan = loansByBook.get(bookId);
+            if (loan == null) {
+                throw new IllegalArgumentException("Book is not checked out");
+            }
+            // The return goes to the log first: if the status change is lost, open() redoes it
+            append(returnLine(bookId));
+            loansByBook.remove(bookId);
+            List<Loan> patronLoans = loansByPatron.get(loan.getPatronId());
+            patronLoans.remove(loan);
+            if (patronLoans.isEmpty()) {
+                loansByPatron.remove(loan.getPatronId());
+            }
+            if (overdue.remove(bookId) == null) {
+                returnedInQueue++;
+                if (returnedInQueue > 1024 && returnedInQueue > loansByBook.size()) {
+                    dueQueue.clear();
+                    for (Loan open : loansByBook.values()) {
+                        if (!overdue.containsKey(open.getBookId())) {
+                            dueQueue.add(open);
+                        }
+                    }
+                    returnedInQueue = 0;
+                }
+            }
+            // A book deleted while on loan has nothing left to make available
+            catalog.changeStatus(bookId, BookStatus.CHECKED_OUT, BookStatus.AVAILABLE);
+            return loan;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The open loan of a book, or null
+    public Loan loan(int bookId) {
+        lock.lock();
+        try {
+            return loansByBook.get(bookId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Loan> loansOf(int patronId) {
+        lock.lock();
+        try {
+            return new ArrayList<>(loansByPatron.getOrDefault(patronId, List.of()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int openLoans() {
+        lock.lock();
+        try {
+            return loansByBook.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Loans that have become overdue since the last call, in due order
+    public List<Loan> pollOverdue() {
+        lock.lock();
+        try {
+            long now = clock.millis();
+            List<Loan> expired = new ArrayList<>();
+            Loan head;
+            while ((head = dueQueue.peek()) != null && head.dueMillis() < now) {
+                dueQueue.poll();
+                if (loansByBook.get(head.getBookId()) != head) {
+                    returnedInQueue--;
+                    continue;
+                }
+                overdue.put(head.getBookId(), head);
+                expired.add(head);
+            }
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every open loan that is past its due date
+    public List<Loan> overdue() {
+        lock.lock();
+        try {
+            pollOverdue();
+            return new ArrayList<>(overdue.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private void index(Loan loan) {
+        loansByBook.put(loan.getBookId(), loan);
+        loansByPatron.computeIfAbsent(loan.getPatronId(), p -> new ArrayList<>(2)).add(loan);
+        dueQueue.add(loan);
+    }
+
+    private void append(String line) {
+        if (log == null) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                log.write(bytes);
+            }
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // O bookId patronId checkedOutMillis dueMillis
+    private static String checkoutLine(Loan loan) {
+        return "O " + loan.getBookId() + " " + loan.getPatronId() + " " + loan.checkedOutMillis() + " "
+                + loan.dueMillis() + "\n";
+    }
+
+    // R bookId
+    private static String returnLine(int bookId) {
+        return "R " + bookId + "\n";
+    }
+
+    // Bring the catalog in line with the loan log: a book with an open loan is Checked Out and a
+    // book whose last record is a return is Available. Books the log never mentions are left
+    // alone, since the catalog may hold books marked Checked Out by hand. Returns the books that
+    // had to be made available.
+    private static List<Integer> reconcile(CatalogEngine<? extends BookRecord> catalog, Map<Integer, Loan> open,
+            Set<Integer> returned) {
+        for (int bookId : open.keySet()) {
+            catalog.changeStatus(bookId, BookStatus.AVAILABLE, BookStatus.CHECKED_OUT);
+        }
+        List<Integer> madeAvailable = new ArrayList<>();
+        for (int bookId : returned) {
+            if (catalog.changeStatus(bookId, BookStatus.CHECKED_OUT, BookStatus.AVAILABLE) != null) {
+                madeAvailable.add(bookId);
+            }
+        }
+        return madeAvailable;
+    }
+
+    // Apply the log to open, collecting in returned the books whose last record is a return; a
+    // torn last line from a crash ends the replay
+    private static void replay(Path file, Map<Integer, Loan> open, Set<Integer> returned) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ");
+                try {
+                    if (parts[0].equals("O") && parts.length == 5) {
+                        int bookId = Integer.parseInt(parts[1]);
+                        open.put(bookId, new Loan(bookId, Integer.parseInt(parts[2]), Long.parseLong(parts[3]),
+                                Long.parseLong(parts[4])));
+                        returned.remove(bookId);
+                    } else if (parts[0].equals("R") && parts.length == 2) {
+                        int bookId = Integer.parseInt(parts[1]);
+                        open.remove(bookId);
+                        returned.add(bookId);
+                    } else if (parts[0].equals("C") && parts.length == 2) {
+                        open.remove(Integer.parseInt(parts[1]));
+                    } else {
+                        break;
+                    }
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+    }
+}
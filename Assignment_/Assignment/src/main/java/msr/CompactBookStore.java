@@ -0,0 +1,344 @@
+package msr;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Array-based catalog store: one primitive array per field (struct-of-arrays) instead of one
+// object per book. Authors and genres are dictionary-encoded into shared int codes and the status
+// is a one-byte code, so repeated values cost 4 bytes per book instead of a String each.
+// Books handed out by get() are built on demand; changes to them are written back with update().
+// The arrays are cut into chunks of CHUNK slots that are copied on write after a capture, like a
+// SnapshotList's, so capture() shares them instead of copying the whole store.
+public class CompactBookStore<B extends BookRecord> implements CatalogStore<B> {
+    private static final int SHIFT = SnapshotList.SHIFT;
+    private static final int CHUNK = SnapshotList.CHUNK;
+    private static final int MASK = CHUNK - 1;
+
+    private final BookFactory<B> factory;
+    private final StringDictionary authorDictionary = new StringDictionary();
+    private final StringDictionary genreDictionary = new StringDictionary();
+    private final IntIndex slots = new IntIndex();
+
+    private Chunk[] chunks = new Chunk[4];
+    // Bumped by every capture; a chunk stamped with an older epoch may be shared with one. Atomic
+    // because captures run together under the shared lock: a plain ++ could lose a bump, or tear
+    // into an old chunk's stamp where long writes are not atomic.
+    private final AtomicLong epoch = new AtomicLong();
+    private int size;
+
+    public CompactBookStore(BookFactory<B> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return slots.containsKey(id);
+    }
+
+    // Build a Book for the ID, or return null if there is none
+    @Override
+    public B get(int id) {
+        int slot = slots.get(id);
+        return slot == IntIndex.MISSING ? null : materialize(slot);
+    }
+
+    @Override
+    public B read(int id) {
+        return get(id);
+    }
+
+    @Override
+    public int[] ids() {
+        int[] ids = new int[size];
+        for (int c = 0; c * CHUNK < size; c++) {
+            System.arraycopy(chunks[c].ids, 0, ids, c * CHUNK, Math.min(CHUNK, size - c * CHUNK));
+        }
+        return ids;
+    }
+
+    @Override
+    public int idAt(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of bounds for size " + size);
+        }
+        return chunks[position >>> SHIFT].ids[position & MASK];
+    }
+
+    // Read-only view whose getters read straight from the arrays, without building a Book
+    public BookRecord view(int id) {
+        return slots.containsKey(id) ? new View(id) : null;
+    }
+
+    @Override
+    public boolean add(B book) {
+        if (slots.containsKey(book.getId())) {
+            return false;
+        }
+        BookStatus status = statusOf(book);
+        int slot = size;
+        if ((slot & MASK) == 0) {
+            addChunk();
+        }
+        writable(slot).ids[slot & MASK] = book.getId();
+        store(slot, book, status);
+        size++;
+        slots.put(book.getId(), slot);
+        return true;
+    }
+
+    @Override
+    public void update(B book) {
+        int slot = slots.get(book.getId());
+        if (slot != IntIndex.MISSING) {
+            store(slot, book, statusOf(book));
+        }
+    }
+
+    // Remove by ID; the last record's fields move into the freed slot
+    @Override
+    public B remove(int id) {
+        int slot = slots.remove(id);
+        if (slot == IntIndex.MISSING) {
+            return null;
+        }
+        B removed = materialize(slot);
+        int last = --size;
+        Chunk from = chunks[last >>> SHIFT];
+        int f = last & MASK;
+        if (slot != last) {
+            Chunk to = writable(slot);
+            int t = slot & MASK;
+            to.ids[t] = from.ids[f];
+            to.titles[t] = from.titles[f];
+            to.authors[t] = from.authors[f];
+            to.genres[t] = from.genres[f];
+            to.statuses[t] = from.statuses[f];
+            slots.put(to.ids[t], slot);
+        }
+        if (f == 0) {
+            // The last chunk is now empty; drop it rather than copy it
+            chunks[last >>> SHIFT] = null;
+        } else {
+            writable(last).titles[f] = null;
+        }
+        return removed;
+    }
+
+    // Compact stores keep every record in the arrays, so the mapped catalog is read in once
+    @Override
+    public void attachBase(MappedCatalog base, BookFactory<B> baseFactory) {
+        if (size != 0) {
+            throw new IllegalStateException("A base can only be attached to an empty store");
+        }
+        for (int slot = 0; slot < base.size(); slot++) {
+            WriteAheadLog.Entry record = base.materialize(slot, WriteAheadLog.Entry::new);
+            add(factory.create(record.getId(), record.getTitle(), record.getAuthor(), record.getGenre(),
+                    record.getAvailabilityStatus()));
+        }
+    }
+
+    @Override
+    public Collection<BookRecord> capture() {
+        int n = size;
+        Chunk[] shared = Arrays.copyOf(chunks, (n + MASK) >>> SHIFT);
+        epoch.incrementAndGet();
+        String[] authorValues = authorDictionary.snapshot();
+        String[] genreValues = genreDictionary.snapshot();
+        return new AbstractCollection<BookRecord>() {
+            @Override
+            public int size() {
+                return n;
+            }
+
+            @Override
+            public Iterator<BookRecord> iterator() {
+                return new Iterator<BookRecord>() {
+                    private int slot;
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < n;
+                    }
+
+                    @Override
+                    public BookRecord next() {
+                        if (slot >= n) {
+                            throw new NoSuchElementException();
+                        }
+                        Chunk chunk = shared[slot >>> SHIFT];
+                        int i = slot++ & MASK;
+                        return new WriteAheadLog.Entry(chunk.ids[i], chunk.titles[i],
+                                decode(authorValues, chunk.authors[i]), decode(genreValues, chunk.genres[i]),
+                                BookStatus.fromCode(chunk.statuses[i]).label());
+                    }
+                };
+            }
+        };
+    }
+
+    // Number of distinct authors and genres held in the dictionaries
+    public int distinctAuthors() {
+        return authorDictionary.size();
+    }
+
+    public int distinctGenres() {
+        return genreDictionary.size();
+    }
+
+    // Iterates freshly built Books in slot order
+    @Override
+    public Iterator<B> iterator() {
+        return new Iterator<B>() {
+            private int slot;
+
+            @Override
+            public boolean hasNext() {
+                return slot < size;
+            }
+
+            @Override
+            public B next() {
+                if (slot >= size) {
+                    throw new NoSuchElementException();
+                }
+                return materialize(slot++);
+            }
+        };
+    }
+
+    private B materialize(int slot) {
+        Chunk chunk = chunks[slot >>> SHIFT];
+        int i = slot & MASK;
+        return factory.create(chunk.ids[i], chunk.titles[i], authorDictionary.decode(chunk.authors[i]),
+                genreDictionary.decode(chunk.genres[i]), BookStatus.fromCode(chunk.statuses[i]).label());
+    }
+
+    private void store(int slot, BookRecord book, BookStatus status) {
+        Chunk chunk = writable(slot);
+        int i = slot & MASK;
+        chunk.titles[i] = book.getTitle();
+        chunk.authors[i] = authorDictionary.encode(book.getAuthor());
+        chunk.genres[i] = genreDictionary.encode(book.getGenre());
+        chunk.statuses[i] = status.code();
+    }
+
+    private static BookStatus statusOf(BookRecord book) {
+        BookStatus status = BookStatus.parse(book.getAvailabilityStatus());
+        if (status == null) {
+            throw new IllegalArgumentException("Invalid availability status: " + book.getAvailabilityStatus());
+        }
+        return status;
+    }
+
+    private static String decode(String[] values, int code) {
+        return code == StringDictionary.NULL_CODE ? null : values[code];
+    }
+
+    private void addChunk() {
+        int c = size >>> SHIFT;
+        if (c == chunks.length) {
+            chunks = Arrays.copyOf(chunks, c * 2);
+        }
+        chunks[c] = new Chunk(epoch.get());
+    }
+
+    // The chunk holding slot, copied first if a capture may share it
+    private Chunk writable(int slot) {
+        int c = slot >>> SHIFT;
+        Chunk chunk = chunks[c];
+        long current = epoch.get();
+        if (chunk.epoch != current) {
+            chunk = new Chunk(chunk, current);
+            chunks[c] = chunk;
+        }
+        return chunk;
+    }
+
+    // CHUNK consecutive slots of every field
+    private static final class Chunk {
+        final long epoch;
+        final int[] ids;
+        final String[] titles;
+        final int[] authors;
+        final int[] genres;
+        final byte[] statuses;
+
+        Chunk(long epoch) {
+            this.epoch = epoch;
+            ids = new int[CHUNK];
+            titles = new String[CHUNK];
+            authors = new int[CHUNK];
+            genres = new int[CHUNK];
+            statuses = new byte[CHUNK];
+        }
+
+        Chunk(Chunk from, long epoch) {
+            this.epoch = epoch;
+            ids = from.ids.clone();
+            titles = from.titles.clone();
+            authors = from.authors.clone();
+            genres = from.genres.clone();
+            statuses = from.statuses.clone();
+        }
+    }
+
+    // Flyweight over one record; every getter reads the current array contents
+    private final class View implements BookRecord {
+        private final int id;
+
+        View(int id) {
+            this.id = id;
+        }
+
+        private int slot() {
+            int slot = slots.get(id);
+            if (slot == IntIndex.MISSING) {
+                throw new IllegalStateException("Book " + id + " was removed");
+            }
+            return slot;
+        }
+
+        private Chunk chunk(int slot) {
+            return chunks[slot >>> SHIFT];
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+        @Override
+        public String getTitle() {
+            int slot = slot();
+            return chunk(slot).titles[slot & MASK];
+        }
+        @Override
+        public String getAuthor() {
+            int slot = slot();
+            return authorDictionary.decode(chunk(slot).authors[slot & MASK]);
+        }
+        @Override
+        public String getGenre() {
+            int slot = slot();
+            return genreDictionary.decode(chunk(slot).genres[slot & MASK]);
+        }
+        @Override
+        public String getAvailabilityStatus() {
+            int slot = slot();
+            return BookStatus.fromCode(chunk(slot).statuses[slot & MASK]).label();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package msr;
+
+// When appends to the write-ahead log are forced to disk
+public enum Durability {
+    // fsync after every single operation
+    PER_OPERATION,
+    // Concurrent writers share one fsync per group-committed batch
+    PER_BATCH,
+    // A background timer fsyncs periodically; a crash can lose the last interval
+    PER_INTERVAL
+}
@@ -0,0 +1,456 @@
+package msr;
+
+import java.util.Arrays;
+
+// Ordered set of book IDs: a B+tree whose nodes are primitive int arrays, so a lookup touches a
+// handful of cache lines per level and a scan walks densely packed leaves.
+// - Leaves hold up to LEAF_CAPACITY sorted IDs and are chained in ID order, so a range scan or a
+//   page of a listing costs one descent plus the leaves it reads: O(log n + page).
+// - Branches hold separators (the least ID under each child but the first) and the number of
+//   IDs under each child, which also makes the k-th smallest ID an O(log n) lookup.
+// - Nodes that fall below a quarter full are merged with or refilled from a neighbour.
+// A cursor is just the last ID a caller saw: seeking past it again after inserts and deletes
+// never repeats or skips an ID that was there the whole time.
+// Not thread-safe.
+public class IdTree {
+    private static final int LEAF_CAPACITY = 128;
+    private static final int BRANCH_CAPACITY = 64;
+    private static final int LEAF_MIN = LEAF_CAPACITY / 4;
+    private static final int BRANCH_MIN = BRANCH_CAPACITY / 4;
+    // Bulk-loaded nodes are left this full, so the first inserts into them do not split
+    private static final int LEAF_FILL = LEAF_CAPACITY * 3 / 4;
+    private static final int BRANCH_FILL = BRANCH_CAPACITY * 3 / 4;
+
+    private Node root = new Node(true);
+    private int size;
+    // Set by insert(): whether the ID was new, and the separator of the node a split produced
+    private boolean changed;
+    private int promoted;
+
+    // Tree over IDs that are already sorted ascending and distinct, built bottom-up in O(n)
+    public static IdTree build(int[] sortedIds) {
+        IdTree tree = new IdTree();
+        int n = sortedIds.length;
+        if (n == 0) {
+            return tree;
+        }
+        for (int i = 1; i < n; i++) {
+            if (sortedIds[i] <= sortedIds[i - 1]) {
+                throw new IllegalArgumentException("IDs must be sorted and distinct");
+            }
+        }
+        int leafCount = (n + LEAF_FILL - 1) / LEAF_FILL;
+        Node[] level = new Node[leafCount];
+        int[] least = new int[leafCount];
+        int from = 0;
+        for (int i = 0; i < leafCount; i++) {
+            // Spread the IDs evenly so the last leaf is not left nearly empty
+            int to = (int) ((long) n * (i + 1) / leafCount);
+            Node leaf = new Node(true);
+            System.arraycopy(sortedIds, from, leaf.keys, 0, to - from);
+            leaf.size = to - from;
+            if (i > 0) {
+                level[i - 1].next = leaf;
+            }
+            level[i] = leaf;
+            least[i] = sortedIds[from];
+            from = to;
+        }
+        while (level.length > 1) {
+            int parentCount = (level.length + BRANCH_FILL - 1) / BRANCH_FILL;
+            Node[] parents = new Node[parentCount];
+            int[] parentLeast = new int[parentCount];
+            int first = 0;
+            for (int i = 0; i < parentCount; i++) {
+                int last = (int) ((long) level.length * (i + 1) / parentCount);
+                Node branch = new Node(false);
+                for (int c = first; c < last; c++) {
+                    int k = c - first;
+                    branch.children[k] = level[c];
+                    branch.counts[k] = level[c].count();
+                    if (k > 0) {
+                        branch.keys[k - 1] = least[c];
+                    }
+                }
+                branch.size = last - first;
+                parents[i] = branch;
+                parentLeast[i] = least[first];
+                first = last;
+            }
+            level = parents;
+            least = parentLeast;
+        }
+        tree.root = level[0];
+        tree.size = n;
+        return tree;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        Node node = root;
+        while (!node.isLeaf()) {
+            node = node.children[childIndex(node, id)];
+        }
+        int i = lowerBound(node.keys, node.size, id);
+        return i < node.size && node.keys[i] == id;
+    }
+
+    // Add an ID; returns false if it was already there
+    public boolean add(int id) {
+        changed = false;
+        Node split = insert(root, id);
+        if (split != null) {
+            Node newRoot = new Node(false);
+            newRoot.children[0] = root;
+            newRoot.children[1] = split;
+            newRoot.counts[0] = root.count();
+            newRoot.counts[1] = split.count();
+            newRoot.keys[0] = promoted;
+            newRoot.size = 2;
+            root = newRoot;
+        }
+        if (changed) {
+            size++;
+        }
+        return changed;
+    }
+
+    // Remove an ID; returns false if it was not there
+    public boolean remove(int id) {
+        if (!delete(root, id)) {
+            return false;
+        }
+        size--;
+        if (!root.isLeaf() && root.size == 1) {
+            root = root.children[0];
+        }
+        return true;
+    }
+
+    // Up to limit IDs above afterId, ascending: one page of a listing, with afterId as the cursor
+    public int[] after(int afterId, int limit) {
+        if (afterId == Integer.MAX_VALUE) {
+            return new int[0];
+        }
+        return range(afterId + 1, Integer.MAX_VALUE, limit);
+    }
+
+    // Up to limit IDs from fromId to toId (both inclusive), ascending
+    public int[] range(int fromId, int toId, int limit) {
+        if (fromId > toId || limit <= 0 || size == 0) {
+            return new int[0];
+        }
+        Node leaf = root;
+        while (!leaf.isLeaf()) {
+            leaf = leaf.children[childIndex(leaf, fromId)];
+        }
+        return collect(leaf, lowerBound(leaf.keys, leaf.size, fromId), toId, Math.min(limit, size));
+    }
+
+    // Number of IDs below id
+    public int rank(int id) {
+        int rank = 0;
+        Node node = root;
+        while (!node.isLeaf()) {
+            int c = childIndex(node, id);
+            for (int i = 0; i < c; i++) {
+                rank += node.counts[i];
+            }
+            node = node.children[c];
+        }
+        return rank + lowerBound(node.keys, node.size, id);
+    }
+
+    // Up to count IDs starting with the rank-th smallest (0-based), ascending
+    public int[] fromRank(int rank, int count) {
+        if (rank < 0 || rank >= size || count <= 0) {
+            return new int[0];
+        }
+        Node node = root;
+        int remaining = rank;
+        while (!node.isLeaf()) {
+            int c = 0;
+            while (remaining >= node.counts[c]) {
+                remaining -= node.counts[c++];
+            }
+            node = node.children[c];
+        }
+        return collect(node, remaining, Integer.MAX_VALUE, Math.min(count, size - rank));
+    }
+
+    // Approximate heap footprint of the nodes
+    public long sizeInBytes() {
+        return sizeInBytes(root);
+    }
+
+    private static long sizeInBytes(Node node) {
+        long bytes = 32 + 16 + 4L * node.keys.length;
+        if (!node.isLeaf()) {
+            bytes += 2 * 16 + 8L * node.children.length;
+            for (int i = 0; i < node.size; i++) {
+                bytes += sizeInBytes(node.children[i]);
+            }
+        }
+        return bytes;
+    }
+
+    // IDs from position i of leaf onwards, up to toId, at most max of them
+    private static int[] collect(Node leaf, int i, int toId, int max) {
+        // Sized for a page, grown for long ranges
+        int[] out = new int[Math.min(max, LEAF_CAPACITY)];
+        int n = 0;
+        while (leaf != null && n < max) {
+            for (; i < leaf.size && n < max; i++) {
+                int id = leaf.keys[i];
+                if (id > toId) {
+                    return Arrays.copyOf(out, n);
+                }
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, (int) Math.min(max, 2L * n));
+                }
+                out[n++] = id;
+            }
+            leaf = leaf.next;
+            i = 0;
+        }
+        return n == max ? out : Arrays.copyOf(out, n);
+    }
+
+    // Returns the new right sibling if node split, with its separator in promoted
+    private Node insert(Node node, int id) {
+        if (node.isLeaf()) {
+            int i = lowerBound(node.keys, node.size, id);
+            if (i < node.size && node.keys[i] == id) {
+                return null;
+            }
+            System.arraycopy(node.keys, i, node.keys, i + 1, node.size - i);
+            node.keys[i] = id;
+            node.size++;
+            changed = true;
+            return node.size > LEAF_CAPACITY ? splitLeaf(node) : null;
+        }
+        int c = childIndex(node, id);
+        Node split = insert(node.children[c], id);
+        if (!changed) {
+            return null;
+        }
+        node.counts[c]++;
+        if (split == null) {
+            return null;
+        }
+        int tail = node.size - 1 - c;
+        System.arraycopy(node.keys, c, node.keys, c + 1, tail);
+        System.arraycopy(node.children, c + 1, node.children, c + 2, tail);
+        System.arraycopy(node.counts, c + 1, node.counts, c + 2, tail);
+        node.keys[c] = promoted;
+        node.children[c + 1] = split;
+        int moved = split.count();
+        node.counts[c] -= moved;
+        node.counts[c + 1] = moved;
+        node.size++;
+        return node.size > BRANCH_CAPACITY ? splitBranch(node) : null;
+    }
+
+    private Node splitLeaf(Node leaf) {
+        int half = leaf.size / 2;
+        Node right = new Node(true);
+        right.size = leaf.size - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+        leaf.size = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        promoted = right.keys[0];
+        return right;
+    }
+
+    private Node splitBranch(Node branch) {
+        int n = branch.size;
+        int half = n / 2;
+        Node right = new Node(false);
+        right.size = n - half;
+        System.arraycopy(branch.children, half, right.children, 0, right.size);
+        System.arraycopy(branch.counts, half, right.counts, 0, right.size);
+        System.arraycopy(branch.keys, half, right.keys, 0, right.size - 1);
+        promoted = branch.keys[half - 1];
+        Arrays.fill(branch.children, half, n, null);
+        branch.size = half;
+        return right;
+    }
+
+    private boolean delete(Node node, int id) {
+        if (node.isLeaf()) {
+            int i = lowerBound(node.keys, node.size, id);
+            if (i == node.size || node.keys[i] != id) {
+                return false;
+            }
+            System.arraycopy(node.keys, i + 1, node.keys, i, node.size - i - 1);
+            node.size--;
+            return true;
+        }
+        // Separators may name IDs that are gone; they still bound the children correctly
+        int c = childIndex(node, id);
+        Node child = node.children[c];
+        if (!delete(child, id)) {
+            return false;
+        }
+        node.counts[c]--;
+        if (child.size < (child.isLeaf() ? LEAF_MIN : BRANCH_MIN) && node.size > 1) {
+            rebalance(node, c);
+        }
+        return true;
+    }
+
+    // Merge the underfull child c with a neighbour, or even the two out if they do not fit in one
+    private void rebalance(Node parent, int c) {
+        int l = c > 0 ? c - 1 : c;
+        Node left = parent.children[l];
+        Node right = parent.children[l + 1];
+        int total = left.size + right.size;
+        if (left.isLeaf()) {
+            if (total <= LEAF_CAPACITY) {
+                System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+                left.size = total;
+                left.next = right.next;
+                removeChild(parent, l + 1);
+                parent.counts[l] = total;
+                return;
+            }
+            int half = total / 2;
+            if (left.size < half) {
+                int move = half - left.size;
+                System.arraycopy(right.keys, 0, left.keys, left.size, move);
+                System.arraycopy(right.keys, move, right.keys, 0, right.size - move);
+            } else {
+                int move = left.size - half;
+                System.arraycopy(right.keys, 0, right.keys, move, right.size);
+                System.arraycopy(left.keys, half, right.keys, 0, move);
+            }
+            left.size = half;
+            right.size = total - half;
+            parent.keys[l] = right.keys[0];
+            parent.counts[l] = left.size;
+            parent.counts[l + 1] = right.size;
+            return;
+        }
+        // Branches: lay both out with the parent's separator between them, then cut again
+        int[] keys = new int[total - 1];
+        Node[] children = new Node[total];
+        int[] counts = new int[total];
+        System.arraycopy(left.keys, 0, keys, 0, left.size - 1);
+        keys[left.size - 1] = parent.keys[l];
+        System.arraycopy(right.keys, 0, keys, left.size, right.size - 1);
+        System.arraycopy(left.children, 0, children, 0, left.size);
+        System.arraycopy(right.children, 0, children, left.size, right.size);
+        System.arraycopy(left.counts, 0, counts, 0, left.size);
+        System.arraycopy(right.counts, 0, counts, left.size, right.size);
+        if (total <= BRANCH_CAPACITY) {
+            System.arraycopy(keys, 0, left.keys, 0, total - 1);
+            System.arraycopy(children, 0, left.children, 0, total);
+            System.arraycopy(counts, 0, left.counts, 0, total);
+            left.size = total;
+            removeChild(parent, l + 1);
+            parent.counts[l] = left.count();
+            return;
+        }
+        int half = total / 2;
+        Arrays.fill(left.children, null);
+        Arrays.fill(right.children, null);
+        System.arraycopy(keys, 0, left.keys, 0, half - 1);
+        System.arraycopy(children, 0, left.children, 0, half);
+        System.arraycopy(counts, 0, left.counts, 0, half);
+        left.size = half;
+        System.arraycopy(keys, half, right.keys, 0, total - half - 1);
+        System.arraycopy(children, half, right.children, 0, total - half);
+        System.arraycopy(counts, half, right.counts, 0, total - half);
+        right.size = total - half;
+        parent.keys[l] = keys[half - 1];
+        parent.counts[l] = left.count();
+        parent.counts[l + 1] = right.count();
+    }
+
+    // Drop child c (c > 0) and the separator in front of it
+    private static void removeChild(Node parent, int c) {
+        int tail = parent.size - 1 - c;
+        System.arraycopy(parent.keys, c, parent.keys, c - 1, tail);
+        System.arraycopy(parent.children, c + 1, parent.children, c, tail);
+        System.arraycopy(parent.counts, c + 1, parent.counts, c, tail);
+        parent.size--;
+        parent.children[parent.size] = null;
+    }
+
+    // Index of the child of branch whose IDs span id: the number of separators <= id
+    private static int childIndex(Node branch, int id) {
+        int lo = 0;
+        int hi = branch.size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (branch.keys[mid] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First index in keys[0..n) holding a value >= id
+    private static int lowerBound(int[] keys, int n, int id) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static final class Node {
+        // Leaf: the IDs. Branch: keys[i] is the least ID under children[i + 1].
+        final int[] keys;
+        // Branch only: the children and the number of IDs under each
+        final Node[] children;
+        final int[] counts;
+        // IDs in a leaf, children of a branch; one over capacity just before a split
+        int size;
+        // Next leaf in ID order
+        Node next;
+
+        Node(boolean leaf) {
+            if (leaf) {
+                keys = new int[LEAF_CAPACITY + 1];
+                children = null;
+                counts = null;
+            } else {
+                keys = new int[BRANCH_CAPACITY];
+                children = new Node[BRANCH_CAPACITY + 1];
+                counts = new int[BRANCH_CAPACITY + 1];
+            }
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        int count() {
+            if (isLeaf()) {
+                return size;
+            }
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                n += counts[i];
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package msr;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to int values (no boxing).
+// Uses linear probing and backward-shift deletion, so there are no tombstones
+// and lookups stay O(1) however many removes have happened.
+public class IntIndex {
+    public static final int MISSING = -1;
+
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // Key 0 marks a free cell, so its mapping lives outside the table
+    private boolean hasFreeKey;
+    private int freeKeyValue = MISSING;
+
+    public IntIndex() {
+        this(16);
+    }
+
+    public IntIndex(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR));
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    // Returns the value mapped to key, or MISSING
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : MISSING;
+        }
+        int i = slotFor(key);
+        int k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    // Maps key to value and returns the previous value, or MISSING
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : MISSING;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int i = slotFor(key);
+        int k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return MISSING;
+    }
+
+    // Removes the mapping for key and returns its value, or MISSING
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return MISSING;
+            }
+            int previous = freeKeyValue;
+            hasFreeKey = false;
+            freeKeyValue = MISSING;
+            size--;
+            return previous;
+        }
+        int i = slotFor(key);
+        int k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key) {
+                int previous = values[i];
+                shiftKeys(i);
+                size--;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasFreeKey = false;
+        freeKeyValue = MISSING;
+        size = 0;
+    }
+
+    // Close the gap left at pos by moving back any entry whose probe chain crosses it
+    private void shiftKeys(int pos) {
+        int last;
+        int k;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = slotFor(k);
+                // Entry may move to last only if its home slot is not in (last, pos]
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int j = slotFor(k);
+                while (keys[j] != FREE_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = Math.min(capacity - 1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    private int slotFor(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Index too large: " + n);
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,224 @@
+package msr;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Just enough JSON for books: writing a book as an object, and reading a flat object whose
+// values are strings, numbers, booleans or null. Anything nested is rejected.
+final class Json {
+    private Json() {
+    }
+
+    // {"id":1,"title":"...","author":"...","genre":"...","availabilityStatus":"..."}
+    static void writeBook(Appendable out, BookRecord book) throws IOException {
+        out.append("{\"id\":").append(Integer.toString(book.getId()));
+        out.append(",\"title\":");
+        writeString(out, book.getTitle());
+        out.append(",\"author\":");
+        writeString(out, book.getAuthor());
+        out.append(",\"genre\":");
+        writeString(out, book.getGenre());
+        out.append(",\"availabilityStatus\":");
+        writeString(out, book.getAvailabilityStatus());
+        out.append('}');
+    }
+
+    static String book(BookRecord book) {
+        StringBuilder sb = new StringBuilder(128);
+        try {
+            writeBook(sb, book);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return sb.toString();
+    }
+
+    static void writeString(Appendable out, String s) throws IOException {
+        if (s == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(s, start, i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    out.append(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        out.append(s, start, s.length()).append('"');
+    }
+
+    static String string(String s) {
+        StringBuilder sb = new StringBuilder(s == null ? 4 : s.length() + 2);
+        try {
+            writeString(sb, s);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return sb.toString();
+    }
+
+    // Parse a flat object; numbers and booleans come back as their text, null as null
+    static Map<String, String> parseObject(String json) {
+        Parser p = new Parser(json);
+        Map<String, String> fields = new HashMap<>();
+        p.skipSpace();
+        p.expect('{');
+        p.skipSpace();
+        if (p.peek() == '}') {
+            p.pos++;
+        } else {
+            while (true) {
+                p.skipSpace();
+                String key = p.readString();
+                p.skipSpace();
+                p.expect(':');
+                p.skipSpace();
+                fields.put(key, p.readValue());
+                p.skipSpace();
+                if (p.peek() == ',') {
+                    p.pos++;
+                    continue;
+                }
+                p.expect('}');
+                break;
+            }
+        }
+        p.skipSpace();
+        if (p.pos != json.length()) {
+            throw p.error("Unexpected text after the object");
+        }
+        return fields;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        char peek() {
+            if (pos >= s.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            return s.charAt(pos);
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested values are not supported");
+            }
+            int start = pos;
+            while (pos < s.length() && ",}] \t\r\n".indexOf(s.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = s.substring(start, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("Invalid value '" + literal + "'");
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = peek();
+                pos++;
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = peek();
+                pos++;
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(e);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > s.length()) {
+                            throw error("Bad \\u escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Bad \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("Bad escape '\\" + e + "'");
+                }
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+    }
+}
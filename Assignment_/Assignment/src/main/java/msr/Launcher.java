@@ -0,0 +1,16 @@
+package msr;
+
+import java.util.Arrays;
+
+// Entry point of the packaged jar: the JavaFX app by default, or the headless HTTP server
+// with --server [--port N]. A main class that is not itself a JavaFX Application also lets the
+// jar start with JavaFX on the class path.
+public class Launcher {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--server")) {
+            CatalogServer.main(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            LibraryManagementApp.main(args);
+        }
+    }
+}
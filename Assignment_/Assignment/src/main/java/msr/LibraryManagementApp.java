@@ -1,8 +1,7 @@
 package msr;
 
 import javafx.application.Application;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 import javafx.geometry.*;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -10,9 +9,18 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+
 public class LibraryManagementApp extends Application {
     private TableView<Book> table;
-    private ObservableList<Book> bookList;
+    private CatalogEngine<Book> books;
+    private PagedBookList<Book> rows;
+    private BackgroundSearch search;
+    private TypeAheadFilter<Book> filter;
+    private Autocomplete autocomplete;
+    // True while the rows are ranked search results rather than type-ahead matches
+    private boolean rankedResults;
+    private static final int SEARCH_RESULT_LIMIT = 200;
 
     // Input fields
     private TextField idField;
@@ -20,6 +28,7 @@ public class LibraryManagementApp extends Application {
     private TextField authorField;
     private TextField genreField;
     private TextField availabilityField;
+    private TextField searchField;
 
     public static void main(String[] args) {
         launch(args);
@@ -29,36 +38,78 @@ public class LibraryManagementApp extends Application {
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Library Management System");
 
-        // Initialize the book list
-        bookList = FXCollections.observableArrayList();
+        // Restore the catalog saved by earlier runs
+        try {
+            books = CatalogEngine.openDefault(Book::new, new BookStore<>());
+        } catch (IOException e) {
+            showAlert("Storage Error", "Could not load the saved catalog: " + e.getMessage());
+            Platform.exit();
+            return;
+        }
+        rows = new PagedBookList<>(books);
+        // Show every add, update and delete as it commits, from this window or any other writer
+        rows.follow();
+        filter = new TypeAheadFilter<>(books, rows, this::applySort);
+        search = new BackgroundSearch(books, books.metrics());
+        autocomplete = new Autocomplete(books);
 
-        // Create the TableView and its columns
+        // Create the TableView and its columns; rows are read from the store as they scroll into view
         table = new TableView<>();
-        table.setItems(bookList);
+        table.setItems(rows);
         table.setPrefWidth(600);
         table.setPrefHeight(300);
 
         TableColumn<Book, Integer> idCol = new TableColumn<>("ID");
         idCol.setCellValueFactory(new PropertyValueFactory<>("id"));
         idCol.setPrefWidth(50);
+        idCol.setUserData(BookField.ID);
 
         TableColumn<Book, String> titleCol = new TableColumn<>("Title");
         titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
         titleCol.setPrefWidth(150);
+        titleCol.setUserData(BookField.TITLE);
 
         TableColumn<Book, String> authorCol = new TableColumn<>("Author");
         authorCol.setCellValueFactory(new PropertyValueFactory<>("author"));
         authorCol.setPrefWidth(100);
+        authorCol.setUserData(BookField.AUTHOR);
 
         TableColumn<Book, String> genreCol = new TableColumn<>("Genre");
         genreCol.setCellValueFactory(new PropertyValueFactory<>("genre"));
         genreCol.setPrefWidth(100);
+        genreCol.setUserData(BookField.GENRE);
 
         TableColumn<Book, String> statusCol = new TableColumn<>("Status");
         statusCol.setCellValueFactory(new PropertyValueFactory<>("availabilityStatus"));
         statusCol.setPrefWidth(100);
+        statusCol.setUserData(BookField.STATUS);
 
         table.getColumns().addAll(idCol, titleCol, authorCol, genreCol, statusCol);
+        table.setSortPolicy(t -> applySort());
+
+        // Create keyword search bar above the table
+        searchField = new TextField();
+        searchField.setPromptText("Search title, author or genre");
+        searchField.setPrefWidth(300);
+        searchField.textProperty().addListener((obs, oldText, newText) -> {
+            rankedResults = false;
+            search.cancel();
+            filter.textChanged(newText);
+        });
+        searchField.setOnAction(e -> runSearch());
+
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> runSearch());
+
+        Button showAllButton = new Button("Show All");
+        showAllButton.setOnAction(e -> {
+            searchField.clear();
+            runSearch();
+        });
+
+        HBox searchBox = new HBox(10);
+        searchBox.getChildren().addAll(searchField, searchButton, showAllButton);
+        searchBox.setAlignment(Pos.CENTER);
 
         // Create input fields with prompt text
         idField = new TextField();
@@ -73,6 +124,10 @@ public class LibraryManagementApp extends Application {
         authorField.setPromptText("Author");
         authorField.setPrefWidth(100);
 
+        // Offer the titles and authors already in the catalog while they are typed
+        autocomplete.attach(titleField, BookField.TITLE);
+        autocomplete.attach(authorField, BookField.AUTHOR);
+
         genreField = new TextField();
         genreField.setPromptText("Genre");
         genreField.setPrefWidth(100);
@@ -102,7 +157,7 @@ public class LibraryManagementApp extends Application {
         // Layout: Combine table, inputs, and buttons
         VBox vbox = new VBox(10);
         vbox.setPadding(new Insets(15));
-        vbox.getChildren().addAll(table, inputBox, buttonBox);
+        vbox.getChildren().addAll(searchBox, table, inputBox, buttonBox);
 
         Scene scene = new Scene(vbox, 800, 500);
         // Optional: Add external CSS for a more polished look by adding scene.getStylesheets().add("styles.css");
@@ -110,16 +165,21 @@ public class LibraryManagementApp extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() throws IOException {
+        if (books != null) {
+            books.close();
+        }
+    }
+
     // Add a new book to the list
     private void addBook() {
         try {
             int id = Integer.parseInt(idField.getText().trim());
             // Check for unique Book ID
-            for (Book b : bookList) {
-                if (b.getId() == id) {
-                    showAlert("Duplicate ID", "Book ID already exists.");
-                    return;
-                }
+            if (books.contains(id)) {
+                showAlert("Duplicate ID", "Book ID already exists.");
+                return;
             }
             String title = titleField.getText().trim();
             String author = authorField.getText().trim();
@@ -129,12 +189,25 @@ public class LibraryManagementApp extends Application {
                 showAlert("Input Error", "Title and Author cannot be empty.");
                 return;
             }
-            if (!status.equalsIgnoreCase("Available") && !status.equalsIgnoreCase("Checked Out")) {
+            if (!BookStatus.isValid(status)) {
                 showAlert("Input Error", "Availability must be 'Available' or 'Checked Out'.");
                 return;
             }
-            Book book = new Book(id, title, author, genre, capitalizeStatus(status));
-            bookList.add(book);
+            Book book = books.addBook(id, title, author, genre, status);
+            if (book == null) {
+                showAlert("Duplicate ID", "Book ID already exists.");
+                return;
+            }
+            search.bookAdded(book);
+            autocomplete.bookAdded(book);
+            // The table picks up the new book from the change feed; search results are rerun
+            if (!searchField.getText().trim().isEmpty()) {
+                if (rankedResults) {
+                    runSearch();
+                } else {
+                    filter.rerun();
+                }
+            }
             clearInputs();
         } catch (NumberFormatException e) {
             showAlert("Input Error", "ID must be an integer.");
@@ -149,27 +222,19 @@ public class LibraryManagementApp extends Application {
             return;
         }
         // Update fields only if input is provided
-        String newTitle = titleField.getText().trim();
-        if (!newTitle.isEmpty()) {
-            selected.setTitle(newTitle);
-        }
-        String newAuthor = authorField.getText().trim();
-        if (!newAuthor.isEmpty()) {
-            selected.setAuthor(newAuthor);
-        }
-        String newGenre = genreField.getText().trim();
-        if (!newGenre.isEmpty()) {
-            selected.setGenre(newGenre);
-        }
         String newStatus = availabilityField.getText().trim();
-        if (!newStatus.isEmpty()) {
-            if (!newStatus.equalsIgnoreCase("Available") && !newStatus.equalsIgnoreCase("Checked Out")) {
-                showAlert("Input Error", "Availability must be 'Available' or 'Checked Out'.");
-                return;
-            }
-            selected.setAvailabilityStatus(capitalizeStatus(newStatus));
+        if (!newStatus.isEmpty() && !BookStatus.isValid(newStatus)) {
+            showAlert("Input Error", "Availability must be 'Available' or 'Checked Out'.");
+            return;
         }
-        table.refresh();
+        Book updated = books.updateBook(selected.getId(), titleField.getText(), authorField.getText(),
+                genreField.getText(), newStatus);
+        if (updated == null) {
+            showAlert("Selection Error", "The selected book no longer exists.");
+            return;
+        }
+        search.bookChanged(selected, updated);
+        autocomplete.bookChanged(selected, updated);
         clearInputs();
     }
 
@@ -180,17 +245,40 @@ public class LibraryManagementApp extends Application {
             showAlert("Selection Error", "No book selected. Please select a book from the table.");
             return;
         }
-        bookList.remove(selected);
+        books.deleteBook(selected.getId());
+        search.bookRemoved(selected.getId());
+        autocomplete.bookRemoved(selected);
         clearInputs();
     }
 
-    // Helper method to capitalize status text
-    private String capitalizeStatus(String status) {
-        if (status.equalsIgnoreCase("available"))
-            return "Available";
-        else if (status.equalsIgnoreCase("checked out"))
-            return "Checked Out";
-        return status;
+    // Show the ranked matches for the search text, or every book when it is blank;
+    // while typing, the type-ahead filter shows unranked substring matches instead.
+    // The search runs in the background and its results replace the rows when they are ready.
+    private void runSearch() {
+        filter.cancel();
+        search.cancel();
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            applySort();
+            return;
+        }
+        rankedResults = true;
+        search.search(query, SEARCH_RESULT_LIMIT, rows::showOnly);
+    }
+
+    // Sort the whole catalog by the table's primary sort column; search and filter results keep their order
+    private boolean applySort() {
+        if (!searchField.getText().trim().isEmpty()) {
+            return true;
+        }
+        if (table.getSortOrder().isEmpty()) {
+            rows.showAll();
+        } else {
+            TableColumn<Book, ?> column = table.getSortOrder().get(0);
+            rows.sortBy((BookField) column.getUserData(),
+                    column.getSortType() == TableColumn.SortType.ASCENDING);
+        }
+        return true;
     }
 
     // Clear input fields after an action
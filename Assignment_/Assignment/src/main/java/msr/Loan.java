@@ -0,0 +1,54 @@
+package msr;
+
+import java.time.Instant;
+
+// One book lent to one patron, from checkout until it is returned
+public final class Loan {
+    private final int bookId;
+    private final int patronId;
+    private final long checkedOutMillis;
+    private final long dueMillis;
+
+    public Loan(int bookId, int patronId, long checkedOutMillis, long dueMillis) {
+        this.bookId = bookId;
+        this.patronId = patronId;
+        this.checkedOutMillis = checkedOutMillis;
+        this.dueMillis = dueMillis;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getPatronId() {
+        return patronId;
+    }
+
+    public Instant getCheckedOut() {
+        return Instant.ofEpochMilli(checkedOutMillis);
+    }
+
+    public Instant getDue() {
+        return Instant.ofEpochMilli(dueMillis);
+    }
+
+    long checkedOutMillis() {
+        return checkedOutMillis;
+    }
+
+    long dueMillis() {
+        return dueMillis;
+    }
+
+    public boolean isOverdueAt(Instant now) {
+        return now.toEpochMilli() > dueMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Book ID: " + bookId +
+                ", Patron ID: " + patronId +
+                ", Checked Out: " + getCheckedOut() +
+                ", Due: " + getDue();
+    }
+}
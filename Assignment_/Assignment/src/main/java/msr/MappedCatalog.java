@@ -0,0 +1,214 @@
+package msr;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+// Fixed-layout binary catalog file that is read through FileChannel.map, so opening it costs
+// the same whatever the catalog size and the OS pages records in as they are touched.
+//
+// Layout (little-endian):
+//   header   magic, version, seq, count, index capacity, section offsets
+//   records  count x 16 bytes: id, reserved, offset of the record's strings in the heap
+//   heap     per record: title, author, genre, status, each as int length (-1 = null) + UTF-8
+//   index    open-addressing table of (slot + 1), 0 = empty, keyed by the record's id
+// Heap entries never straddle a HEAP_CHUNK boundary, so the heap can be mapped in chunks
+// and catalogs larger than 2 GB still work.
+public final class MappedCatalog implements AutoCloseable {
+    private static final int MAGIC = 0x4C42434D; // "LBCM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 16;
+    private static final int HEAP_CHUNK = 1 << 30;
+
+    private final FileChannel channel;
+    private final long seq;
+    private final int count;
+    private final int indexMask;
+    private final ByteBuffer records;
+    private final ByteBuffer index;
+    private final ByteBuffer[] heap;
+
+    private MappedCatalog(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a mapped catalog file");
+        }
+        seq = header.getLong(8);
+        count = header.getInt(16);
+        int indexCapacity = header.getInt(20);
+        long recordsOffset = header.getLong(24);
+        long heapOffset = header.getLong(32);
+        long heapLength = header.getLong(40);
+        long indexOffset = header.getLong(48);
+        indexMask = indexCapacity - 1;
+        records = map(recordsOffset, (long) count * RECORD_SIZE);
+        index = map(indexOffset, (long) indexCapacity * 4);
+        heap = new ByteBuffer[(int) ((heapLength + HEAP_CHUNK - 1) / HEAP_CHUNK)];
+        for (int i = 0; i < heap.length; i++) {
+            long start = (long) i * HEAP_CHUNK;
+            heap[i] = map(heapOffset + start, Math.min(HEAP_CHUNK, heapLength - start));
+        }
+    }
+
+    public static MappedCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedCatalog(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Write the books to file; the caller fsyncs and renames it into place
+    public static void write(Path file, long seq, Collection<? extends BookRecord> books) throws IOException {
+        int count = books.size();
+        int indexCapacity = Integer.highestOneBit(Math.max(count * 2 - 1, 1)) << 1;
+        int[] ids = new int[count];
+        long recordsOffset = HEADER_SIZE;
+        long heapOffset = recordsOffset + (long) count * RECORD_SIZE;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Heap first, streamed after the space reserved for header and records
+            channel.position(heapOffset);
+            ByteBuffer recordSection = ByteBuffer.allocate(count * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            long heapPos = 0;
+            int slot = 0;
+            for (BookRecord b : books) {
+                byte[][] fields = {bytes(b.getTitle()), bytes(b.getAuthor()), bytes(b.getGenre()),
+                        bytes(b.getAvailabilityStatus())};
+                int length = 0;
+                for (byte[] f : fields) {
+                    length += 4 + (f == null ? 0 : f.length);
+                }
+                long chunkLeft = HEAP_CHUNK - heapPos % HEAP_CHUNK;
+                if (length > chunkLeft) {
+                    out.write(new byte[(int) chunkLeft]);
+                    heapPos += chunkLeft;
+                }
+                ids[slot] = b.getId();
+                recordSection.putInt(b.getId()).putInt(0).putLong(heapPos);
+                for (byte[] f : fields) {
+                    writeIntLE(out, f == null ? -1 : f.length);
+                    if (f != null) {
+                        out.write(f);
+                    }
+                }
+                heapPos += length;
+                slot++;
+            }
+            out.flush();
+
+            // ID index after the heap
+            long indexOffset = heapOffset + heapPos;
+            ByteBuffer table = ByteBuffer.allocate(indexCapacity * 4).order(ByteOrder.LITTLE_ENDIAN);
+            int mask = indexCapacity - 1;
+            for (int s = 0; s < count; s++) {
+                int i = slotFor(ids[s], mask);
+                while (table.getInt(i * 4) != 0) {
+                    i = (i + 1) & mask;
+                }
+                table.putInt(i * 4, s + 1);
+            }
+            writeFully(channel, table, indexOffset);
+            recordSection.flip();
+            writeFully(channel, recordSection, recordsOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(seq).putInt(count).putInt(indexCapacity)
+                    .putLong(recordsOffset).putLong(heapOffset).putLong(heapPos).putLong(indexOffset);
+            header.clear();
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+    }
+
+    // Log sequence number the catalog was written at
+    public long seq() {
+        return seq;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Slot of the record with this id, or -1
+    public int slotOf(int id) {
+        int i = slotFor(id, indexMask);
+        int entry;
+        while ((entry = index.getInt(i * 4)) != 0) {
+            if (idAt(entry - 1) == id) {
+                return entry - 1;
+            }
+            i = (i + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    public int idAt(int slot) {
+        return records.getInt(slot * RECORD_SIZE);
+    }
+
+    // Build a Book for the record in slot; only here are its strings decoded
+    public <B extends BookRecord> B materialize(int slot, BookFactory<B> factory) {
+        long offset = records.getLong(slot * RECORD_SIZE + 8);
+        ByteBuffer in = heap[(int) (offset / HEAP_CHUNK)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position((int) (offset % HEAP_CHUNK));
+        String title = string(in);
+        String author = string(in);
+        String genre = string(in);
+        String status = string(in);
+        return factory.create(idAt(slot), title, author, genre, status);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mappings stay valid until garbage collected; closing only releases the descriptor
+        channel.close();
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static int slotFor(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeIntLE(DataOutputStream out, int v) throws IOException {
+        out.writeInt(Integer.reverseBytes(v));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package msr;
+
+// Immutable summary of one operation's recordings, as returned over JMX (latencies in ns)
+public class OperationStats {
+    private final String operation;
+    private final long count;
+    private final double perSecond;
+    private final long results;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    OperationStats(CatalogMetrics.Operation operation, LatencyHistogram.Snapshot latency, long results, double seconds) {
+        this.operation = operation.name();
+        this.count = latency.count();
+        this.perSecond = seconds > 0 ? count / seconds : 0;
+        this.results = results;
+        this.meanNanos = latency.mean();
+        this.p50Nanos = latency.percentile(50);
+        this.p99Nanos = latency.percentile(99);
+        this.p999Nanos = latency.percentile(99.9);
+        this.maxNanos = latency.max();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    // Books returned or changed, summed over all calls
+    public long getResults() {
+        return results;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-6s n=%d (%.0f/s) p50=%dns p99=%dns p999=%dns max=%dns",
+                operation, count, perSecond, p50Nanos, p99Nanos, p999Nanos, maxNanos);
+    }
+}
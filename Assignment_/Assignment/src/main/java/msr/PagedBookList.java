@@ -0,0 +1,686 @@
+package msr;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Read-only ObservableList that lets a TableView show a catalog store of any size.
+// Rows are fetched from the store a page at a time when the table asks for them, with the
+// neighbouring pages prefetched; at most MAX_PAGES pages stay cached and the least recently used
+// are evicted, so the heap holds the visible window plus a margin rather than the whole catalog.
+// The unsorted view reads the store by position; sorting and filtering replace it with an array
+// of row IDs, and sorts are computed from a store capture off the FX thread. Sorting a
+// CatalogEngine by ID needs no sort at all: pages are read by rank from its ordered ID index.
+// A list that follows its engine's ChangeFeed collects the changes between animation pulses,
+// coalesced per book, and applies them once per pulse: an update replaces just the cached rows of
+// the books it touched and reports them as set, so the table redraws those cells and keeps its
+// selection. Adds and deletes report the rows they insert or remove where the view's order
+// allows; a sorted view re-sorts for changes to its sort field at most once a second, and a
+// filtered view does not take in books added after it was built. A sort that changes overtake
+// is still shown, with the books added and removed meanwhile replayed onto it. Only a feed
+// overrun makes the list read every row again.
+public class PagedBookList<B extends BookRecord> extends ObservableListBase<B> {
+    private static final int PAGE_SIZE = 64;
+    private static final int MAX_PAGES = 24;
+    // Most changes taken from the feed per pulse; a longer backlog is spread over the next frames
+    private static final int MAX_CHANGES_PER_PULSE = 1 << 16;
+    // Shortest time between two re-sorts caused by changes to the sorted field
+    private static final long RESORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final CatalogStore<B> store;
+    // The store if it is an engine, whose ID index serves the view sorted by ID
+    private final CatalogEngine<B> engine;
+    // Where finished sorts are handed back: the FX thread, except in tests
+    private final Executor fxThread;
+    private final ExecutorService sorter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-sort");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<Integer, Object[]> pages = new LinkedHashMap<Integer, Object[]>(MAX_PAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    // Row order: null means store order, otherwise the first rowCount entries of rowIds
+    private int[] rowIds;
+    private int rowCount;
+    // Bumped by every sort started and every switch to an unsorted view, so only the result of
+    // the latest sort is shown
+    private long sortRun;
+    private boolean sorting;
+    // Books changed since the running sort took its capture, with the first kind of change to
+    // each, in the same layout as the pending changes below; replayed onto the sort's result
+    private final IntIndex sortChangeSlots = new IntIndex();
+    private int[] sortChangeIds = new int[64];
+    private CatalogChange.Kind[] sortChangeKinds = new CatalogChange.Kind[64];
+    private int sortChangeCount;
+    // Set when the feed overran while a sort ran, so its changes cannot be replayed
+    private boolean sortChangesLost;
+    private BookField sortField;
+    private boolean sortAscending;
+    // True while rows are read in ID order from the engine's index rather than from rowIds
+    private boolean idOrder;
+
+    // Changes noted since the last pulse, one per book: pendingIds[slot] and the first kind of
+    // change to it, with pendingSlots mapping each ID to its slot
+    private final IntIndex pendingSlots = new IntIndex();
+    private int[] pendingIds = new int[64];
+    private CatalogChange.Kind[] pendingKinds = new CatalogChange.Kind[64];
+    private int pendingCount;
+    // Set when the feed overran; the next pulse reads every row afresh
+    private boolean pendingReload;
+    private boolean resortPending;
+    private long lastResort;
+    private ChangeFeed.Subscription subscription;
+    private AnimationTimer pulse;
+    // Set by follow(false): changes wait for applyChanges() instead of the pulse
+    private boolean manual;
+    private final ChangeFeed.Listener feedListener = new ChangeFeed.Listener() {
+        @Override
+        public void changed(CatalogChange change) {
+            note(change.getId(), change.getKind());
+        }
+
+        @Override
+        public void missed(long count) {
+            pendingReload = true;
+            if (sorting) {
+                sortChangesLost = true;
+            }
+        }
+    };
+
+    public PagedBookList(CatalogStore<B> store) {
+        this(store, Platform::runLater);
+    }
+
+    // Sort results are passed to fxThread, which must run them on the thread that uses the list
+    PagedBookList(CatalogStore<B> store, Executor fxThread) {
+        this.store = store;
+        this.engine = store instanceof CatalogEngine ? (CatalogEngine<B>) store : null;
+        this.fxThread = fxThread;
+        this.rowCount = store.size();
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public B get(int index) {
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + rowCount);
+        }
+        int page = index / PAGE_SIZE;
+        Object[] rows = pages.get(page);
+        if (rows == null) {
+            rows = fetch(page);
+            // Prefetch the pages around the one the table is looking at
+            if (page > 0) {
+                pages.computeIfAbsent(page - 1, this::fetch);
+            }
+            if ((page + 1) * PAGE_SIZE < rowCount) {
+                pages.computeIfAbsent(page + 1, this::fetch);
+            }
+            pages.put(page, rows);
+        }
+        return (B) rows[index % PAGE_SIZE];
+    }
+
+    // Number of pages currently held in memory
+    public int cachedPages() {
+        return pages.size();
+    }
+
+    // Show every book in store order
+    public void showAll() {
+        rowIds = null;
+        sortField = null;
+        idOrder = false;
+        cancelSort();
+        reset(store.size());
+    }
+
+    // Show only these books, in this order (e.g. ranked search results)
+    public void showOnly(int[] ids) {
+        rowIds = ids.clone();
+        sortField = null;
+        idOrder = false;
+        cancelSort();
+        reset(ids.length);
+    }
+
+    // Sort every book by field in the background and show the result when it is ready
+    public void sortBy(BookField field, boolean ascending) {
+        sortField = field;
+        sortAscending = ascending;
+        idOrder = field == BookField.ID && engine != null;
+        if (idOrder) {
+            rowIds = null;
+            cancelSort();
+            reset(store.size());
+        } else {
+            startSort();
+        }
+    }
+
+    // Append rows to the end of a filtered view; only the last, partly filled page is refetched
+    public void append(int[] ids, int from, int count) {
+        if (rowIds == null) {
+            throw new IllegalStateException("append needs a filtered view; call showOnly first");
+        }
+        if (count == 0) {
+            return;
+        }
+        int oldCount = rowCount;
+        if (oldCount + count > rowIds.length) {
+            rowIds = Arrays.copyOf(rowIds, Math.max(oldCount + count, Math.max(16, oldCount * 2)));
+        }
+        System.arraycopy(ids, from, rowIds, oldCount, count);
+        pages.remove(oldCount / PAGE_SIZE);
+        rowCount = oldCount + count;
+        beginChange();
+        nextAdd(oldCount, rowCount);
+        endChange();
+    }
+
+    // Keep the rows in step with every change published on the engine's ChangeFeed, whichever
+    // thread makes it. Call on the FX thread; changes are applied once per animation pulse.
+    public void follow() {
+        follow(true);
+    }
+
+    // As follow(), but with onPulse false the caller applies the changes with applyChanges()
+    // (e.g. without a running FX toolkit)
+    public void follow(boolean onPulse) {
+        if (engine == null) {
+            throw new IllegalStateException("follow needs a CatalogEngine");
+        }
+        if (subscription == null) {
+            subscription = engine.changes().subscribe();
+            manual = !onPulse;
+            startPulse();
+        }
+    }
+
+    // Stop following the engine's changes
+    public void unfollow() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+
+    // Tell a list that does not follow its store that a book was added to it
+    public void bookAdded(int id) {
+        note(id, CatalogChange.Kind.ADDED);
+        startPulse();
+    }
+
+    // Tell a list that does not follow its store that a book was removed from it
+    public void bookRemoved(int id) {
+        note(id, CatalogChange.Kind.REMOVED);
+        startPulse();
+    }
+
+    // Tell a list that does not follow its store that a book's fields changed
+    public void bookChanged(int id) {
+        note(id, CatalogChange.Kind.UPDATED);
+        startPulse();
+    }
+
+    // Apply the changes noted since the last pulse now; the pulse calls this every frame.
+    // Returns the number of books they touched.
+    public int applyChanges() {
+        if (subscription != null) {
+            subscription.poll(MAX_CHANGES_PER_PULSE, feedListener);
+        }
+        int touched = pendingCount;
+        if (pendingReload) {
+            pendingReload = false;
+            clearPending();
+            reload();
+        } else if (pendingCount > 0) {
+            applyPending();
+            clearPending();
+        }
+        // A re-sort waits for the one still running, which would otherwise never be shown
+        if (resortPending && !sorting && System.nanoTime() - lastResort >= RESORT_INTERVAL_NANOS) {
+            resortPending = false;
+            if (sortField != null && !idOrder) {
+                lastResort = System.nanoTime();
+                startSort();
+            }
+        }
+        return touched;
+    }
+
+    // Coalesce by ID: the first change to a book this pulse says whether the view could already
+    // hold it, and whether it still exists is read from the store when the changes are applied
+    private void note(int id, CatalogChange.Kind kind) {
+        if (sorting && sortChangeSlots.get(id) == IntIndex.MISSING) {
+            if (sortChangeCount == sortChangeIds.length) {
+                sortChangeIds = Arrays.copyOf(sortChangeIds, sortChangeCount * 2);
+                sortChangeKinds = Arrays.copyOf(sortChangeKinds, sortChangeCount * 2);
+            }
+            sortChangeIds[sortChangeCount] = id;
+            sortChangeKinds[sortChangeCount] = kind;
+            sortChangeSlots.put(id, sortChangeCount++);
+        }
+        if (pendingSlots.get(id) != IntIndex.MISSING) {
+            return;
+        }
+        if (pendingCount == pendingIds.length) {
+            pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+            pendingKinds = Arrays.copyOf(pendingKinds, pendingCount * 2);
+        }
+        pendingIds[pendingCount] = id;
+        pendingKinds[pendingCount] = kind;
+        pendingSlots.put(id, pendingCount++);
+    }
+
+    private void clearPending() {
+        for (int i = 0; i < pendingCount; i++) {
+            pendingSlots.remove(pendingIds[i]);
+        }
+        pendingCount = 0;
+    }
+
+    private void applyPending() {
+        if (rowIds == null) {
+            // Store or ID order: an add or delete moves rows, so only a store-order view that
+            // just grew at its end keeps its rows; anything else is read afresh
+            boolean moved = false;
+            boolean appended = false;
+            for (int i = 0; i < pendingCount; i++) {
+                boolean exists = store.contains(pendingIds[i]);
+                CatalogChange.Kind first = pendingKinds[i];
+                if (first == CatalogChange.Kind.ADDED && exists && !idOrder) {
+                    appended = true;
+                } else if (first != CatalogChange.Kind.UPDATED || !exists) {
+                    moved = true;
+                }
+            }
+            if (moved || (appended && !appendedAtEnd())) {
+                reset(store.size());
+                return;
+            }
+            if (!patchCachedRows()) {
+                return;
+            }
+            if (appended) {
+                int oldCount = rowCount;
+                rowCount = store.size();
+                pages.remove(oldCount / PAGE_SIZE);
+                beginChange();
+                nextAdd(oldCount, rowCount);
+                endChange();
+            }
+        } else {
+            // Patch first, while the cached rows are still at the indices the table knows
+            patchCachedRows();
+            removeDeletedRows();
+            if (sortField != null) {
+                appendAddedRows();
+            }
+        }
+    }
+
+    // Whether the books added this pulse are exactly the rows past the old end, as in a plain
+    // store. Over a mapped base the store lists its own records first, so new books land before
+    // the base rows and every row after them moves.
+    private boolean appendedAtEnd() {
+        int size = store.size();
+        if (size < rowCount) {
+            return false;
+        }
+        for (int position = rowCount; position < size; position++) {
+            int slot = pendingSlots.get(store.idAt(position));
+            if (slot == IntIndex.MISSING || pendingKinds[slot] != CatalogChange.Kind.ADDED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Drop the rows of deleted books from a view of row IDs, firing one removal per row
+    @SuppressWarnings("unchecked")
+    private void removeDeletedRows() {
+        IntIndex gone = null;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingKinds[i] != CatalogChange.Kind.ADDED && !store.contains(pendingIds[i])) {
+                if (gone == null) {
+                    gone = new IntIndex();
+                }
+                gone.put(pendingIds[i], i);
+            }
+        }
+        if (gone == null) {
+            return;
+        }
+        int[] removed = new int[gone.size()];
+        int count = 0;
+        for (int i = 0; i < rowCount && count < removed.length; i++) {
+            if (gone.containsKey(rowIds[i])) {
+                removed[count++] = i;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        beginChange();
+        // Highest first, so each index is still valid when its removal is reported
+        for (int k = count - 1; k >= 0; k--) {
+            int index = removed[k];
+            Object[] rows = pages.get(index / PAGE_SIZE);
+            nextRemove(index, rows == null ? null : (B) rows[index % PAGE_SIZE]);
+        }
+        int n = removed[0];
+        for (int i = removed[0]; i < rowCount; i++) {
+            if (!gone.containsKey(rowIds[i])) {
+                rowIds[n++] = rowIds[i];
+            }
+        }
+        rowCount = n;
+        pages.clear();
+        endChange();
+        requestResort();
+    }
+
+    // Add new books to the end of a sorted view; the next re-sort moves them into place
+    private void appendAddedRows() {
+        int[] added = new int[pendingCount];
+        int count = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingKinds[i] == CatalogChange.Kind.ADDED && store.contains(pendingIds[i])) {
+                added[count++] = pendingIds[i];
+            }
+        }
+        if (count > 0) {
+            append(added, 0, count);
+            requestResort();
+        }
+    }
+
+    // Replace the cached rows of updated books with their current version and report just those
+    // rows as changed; rows not cached are read fresh when the table next asks for them.
+    // Returns false if it had to reset the view instead.
+    @SuppressWarnings("unchecked")
+    private boolean patchCachedRows() {
+        long[] changed = new long[Math.min(pendingCount, pages.size() * PAGE_SIZE)];
+        Object[] before = new Object[changed.length];
+        int count = 0;
+        for (Map.Entry<Integer, Object[]> entry : pages.entrySet()) {
+            Object[] rows = entry.getValue();
+            int first = entry.getKey() * PAGE_SIZE;
+            for (int i = 0; i < rows.length && count < changed.length; i++) {
+                B row = (B) rows[i];
+                if (row == null || pendingSlots.get(row.getId()) == IntIndex.MISSING) {
+                    continue;
+                }
+                int index = first + i;
+                if (rowIds == null && !idOrder && store.idAt(index) != row.getId()) {
+                    // The store moved the book (e.g. out of its mapped base); its position is stale
+                    reset(store.size());
+                    return false;
+                }
+                B current = store.read(row.getId());
+                if (current == null) {
+                    continue;
+                }
+                rows[i] = current;
+                before[count] = row;
+                changed[count] = (long) index << 32 | count;
+                count++;
+                if (sortField != null && !idOrder
+                        && !Objects.equals(sortField.text(row), sortField.text(current))) {
+                    requestResort();
+                }
+            }
+        }
+        if (count == 0) {
+            return true;
+        }
+        Arrays.sort(changed, 0, count);
+        beginChange();
+        for (int k = 0; k < count; k++) {
+            nextSet((int) (changed[k] >>> 32), (B) before[(int) changed[k]]);
+        }
+        endChange();
+        return true;
+    }
+
+    // Read everything again after changes were missed
+    private void reload() {
+        if (rowIds == null) {
+            reset(store.size());
+            return;
+        }
+        int n = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (store.contains(rowIds[i])) {
+                rowIds[n++] = rowIds[i];
+            }
+        }
+        reset(n);
+        if (sortField != null) {
+            lastResort = 0;
+            requestResort();
+        }
+    }
+
+    // Re-sort a sorted view whose order a change may have broken, at most once per
+    // RESORT_INTERVAL_NANOS however fast the changes come
+    private void requestResort() {
+        if (sortField != null && !idOrder) {
+            resortPending = true;
+            startPulse();
+        }
+    }
+
+    private void startPulse() {
+        if (manual) {
+            return;
+        }
+        if (pulse == null) {
+            pulse = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    applyChanges();
+                    if (subscription == null && pendingCount == 0 && !resortPending) {
+                        stop();
+                    }
+                }
+            };
+        }
+        pulse.start();
+    }
+
+    // Drop cached rows and tell the table that every row may have changed
+    private void reset(int newCount) {
+        pages.clear();
+        int oldCount = rowCount;
+        rowCount = newCount;
+        beginChange();
+        if (oldCount > 0) {
+            nextRemove(0, Collections.<B>nCopies(oldCount, null));
+        }
+        if (newCount > 0) {
+            nextAdd(0, newCount);
+        }
+        endChange();
+    }
+
+    private Object[] fetch(int page) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, rowCount);
+        Object[] rows = new Object[to - from];
+        if (idOrder) {
+            // Rank from the other end for a descending view
+            int[] ids = engine.idsByRank(sortAscending ? from : rowCount - to, to - from);
+            for (int i = 0; i < ids.length; i++) {
+                rows[sortAscending ? i : ids.length - 1 - i] = store.read(ids[i]);
+            }
+            return rows;
+        }
+        for (int i = from; i < to; i++) {
+            int id = rowIds == null ? store.idAt(i) : rowIds[i];
+            rows[i - from] = store.read(id);
+        }
+        return rows;
+    }
+
+    private void startSort() {
+        BookField field = sortField;
+        boolean ascending = sortAscending;
+        long run = ++sortRun;
+        clearSortChanges();
+        sorting = true;
+        Collection<BookRecord> image = store.capture();
+        sorter.execute(() -> {
+            int[] sorted = sortIds(image, field, ascending);
+            fxThread.execute(() -> {
+                // Take in the changes published before the result arrived
+                applyChanges();
+                // Drop results that a newer sort or another view has overtaken
+                if (run != sortRun) {
+                    return;
+                }
+                if (sortChangesLost) {
+                    startSort();
+                    return;
+                }
+                sorting = false;
+                if (sortChangeCount > 0) {
+                    rowIds = replaySortChanges(sorted);
+                    requestResort();
+                } else {
+                    rowIds = sorted;
+                }
+                clearSortChanges();
+                reset(rowIds.length);
+            });
+        });
+    }
+
+    // A finished sort brought up to date with the changes made since its capture: books added or
+    // removed since are taken out, and those that exist now are put back at the end, where the
+    // re-sort the caller asks for moves them into place. Books that were only changed keep their
+    // place until then.
+    private int[] replaySortChanges(int[] sorted) {
+        int[] rows = Arrays.copyOf(sorted, sorted.length + sortChangeCount);
+        int n = 0;
+        for (int id : sorted) {
+            int slot = sortChangeSlots.get(id);
+            if (slot == IntIndex.MISSING
+                    || (sortChangeKinds[slot] == CatalogChange.Kind.UPDATED && store.contains(id))) {
+                rows[n++] = id;
+            }
+        }
+        for (int i = 0; i < sortChangeCount; i++) {
+            if (sortChangeKinds[i] != CatalogChange.Kind.UPDATED && store.contains(sortChangeIds[i])) {
+                rows[n++] = sortChangeIds[i];
+            }
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private void cancelSort() {
+        sortRun++;
+        sorting = false;
+        clearSortChanges();
+    }
+
+    private void clearSortChanges() {
+        for (int i = 0; i < sortChangeCount; i++) {
+            sortChangeSlots.remove(sortChangeIds[i]);
+        }
+        sortChangeCount = 0;
+        sortChangesLost = false;
+    }
+
+    // Sort a store capture by one field (ties broken by ID) and return the IDs in order
+    static int[] sortIds(Collection<BookRecord> image, BookField field, boolean ascending) {
+        int n = image.size();
+        int[] ids = new int[n];
+        String[] keys = field == BookField.ID ? null : new String[n];
+        int i = 0;
+        for (BookRecord b : image) {
+            ids[i] = b.getId();
+            if (keys != null) {
+                keys[i] = field.text(b);
+            }
+            i++;
+        }
+        int[] index = new int[n];
+        for (int k = 0; k < n; k++) {
+            index[k] = k;
+        }
+        Comparator<String> byText = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+        IndexComparator cmp = (a, b) -> {
+            int c = keys == null ? 0 : byText.compare(keys[a], keys[b]);
+            if (c == 0) {
+                c = Integer.compare(ids[a], ids[b]);
+            }
+            return ascending ? c : -c;
+        };
+        mergeSort(index, new int[n], 0, n, cmp);
+        int[] result = new int[n];
+        for (int k = 0; k < n; k++) {
+            result[k] = ids[index[k]];
+        }
+        return result;
+    }
+
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    // Stable merge sort of an index array, so no boxing is needed for millions of rows
+    private static void mergeSort(int[] a, int[] tmp, int from, int to, IndexComparator cmp) {
+        if (to - from < 32) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && cmp.compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, cmp);
+        mergeSort(a, tmp, mid, to, cmp);
+        if (cmp.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && cmp.compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,659 @@
+package msr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Counted set of strings (e.g. every title or author in the catalog) answering "the k most
+// common values that start with this prefix". Values are normalized by trimming and collapsing
+// runs of spaces, and compared ignoring case; each is shown under its first-seen spelling.
+// A radix trie stored as parallel arrays rather than node objects: edge labels are ranges of one
+// shared char pool, and each node keeps its count and the largest count below it, so a lookup
+// walks the prefix and then expands the most popular subtrees first, stopping after k values.
+// Each child list is kept sorted by that largest count, so the search only ever needs a node's
+// first child and next sibling, and popular branches are also found first when walking a prefix.
+// Removing a value frees its nodes; the pool space they used is reclaimed by rebuilding once it
+// makes up half the pool.
+// similar() finds the values within a few typing mistakes of a string by walking the trie with the
+// string's Levenshtein automaton, so misspelt lookups are answered without comparing every value.
+// Not thread-safe.
+public class PrefixTrie {
+    // Most insertions, deletions and substitutions similar() allows
+    public static final int MAX_EDITS = 2;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    // Kinds of search heap entries, and the node index below them
+    private static final long VALUE = 3L << 30;
+    private static final long SIBLINGS = 2L << 30;
+    private static final long SUBTREE = 1L << 30;
+    private static final long KIND_MASK = 3L << 30;
+    private static final long NODE_MASK = (1L << 30) - 1;
+
+    private char[] pool = new char[1024];
+    private int poolSize;
+    private int poolGarbage;
+
+    // Per node: label range in pool, tree links, the number of
+    // times the value ending here was added, and the largest such number in the subtree
+    private int[] labelStart;
+    private int[] labelLength;
+    private int[] parent;
+    private int[] firstChild;
+    // Next sibling in the low 32 bits and the folded first label character above
+    private long[] sibling;
+    private int[] count;
+    private int[] best;
+    private int nodeCount;
+    // Freed nodes, linked through sibling
+    private int freeNode = NONE;
+    private int size;
+
+    public PrefixTrie() {
+        allocate(64);
+    }
+
+    // Number of distinct values
+    public int size() {
+        return size;
+    }
+
+    // The value as stored: trimmed, with runs of whitespace collapsed to one space. Trimming also
+    // strips Unicode whitespace such as U+3000, so no whitespace is left at either end.
+    public static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        String s = value.trim().strip();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            boolean space = Character.isWhitespace(c);
+            if (space && (c != ' ' || Character.isWhitespace(s.charAt(i + 1)))) {
+                if (sb == null) {
+                    sb = new StringBuilder(s.length()).append(s, 0, i);
+                }
+                if (!Character.isWhitespace(s.charAt(i + 1))) {
+                    sb.append(' ');
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    public void add(String value) {
+        String s = normalize(value);
+        if (s.isEmpty()) {
+            return;
+        }
+        int node = ROOT;
+        int i = 0;
+        while (i < s.length()) {
+            int child = child(node, fold(s.charAt(i)));
+            if (child == NONE) {
+                node = newNode(node, s, i);
+                break;
+            }
+            int matched = matchLabel(child, s, i);
+            if (matched < labelLength[child]) {
+                split(child, matched);
+                child = parent[child];
+            }
+            node = child;
+            i += matched;
+        }
+        if (count[node]++ == 0) {
+            size++;
+        }
+        // Counts only grew, so best can only grow on the way up
+        int c = count[node];
+        for (int n = node; n != NONE && best[n] < c; n = parent[n]) {
+            best[n] = c;
+            reposition(n);
+        }
+    }
+
+    // add() for each of values, in an order that keeps consecutive values on the same path: they
+    // are grouped by their first two folded characters (one counting pass, no comparisons), so the
+    // child lists a bulk load walks stay in cache. About twice as fast as adding in arrival order.
+    public void addAll(Collection<String> values) {
+        int[] start = new int[(1 << 16) + 1];
+        for (String value : values) {
+            start[group(value) + 1]++;
+        }
+        for (int g = 0; g < 1 << 16; g++) {
+            start[g + 1] += start[g];
+        }
+        String[] grouped = new String[values.size()];
+        for (String value : values) {
+            grouped[start[group(value)]++] = value;
+        }
+        for (String value : grouped) {
+            add(value);
+        }
+    }
+
+    private static int group(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length();
+        int first = length > 0 ? fold(value.charAt(0)) & 0xFF : 0;
+        int second = length > 1 ? fold(value.charAt(1)) & 0xFF : 0;
+        return first << 8 | second;
+    }
+
+    // Returns false if the value was not present
+    public boolean remove(String value) {
+        int node = find(normalize(value), true);
+        if (node == NONE || node == ROOT || count[node] == 0) {
+            return false;
+        }
+        if (--count[node] == 0) {
+            size--;
+        }
+        int n = node;
+        // Drop nodes that no longer lead to any value
+        while (n != ROOT && count[n] == 0 && firstChild[n] == NONE) {
+            int p = parent[n];
+            unlink(n);
+            n = p;
+        }
+        // The first child has the largest best of the children
+        for (; n != NONE; n = parent[n]) {
+            int b = Math.max(count[n], firstChild[n] == NONE ? 0 : best[firstChild[n]]);
+            if (b == best[n]) {
+                break;
+            }
+            best[n] = b;
+            reposition(n);
+        }
+        if (poolGarbage > 4096 && poolGarbage * 2 > poolSize) {
+            rebuild();
+        }
+        return true;
+    }
+
+    // How many times value is present
+    public int count(String value) {
+        int node = find(normalize(value), true);
+        return node == NONE ? 0 : count[node];
+    }
+
+    // Up to k values starting with prefix (ignoring case), most common first
+    public List<String> complete(String prefix, int k) {
+        List<String> found = new ArrayList<>(Math.min(k, 16));
+        int node = find(normalize(prefix), false);
+        if (node == NONE || k <= 0 || best[node] == 0) {
+            return found;
+        }
+        // Max-heap of (priority << 32 | kind << 30 | node): a value by its count, a subtree by its
+        // best. A SIBLINGS entry also stands for the node's later siblings, none of which can beat
+        // it, so each step adds at most three entries. Values win ties, so each comes out as soon
+        // as nothing left can beat it.
+        long[] heap = new long[16];
+        int heapSize = 0;
+        heap[heapSize++] = entry(best[node], SUBTREE, node);
+        while (heapSize > 0 && found.size() < k) {
+            long top = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+            int n = (int) (top & NODE_MASK);
+            long kind = top & KIND_MASK;
+            if (kind == VALUE) {
+                found.add(text(n));
+                continue;
+            }
+            if (heapSize + 3 > heap.length) {
+                heap = Arrays.copyOf(heap, heap.length * 2);
+            }
+            if (count[n] > 0) {
+                heapSize = push(heap, heapSize, entry(count[n], VALUE, n));
+            }
+            if (firstChild[n] != NONE) {
+                heapSize = push(heap, heapSize, entry(best[firstChild[n]], SIBLINGS, firstChild[n]));
+            }
+            if (kind == SIBLINGS && next(n) != NONE) {
+                heapSize = push(heap, heapSize, entry(best[next(n)], SIBLINGS, next(n)));
+            }
+        }
+        return found;
+    }
+
+    // Up to k values within maxEdits (0 to MAX_EDITS) insertions, deletions or substitutions of
+    // value, ignoring case: the closest first, and the most common first among equally close ones.
+    // The trie is walked depth-first with one row of the edit distance table per character, which
+    // is the state of value's Levenshtein automaton, and only the 2 * maxEdits + 1 cells around the
+    // diagonal are computed. A subtree is skipped once every cell of the row is over maxEdits, or
+    // once k values have been found that are closer, or as close and at least as common as its best.
+    public List<String> similar(String value, int maxEdits, int k) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_EDITS);
+        }
+        String s = normalize(value);
+        List<String> found = new ArrayList<>(Math.min(Math.max(k, 0), 16));
+        if (s.isEmpty() || k <= 0) {
+            return found;
+        }
+        Automaton automaton = new Automaton(s, maxEdits, k);
+        automaton.walk(ROOT, 0);
+        for (int i = 0; i < automaton.found; i++) {
+            found.add(text(automaton.nodes[i]));
+        }
+        return found;
+    }
+
+    // Approximate heap size of the arrays
+    public long sizeInBytes() {
+        return 16 + pool.length * 2L + 6 * (16 + labelStart.length * 4L) + 16 + sibling.length * 8L;
+    }
+
+    // The node for s: where it ends exactly (whole), or the node whose subtree holds every value
+    // starting with s (!whole); NONE if there is none
+    private int find(String s, boolean whole) {
+        int node = ROOT;
+        int i = 0;
+        while (i < s.length()) {
+            int child = child(node, fold(s.charAt(i)));
+            if (child == NONE) {
+                return NONE;
+            }
+            int matched = matchLabel(child, s, i);
+            i += matched;
+            if (matched < labelLength[child]) {
+                return i == s.length() && !whole ? child : NONE;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private int child(int node, char folded) {
+        int c = firstChild[node];
+        while (c != NONE) {
+            long link = sibling[c];
+            if ((char) (link >>> 32) == folded) {
+                return c;
+            }
+            c = (int) link;
+        }
+        return NONE;
+    }
+
+    private int next(int node) {
+        return (int) sibling[node];
+    }
+
+    private void setNext(int node, int next) {
+        sibling[node] = (sibling[node] & 0xFFFFFFFF00000000L) | (next & 0xFFFFFFFFL);
+    }
+
+    private void setFirstChar(int node, char folded) {
+        sibling[node] = (long) folded << 32 | (sibling[node] & 0xFFFFFFFFL);
+    }
+
+    // How many characters of node's label match s from i on
+    private int matchLabel(int node, String s, int i) {
+        int start = labelStart[node];
+        int n = Math.min(labelLength[node], s.length() - i);
+        int m = 0;
+        while (m < n && fold(pool[start + m]) == fold(s.charAt(i + m))) {
+            m++;
+        }
+        return m;
+    }
+
+    // Child of p labelled with the rest of s from i
+    private int newNode(int p, String s, int i) {
+        int length = s.length() - i;
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        s.getChars(i, s.length(), pool, poolSize);
+        int n = allocateNode();
+        labelStart[n] = poolSize;
+        labelLength[n] = length;
+        setFirstChar(n, fold(s.charAt(i)));
+        poolSize += length;
+        parent[n] = p;
+        setNext(n, firstChild[p]);
+        firstChild[p] = n;
+        return n;
+    }
+
+    // Cut node's label after `at` characters: a new node takes the head and becomes its parent
+    private void split(int node, int at) {
+        int head = allocateNode();
+        int p = parent[node];
+        labelStart[head] = labelStart[node];
+        labelLength[head] = at;
+        setFirstChar(head, (char) (sibling[node] >>> 32));
+        parent[head] = p;
+        best[head] = best[node];
+        replaceChild(p, node, head);
+        setNext(head, next(node));
+        firstChild[head] = node;
+        setNext(node, NONE);
+        parent[node] = head;
+        labelStart[node] += at;
+        labelLength[node] -= at;
+        setFirstChar(node, fold(pool[labelStart[node]]));
+    }
+
+    // Move n to its place in its parent's child list, which is sorted by best, largest first
+    private void reposition(int n) {
+        int p = parent[n];
+        if (p == NONE) {
+            return;
+        }
+        replaceChild(p, n, next(n));
+        int prev = NONE;
+        int c = firstChild[p];
+        while (c != NONE && best[c] >= best[n]) {
+            prev = c;
+            c = next(c);
+        }
+        setNext(n, c);
+        if (prev == NONE) {
+            firstChild[p] = n;
+        } else {
+            setNext(prev, n);
+        }
+    }
+
+    private void unlink(int n) {
+        int p = parent[n];
+        int next = next(n);
+        replaceChild(p, n, next);
+        poolGarbage += labelLength[n];
+        setNext(n, freeNode);
+        freeNode = n;
+    }
+
+    // Put replacement where child was in p's child list (replacement keeps child's successor
+    // only if the caller sets it)
+    private void replaceChild(int p, int child, int replacement) {
+        if (firstChild[p] == child) {
+            firstChild[p] = replacement;
+            return;
+        }
+        int c = firstChild[p];
+        while (next(c) != child) {
+            c = next(c);
+        }
+        setNext(c, replacement);
+    }
+
+    private int allocateNode() {
+        int n;
+        if (freeNode != NONE) {
+            n = freeNode;
+            freeNode = next(n);
+        } else {
+            if (nodeCount == labelStart.length) {
+                if (nodeCount > NODE_MASK / 2) {
+                    throw new IllegalStateException("Too many values for a PrefixTrie");
+                }
+                grow(nodeCount * 2);
+            }
+            n = nodeCount++;
+        }
+        firstChild[n] = NONE;
+        setNext(n, NONE);
+        count[n] = 0;
+        best[n] = 0;
+        return n;
+    }
+
+    // The value ending at node, from the labels on the way down to it
+    private String text(int node) {
+        int length = 0;
+        for (int n = node; n != ROOT; n = parent[n]) {
+            length += labelLength[n];
+        }
+        char[] chars = new char[length];
+        for (int n = node; n != ROOT; n = parent[n]) {
+            length -= labelLength[n];
+            System.arraycopy(pool, labelStart[n], chars, length, labelLength[n]);
+        }
+        return new String(chars);
+    }
+
+    // Re-add every value into fresh arrays, dropping the pool space of removed labels
+    private void rebuild() {
+        List<String> values = new ArrayList<>(size);
+        List<Integer> counts = new ArrayList<>(size);
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = ROOT;
+        while (top > 0) {
+            int n = stack[--top];
+            if (count[n] > 0) {
+                values.add(text(n));
+                counts.add(count[n]);
+            }
+            for (int c = firstChild[n]; c != NONE; c = next(c)) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = c;
+            }
+        }
+        pool = new char[Math.max(1024, poolSize - poolGarbage)];
+        poolSize = 0;
+        poolGarbage = 0;
+        freeNode = NONE;
+        size = 0;
+        allocate(Math.max(64, nodeCount));
+        for (int i = 0; i < values.size(); i++) {
+            for (int j = counts.get(i); j > 0; j--) {
+                add(values.get(i));
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        labelStart = new int[capacity];
+        labelLength = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        sibling = new long[capacity];
+        count = new int[capacity];
+        best = new int[capacity];
+        nodeCount = 1;
+        parent[ROOT] = NONE;
+        firstChild[ROOT] = NONE;
+        setNext(ROOT, NONE);
+    }
+
+    private void grow(int capacity) {
+        labelStart = Arrays.copyOf(labelStart, capacity);
+        labelLength = Arrays.copyOf(labelLength, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        sibling = Arrays.copyOf(sibling, capacity);
+        count = Arrays.copyOf(count, capacity);
+        best = Arrays.copyOf(best, capacity);
+    }
+
+    // Search state of similar(): the folded query, a table row per depth, and the best k values so
+    // far, ordered by distance and then count
+    private final class Automaton {
+        final char[] query;
+        final int maxEdits;
+        // Distance standing for "over maxEdits"; cells outside the band hold it too
+        final int over;
+        final int[][] rows;
+        final int[] nodes;
+        final int[] distances;
+        int found;
+
+        Automaton(String s, int maxEdits, int k) {
+            query = new char[s.length()];
+            for (int i = 0; i < query.length; i++) {
+                query[i] = fold(s.charAt(i));
+            }
+            this.maxEdits = maxEdits;
+            over = maxEdits + 1;
+            // Past query.length + maxEdits characters every cell is out of the band
+            rows = new int[query.length + maxEdits + 2][query.length + 1];
+            int[] first = rows[0];
+            Arrays.fill(first, over);
+            for (int j = 0; j <= Math.min(query.length, maxEdits); j++) {
+                first[j] = j;
+            }
+            nodes = new int[k];
+            distances = new int[k];
+        }
+
+        // Visit the children of node, whose path from the root is depth characters long
+        void walk(int node, int depth) {
+            int bound = rowMin(depth);
+            for (int c = firstChild[node]; c != NONE; c = next(c)) {
+                // Children are sorted by best, so no later sibling can do better either
+                if (!worthVisiting(bound, best[c])) {
+                    return;
+                }
+                int d = depth;
+                int start = labelStart[c];
+                int min = bound;
+                for (int i = 0; i < labelLength[c] && min <= maxEdits; i++) {
+                    min = step(++d, fold(pool[start + i]));
+                    if (!worthVisiting(min, best[c])) {
+                        min = over;
+                    }
+                }
+                if (min > maxEdits) {
+                    continue;
+                }
+                if (count[c] > 0 && query.length >= d - maxEdits && query.length <= d + maxEdits) {
+                    offer(c, rows[d][query.length]);
+                }
+                if (firstChild[c] != NONE) {
+                    walk(c, d);
+                }
+            }
+        }
+
+        // Fill the row for depth from the one above, for a path ending in ch; returns its minimum
+        private int step(int depth, char ch) {
+            int[] above = rows[depth - 1];
+            int[] row = rows[depth];
+            int lo = Math.max(0, depth - maxEdits);
+            int hi = Math.min(query.length, depth + maxEdits);
+            int min = over;
+            for (int j = lo; j <= hi; j++) {
+                int v;
+                if (j == 0) {
+                    v = depth;
+                } else {
+                    v = Math.min(above[j - 1] + (query[j - 1] == ch ? 0 : 1), above[j] + 1);
+                    if (j > lo) {
+                        v = Math.min(v, row[j - 1] + 1);
+                    }
+                }
+                v = Math.min(v, over);
+                row[j] = v;
+                min = Math.min(min, v);
+            }
+            // The only cell of this row outside its band that the next row reads
+            if (hi < query.length) {
+                row[hi + 1] = over;
+            }
+            return min;
+        }
+
+        private int rowMin(int depth) {
+            int min = over;
+            for (int j = Math.max(0, depth - maxEdits); j <= Math.min(query.length, depth + maxEdits); j++) {
+                min = Math.min(min, rows[depth][j]);
+            }
+            return min;
+        }
+
+        // Whether a subtree whose values are at least distance away and at most best common could
+        // still make the results
+        private boolean worthVisiting(int distance, int best) {
+            if (distance > maxEdits) {
+                return false;
+            }
+            if (found < nodes.length) {
+                return true;
+            }
+            int worst = found - 1;
+            return distance < distances[worst] || (distance == distances[worst] && best > count[nodes[worst]]);
+        }
+
+        private void offer(int node, int distance) {
+            if (distance > maxEdits) {
+                return;
+            }
+            int i;
+            if (found < nodes.length) {
+                i = found++;
+            } else if (ranksBefore(distance, count[node], found - 1)) {
+                // Replaces the last
+                i = found - 1;
+            } else {
+                return;
+            }
+            while (i > 0 && ranksBefore(distance, count[node], i - 1)) {
+                nodes[i] = nodes[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        private boolean ranksBefore(int distance, int count, int i) {
+            return distance < distances[i] || (distance == distances[i] && count > PrefixTrie.this.count[nodes[i]]);
+        }
+    }
+
+    private static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static long entry(int priority, long kind, int node) {
+        return (long) priority << 32 | kind | node;
+    }
+
+    private static int push(long[] heap, int size, long e) {
+        int i = size++;
+        heap[i] = e;
+        while (i > 0 && heap[(i - 1) / 2] < heap[i]) {
+            int p = (i - 1) / 2;
+            long t = heap[p];
+            heap[p] = heap[i];
+            heap[i] = t;
+            i = p;
+        }
+        return size;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[child] <= heap[i]) {
+                return;
+            }
+            long t = heap[child];
+            heap[child] = heap[i];
+            heap[i] = t;
+            i = child;
+        }
+    }
+}
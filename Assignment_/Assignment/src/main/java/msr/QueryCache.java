@@ -0,0 +1,390 @@
+package msr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Bounded cache of query results with W-TinyLFU admission, so that a burst of one-off queries
+// cannot flush out the ones that are asked again and again.
+// - New entries go into a small LRU window (WINDOW_PERCENT of the weight). What falls out of the
+//   window is a candidate for the main space, a segmented LRU of probation and protected entries.
+// - When the cache is over its bounds, the candidate and the probation LRU entry (the victim) are
+//   compared by how often their keys were asked for recently, as estimated by a FrequencySketch
+//   that sees every lookup, hit or miss; the less popular of the two is evicted.
+// - A hit in probation promotes the entry to protected; protected overflow drops back to probation.
+// The cache is bounded both by entries and by total weight (e.g. books held).
+// Entries are never stale: the owner calls invalidate() for every key a write could change the
+// result of, and a result whose key was invalidated while it was being loaded is not stored.
+// Thread-safe; loads run outside the cache's lock.
+public class QueryCache<K, V> {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long windowMax;
+    private final long protectedMax;
+    private final ToIntFunction<? super V> weigher;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Everything below is guarded by lock
+    private final Map<K, Node<K, V>> nodes = new HashMap<>();
+    // Loads in flight, so that an invalidation can stop their result from being stored
+    private final Map<K, Load> loading = new HashMap<>();
+    private final FrequencySketch sketch;
+    private final Queue<K, V> window = new Queue<>();
+    private final Queue<K, V> probation = new Queue<>();
+    private final Queue<K, V> protectedQueue = new Queue<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long loads;
+    private long loadNanos;
+    private long evictions;
+    private long invalidations;
+
+    public QueryCache(int maxEntries, long maxWeight, ToIntFunction<? super V> weigher) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.protectedMax = (maxWeight - windowMax) * PROTECTED_PERCENT / 100;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    // The cached result for key, or the one loader computes now (and caches, if it fits and the
+    // key was not invalidated meanwhile). loader runs without the cache locked.
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Load load;
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode());
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                hits++;
+                touch(node);
+                return node.value;
+            }
+            misses++;
+            load = loading.get(key);
+            if (load == null) {
+                load = new Load();
+                loading.put(key, load);
+            }
+            load.loaders++;
+        } finally {
+            lock.unlock();
+        }
+        long start = System.nanoTime();
+        V value = null;
+        try {
+            value = loader.apply(key);
+            return value;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            lock.lock();
+            try {
+                loads++;
+                loadNanos += nanos;
+                if (--load.loaders == 0) {
+                    loading.remove(key);
+                }
+                if (value != null && !load.stale && !nodes.containsKey(key)) {
+                    insert(key, value);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Drop the result for key, and keep a load of it that is in flight from being stored
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Load load = loading.get(key);
+            if (load != null) {
+                load.stale = true;
+            }
+            Node<K, V> node = nodes.remove(key);
+            if (node != null) {
+                unlink(node);
+                invalidations++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drop every result
+    public void clear() {
+        lock.lock();
+        try {
+            for (Load load : loading.values()) {
+                load.stale = true;
+            }
+            invalidations += nodes.size();
+            nodes.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public QueryCacheStats stats() {
+        lock.lock();
+        try {
+            return new QueryCacheStats(nodes.size(), maxEntries, weight, maxWeight, hits, misses, evictions,
+                    invalidations, loads, loadNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Zero the counters; the cached results stay
+    public void resetStats() {
+        lock.lock();
+        try {
+            hits = 0;
+            misses = 0;
+            loads = 0;
+            loadNanos = 0;
+            evictions = 0;
+            invalidations = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void touch(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.moveToTail(node);
+        } else if (node.queue == PROTECTED) {
+            protectedQueue.moveToTail(node);
+        } else {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.add(node);
+            // Demote the least recently used protected entries back to probation
+            while (protectedQueue.weight > protectedMax && protectedQueue.head != node) {
+                Node<K, V> demoted = protectedQueue.head;
+                protectedQueue.remove(demoted);
+                demoted.queue = PROBATION;
+                probation.add(demoted);
+            }
+        }
+    }
+
+    private void insert(K key, V value) {
+        int w = Math.max(1, weigher.applyAsInt(value));
+        if (w > maxWeight - windowMax) {
+            // Would evict most of the cache for one result
+            return;
+        }
+        Node<K, V> node = new Node<>(key, value, w);
+        nodes.put(key, node);
+        node.queue = WINDOW;
+        window.add(node);
+        weight += w;
+        // Entries leaving the window join probation as admission candidates, oldest first
+        Node<K, V> candidate = null;
+        while (window.weight > windowMax && window.head != null) {
+            Node<K, V> moved = window.head;
+            window.remove(moved);
+            moved.queue = PROBATION;
+            probation.add(moved);
+            if (candidate == null) {
+                candidate = moved;
+            }
+        }
+        evict(candidate);
+    }
+
+    // While over the bounds, evict the less frequent of the next candidate and the probation victim
+    private void evict(Node<K, V> candidate) {
+        while (weight > maxWeight || nodes.size() > maxEntries) {
+            Node<K, V> victim = probation.head;
+            if (victim == null) {
+                // Probation is empty: shrink protected, then the window
+                victim = protectedQueue.head != null ? protectedQueue.head : window.head;
+            } else if (candidate != null && victim != candidate) {
+                Node<K, V> next = candidate.next;
+                if (sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+                    victim = candidate;
+                }
+                candidate = next;
+            } else if (candidate != null) {
+                candidate = candidate.next;
+            }
+            nodes.remove(victim.key);
+            unlink(victim);
+            evictions++;
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else {
+            protectedQueue.remove(node);
+        }
+        weight -= node.weight;
+    }
+
+    private static final class Load {
+        int loaders;
+        boolean stale;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        byte queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Intrusive LRU list, least recently used at the head
+    private static final class Queue<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight;
+
+        void add(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToTail(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    // Count-min sketch of recent key frequencies: four 4-bit counters per key, sixteen to a long.
+    // Once it has counted ten times as many lookups as the cache holds entries, every counter is
+    // halved, so popularity fades and a key that was hot long ago can be displaced.
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long ONE_MASK = 0x1111111111111111L;
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int length = Integer.highestOneBit(Math.max(8, Math.min(maxEntries, 1 << 26) - 1) << 1);
+            table = new long[length];
+            sampleSize = 10 * Math.max(maxEntries, 8);
+        }
+
+        // Estimated lookups of a key with this hash since the counters were last halved (0 to 15)
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = mix(hash, i);
+                int shift = (int) (h & 15) << 2;
+                int count = (int) ((table[index(h)] >>> shift) & 15);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = mix(hash, i);
+                int shift = (int) (h & 15) << 2;
+                int index = index(h);
+                if (((table[index] >>> shift) & 15) != 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                halve();
+            }
+        }
+
+        private void halve() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & HALF_MASK;
+            }
+            // Each key owns four counters, so the odd ones lost a quarter of an addition each
+            additions = (additions - (odd >>> 2)) >>> 1;
+        }
+
+        private int index(long h) {
+            return (int) (h >>> 40) & (table.length - 1);
+        }
+
+        private static long mix(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[(i + 1) & 3];
+            return h ^ (h >>> 29);
+        }
+    }
+}
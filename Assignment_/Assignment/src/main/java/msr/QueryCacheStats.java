@@ -0,0 +1,86 @@
+package msr;
+
+// Immutable summary of a QueryCache, as returned over JMX (latencies in ns)
+public class QueryCacheStats {
+    private final int entries;
+    private final int maxEntries;
+    private final long weight;
+    private final long maxWeight;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long loads;
+    private final double meanLoadNanos;
+
+    QueryCacheStats(int entries, int maxEntries, long weight, long maxWeight, long hits, long misses,
+            long evictions, long invalidations, long loads, long loadNanos) {
+        this.entries = entries;
+        this.maxEntries = maxEntries;
+        this.weight = weight;
+        this.maxWeight = maxWeight;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.loads = loads;
+        this.meanLoadNanos = loads > 0 ? (double) loadNanos / loads : 0;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    // Books held by the cached results
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests > 0 ? (double) hits / requests : 0;
+    }
+
+    // Results dropped to stay within the bounds
+    public long getEvictions() {
+        return evictions;
+    }
+
+    // Results dropped because a write changed them
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    // Mean time to compute a result on a miss
+    public double getMeanLoadNanos() {
+        return meanLoadNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d entries, weight %d/%d, hit ratio %.3f (%d hits, %d misses), %d evictions, "
+                        + "%d invalidations, mean load %.0fns",
+                entries, maxEntries, weight, maxWeight, getHitRatio(), hits, misses, evictions, invalidations,
+                meanLoadNanos);
+    }
+}
@@ -0,0 +1,524 @@
+package msr;
+
+import java.util.Arrays;
+
+// Compressed set of ints in the style of Roaring bitmaps. Values are split by their high 16 bits
+// into chunks; a chunk is a sorted array of its low 16 bits while it holds at most 4,096 values
+// (2 bytes each), and a 65,536-bit bitmap (8 KB) once it holds more, so sparse and dense sets
+// both stay close to their smallest size. AND, OR and AND NOT go chunk by chunk, a 64-bit word
+// at a time between two bitmaps. Values iterate in ascending (signed) order.
+// Not thread-safe.
+public class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    // Chunk keys ascending, with the sign bit flipped so they sort like signed ints
+    private char[] keys;
+    private Container[] containers;
+    private int chunks;
+    private int cardinality;
+
+    public RoaringBitmap() {
+        this(4);
+    }
+
+    private RoaringBitmap(int capacity) {
+        keys = new char[capacity];
+        containers = new Container[capacity];
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int value) {
+        int i = find(key(value));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    // Returns false if the value was already present
+    public boolean add(int value) {
+        char key = key(value);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, key, new Container());
+        }
+        if (!containers[i].add((char) value)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    // Returns false if the value was not present
+    public boolean remove(int value) {
+        int i = find(key(value));
+        if (i < 0 || !containers[i].remove((char) value)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[i].cardinality == 0) {
+            removeChunk(i);
+        }
+        return true;
+    }
+
+    // Values in both sets
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(1, Math.min(chunks, other.chunks)));
+        int i = 0;
+        int j = 0;
+        while (i < chunks && j < other.chunks) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendChunk(keys[i], Container.and(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in either set
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(1, chunks + other.chunks));
+        int i = 0;
+        int j = 0;
+        while (i < chunks || j < other.chunks) {
+            if (j == other.chunks || (i < chunks && keys[i] < other.keys[j])) {
+                result.appendChunk(keys[i], containers[i].copy());
+                i++;
+            } else if (i == chunks || keys[i] > other.keys[j]) {
+                result.appendChunk(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendChunk(keys[i], Container.or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in this set but not in other
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(1, chunks));
+        int j = 0;
+        for (int i = 0; i < chunks; i++) {
+            while (j < other.chunks && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.chunks && other.keys[j] == keys[i]) {
+                result.appendChunk(keys[i], Container.andNot(containers[i], other.containers[j]));
+            } else {
+                result.appendChunk(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    // Up to limit values above after, ascending: one page of the set
+    public int[] page(int after, int limit) {
+        return after == Integer.MAX_VALUE ? new int[0] : collect(after + 1, limit);
+    }
+
+    public int[] toArray() {
+        return collect(Integer.MIN_VALUE, cardinality);
+    }
+
+    // Number of chunks, each covering 65,536 consecutive values
+    int chunkCount() {
+        return chunks;
+    }
+
+    // Key of the i-th chunk, 0 to 65,535 in value order
+    int chunkKey(int i) {
+        return keys[i];
+    }
+
+    // Index of the first chunk that may hold value or anything above it
+    int chunkIndex(int value) {
+        int i = find(key(value));
+        return i < 0 ? -i - 1 : i;
+    }
+
+    // The chunks with keys in [fromKey, toKey), sharing this bitmap's containers: read only
+    RoaringBitmap slice(int fromKey, int toKey) {
+        if (fromKey == 0 && toKey > Character.MAX_VALUE) {
+            return this;
+        }
+        int from = find((char) fromKey);
+        from = from < 0 ? -from - 1 : from;
+        int to = toKey > Character.MAX_VALUE ? chunks : find((char) toKey);
+        to = to < 0 ? -to - 1 : to;
+        RoaringBitmap slice = new RoaringBitmap(Math.max(1, to - from));
+        for (int i = from; i < to; i++) {
+            slice.appendChunk(keys[i], containers[i]);
+        }
+        return slice;
+    }
+
+    // Approximate heap size: the chunk index plus every container
+    public long sizeInBytes() {
+        long bytes = 16 + 24 + keys.length * 2L + 16 + keys.length * 4L;
+        for (int i = 0; i < chunks; i++) {
+            Container c = containers[i];
+            bytes += 24 + (c.bits != null ? 16 + c.bits.length * 8L : 16 + c.array.length * 2L);
+        }
+        return bytes;
+    }
+
+    // Up to limit values from `from` (inclusive) upwards
+    private int[] collect(int from, int limit) {
+        int[] out = new int[Math.max(0, Math.min(limit, cardinality))];
+        int n = 0;
+        char fromKey = key(from);
+        int i = find(fromKey);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        for (; i < chunks && n < out.length; i++) {
+            int high = (keys[i] ^ 0x8000) << 16;
+            int low = keys[i] == fromKey ? (char) from : 0;
+            n = containers[i].copyTo(high, low, out, n);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static char key(int value) {
+        return (char) ((value >>> 16) ^ 0x8000);
+    }
+
+    private int find(char key) {
+        int lo = 0;
+        int hi = chunks - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else if (keys[mid] > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private void insertChunk(int i, char key, Container c) {
+        if (chunks == keys.length) {
+            keys = Arrays.copyOf(keys, chunks * 2);
+            containers = Arrays.copyOf(containers, chunks * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, chunks - i);
+        System.arraycopy(containers, i, containers, i + 1, chunks - i);
+        keys[i] = key;
+        containers[i] = c;
+        chunks++;
+    }
+
+    private void removeChunk(int i) {
+        System.arraycopy(keys, i + 1, keys, i, chunks - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, chunks - i - 1);
+        containers[--chunks] = null;
+    }
+
+    // Chunks arrive in key order from the set operations; empty results are dropped
+    private void appendChunk(char key, Container c) {
+        if (c == null) {
+            return;
+        }
+        insertChunk(chunks, key, c);
+        cardinality += c.cardinality;
+    }
+
+    // One chunk: either array (sorted low bits) or bits (WORDS longs) is set
+    private static final class Container {
+        char[] array;
+        long[] bits;
+        int cardinality;
+
+        Container() {
+            array = new char[4];
+        }
+
+        Container(char[] array, int cardinality) {
+            this.array = array;
+            this.cardinality = cardinality;
+        }
+
+        Container(long[] bits, int cardinality) {
+            this.bits = bits;
+            this.cardinality = cardinality;
+        }
+
+        boolean contains(char v) {
+            if (bits != null) {
+                return (bits[v >>> 6] & (1L << v)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, v) >= 0;
+        }
+
+        boolean add(char v) {
+            if (bits != null) {
+                long mask = 1L << v;
+                if ((bits[v >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[v >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, v);
+            if (i >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                bits = toBits(array, cardinality);
+                array = null;
+                bits[v >>> 6] |= 1L << v;
+                cardinality++;
+                return true;
+            }
+            i = -i - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(array, i, array, i + 1, cardinality - i);
+            array[i] = v;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char v) {
+            if (bits != null) {
+                long mask = 1L << v;
+                if ((bits[v >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[v >>> 6] &= ~mask;
+                if (--cardinality <= ARRAY_MAX) {
+                    array = toArray(bits, cardinality);
+                    bits = null;
+                }
+                return true;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, v);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        Container copy() {
+            return bits != null ? new Container(bits.clone(), cardinality)
+                    : new Container(Arrays.copyOf(array, Math.max(4, cardinality)), cardinality);
+        }
+
+        // Write the values with low bits >= from, as high | low, into out from n; returns the new n
+        int copyTo(int high, int from, int[] out, int n) {
+            if (bits != null) {
+                for (int w = from >>> 6; w < WORDS && n < out.length; w++) {
+                    long word = bits[w];
+                    if (w == from >>> 6) {
+                        word &= -1L << from;
+                    }
+                    while (word != 0 && n < out.length) {
+                        out[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+                return n;
+            }
+            int i = from == 0 ? 0 : Arrays.binarySearch(array, 0, cardinality, (char) from);
+            for (i = i < 0 ? -i - 1 : i; i < cardinality && n < out.length; i++) {
+                out[n++] = high | array[i];
+            }
+            return n;
+        }
+
+        static Container and(Container a, Container b) {
+            if (a.bits != null && b.bits != null) {
+                long[] bits = new long[WORDS];
+                int count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    bits[w] = a.bits[w] & b.bits[w];
+                    count += Long.bitCount(bits[w]);
+                }
+                return count == 0 ? null : count <= ARRAY_MAX ? new Container(toArray(bits, count), count)
+                        : new Container(bits, count);
+            }
+            if (a.bits != null) {
+                return filter(b, a, true);
+            }
+            if (b.bits != null) {
+                return filter(a, b, true);
+            }
+            if (a.cardinality > b.cardinality) {
+                Container t = a;
+                a = b;
+                b = t;
+            }
+            char[] out = new char[a.cardinality];
+            int n = 0;
+            if (a.cardinality * 16 < b.cardinality) {
+                // Much smaller: binary-search each of its values in the rest of the larger one
+                int from = 0;
+                for (int i = 0; i < a.cardinality && from < b.cardinality; i++) {
+                    int k = Arrays.binarySearch(b.array, from, b.cardinality, a.array[i]);
+                    if (k >= 0) {
+                        out[n++] = a.array[i];
+                        from = k + 1;
+                    } else {
+                        from = -k - 1;
+                    }
+                }
+                return n == 0 ? null : new Container(out, n);
+            }
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality && j < b.cardinality) {
+                if (a.array[i] < b.array[j]) {
+                    i++;
+                } else if (a.array[i] > b.array[j]) {
+                    j++;
+                } else {
+                    out[n++] = a.array[i];
+                    i++;
+                    j++;
+                }
+            }
+            return n == 0 ? null : new Container(out, n);
+        }
+
+        static Container or(Container a, Container b) {
+            if (a.bits != null || b.bits != null) {
+                long[] bits = a.bits != null ? a.bits.clone() : toBits(a.array, a.cardinality);
+                if (b.bits != null) {
+                    for (int w = 0; w < WORDS; w++) {
+                        bits[w] |= b.bits[w];
+                    }
+                } else {
+                    for (int i = 0; i < b.cardinality; i++) {
+                        bits[b.array[i] >>> 6] |= 1L << b.array[i];
+                    }
+                }
+                int count = 0;
+                for (long word : bits) {
+                    count += Long.bitCount(word);
+                }
+                return new Container(bits, count);
+            }
+            if (a.cardinality + b.cardinality > ARRAY_MAX) {
+                long[] bits = toBits(a.array, a.cardinality);
+                int count = a.cardinality;
+                for (int i = 0; i < b.cardinality; i++) {
+                    long mask = 1L << b.array[i];
+                    if ((bits[b.array[i] >>> 6] & mask) == 0) {
+                        bits[b.array[i] >>> 6] |= mask;
+                        count++;
+                    }
+                }
+                return count <= ARRAY_MAX ? new Container(toArray(bits, count), count) : new Container(bits, count);
+            }
+            char[] out = new char[a.cardinality + b.cardinality];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality || j < b.cardinality) {
+                if (j == b.cardinality || (i < a.cardinality && a.array[i] < b.array[j])) {
+                    out[n++] = a.array[i++];
+                } else if (i == a.cardinality || a.array[i] > b.array[j]) {
+                    out[n++] = b.array[j++];
+                } else {
+                    out[n++] = a.array[i++];
+                    j++;
+                }
+            }
+            return new Container(out, n);
+        }
+
+        static Container andNot(Container a, Container b) {
+            if (a.bits != null) {
+                long[] bits = a.bits.clone();
+                int count = a.cardinality;
+                if (b.bits != null) {
+                    count = 0;
+                    for (int w = 0; w < WORDS; w++) {
+                        bits[w] &= ~b.bits[w];
+                        count += Long.bitCount(bits[w]);
+                    }
+                } else {
+                    for (int i = 0; i < b.cardinality; i++) {
+                        long mask = 1L << b.array[i];
+                        if ((bits[b.array[i] >>> 6] & mask) != 0) {
+                            bits[b.array[i] >>> 6] &= ~mask;
+                            count--;
+                        }
+                    }
+                }
+                return count == 0 ? null : count <= ARRAY_MAX ? new Container(toArray(bits, count), count)
+                        : new Container(bits, count);
+            }
+            if (b.bits != null) {
+                return filter(a, b, false);
+            }
+            char[] out = new char[a.cardinality];
+            int n = 0;
+            int j = 0;
+            for (int i = 0; i < a.cardinality; i++) {
+                while (j < b.cardinality && b.array[j] < a.array[i]) {
+                    j++;
+                }
+                if (j == b.cardinality || b.array[j] != a.array[i]) {
+                    out[n++] = a.array[i];
+                }
+            }
+            return n == 0 ? null : new Container(out, n);
+        }
+
+        // The values of array container a that are (keep) or are not (!keep) set in bitmap b
+        private static Container filter(Container a, Container b, boolean keep) {
+            char[] out = new char[a.cardinality];
+            int n = 0;
+            for (int i = 0; i < a.cardinality; i++) {
+                char v = a.array[i];
+                if (((b.bits[v >>> 6] & (1L << v)) != 0) == keep) {
+                    out[n++] = v;
+                }
+            }
+            return n == 0 ? null : new Container(out, n);
+        }
+
+        private static long[] toBits(char[] array, int count) {
+            long[] bits = new long[WORDS];
+            for (int i = 0; i < count; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            return bits;
+        }
+
+        private static char[] toArray(long[] bits, int count) {
+            char[] array = new char[Math.max(4, count)];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    array[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
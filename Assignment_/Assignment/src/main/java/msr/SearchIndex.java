@@ -0,0 +1,409 @@
+package msr;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Inverted full-text index over title, author and genre with BM25 ranking.
+// Each indexed book gets an internal document number; postings lists hold document numbers
+// in ascending order, so updates only ever append. Removed documents are marked dead and
+// skipped at query time, and the index compacts itself once half of the documents are dead.
+public class SearchIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int GENRE_WEIGHT = 1;
+    // A query word also matches up to this many indexed terms it is a prefix of
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final float PREFIX_MATCH_BOOST = 0.5f;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final IntIndex docOfId = new IntIndex();
+    private int[] docIds = new int[64];
+    private int[] docLengths = new int[64];
+    private long[] dead = new long[1];
+    private int docCount;
+    private int deadCount;
+    private long totalLength;
+
+    // Number of books currently indexed
+    public int size() {
+        return docCount - deadCount;
+    }
+
+    // Index a book, replacing any earlier version with the same ID
+    public void add(BookRecord book) {
+        remove(book.getId());
+        Map<String, int[]> termFreqs = new LinkedHashMap<>();
+        int length = collect(book.getTitle(), TITLE_WEIGHT, termFreqs)
+                + collect(book.getAuthor(), AUTHOR_WEIGHT, termFreqs)
+                + collect(book.getGenre(), GENRE_WEIGHT, termFreqs);
+
+        int doc = docCount++;
+        if (doc == docIds.length) {
+            docIds = Arrays.copyOf(docIds, doc * 2);
+            docLengths = Arrays.copyOf(docLengths, doc * 2);
+        }
+        if ((doc >>> 6) == dead.length) {
+            dead = Arrays.copyOf(dead, dead.length * 2);
+        }
+        docIds[doc] = book.getId();
+        docLengths[doc] = length;
+        totalLength += length;
+        docOfId.put(book.getId(), doc);
+        for (Map.Entry<String, int[]> e : termFreqs.entrySet()) {
+            terms.computeIfAbsent(e.getKey(), t -> new Postings()).append(doc, e.getValue()[0]);
+        }
+    }
+
+    // Re-index a book after its fields were changed in place
+    public void update(BookRecord book) {
+        add(book);
+    }
+
+    // Drop a book from the index; returns false if it was not indexed
+    public boolean remove(int id) {
+        int doc = docOfId.remove(id);
+        if (doc == IntIndex.MISSING) {
+            return false;
+        }
+        dead[doc >>> 6] |= 1L << doc;
+        deadCount++;
+        totalLength -= docLengths[doc];
+        if (deadCount > 1024 && deadCount * 2 > docCount) {
+            compact();
+        }
+        return true;
+    }
+
+    public void clear() {
+        terms.clear();
+        docOfId.clear();
+        Arrays.fill(dead, 0L);
+        docCount = 0;
+        deadCount = 0;
+        totalLength = 0;
+    }
+
+    // Return the IDs of the best matching books, best first, at most limit of them
+    public int[] search(String query, int limit) {
+        List<String> words = tokenize(query);
+        int live = size();
+        if (words.isEmpty() || live == 0 || limit <= 0) {
+            return new int[0];
+        }
+        float avgLength = Math.max(1f, (float) totalLength / live);
+
+        // One cursor per matched term, each with its precomputed idf weight
+        List<Cursor> cursors = new ArrayList<>();
+        for (String word : words) {
+            Postings exact = terms.get(word);
+            if (exact != null) {
+                cursors.add(new Cursor(exact, idf(exact.size, live)));
+            }
+            int expansions = 0;
+            for (Map.Entry<String, Postings> e : terms.subMap(word, false, word + Character.MAX_VALUE, false).entrySet()) {
+                if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                cursors.add(new Cursor(e.getValue(), PREFIX_MATCH_BOOST * idf(e.getValue().size, live)));
+            }
+        }
+        if (cursors.isEmpty()) {
+            return new int[0];
+        }
+
+        // Document-at-a-time scoring with MaxScore pruning: cursors are ordered by their best
+        // possible contribution, and once the cheapest ones together cannot lift a document into
+        // the top hits they stop driving the iteration and are only probed for candidates.
+        Cursor[] cs = cursors.toArray(new Cursor[0]);
+        Arrays.sort(cs, (x, y) -> Float.compare(x.maxScore, y.maxScore));
+        float[] boundUpTo = new float[cs.length];
+        float sum = 0f;
+        for (int i = 0; i < cs.length; i++) {
+            sum += cs[i].maxScore;
+            boundUpTo[i] = sum;
+        }
+        TopHits top = new TopHits(limit);
+        int firstEssential = 0;
+        while (firstEssential < cs.length) {
+            int doc = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < cs.length; i++) {
+                if (!cs[i].done() && cs[i].doc() < doc) {
+                    doc = cs[i].doc();
+                }
+            }
+            if (doc == Integer.MAX_VALUE) {
+                break;
+            }
+            float norm = K1 * (1 - B + B * docLengths[doc] / avgLength);
+            float score = 0f;
+            for (int i = firstEssential; i < cs.length; i++) {
+                Cursor c = cs[i];
+                if (!c.done() && c.doc() == doc) {
+                    score += c.score(norm);
+                    c.next();
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0 && score + boundUpTo[i] > top.threshold(); i--) {
+                Cursor c = cs[i];
+                if (c.advance(doc) && c.doc() == doc) {
+                    score += c.score(norm);
+                }
+            }
+            if (!isDead(doc)) {
+                top.offer(doc, score);
+            }
+            while (firstEssential < cs.length && boundUpTo[firstEssential] <= top.threshold()) {
+                firstEssential++;
+            }
+        }
+        int[] docs = top.sortedDocs();
+        int[] ids = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            ids[i] = docIds[docs[i]];
+        }
+        return ids;
+    }
+
+    // Split text into lower-case words with accents removed
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return words;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char ch = normalized.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                word.append(ch);
+            } else if (Character.getType(ch) != Character.NON_SPACING_MARK && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    // Tokenize one field and add its weighted term frequencies; returns the weighted length
+    private static int collect(String text, int weight, Map<String, int[]> termFreqs) {
+        List<String> words = tokenize(text);
+        for (String word : words) {
+            termFreqs.computeIfAbsent(word, w -> new int[1])[0] += weight;
+        }
+        return words.size() * weight;
+    }
+
+    private static float idf(int docFreq, int docs) {
+        return (float) Math.log(1 + (docs - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    private boolean isDead(int doc) {
+        return (dead[doc >>> 6] & (1L << doc)) != 0;
+    }
+
+    // Renumber the live documents densely and drop dead entries from every postings list
+    private void compact() {
+        int[] newDoc = new int[docCount];
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (isDead(doc)) {
+                newDoc[doc] = -1;
+            } else {
+                newDoc[doc] = next;
+                docIds[next] = docIds[doc];
+                docLengths[next] = docLengths[doc];
+                docOfId.put(docIds[next], next);
+                next++;
+            }
+        }
+        Collection<Postings> lists = terms.values();
+        lists.forEach(p -> p.renumber(newDoc));
+        lists.removeIf(p -> p.size == 0);
+        docCount = next;
+        deadCount = 0;
+        Arrays.fill(dead, 0L);
+    }
+
+    // Document numbers and weighted term frequencies for one term
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] freqs = new int[2];
+        int size;
+        int maxFreq;
+
+        void append(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+            maxFreq = Math.max(maxFreq, freq);
+        }
+
+        void renumber(int[] newDoc) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = newDoc[docs[i]];
+                if (doc >= 0) {
+                    docs[kept] = doc;
+                    freqs[kept] = freqs[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    private static final class Cursor {
+        final Postings postings;
+        final float weight;
+        final float maxScore;
+        int pos;
+
+        Cursor(Postings postings, float weight) {
+            this.postings = postings;
+            this.weight = weight;
+            // BM25 grows with tf and shrinks with length, so the shortest possible document
+            // with the highest tf in the list bounds every score this term can contribute
+            int tf = postings.maxFreq;
+            this.maxScore = weight * tf * (K1 + 1) / (tf + K1 * (1 - B));
+        }
+
+        boolean done() {
+            return pos >= postings.size;
+        }
+
+        int doc() {
+            return postings.docs[pos];
+        }
+
+        float score(float norm) {
+            int tf = postings.freqs[pos];
+            return weight * tf * (K1 + 1) / (tf + norm);
+        }
+
+        boolean next() {
+            return ++pos < postings.size;
+        }
+
+        // Move to the first document >= target, galloping then binary searching
+        boolean advance(int target) {
+            int[] docs = postings.docs;
+            int size = postings.size;
+            if (pos >= size || docs[pos] >= target) {
+                return pos < size;
+            }
+            int step = 1;
+            int lo = pos;
+            int hi = pos + 1;
+            while (hi < size && docs[hi] < target) {
+                lo = hi;
+                step <<= 1;
+                hi = pos + step;
+            }
+            hi = Math.min(hi, size);
+            // docs[lo] < target and docs[hi] >= target (or hi == size)
+            while (lo + 1 < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (docs[mid] < target) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            pos = hi;
+            return pos < size;
+        }
+    }
+
+    // Bounded min-heap keeping the highest scoring documents
+    private static final class TopHits {
+        final int[] docs;
+        final float[] scores;
+        int size;
+
+        TopHits(int limit) {
+            docs = new int[limit];
+            scores = new float[limit];
+        }
+
+        // Score a document must beat to enter the top hits
+        float threshold() {
+            return size < docs.length ? Float.NEGATIVE_INFINITY : scores[0];
+        }
+
+        void offer(int doc, float score) {
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                docs[0] = doc;
+                scores[0] = score;
+                siftDown(0, size);
+            }
+        }
+
+        // Drain the heap into best-first order
+        int[] sortedDocs() {
+            int[] result = new int[size];
+            for (int n = size; n > 0; n--) {
+                result[n - 1] = docs[0];
+                swap(0, n - 1);
+                siftDown(0, n - 1);
+            }
+            return result;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (scores[parent] <= scores[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int n) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (scores[child] >= scores[i]) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int d = docs[a];
+            docs[a] = docs[b];
+            docs[b] = d;
+            float s = scores[a];
+            scores[a] = scores[b];
+            scores[b] = s;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package msr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Secondary indexes on author, genre and status, with live facet counts, kept up to date by
+// added/changed/removed rather than rebuilt. Values match ignoring case; queries also ignore
+// surrounding spaces (stored values are already trimmed by CatalogEngine and BulkImporter).
+// Each distinct value of a field has a compressed bitmap of the IDs of its books (see
+// RoaringBitmap), so a write flips a few bits, a multi-field BookFilter is answered with
+// word-level AND, OR and AND NOT, and results come out in ID order, ready to page. A bitmap's
+// cardinality is its facet count, and genre bitmaps also count their books per status, so all
+// counts are O(1) to read.
+// Not thread-safe; CatalogEngine guards it with its store lock.
+public class SecondaryIndex {
+    private static final BookField[] FIELDS = {BookField.AUTHOR, BookField.GENRE, BookField.STATUS};
+    private static final int GENRE = 1;
+    private static final int STATUSES = BookStatus.values().length;
+    private static final RoaringBitmap NONE = new RoaringBitmap();
+
+    // Every indexed ID: the universe for not
+    private final RoaringBitmap all = new RoaringBitmap();
+    // One map per entry of FIELDS
+    private final List<Map<Key, Postings>> lists = new ArrayList<>(FIELDS.length);
+    // Reused by writes, which hold the store's write lock; queries may run concurrently and make
+    // their own keys
+    private final Key probe = new Key();
+    private final Key otherProbe = new Key();
+
+    public SecondaryIndex() {
+        for (int f = 0; f < FIELDS.length; f++) {
+            lists.add(new HashMap<>());
+        }
+    }
+
+    public static boolean isIndexed(BookField field) {
+        return fieldIndex(field) >= 0;
+    }
+
+    public int size() {
+        return all.cardinality();
+    }
+
+    public void added(BookRecord book) {
+        int id = book.getId();
+        all.add(id);
+        for (int f = 0; f < FIELDS.length; f++) {
+            Postings list = listFor(f, FIELDS[f].text(book));
+            list.ids.add(id);
+            if (f == GENRE) {
+                list.countStatus(book, 1);
+            }
+        }
+    }
+
+    // Move the book from the bitmaps of old's values to those of book's; the ID is the same
+    public void changed(BookRecord old, BookRecord book) {
+        int id = book.getId();
+        if (!all.contains(id)) {
+            added(book);
+            return;
+        }
+        for (int f = 0; f < FIELDS.length; f++) {
+            String before = FIELDS[f].text(old);
+            String after = FIELDS[f].text(book);
+            boolean moved = !probe.set(before).equals(otherProbe.set(after));
+            if (f == GENRE) {
+                lists.get(f).get(probe).countStatus(old, -1);
+            }
+            if (moved) {
+                removeFrom(f, before, id);
+            }
+            Postings list = listFor(f, after);
+            if (moved) {
+                list.ids.add(id);
+            }
+            if (f == GENRE) {
+                list.countStatus(book, 1);
+            }
+        }
+    }
+
+    public void removed(BookRecord book) {
+        int id = book.getId();
+        if (!all.remove(id)) {
+            return;
+        }
+        lists.get(GENRE).get(probe.set(book.getGenre())).countStatus(book, -1);
+        for (int f = 0; f < FIELDS.length; f++) {
+            removeFrom(f, FIELDS[f].text(book), id);
+        }
+    }
+
+    // IDs of the books whose field has this value, ascending
+    public int[] ids(BookField field, String value) {
+        return bitmap(requireIndexed(field), value).toArray();
+    }
+
+    // Number of books whose field has this value
+    public int count(BookField field, String value) {
+        return bitmap(requireIndexed(field), value).cardinality();
+    }
+
+    // Number of books in a genre with the given status
+    public int count(String genre, BookStatus status) {
+        Postings list = lists.get(GENRE).get(Key.of(genre));
+        return list == null ? 0 : list.statusCounts[status.ordinal()];
+    }
+
+    // The IDs of the books that match filter. May be one of the index's own bitmaps, so it must
+    // not be modified, and only read while the index is not being written.
+    public RoaringBitmap matching(BookFilter filter) {
+        return matching(filter, 0, Character.MAX_VALUE + 1);
+    }
+
+    // Up to limit IDs above after that match filter, ascending. The filter is evaluated over a
+    // window of chunks (65,536 IDs each) from the cursor that doubles until the page is full, so
+    // a page of a common match costs a chunk or two rather than the whole result.
+    public int[] page(BookFilter filter, int after, int limit) {
+        if (after == Integer.MAX_VALUE) {
+            return new int[0];
+        }
+        int[] page = new int[Math.max(0, Math.min(limit, all.cardinality()))];
+        int n = 0;
+        int from = all.chunkIndex(after + 1);
+        for (int width = 1; from < all.chunkCount() && n < page.length; width *= 2) {
+            int to = Math.min(all.chunkCount(), from + width);
+            int toKey = to == all.chunkCount() ? Character.MAX_VALUE + 1 : all.chunkKey(to);
+            int[] ids = matching(filter, all.chunkKey(from), toKey).page(after, page.length - n);
+            System.arraycopy(ids, 0, page, n, ids.length);
+            n += ids.length;
+            from = to;
+        }
+        return n == page.length ? page : Arrays.copyOf(page, n);
+    }
+
+    // Count per value of a field, largest first, under each value's first-seen spelling
+    public Map<String, Integer> facets(BookField field) {
+        List<Postings> all = new ArrayList<>(lists.get(requireIndexed(field)).values());
+        all.removeIf(p -> p.ids.isEmpty());
+        all.sort((a, b) -> Integer.compare(b.ids.cardinality(), a.ids.cardinality()));
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Postings p : all) {
+            counts.put(p.label, p.ids.cardinality());
+        }
+        return counts;
+    }
+
+    // The matches among the chunks with keys in [fromKey, toKey)
+    private RoaringBitmap matching(BookFilter filter, int fromKey, int toKey) {
+        switch (filter.kind) {
+            case IS:
+                return bitmap(requireIndexed(filter.field), filter.value).slice(fromKey, toKey);
+            case OR: {
+                RoaringBitmap result = matching(filter.operands[0], fromKey, toKey);
+                for (int i = 1; i < filter.operands.length; i++) {
+                    result = result.or(matching(filter.operands[i], fromKey, toKey));
+                }
+                return result;
+            }
+            case NOT:
+                return all.slice(fromKey, toKey).andNot(matching(filter.operands[0], fromKey, toKey));
+            default:
+                return matchingAll(filter.operands, fromKey, toKey);
+        }
+    }
+
+    // AND of the operands, smallest first so intermediate results shrink quickly; negated
+    // operands are subtracted at the end rather than complemented against every ID
+    private RoaringBitmap matchingAll(BookFilter[] operands, int fromKey, int toKey) {
+        List<RoaringBitmap> include = new ArrayList<>();
+        List<RoaringBitmap> exclude = new ArrayList<>();
+        for (BookFilter operand : operands) {
+            if (operand.kind == BookFilter.Kind.NOT) {
+                exclude.add(matching(operand.operands[0], fromKey, toKey));
+            } else {
+                include.add(matching(operand, fromKey, toKey));
+            }
+        }
+        include.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        RoaringBitmap result = include.isEmpty() ? all.slice(fromKey, toKey) : include.get(0);
+        for (int i = 1; i < include.size() && !result.isEmpty(); i++) {
+            result = result.and(include.get(i));
+        }
+        for (int i = 0; i < exclude.size() && !result.isEmpty(); i++) {
+            result = result.andNot(exclude.get(i));
+        }
+        return result;
+    }
+
+    private RoaringBitmap bitmap(int f, String value) {
+        Postings list = lists.get(f).get(Key.of(value));
+        return list == null ? NONE : list.ids;
+    }
+
+    // The list for a value, created if it is new
+    private Postings listFor(int f, String value) {
+        Postings list = lists.get(f).get(probe.set(value));
+        if (list == null) {
+            list = new Postings(probe.value);
+            lists.get(f).put(new Key().set(probe.value), list);
+        }
+        return list;
+    }
+
+    private void removeFrom(int f, String value, int id) {
+        Postings list = lists.get(f).get(probe.set(value));
+        list.ids.remove(id);
+        // Drop emptied lists of values that are unlikely to come back, e.g. a corrected author
+        if (list.ids.isEmpty()) {
+            lists.get(f).remove(probe);
+        }
+    }
+
+    private static int fieldIndex(BookField field) {
+        for (int f = 0; f < FIELDS.length; f++) {
+            if (FIELDS[f] == field) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    private static int requireIndexed(BookField field) {
+        int f = fieldIndex(field);
+        if (f < 0) {
+            throw new IllegalArgumentException(field + " is not indexed");
+        }
+        return f;
+    }
+
+    // Case-insensitive map key; the hash folds case per character, so no lower-cased copy is made
+    private static final class Key {
+        String value;
+        int hash;
+
+        static Key of(String query) {
+            return new Key().set(query == null ? "" : query.trim());
+        }
+
+        Key set(String value) {
+            this.value = value == null ? "" : value;
+            int h = 0;
+            for (int i = 0; i < this.value.length(); i++) {
+                char c = this.value.charAt(i);
+                if (c < 128) {
+                    h = 31 * h + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+                } else {
+                    h = 31 * h + Character.toLowerCase(Character.toUpperCase(c));
+                }
+            }
+            hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hash == hash && ((Key) o).value.equalsIgnoreCase(value);
+        }
+    }
+
+    // The books with one value of one field
+    private static final class Postings {
+        final String label;
+        final RoaringBitmap ids = new RoaringBitmap();
+        final int[] statusCounts = new int[STATUSES];
+
+        Postings(String label) {
+            this.label = label;
+        }
+
+        void countStatus(BookRecord book, int delta) {
+            BookStatus status = BookStatus.parse(book.getAvailabilityStatus());
+            if (status != null) {
+                statusCounts[status.ordinal()] += delta;
+            }
+        }
+    }
+}
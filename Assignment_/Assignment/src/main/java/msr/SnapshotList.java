@@ -0,0 +1,139 @@
+package msr;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Array list that can hand out point-in-time snapshots in O(n / CHUNK) without copying its
+// elements. Elements live in fixed-size chunks; a snapshot copies only the array of chunk
+// references, and the list copies a chunk that a snapshot may share the first time it writes to
+// it afterwards (copy-on-write at chunk granularity). Each chunk is stamped with the epoch it was
+// last copied in, and every snapshot starts a new epoch, so a chunk stamped with the current
+// epoch is known to be private. A chunk that only old snapshots still refer to is reclaimed by
+// the garbage collector once the last of them is dropped.
+// Not thread-safe, except that snapshot() may run in several threads at once while nothing
+// writes; a snapshot is immutable and can be read by any thread it is safely handed to.
+final class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+    static final int SHIFT = 10;
+    static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private Object[][] chunks = new Object[4][];
+    private long[] stamps = new long[4];
+    // Atomic so that concurrent snapshots each start a new epoch
+    private final AtomicLong epoch = new AtomicLong();
+    private int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) chunks[index >>> SHIFT][index & MASK];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index);
+        Object[] chunk = writable(index >>> SHIFT);
+        E old = (E) chunk[index & MASK];
+        chunk[index & MASK] = element;
+        return old;
+    }
+
+    @Override
+    public boolean add(E element) {
+        int c = size >>> SHIFT;
+        if ((size & MASK) == 0) {
+            if (c == chunks.length) {
+                chunks = Arrays.copyOf(chunks, c * 2);
+                stamps = Arrays.copyOf(stamps, c * 2);
+            }
+            chunks[c] = new Object[CHUNK];
+            stamps[c] = epoch.get();
+        }
+        writable(c)[size & MASK] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    // Removing the last element is O(1); any other index shifts the elements after it
+    @Override
+    public E remove(int index) {
+        E removed = get(index);
+        for (int i = index; i < size - 1; i++) {
+            set(i, get(i + 1));
+        }
+        int last = --size;
+        if ((last & MASK) == 0) {
+            // The chunk is now empty; drop it rather than copy it
+            chunks[last >>> SHIFT] = null;
+        } else {
+            writable(last >>> SHIFT)[last & MASK] = null;
+        }
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        chunks = new Object[4][];
+        stamps = new long[4];
+        size = 0;
+        modCount++;
+    }
+
+    // Immutable copy of the list as it is now
+    List<E> snapshot() {
+        epoch.incrementAndGet();
+        return new Snapshot<>(Arrays.copyOf(chunks, (size + MASK) >>> SHIFT), size);
+    }
+
+    // The chunk at c, copied first if a snapshot may share it
+    private Object[] writable(int c) {
+        long current = epoch.get();
+        if (stamps[c] != current) {
+            chunks[c] = chunks[c].clone();
+            stamps[c] = current;
+        }
+        return chunks[c];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    private static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[][] chunks;
+        private final int size;
+
+        Snapshot(Object[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return (E) chunks[index >>> SHIFT][index & MASK];
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package msr;
+
+import java.util.Arrays;
+
+// Maps repeated strings (authors, genres) to dense int codes so each distinct value is stored once.
+// Codes are never reused; -1 stands for null.
+public class StringDictionary {
+    public static final int NULL_CODE = -1;
+    private static final int EMPTY = -1;
+
+    private String[] values = new String[16];
+    private int[] hashes = new int[16];
+    private int[] table = newTable(32);
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    // Code for value, adding it if it is new
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        int hash = mix(value.hashCode());
+        int mask = table.length - 1;
+        int i = hash & mask;
+        int code;
+        while ((code = table[i]) != EMPTY) {
+            if (hashes[code] == hash && values[code].equals(value)) {
+                return code;
+            }
+            i = (i + 1) & mask;
+        }
+        code = size++;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, code * 2);
+            hashes = Arrays.copyOf(hashes, code * 2);
+        }
+        values[code] = value;
+        hashes[code] = hash;
+        table[i] = code;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    // Code for value if it is already known, otherwise NULL_CODE
+    public int find(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        int hash = mix(value.hashCode());
+        int mask = table.length - 1;
+        for (int i = hash & mask, code; (code = table[i]) != EMPTY; i = (i + 1) & mask) {
+            if (hashes[code] == hash && values[code].equals(value)) {
+                return code;
+            }
+        }
+        return NULL_CODE;
+    }
+
+    public String decode(int code) {
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    // All values indexed by code, for the codes handed out so far. Codes are never reused and a
+    // new value never overwrites an old one (a full array is replaced, not changed), so the array
+    // can be read from another thread for those codes without copying it.
+    public String[] snapshot() {
+        return values;
+    }
+
+    private void rehash() {
+        table = newTable(table.length * 2);
+        int mask = table.length - 1;
+        for (int code = 0; code < size; code++) {
+            int i = hashes[code] & mask;
+            while (table[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            table[i] = code;
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] t = new int[capacity];
+        Arrays.fill(t, EMPTY);
+        return t;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,188 @@
+package msr;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Type-ahead row filter for a PagedBookList.
+// Keystrokes are debounced, then the query scans a capture of the store on a background thread
+// for books whose title, author or genre contains the text (ignoring case). Matches are handed
+// over in batches and an AnimationTimer appends at most MAX_ROWS_PER_PULSE of them to the table
+// per frame, so the FX thread only ever does a bounded amount of work. A new keystroke cancels
+// the query that is still running.
+public class TypeAheadFilter<B extends BookRecord> {
+    private static final Duration DEBOUNCE = Duration.millis(30);
+    private static final int BATCH_SIZE = 256;
+    private static final int MAX_ROWS_PER_PULSE = 4096;
+    // How many books the scan checks between looks at the cancel flag
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final CatalogStore<B> store;
+    private final PagedBookList<B> rows;
+    private final Runnable onCleared;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "type-ahead-filter");
+        t.setDaemon(true);
+        return t;
+    });
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE);
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    private String pendingText = "";
+    private Query current;
+    private Future<?> running;
+
+    // onCleared runs on the FX thread when the filter text becomes blank, to restore the full view
+    public TypeAheadFilter(CatalogStore<B> store, PagedBookList<B> rows, Runnable onCleared) {
+        this.store = store;
+        this.rows = rows;
+        this.onCleared = onCleared;
+        debounce.setOnFinished(e -> start(pendingText));
+    }
+
+    // Call on every change of the filter text; the query starts once typing pauses
+    public void textChanged(String text) {
+        pendingText = text == null ? "" : text.trim();
+        cancel();
+        debounce.playFromStart();
+    }
+
+    // Run the current text again at once, e.g. after the catalog changed
+    public void rerun() {
+        debounce.stop();
+        start(pendingText);
+    }
+
+    public boolean isActive() {
+        return !pendingText.isEmpty();
+    }
+
+    // Stop the running query and drop the matches it has not yet shown
+    public void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            current = null;
+        }
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+        pulse.stop();
+    }
+
+    private void start(String text) {
+        cancel();
+        if (text.isEmpty()) {
+            onCleared.run();
+            return;
+        }
+        Query query = new Query(text);
+        Collection<BookRecord> image = store.capture();
+        current = query;
+        rows.showOnly(new int[0]);
+        running = worker.submit(() -> query.scan(image));
+        pulse.start();
+    }
+
+    // Move the matches found since the last frame into the table
+    private void drain() {
+        Query query = current;
+        if (query == null) {
+            pulse.stop();
+            return;
+        }
+        int budget = MAX_ROWS_PER_PULSE;
+        int[] batch;
+        while (budget > 0 && (batch = query.batches.peek()) != null) {
+            int from = query.drainedOfHead;
+            int n = Math.min(batch.length - from, budget);
+            rows.append(batch, from, n);
+            budget -= n;
+            if (from + n == batch.length) {
+                query.batches.poll();
+                query.drainedOfHead = 0;
+            } else {
+                query.drainedOfHead = from + n;
+            }
+        }
+        if (query.done && query.batches.isEmpty()) {
+            pulse.stop();
+            running = null;
+        }
+    }
+
+    // True if any of the searched fields contains needle, ignoring case
+    static boolean matches(BookRecord book, String needle) {
+        return contains(book.getTitle(), needle) || contains(book.getAuthor(), needle)
+                || contains(book.getGenre(), needle);
+    }
+
+    private static boolean contains(String text, String needle) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - needle.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Query {
+        private final String needle;
+        private final ConcurrentLinkedQueue<int[]> batches = new ConcurrentLinkedQueue<>();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        // Entries of the head batch already appended to the table (FX thread only)
+        private int drainedOfHead;
+
+        Query(String needle) {
+            this.needle = needle;
+        }
+
+        void scan(Collection<BookRecord> image) {
+            int[] batch = new int[BATCH_SIZE];
+            int n = 0;
+            int checked = 0;
+            for (BookRecord book : image) {
+                if (++checked % CANCEL_CHECK_INTERVAL == 0) {
+                    if (cancelled) {
+                        return;
+                    }
+                    // Hand over a partial batch when the table has caught up, so sparse
+                    // matches still show up without waiting for a full batch
+                    if (n > 0 && batches.isEmpty()) {
+                        batches.add(Arrays.copyOf(batch, n));
+                        n = 0;
+                    }
+                }
+                if (matches(book, needle)) {
+                    batch[n++] = book.getId();
+                    if (n == BATCH_SIZE) {
+                        batches.add(batch);
+                        batch = new int[BATCH_SIZE];
+                        n = 0;
+                    }
+                }
+            }
+            if (n > 0) {
+                batches.add(Arrays.copyOf(batch, n));
+            }
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package msr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Append-only binary log of catalog changes, split into segment files named after their first
+// sequence number. Each record is framed as [length][CRC32C][payload] so a torn tail write is
+// detected and cut off on recovery.
+public class WriteAheadLog implements AutoCloseable {
+    // MOVE is a book's new state plus the ID it moved from, in one record so recovery sees both
+    // halves of an ID change or neither
+    public enum Op {
+        ADD, UPDATE, DELETE, MOVE
+    }
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_LENGTH = 1 << 24;
+    private static final int INTERVAL_FLUSH_BYTES = 64 * 1024;
+
+    private final Path dir;
+    private final Durability durability;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final ScheduledExecutorService syncTimer;
+
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(INTERVAL_FLUSH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INTERVAL_FLUSH_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private long lastSeq;
+    private long durableSeq;
+    private boolean flushing;
+    private IOException failure;
+
+    // Open a new segment after lastSeq; intervalMillis is only used with PER_INTERVAL
+    public WriteAheadLog(Path dir, long lastSeq, Durability durability, long intervalMillis) throws IOException {
+        this.dir = dir;
+        this.durability = durability;
+        this.lastSeq = lastSeq;
+        this.durableSeq = lastSeq;
+        Files.createDirectories(dir);
+        this.channel = openSegment(lastSeq + 1);
+        if (durability == Durability.PER_INTERVAL) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "wal-sync");
+                t.setDaemon(true);
+                return t;
+            });
+            syncTimer.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncTimer = null;
+        }
+    }
+
+    public long lastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Log an add or update carrying the book's full new state; returns its sequence number
+    // once it is as durable as the configured mode promises
+    public long append(Op op, BookRecord book) {
+        return append(op, book.getId(), book);
+    }
+
+    public long appendDelete(int id) {
+        return append(Op.DELETE, id, null);
+    }
+
+    // Log a book moved from fromId to its current ID
+    public long appendMove(int fromId, BookRecord book) {
+        lock.lock();
+        try {
+            checkFailure();
+            long seq = ++lastSeq;
+            encode(seq, Op.MOVE, book.getId(), book, fromId);
+            return commit(seq);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Log a batch of adds or updates with a single sync for the whole batch
+    public long appendAll(Op op, List<? extends BookRecord> books) {
+        lock.lock();
+        try {
+            checkFailure();
+            for (BookRecord book : books) {
+                encode(++lastSeq, op, book.getId(), book);
+            }
+            return commit(lastSeq);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Log a batch of deletes with a single sync for the whole batch
+    public long appendDeleteAll(int[] ids, int count) {
+        lock.lock();
+        try {
+            checkFailure();
+            for (int i = 0; i < count; i++) {
+                encode(++lastSeq, Op.DELETE, ids[i], null);
+            }
+            return commit(lastSeq);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(Op op, int id, BookRecord book) {
+        lock.lock();
+        try {
+            checkFailure();
+            long seq = ++lastSeq;
+            encode(seq, op, id, book);
+            return commit(seq);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Make everything up to seq as durable as the configured mode promises; called with the lock held
+    private long commit(long seq) throws IOException {
+        try {
+            switch (durability) {
+                case PER_OPERATION:
+                    writePending();
+                    channel.force(false);
+                    durableSeq = seq;
+                    break;
+                case PER_BATCH:
+                    awaitGroupCommit(seq);
+                    break;
+                case PER_INTERVAL:
+                    if (pending.position() >= INTERVAL_FLUSH_BYTES) {
+                        writePending();
+                    }
+                    break;
+            }
+            return seq;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the log to be synced", e);
+        }
+    }
+
+    // Leader/follower group commit: whoever finds no flush running writes and fsyncs everything
+    // queued so far outside the lock; the others keep queueing and wait for a flush that covers them
+    private void awaitGroupCommit(long seq) throws IOException, InterruptedException {
+        while (durableSeq < seq) {
+            checkFailure();
+            if (flushing) {
+                flushed.await();
+                continue;
+            }
+            flushing = true;
+            ByteBuffer batch = pending;
+            pending = spare;
+            long upTo = lastSeq;
+            lock.unlock();
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                lock.lock();
+                batch.clear();
+                spare = batch;
+                flushing = false;
+                if (failure == null) {
+                    durableSeq = upTo;
+                }
+                flushed.signalAll();
+            }
+        }
+    }
+
+    // Force everything appended so far to disk
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            checkFailure();
+            try {
+                writePending();
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            durableSeq = lastSeq;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sync and start a new segment; returns the last sequence number of the closed segments
+    public long rotate() throws IOException {
+        lock.lock();
+        try {
+            sync();
+            channel.close();
+            channel = openSegment(lastSeq + 1);
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Delete segments whose records all have sequence numbers <= seq
+    public void deleteSegmentsUpTo(long seq) throws IOException {
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSeqOf(segments.get(i + 1)) <= seq + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncTimer != null) {
+            syncTimer.shutdownNow();
+        }
+        lock.lock();
+        try {
+            if (channel.isOpen()) {
+                sync();
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Replay every intact record with a sequence number above afterSeq, oldest first, and
+    // return the highest sequence number seen. A torn record at the end of the newest segment
+    // is truncated away; damage anywhere else is reported as an error.
+    public static long replay(Path dir, long afterSeq, Consumer<Entry> consumer) throws IOException {
+        long last = afterSeq;
+        if (!Files.isDirectory(dir)) {
+            return last;
+        }
+        List<Path> segments = segments(dir);
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            boolean newest = i == segments.size() - 1;
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long goodEnd = 0;
+                DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+                CRC32C check = new CRC32C();
+                while (true) {
+                    Entry entry;
+                    try {
+                        int length = data.readInt();
+                        int checksum = data.readInt();
+                        if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                            throw new IOException("Bad record length " + length);
+                        }
+                        byte[] payload = new byte[length];
+                        data.readFully(payload);
+                        check.reset();
+                        check.update(payload, 0, length);
+                        if ((int) check.getValue() != checksum) {
+                            throw new IOException("Checksum mismatch");
+                        }
+                        entry = decode(ByteBuffer.wrap(payload));
+                        goodEnd += 8 + length;
+                    } catch (EOFException e) {
+                        if (goodEnd < in.size()) {
+                            truncateTail(segment, in, goodEnd, newest, "incomplete record");
+                        }
+                        break;
+                    } catch (IOException e) {
+                        truncateTail(segment, in, goodEnd, newest, e.getMessage());
+                        break;
+                    }
+                    if (entry.seq > last) {
+                        consumer.accept(entry);
+                        last = entry.seq;
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void truncateTail(Path segment, FileChannel in, long goodEnd, boolean newest, String reason)
+            throws IOException {
+        if (!newest) {
+            throw new IOException("Corrupt write-ahead log segment " + segment + " at offset " + goodEnd + ": " + reason);
+        }
+        in.truncate(goodEnd);
+        in.force(true);
+    }
+
+    private void encode(long seq, Op op, int id, BookRecord book) {
+        encode(seq, op, id, book, 0);
+    }
+
+    private void encode(long seq, Op op, int id, BookRecord book, int fromId) {
+        byte[][] fields = book == null ? new byte[0][] : new byte[][] {
+                bytes(book.getTitle()), bytes(book.getAuthor()), bytes(book.getGenre()), bytes(book.getAvailabilityStatus())
+        };
+        int length = 8 + 1 + 4 + (op == Op.MOVE ? 4 : 0);
+        for (byte[] f : fields) {
+            length += 4 + (f == null ? 0 : f.length);
+        }
+        ensurePending(8 + length);
+        int start = pending.position();
+        pending.putInt(length).putInt(0).putLong(seq).put((byte) op.ordinal()).putInt(id);
+        for (byte[] f : fields) {
+            if (f == null) {
+                pending.putInt(-1);
+            } else {
+                pending.putInt(f.length).put(f);
+            }
+        }
+        if (op == Op.MOVE) {
+            pending.putInt(fromId);
+        }
+        crc.reset();
+        crc.update(pending.array(), start + 8, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        long seq = in.getLong();
+        Op op = Op.values()[in.get()];
+        int id = in.getInt();
+        if (op == Op.DELETE) {
+            return new Entry(seq, op, id, null, null, null, null);
+        }
+        String title = string(in);
+        String author = string(in);
+        String genre = string(in);
+        String status = string(in);
+        return new Entry(seq, op, id, title, author, genre, status, op == Op.MOVE ? in.getInt() : 0);
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException | UncheckedIOException e) {
+            // Reported to the next writer through checkFailure()
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log is unusable after an earlier I/O error", failure);
+        }
+    }
+
+    private FileChannel openSegment(long firstSeq) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(firstSeqOf(a), firstSeqOf(b)));
+        return segments;
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // One replayed log record; adds and updates carry the book's full state
+    public static final class Entry implements BookRecord {
+        private final long seq;
+        private final Op op;
+        private final int id;
+        private final String title;
+        private final String author;
+        private final String genre;
+        private final String availabilityStatus;
+        private final int fromId;
+
+        // Plain copy of a book's state, e.g. for a snapshot image
+        Entry(int id, String title, String author, String genre, String availabilityStatus) {
+            this(0, Op.ADD, id, title, author, genre, availabilityStatus);
+        }
+
+        Entry(long seq, Op op, int id, String title, String author, String genre, String availabilityStatus) {
+            this(seq, op, id, title, author, genre, availabilityStatus, 0);
+        }
+
+        Entry(long seq, Op op, int id, String title, String author, String genre, String availabilityStatus,
+              int fromId) {
+            this.seq = seq;
+            this.op = op;
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.genre = genre;
+            this.availabilityStatus = availabilityStatus;
+            this.fromId = fromId;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+        public Op getOp() {
+            return op;
+        }
+        // The ID a MOVE took the book from
+        public int getFromId() {
+            return fromId;
+        }
+        @Override
+        public int getId() {
+            return id;
+        }
+        @Override
+        public String getTitle() {
+            return title;
+        }
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+        @Override
+        public String getGenre() {
+            return genre;
+        }
+        @Override
+        public String getAvailabilityStatus() {
+            return availabilityStatus;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookFilterTest {
+    private static final String[] AUTHORS = {"Jane Austen", "Smith & Jones", "Frank Herbert"};
+    private static final String[] GENRES = {"Fiction", "Novel", "Science Fiction"};
+    private static final String[] STATUSES = {"Available", "Checked Out"};
+
+    @Test
+    void textFormReadsWithPrecedenceAndQuoting() {
+        BookFilter filter = BookFilter.parse(
+                " genre=fiction & status = Available & !(author=Jane Austen | author=\"Smith & Jones\")");
+        assertEquals("genre=fiction & status=Available & !(author=Jane Austen | author=\"Smith & Jones\")",
+                filter.toString());
+        assertTrue(filter.matches(new Book(1, "Emma", "Frank Herbert", " FICTION ", "Available")));
+        assertFalse(filter.matches(new Book(2, "Emma", "Smith & Jones", "Fiction", "Available")));
+        assertFalse(filter.matches(new Book(3, "Emma", "Frank Herbert", "Fiction", "Checked Out")));
+
+        // & binds tighter than |, ! tighter than &
+        BookFilter mixed = BookFilter.parse("genre=Novel | genre=Fiction & !status=Available");
+        assertEquals("genre=Novel | genre=Fiction & !status=Available", mixed.toString());
+        assertTrue(mixed.matches(new Book(4, "Emma", "A", "Novel", "Available")));
+        assertFalse(mixed.matches(new Book(5, "Emma", "A", "Fiction", "Available")));
+
+        // Quotes inside a quoted value are doubled
+        BookFilter quoted = BookFilter.parse("author=\"The \"\"Best\"\" Author\"");
+        assertTrue(quoted.matches(new Book(6, "Emma", "The \"Best\" Author", "Novel", "Available")));
+        assertEquals(quoted.toString(), BookFilter.parse(quoted.toString()).toString());
+    }
+
+    @Test
+    void malformedTextIsRejected() {
+        for (String text : new String[] {"", "title=Emma", "genre", "(genre=Novel", "genre=Novel)",
+                "author=\"Jane", "genre=Novel & "}) {
+            assertThrows(IllegalArgumentException.class, () -> BookFilter.parse(text), text);
+        }
+        assertThrows(IllegalArgumentException.class, () -> BookFilter.is(BookField.TITLE, "Emma"));
+    }
+
+    @Test
+    void engineAnswersFiltersLikeTheyMatchBooks() {
+        Random random = new Random(11);
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        for (int id = 0; id < 3000; id++) {
+            engine.addBook(id * 3, "Title " + id, AUTHORS[random.nextInt(AUTHORS.length)],
+                    GENRES[random.nextInt(GENRES.length)], STATUSES[random.nextInt(STATUSES.length)]);
+        }
+        BookFilter[] filters = {
+                BookFilter.parse("genre=Fiction"),
+                BookFilter.parse("genre=fiction & status=Available"),
+                BookFilter.parse("author=\"Smith & Jones\" | !genre=Novel"),
+                BookFilter.parse("!(status=Available | status=Checked Out)"),
+                BookFilter.parse("author=Nobody")
+        };
+        for (int round = 0; round < 2; round++) {
+            for (BookFilter filter : filters) {
+                List<Integer> expected = new ArrayList<>();
+                for (Book book : engine) {
+                    if (filter.matches(book)) {
+                        expected.add(book.getId());
+                    }
+                }
+                expected.sort(null);
+                int[] ids = expected.stream().mapToInt(Integer::intValue).toArray();
+                assertArrayEquals(ids, engine.idsMatching(filter), filter.toString());
+                assertEquals(ids.length, engine.count(filter));
+
+                List<Integer> paged = new ArrayList<>();
+                int after = Integer.MIN_VALUE;
+                int[] page;
+                while ((page = engine.idsMatching(filter, after, 100)).length > 0) {
+                    for (int id : page) {
+                        paged.add(id);
+                    }
+                    after = page[page.length - 1];
+                }
+                assertEquals(expected, paged, filter.toString());
+            }
+            // The indexes are built now; change books under them for the second round
+            for (int i = 0; i < 500; i++) {
+                int id = random.nextInt(3000) * 3;
+                if (engine.findBookById(id) != null) {
+                    engine.updateBook(id, "Changed", AUTHORS[random.nextInt(AUTHORS.length)],
+                            GENRES[random.nextInt(GENRES.length)], STATUSES[random.nextInt(STATUSES.length)]);
+                }
+                engine.deleteBook(random.nextInt(3000) * 3);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkImporterTest {
+    @TempDir
+    Path dir;
+
+    private final List<Book> imported = new ArrayList<>();
+
+    private BulkImporter.Result importCsv(String csv) throws IOException {
+        Path file = dir.resolve("books.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        BulkImporter<Book> importer = new BulkImporter<>(Book::new,
+                id -> imported.stream().anyMatch(b -> b.getId() == id), imported::addAll, 2);
+        return importer.run(file, dir.resolve("rejects.csv"), line -> { });
+    }
+
+    private List<String> rejects() throws IOException {
+        return Files.readAllLines(dir.resolve("rejects.csv"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void quotedFieldsMaySpanLines() throws IOException {
+        BulkImporter.Result result = importCsv("id,title,author,genre,status\n"
+                + "1,\"Line one\nline two\",Ann Author,Novel,Available\n"
+                + "2,\"Three\nline\ntitle\",Bob Writer,Poetry,Checked Out\n"
+                + "3,Plain,Cy Poet,Poetry,Available\n");
+
+        assertEquals(3, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals("Line one\nline two", imported.get(0).getTitle());
+        assertEquals("Three\nline\ntitle", imported.get(1).getTitle());
+        assertEquals("Plain", imported.get(2).getTitle());
+    }
+
+    @Test
+    void doubledQuotesAndCommasStayInTheField() throws IOException {
+        BulkImporter.Result result = importCsv("1,\"He said \"\"hi\"\", then left\",\"Doe, Jane\",Novel,Available\n"
+                + "2,\"\"\"Quoted\"\"\",Ann,Novel,Available\n");
+
+        assertEquals(2, result.getImported());
+        assertEquals("He said \"hi\", then left", imported.get(0).getTitle());
+        assertEquals("Doe, Jane", imported.get(0).getAuthor());
+        assertEquals("\"Quoted\"", imported.get(1).getTitle());
+    }
+
+    @Test
+    void rejectedRowsCarryTheLineTheyStartOn() throws IOException {
+        BulkImporter.Result result = importCsv("id,title,author,genre,status\n"
+                + "1,Good,Ann,Novel,Available\n"
+                + "2,\"Two\nlines\",Ann,Novel,Lost\n"
+                + "1,Duplicate,Ann,Novel,Available\n"
+                + "x,Bad id,Ann,Novel,Available\n"
+                + "3,Too,few\n"
+                + "4,\"Never closed,Ann,Novel,Available\n");
+
+        assertEquals(1, result.getImported());
+        assertEquals(5, result.getRejected());
+        List<String> rejects = rejects();
+        assertTrue(rejects.stream().anyMatch(r -> r.startsWith("3,\"Availability status")), rejects.toString());
+        assertTrue(rejects.stream().anyMatch(r -> r.startsWith("5,\"Book ID already exists\"")), rejects.toString());
+        assertTrue(rejects.stream().anyMatch(r -> r.startsWith("6,\"Book ID should be an integer\"")), rejects.toString());
+        assertTrue(rejects.stream().anyMatch(r -> r.startsWith("7,\"Expected 5 fields")), rejects.toString());
+        assertTrue(rejects.stream().anyMatch(r -> r.startsWith("8,\"Unterminated quoted field\"")), rejects.toString());
+    }
+
+    @Test
+    void splitFollowsTheQuotingRules() {
+        List<String> fields = new ArrayList<>();
+        assertNull(BulkImporter.split("1,\"a,b\",\"c\"\"d\",e\nf,", fields));
+        assertEquals(List.of("1", "a,b", "c\"d", "e\nf", ""), fields);
+        assertTrue(BulkImporter.quoteOpen("1,\"open"));
+        assertTrue(!BulkImporter.quoteOpen("1,5 \"inch\" disk,x"));
+    }
+}
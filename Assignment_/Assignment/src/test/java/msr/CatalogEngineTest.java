@@ -0,0 +1,266 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogEngineTest {
+    @Test
+    void writesWithUnicodeWhitespaceKeepTheSpellingTriesInStep() {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        engine.addBook(1, "Alpha", "Ann Author", "Novel", "Available");
+        // Builds the tries, so the writes below have to maintain them
+        assertEquals(List.of("Alpha"), engine.similarTitles("Alpa", 1, 5));
+
+        assertNotNull(engine.addBook(2, "Beta　", "　Bob Writer", "Novel　", "Available"));
+        assertEquals(2, engine.size());
+        assertEquals("Beta", engine.read(2).getTitle());
+        assertEquals("Bob Writer", engine.read(2).getAuthor());
+        assertEquals("Novel", engine.read(2).getGenre());
+        assertEquals(List.of("Beta"), engine.similarTitles("Beda", 1, 5));
+        assertEquals(List.of("Bob Writer"), engine.similarAuthors("Bob Writter", 1, 5));
+
+        assertNotNull(engine.updateBook(2, "Gamma　", null, null, null));
+        assertEquals(List.of("Gamma"), engine.similarTitles("Gama", 1, 5));
+        assertTrue(engine.similarTitles("Beda", 1, 5).isEmpty());
+
+        assertNotNull(engine.deleteBook(2));
+        assertTrue(engine.similarTitles("Gama", 1, 5).isEmpty());
+        assertTrue(engine.similarAuthors("Bob Writter", 1, 5).isEmpty());
+        assertEquals(1, engine.size());
+    }
+
+    // Writes from another thread while the lazy index is built off the lock; returns once both
+    // the writes and the query that triggered the build are done
+    private static void writeWhile(CatalogEngine<Book> engine, int books, Runnable query) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch writing = new CountDownLatch(1000);
+        Thread writer = new Thread(() -> {
+            Random random = new Random(42);
+            while (!stop.get()) {
+                writing.countDown();
+                int id = random.nextInt(books + books / 10);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        engine.updateBook(id, "Retitled " + random.nextInt(1000), "Author " + random.nextInt(50),
+                                "Genre " + random.nextInt(10), null);
+                        break;
+                    case 1:
+                        engine.deleteBook(id);
+                        break;
+                    default:
+                        engine.addBook(id, "Added " + id, "Author " + random.nextInt(50), "Genre " + random.nextInt(10),
+                                "Available");
+                }
+            }
+        });
+        writer.start();
+        try {
+            writing.await();
+            query.run();
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+    }
+
+    private static CatalogEngine<Book> catalogOf(int books) {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        List<Book> batch = new ArrayList<>(books);
+        for (int id = 0; id < books; id++) {
+            batch.add(new Book(id, "Title " + id, "Author " + id % 50, "Genre " + id % 10, "Available"));
+        }
+        engine.addBooks(batch);
+        return engine;
+    }
+
+    @Test
+    void secondaryIndexBuiltDuringWritesMatchesTheCatalog() throws InterruptedException {
+        int books = 200_000;
+        CatalogEngine<Book> engine = catalogOf(books);
+        writeWhile(engine, books, () -> engine.count(BookField.GENRE, "Genre 0"));
+
+        for (int g = 0; g < 10; g++) {
+            String genre = "Genre " + g;
+            int[] expected = engine.capture().stream().filter(b -> b.getGenre().equals(genre))
+                    .mapToInt(BookRecord::getId).sorted().toArray();
+            assertArrayEquals(expected, engine.idsWhere(BookField.GENRE, genre), genre);
+        }
+    }
+
+    @Test
+    void spellingTriesBuiltDuringWritesMatchTheCatalog() throws InterruptedException {
+        int books = 200_000;
+        CatalogEngine<Book> engine = catalogOf(books);
+        writeWhile(engine, books, () -> engine.similarTitles("Title 0", 0, 1));
+
+        for (int id = 0; id < books; id += 7) {
+            Book book = engine.read(id);
+            boolean kept = book != null && book.getTitle().equals("Title " + id);
+            assertEquals(kept ? List.of("Title " + id) : List.of(), engine.similarTitles("Title " + id, 0, 5),
+                    "book " + id);
+            if (book != null) {
+                assertTrue(engine.similarAuthors(book.getAuthor(), 0, 5).contains(book.getAuthor()), "book " + id);
+            }
+        }
+    }
+
+    @Test
+    void idTreeBuiltDuringWritesMatchesTheCatalog() throws InterruptedException {
+        int books = 200_000;
+        CatalogEngine<Book> engine = catalogOf(books);
+        writeWhile(engine, books, () -> engine.idsAfter(-1, 10));
+
+        int[] expected = engine.capture().stream().mapToInt(BookRecord::getId).sorted().toArray();
+        assertArrayEquals(expected, engine.idsAfter(-1, Integer.MAX_VALUE));
+        assertArrayEquals(Arrays.copyOfRange(expected, 100, 150), engine.idsByRank(100, 50));
+    }
+
+    // Fails every write to book 13 once failing is set
+    private static final class FailingStore extends BookStore<Book> {
+        boolean failing;
+
+        @Override
+        public boolean add(Book book) {
+            failOn(book.getId());
+            return super.add(book);
+        }
+
+        @Override
+        public void update(Book book) {
+            failOn(book.getId());
+            super.update(book);
+        }
+
+        @Override
+        public Book remove(int id) {
+            failOn(id);
+            return super.remove(id);
+        }
+
+        private void failOn(int id) {
+            if (failing && id == 13) {
+                throw new IllegalStateException("store full");
+            }
+        }
+    }
+
+    @Test
+    void failedStoreWriteLeavesNoTraceInTheIndexes() {
+        FailingStore store = new FailingStore();
+        store.add(new Book(13, "Kept", "Kim Keeper", "Novel", "Available"));
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, store);
+        engine.addBook(1, "Alpha", "Ann Author", "Novel", "Available");
+        // Build every lazy index, so the failed writes below reach them before the store
+        assertArrayEquals(new int[] {1, 13}, engine.idsWhere(BookField.GENRE, "Novel"));
+        assertArrayEquals(new int[] {1, 13}, engine.idsAfter(0, 10));
+        assertEquals(List.of("Kept"), engine.similarTitles("Kept", 0, 5));
+
+        store.failing = true;
+        assertThrows(IllegalStateException.class, () -> engine.updateBook(13, "Boom", "Bo Bomb", "Poetry", null));
+        assertThrows(IllegalStateException.class, () -> engine.deleteBook(13));
+        engine.addBook(2, "Beta", "Bob Writer", "Poetry", "Available");
+
+        assertEquals("Kept", engine.read(13).getTitle());
+        assertArrayEquals(new int[] {1, 13}, engine.idsWhere(BookField.GENRE, "Novel"));
+        assertArrayEquals(new int[] {2}, engine.idsWhere(BookField.GENRE, "Poetry"));
+        assertArrayEquals(new int[] {1, 2, 13}, engine.idsAfter(0, 10));
+        assertEquals(List.of("Kept"), engine.similarTitles("Kept", 0, 5));
+        assertTrue(engine.similarTitles("Boom", 0, 5).isEmpty());
+        assertTrue(engine.similarAuthors("Bo Bomb", 0, 5).isEmpty());
+    }
+
+    @Test
+    void bulkUpdateAndDeleteChangeOnlyTheBooksThatMatch() {
+        String[] genres = {"Novel", "Poetry", "Drama"};
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        for (int id = 0; id < 5000; id++) {
+            engine.addBook(id, "Title " + id, "Author " + id % 7, genres[id % 3],
+                    id % 5 == 0 ? "Checked Out" : "Available");
+        }
+
+        // Books already checked out match but are left as they are
+        BulkResult result = engine.updateWhere(BookFilter.parse("genre=novel"), null, null, null, "checked out");
+        assertEquals(1667, result.getMatched());
+        assertEquals(1667 - 334, result.getChanged());
+        result = engine.updateWhere(book -> book.getAuthor().equals("Author 3"), null, "Author Three", null, null);
+        assertEquals(714, result.getMatched());
+        assertEquals(714, result.getChanged());
+        for (int id = 0; id < 5000; id++) {
+            Book book = engine.read(id);
+            assertEquals(id % 3 == 0 || id % 5 == 0 ? "Checked Out" : "Available", book.getAvailabilityStatus());
+            assertEquals(id % 7 == 3 ? "Author Three" : "Author " + id % 7, book.getAuthor());
+            assertEquals("Title " + id, book.getTitle());
+        }
+
+        result = engine.deleteWhere(BookFilter.parse("genre=Poetry & status=Available"));
+        assertEquals(result.getMatched(), result.getChanged());
+        assertEquals(5000 - result.getChanged(), engine.size());
+        assertEquals(0, engine.count(BookFilter.parse("genre=Poetry & status=Available")));
+        for (int id : engine.idsWhere(BookField.GENRE, "Poetry")) {
+            assertEquals("Checked Out", engine.read(id).getAvailabilityStatus());
+        }
+    }
+
+    // Counts the tests of each book: the capture scan, the batch preparing it, then a re-test if
+    // it changed before the batch committed. At the second test, sideEffect may change the book.
+    private static Predicate<BookRecord> novelsChangedWhilePrepared(Map<Integer, Runnable> sideEffects) {
+        Map<Integer, Integer> tests = new ConcurrentHashMap<>();
+        return book -> {
+            if (tests.merge(book.getId(), 1, Integer::sum) == 2 && sideEffects.containsKey(book.getId())) {
+                sideEffects.get(book.getId()).run();
+            }
+            return book.getGenre().equals("Novel");
+        };
+    }
+
+    @Test
+    void bookChangedAfterItsBatchWasPreparedIsTestedAgain() {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        for (int id = 1; id <= 4; id++) {
+            engine.addBook(id, "Title " + id, "Author", "Novel", "Available");
+        }
+        Predicate<BookRecord> where = novelsChangedWhilePrepared(Map.of(
+                2, () -> engine.updateBook(2, null, null, "Poetry", null),
+                3, () -> engine.updateBook(3, "Retitled", null, null, null),
+                4, () -> engine.deleteBook(4)));
+
+        BulkResult result = engine.updateWhere(where, null, null, null, "Checked Out");
+        assertEquals(4, result.getMatched());
+        assertEquals(2, result.getChanged());
+        assertEquals("Checked Out", engine.read(1).getAvailabilityStatus());
+        // No longer a novel when its batch committed
+        assertEquals("Available", engine.read(2).getAvailabilityStatus());
+        // Still a novel: changed on top of the other write, not over it
+        assertEquals("Retitled", engine.read(3).getTitle());
+        assertEquals("Checked Out", engine.read(3).getAvailabilityStatus());
+        assertNull(engine.read(4));
+
+        engine.addBook(4, "Title 4", "Author", "Novel", "Available");
+        where = novelsChangedWhilePrepared(Map.of(
+                1, () -> engine.updateBook(1, null, null, "Drama", null),
+                3, () -> engine.updateBook(3, "Retitled again", null, null, null)));
+        result = engine.deleteWhere(where);
+        assertEquals(3, result.getMatched());
+        assertEquals(2, result.getChanged());
+        assertEquals("Drama", engine.read(1).getGenre());
+        assertNull(engine.read(3));
+        assertNull(engine.read(4));
+        assertEquals(2, engine.size());
+    }
+}
@@ -0,0 +1,95 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogExporterTest {
+    @TempDir
+    Path dir;
+
+    // Awkward books first, then enough plain ones to span several chunks
+    private static List<Book> books() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book(1, "Line one\nline two", "Ann Author", "Novel", "Available"));
+        books.add(new Book(2, "He said \"hi\"", "Doe, Jane", "Essays, Letters", "Checked Out"));
+        books.add(new Book(3, "\"Quoted\", with\ncomma and break", "Zoë Ünïcode", "", "Available"));
+        books.add(new Book(4, "Ends with quote\"", "\"", "Poetry", "Available"));
+        for (int id = 5; id < CatalogExporter.CHUNK_ROWS * 2 + 100; id++) {
+            books.add(new Book(id, "Title " + id, "Author " + (id % 97), "Genre " + (id % 7),
+                    id % 3 == 0 ? "Checked Out" : "Available"));
+        }
+        return books;
+    }
+
+    @Test
+    void csvExportImportsBackUnchanged() throws IOException {
+        List<Book> books = books();
+        Path csv = dir.resolve("books.csv");
+        CatalogExporter.Result exported = new CatalogExporter(CatalogExporter.Format.CSV, false, 2)
+                .run(books, csv, line -> { });
+        assertEquals(books.size(), exported.getRows());
+
+        List<Book> imported = new ArrayList<>();
+        BulkImporter.Result result = new BulkImporter<>(Book::new, id -> false, imported::addAll, 2)
+                .run(csv, dir.resolve("rejects.csv"), line -> { });
+
+        assertEquals(0, result.getRejected());
+        assertEquals(books.size(), imported.size());
+        for (int i = 0; i < books.size(); i++) {
+            Book expected = books.get(i);
+            Book actual = imported.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getAuthor(), actual.getAuthor());
+            assertEquals(expected.getGenre(), actual.getGenre());
+            assertEquals(expected.getAvailabilityStatus(), actual.getAvailabilityStatus());
+        }
+    }
+
+    @Test
+    void gzipHoldsTheSameBytesAsThePlainFile() throws IOException {
+        List<Book> books = books();
+        Path plain = dir.resolve("books.csv");
+        Path gzip = dir.resolve("books.csv.gz");
+        CatalogExporter.forPath(plain).run(books, plain, line -> { });
+        CatalogExporter.forPath(gzip).run(books, gzip, line -> { });
+
+        byte[] unzipped;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) {
+            unzipped = in.readAllBytes();
+        }
+        assertArrayEquals(Files.readAllBytes(plain), unzipped);
+    }
+
+    @Test
+    void jsonLinesHasOneObjectPerBook() throws IOException {
+        List<Book> books = books();
+        Path jsonl = dir.resolve("books.jsonl");
+        CatalogExporter.forPath(jsonl).run(books, jsonl, line -> { });
+
+        List<String> lines = Files.readAllLines(jsonl, StandardCharsets.UTF_8);
+        assertEquals(books.size(), lines.size());
+        assertTrue(lines.get(0).contains("\"title\":\"Line one\\nline two\""), lines.get(0));
+        assertTrue(lines.get(1).contains("\"title\":\"He said \\\"hi\\\"\""), lines.get(1));
+    }
+
+    @Test
+    void emptyCatalogStillGetsAHeader() throws IOException {
+        Path csv = dir.resolve("empty.csv");
+        CatalogExporter.forPath(csv).run(List.of(), csv, line -> { });
+        assertEquals(List.of("id,title,author,genre,status"), Files.readAllLines(csv, StandardCharsets.UTF_8));
+    }
+}
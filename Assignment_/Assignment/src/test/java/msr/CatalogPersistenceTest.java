@@ -0,0 +1,142 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogPersistenceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void idChangeSurvivesRestart() throws IOException {
+        Path data = dir.resolve("data");
+        writeBookAndMoveIt(data);
+
+        BookStore<Book> store = reopen(data);
+        assertFalse(store.contains(1));
+        assertEquals("Dune", store.get(2).getTitle());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void idChangeCutShortByACrashKeepsTheBookAtItsOldId() throws IOException {
+        Path data = dir.resolve("data");
+        long moveStart = writeBookAndMoveIt(data);
+        Path segment = newestSegment(data);
+        long end = Files.size(segment);
+        assertTrue(end > moveStart);
+
+        // Every point a crash could cut the ID change at, including just after its first bytes
+        for (long cut = moveStart; cut < end; cut++) {
+            Path copy = dir.resolve("cut-" + cut);
+            Files.createDirectories(copy);
+            Path copied = copy.resolve(segment.getFileName());
+            Files.copy(segment, copied);
+            try (FileChannel channel = FileChannel.open(copied, StandardOpenOption.WRITE)) {
+                channel.truncate(cut);
+            }
+
+            BookStore<Book> store = reopen(copy);
+            assertEquals(1, store.size(), "cut at " + cut);
+            assertEquals("Dune", store.get(1).getTitle(), "cut at " + cut);
+            assertFalse(store.contains(2), "cut at " + cut);
+        }
+    }
+
+    @Test
+    void snapshotReplacesTheLogItCoversAndRecoveryReplaysTheRest() throws IOException {
+        Path data = dir.resolve("data");
+        int books = 100_000;
+        BookStore<Book> written = new BookStore<>();
+        try (CatalogPersistence<Book> persistence =
+                     CatalogPersistence.open(data, Durability.PER_BATCH, Book::new, written)) {
+            List<Book> batch = new ArrayList<>();
+            for (int id = 0; id < books; id++) {
+                batch.add(new Book(id, "Title " + id, "Author", "Genre", "Available"));
+            }
+            batch.forEach(written::add);
+            // Enough operations for a snapshot of everything logged so far
+            persistence.logAddAll(batch);
+
+            Book updated = new Book(5, "Changed", "Author", "Genre", "Checked Out");
+            written.remove(5);
+            written.add(updated);
+            persistence.logUpdate(updated);
+            written.remove(6);
+            persistence.logDelete(6);
+        }
+        // close() waits for the snapshot, which also drops the segment it covers
+        assertEquals(1, count(data, "snapshot-*.dat"));
+        assertEquals(1, count(data, "wal-*.log"));
+
+        BookStore<Book> store = new BookStore<>();
+        try (CatalogPersistence<Book> persistence =
+                     CatalogPersistence.open(data, Durability.PER_BATCH, Book::new, store)) {
+            assertEquals(books - 1, store.size());
+            assertEquals("Title 99999", store.get(99_999).getTitle());
+            assertEquals("Changed", store.get(5).getTitle());
+            assertEquals("Checked Out", store.get(5).getAvailabilityStatus());
+            assertFalse(store.contains(6));
+        }
+    }
+
+    private static int count(Path data, String glob) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(data, glob)) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Logs book 1, then its move to ID 2; returns the log size between the two
+    private static long writeBookAndMoveIt(Path data) throws IOException {
+        BookStore<Book> store = new BookStore<>();
+        long moveStart;
+        try (CatalogPersistence<Book> persistence =
+                     CatalogPersistence.open(data, Durability.PER_OPERATION, Book::new, store)) {
+            Book book = new Book(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+            store.add(book);
+            persistence.logAdd(book);
+            moveStart = Files.size(newestSegment(data));
+
+            Book moved = new Book(2, "Dune", "Frank Herbert", "Science Fiction", "Available");
+            store.remove(1);
+            store.add(moved);
+            persistence.logIdChange(1, moved);
+        }
+        return moveStart;
+    }
+
+    private static BookStore<Book> reopen(Path data) throws IOException {
+        BookStore<Book> store = new BookStore<>();
+        CatalogPersistence.open(data, Durability.PER_OPERATION, Book::new, store).close();
+        return store;
+    }
+
+    private static Path newestSegment(Path data) throws IOException {
+        Path newest = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(data, "wal-*.log")) {
+            for (Path file : files) {
+                if (Files.size(file) > 0 && (newest == null || file.compareTo(newest) > 0)) {
+                    newest = file;
+                }
+            }
+        }
+        return newest;
+    }
+}
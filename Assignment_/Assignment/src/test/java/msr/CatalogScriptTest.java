@@ -0,0 +1,48 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CatalogScriptTest {
+    private final CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+
+    private String run(String script) throws IOException {
+        StringWriter out = new StringWriter();
+        new CatalogScript<>(engine, CatalogScript.Format.JSON, out)
+                .run(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+        return out.toString();
+    }
+
+    // The status line of the last command
+    private String status(String script) throws IOException {
+        String[] lines = run(script).split("\n");
+        return lines[lines.length - 1];
+    }
+
+    @Test
+    void rangePagesByLimit() throws IOException {
+        for (int id = 1; id <= 5; id++) {
+            engine.addBook(id, "Title " + id, "Author", "Novel", "Available");
+        }
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":2,\"next\":3}", status("range\t2\t5\t\t2\n"));
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":2}", status("range\t2\t5\t3\t2\n"));
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":4}", status("range\t2\t5\t\t" + Integer.MAX_VALUE + "\n"));
+    }
+
+    @Test
+    void filterPagesByLimit() throws IOException {
+        for (int id = 1; id <= 6; id++) {
+            engine.addBook(id, "Title " + id, "Author", id % 2 == 0 ? "Poetry" : "Novel", "Available");
+        }
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":2,\"next\":4}", status("filter\tgenre=Poetry\t\t2\n"));
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":1}", status("filter\tgenre=Poetry\t4\t2\n"));
+        assertEquals("{\"line\":1,\"ok\":true,\"count\":3}",
+                status("filter\tgenre=Poetry\t\t" + Integer.MAX_VALUE + "\n"));
+    }
+}
@@ -0,0 +1,119 @@
+package msr;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogServerTest {
+    private static final Pattern BOOK = Pattern.compile("\\{\"id\":(\\d+),\"title\":\"([^\"]*)\"");
+    private static final int BOOKS = 2;
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 40;
+
+    private final CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CatalogServer<Book> server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new CatalogServer<>(engine, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+        request.method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body));
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    // ID and title of every book the search returned
+    private List<String[]> search(String q) throws Exception {
+        HttpResponse<String> response = send("GET", "/search?q=" + q + "&limit=100", null);
+        assertEquals(200, response.statusCode());
+        List<String[]> found = new ArrayList<>();
+        Matcher m = BOOK.matcher(response.body());
+        while (m.find()) {
+            found.add(new String[] {m.group(1), m.group(2)});
+        }
+        return found;
+    }
+
+    private static String token(int thread, int round) {
+        return String.format("t%02dr%03d", thread, round);
+    }
+
+    @Test
+    void searchSeesChangesInCommitOrder() throws Exception {
+        for (int id = 0; id < BOOKS; id++) {
+            engine.addBook(id, "Start " + token(99, id), "Author", "Genre", "Available");
+        }
+        // Build the index first, so every request below has to keep it in step
+        assertEquals(1, search(token(99, 0)).size());
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            done.add(threads.submit(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    int id = (thread + round) % BOOKS;
+                    String json = "{\"title\":\"Title " + token(thread, round) + "\"}";
+                    if (round % 5 == 4) {
+                        send("DELETE", "/books/" + id, null);
+                        send("POST", "/books", "{\"id\":\"" + id + "\",\"title\":\"Title " + token(thread, round)
+                                + "\",\"author\":\"Author\",\"genre\":\"Genre\",\"availabilityStatus\":\"Available\"}");
+                    } else if (send("PUT", "/books/" + id, json).statusCode() == 200) {
+                        // A search after the PUT sees it, unless a later change replaced the title
+                        String token = token(thread, round);
+                        boolean hit = search(token).stream().anyMatch(b -> b[0].equals(Integer.toString(id)));
+                        String now = send("GET", "/books/" + id, null).body();
+                        assertTrue(hit || !now.contains(token), token + " not found, but book is " + now);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+        threads.shutdown();
+
+        // Every hit still has the word searched for, and every book is found by its own title
+        for (int t = 0; t < THREADS; t++) {
+            for (int round = 0; round < ROUNDS; round++) {
+                String token = token(t, round);
+                for (String[] hit : search(token)) {
+                    assertTrue(hit[1].contains(token), token + " found book " + hit[0] + " titled " + hit[1]);
+                }
+            }
+        }
+        for (Book book : engine) {
+            String token = book.getTitle().substring(book.getTitle().indexOf(' ') + 1);
+            assertTrue(search(token).stream().anyMatch(hit -> hit[0].equals(Integer.toString(book.getId()))),
+                    book.getTitle());
+        }
+    }
+}
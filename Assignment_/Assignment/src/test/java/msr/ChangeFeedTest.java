@@ -0,0 +1,170 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+    // Records what a poll handed over
+    private static final class Recorder implements ChangeFeed.Listener {
+        final List<CatalogChange> changes = new ArrayList<>();
+        final List<Long> missed = new ArrayList<>();
+
+        @Override
+        public void changed(CatalogChange change) {
+            changes.add(change);
+        }
+
+        @Override
+        public void missed(long count) {
+            missed.add(count);
+        }
+
+        List<Integer> ids() {
+            List<Integer> ids = new ArrayList<>();
+            changes.forEach(c -> ids.add(c.getId()));
+            return ids;
+        }
+    }
+
+    private static void publish(ChangeFeed feed, int fromId, int toId) {
+        for (int id = fromId; id < toId; id++) {
+            feed.publish(CatalogChange.Kind.UPDATED, id);
+        }
+    }
+
+    @Test
+    void readersSeeChangesInOrderFromWhereTheySubscribed() {
+        ChangeFeed feed = new ChangeFeed(16);
+        ChangeFeed.Subscription first = feed.subscribe();
+        publish(feed, 0, 5);
+        ChangeFeed.Subscription second = feed.subscribe();
+        publish(feed, 5, 8);
+
+        Recorder recorder = new Recorder();
+        assertEquals(8, first.backlog());
+        assertEquals(3, first.poll(3, recorder));
+        assertEquals(List.of(0, 1, 2), recorder.ids());
+        assertEquals(5, first.poll(Integer.MAX_VALUE, recorder));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), recorder.ids());
+        for (int i = 0; i < recorder.changes.size(); i++) {
+            assertEquals(i, recorder.changes.get(i).getSequence());
+        }
+        assertEquals(0, first.poll(10, recorder));
+        assertEquals(0, first.backlog());
+
+        Recorder other = new Recorder();
+        assertEquals(3, second.poll(10, other));
+        assertEquals(List.of(5, 6, 7), other.ids());
+        assertTrue(recorder.missed.isEmpty() && other.missed.isEmpty());
+    }
+
+    @Test
+    void readerThatFallsTooFarBehindIsToldWhatItMissed() {
+        ChangeFeed feed = new ChangeFeed(10);
+        assertEquals(16, feed.capacity());
+        ChangeFeed.Subscription subscription = feed.subscribe();
+
+        // A full ring is still readable
+        publish(feed, 0, 16);
+        Recorder recorder = new Recorder();
+        assertEquals(16, subscription.poll(100, recorder));
+        assertEquals(16, recorder.changes.size());
+
+        publish(feed, 16, 36);
+        recorder = new Recorder();
+        assertEquals(20, subscription.poll(100, recorder));
+        assertEquals(List.of(20L), recorder.missed);
+        assertTrue(recorder.changes.isEmpty());
+
+        // Reading carries on with the next change
+        publish(feed, 36, 37);
+        assertEquals(1, subscription.poll(100, recorder));
+        assertEquals(List.of(36), recorder.ids());
+    }
+
+    @Test
+    void discardMakesEveryReaderStartOver() {
+        ChangeFeed feed = new ChangeFeed(8);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        publish(feed, 0, 2);
+        feed.discard();
+        Recorder recorder = new Recorder();
+        subscription.poll(100, recorder);
+        assertEquals(1, recorder.missed.size());
+        assertTrue(recorder.changes.isEmpty());
+        assertEquals(0, subscription.backlog());
+    }
+
+    @Test
+    void nothingIsStoredWithoutSubscribers() {
+        ChangeFeed feed = new ChangeFeed(8);
+        publish(feed, 0, 3);
+        assertEquals(0, feed.published());
+
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        publish(feed, 3, 4);
+        subscription.close();
+        subscription.close();
+        publish(feed, 4, 6);
+        assertEquals(1, feed.published());
+
+        assertThrows(IllegalArgumentException.class, () -> new ChangeFeed(0));
+    }
+
+    @Test
+    void concurrentReaderSeesEveryChangeOrLearnsItMissedIt() throws Exception {
+        ChangeFeed feed = new ChangeFeed(64);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        int total = 500_000;
+        Thread writer = new Thread(() -> publish(feed, 0, total));
+        long[] accounted = new long[1];
+        long[] last = {-1};
+        ChangeFeed.Listener listener = new ChangeFeed.Listener() {
+            @Override
+            public void changed(CatalogChange change) {
+                // Sequences only go up, and a change is the one published at its sequence
+                assertTrue(change.getSequence() > last[0]);
+                assertEquals(change.getSequence(), change.getId());
+                last[0] = change.getSequence();
+                accounted[0]++;
+            }
+
+            @Override
+            public void missed(long count) {
+                accounted[0] += count;
+            }
+        };
+        writer.start();
+        while (writer.isAlive()) {
+            subscription.poll(16, listener);
+        }
+        writer.join();
+        while (subscription.poll(Integer.MAX_VALUE, listener) > 0) {
+            // Drain what is left
+        }
+        assertEquals(total, accounted[0]);
+    }
+
+    @Test
+    void engineWritesArePublished() {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        ChangeFeed.Subscription subscription = engine.changes().subscribe();
+        engine.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        engine.updateBook(1, "Dune Messiah", null, null, null);
+        engine.deleteBook(1);
+        engine.deleteBook(1);
+
+        Recorder recorder = new Recorder();
+        subscription.poll(10, recorder);
+        List<CatalogChange.Kind> kinds = new ArrayList<>();
+        recorder.changes.forEach(c -> kinds.add(c.getKind()));
+        assertEquals(List.of(CatalogChange.Kind.ADDED, CatalogChange.Kind.UPDATED, CatalogChange.Kind.REMOVED), kinds);
+        assertEquals(List.of(1, 1, 1), recorder.ids());
+    }
+}
@@ -0,0 +1,148 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CirculationEngineTest {
+    @TempDir
+    Path dir;
+
+    private final Clock clock = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+    private final CatalogEngine<Book> catalog = new CatalogEngine<>(Book::new, new BookStore<>());
+
+    private String status(int id) {
+        return catalog.findBookById(id).getAvailabilityStatus();
+    }
+
+    private void writeLog(String... lines) throws IOException {
+        Files.write(dir.resolve("loans.log"), List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void checkoutAndReturnMoveTheStatus() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            Loan loan = circulation.checkout(1, 7);
+            assertEquals(7, loan.getPatronId());
+            assertEquals("Checked Out", status(1));
+            assertEquals(List.of(loan), circulation.loansOf(7));
+
+            assertEquals(loan, circulation.returnBook(1));
+            assertEquals("Available", status(1));
+            assertNull(circulation.loan(1));
+            assertEquals(0, circulation.openLoans());
+        }
+    }
+
+    @Test
+    void doubleCheckoutIsRefused() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        catalog.addBook(2, "Emma", "Jane Austen", "Novel", "Checked Out");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            circulation.checkout(1, 7);
+            assertThrows(IllegalArgumentException.class, () -> circulation.checkout(1, 8));
+            assertThrows(IllegalArgumentException.class, () -> circulation.checkout(2, 8));
+            assertThrows(IllegalArgumentException.class, () -> circulation.checkout(3, 8));
+            assertThrows(IllegalArgumentException.class, () -> circulation.returnBook(2));
+            assertEquals(1, circulation.openLoans());
+            assertEquals(7, circulation.loan(1).getPatronId());
+        }
+    }
+
+    @Test
+    void loansSurviveReopening() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        catalog.addBook(2, "Emma", "Jane Austen", "Novel", "Available");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            circulation.checkout(1, 7);
+            circulation.checkout(2, 8);
+            circulation.returnBook(2);
+        }
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            assertEquals(1, circulation.openLoans());
+            assertEquals(7, circulation.loan(1).getPatronId());
+            assertEquals("Checked Out", status(1));
+            assertEquals("Available", status(2));
+        }
+    }
+
+    @Test
+    void checkoutLoggedButNotInTheCatalogIsCompletedOnOpen() throws IOException {
+        // The loan reached the log, the status change did not
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        writeLog("O 1 7 0 1000");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            assertNotNull(circulation.loan(1));
+            assertEquals("Checked Out", status(1));
+            circulation.returnBook(1);
+            assertEquals("Available", status(1));
+        }
+    }
+
+    @Test
+    void returnLoggedButNotInTheCatalogIsCompletedOnOpen() throws IOException {
+        // The return reached the log, the status change did not
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Checked Out");
+        writeLog("O 1 7 0 1000", "R 1");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            assertNull(circulation.loan(1));
+            assertEquals("Available", status(1));
+            circulation.checkout(1, 8);
+        }
+    }
+
+    @Test
+    void appliedReturnIsKeptUntilAnOpenFindsItInTheCatalog() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Checked Out");
+        writeLog("O 1 7 0 1000", "R 1");
+        CirculationEngine.open(catalog, dir, clock).close();
+        assertEquals(List.of("R 1"), Files.readAllLines(dir.resolve("loans.log")));
+
+        // Catalog change lost again, e.g. not yet synced when the process died
+        catalog.changeStatus(1, BookStatus.AVAILABLE, BookStatus.CHECKED_OUT);
+        CirculationEngine.open(catalog, dir, clock).close();
+        assertEquals("Available", status(1));
+
+        CirculationEngine.open(catalog, dir, clock).close();
+        assertEquals(List.of(), Files.readAllLines(dir.resolve("loans.log")));
+    }
+
+    @Test
+    void booksTheLogNeverMentionedAreLeftAlone() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Checked Out");
+        catalog.addBook(2, "Emma", "Jane Austen", "Novel", "Checked Out");
+        // A checkout of book 2 that was taken back because the book changed under it
+        writeLog("O 2 7 0 1000", "C 2");
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            assertEquals(0, circulation.openLoans());
+            assertEquals("Checked Out", status(1));
+            assertEquals("Checked Out", status(2));
+        }
+    }
+
+    @Test
+    void tornLastLineEndsTheReplay() throws IOException {
+        catalog.addBook(1, "Dune", "Frank Herbert", "Science Fiction", "Available");
+        catalog.addBook(2, "Emma", "Jane Austen", "Novel", "Available");
+        Files.writeString(dir.resolve("loans.log"), "O 1 7 0 1000\nO 2 8 0", StandardCharsets.UTF_8);
+        try (CirculationEngine<Book> circulation = CirculationEngine.open(catalog, dir, clock)) {
+            assertEquals(1, circulation.openLoans());
+            assertEquals("Checked Out", status(1));
+            assertEquals("Available", status(2));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdTreeTest {
+    private static int[] toArray(Iterable<Integer> ids, int limit) {
+        List<Integer> list = new ArrayList<>();
+        for (int id : ids) {
+            if (list.size() == limit) {
+                break;
+            }
+            list.add(id);
+        }
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Every query agrees with a TreeSet holding the same IDs
+    private static void assertSameAs(NavigableSet<Integer> expected, IdTree tree, Random random) {
+        assertEquals(expected.size(), tree.size());
+        assertArrayEquals(toArray(expected, Integer.MAX_VALUE), tree.fromRank(0, Integer.MAX_VALUE));
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(20_000) - 1000;
+            int to = from + random.nextInt(3000);
+            int limit = 1 + random.nextInt(500);
+            assertEquals(expected.contains(from), tree.contains(from));
+            assertArrayEquals(toArray(expected.subSet(from, true, to, true), limit), tree.range(from, to, limit));
+            assertArrayEquals(toArray(expected.tailSet(from, false), limit), tree.after(from, limit));
+            assertEquals(expected.headSet(from, false).size(), tree.rank(from));
+            int rank = random.nextInt(expected.size() + 1);
+            int[] all = toArray(expected, Integer.MAX_VALUE);
+            int[] page = Arrays.copyOfRange(all, Math.min(rank, all.length), Math.min(rank + limit, all.length));
+            assertArrayEquals(page, tree.fromRank(rank, limit));
+        }
+    }
+
+    @Test
+    void randomAddsAndRemovesMatchASortedSet() {
+        Random random = new Random(21);
+        IdTree tree = new IdTree();
+        NavigableSet<Integer> expected = new TreeSet<>();
+        // Grow past several levels, then shrink back down so nodes merge and refill
+        for (int round = 0; round < 40; round++) {
+            boolean growing = round < 25;
+            for (int i = 0; i < 2000; i++) {
+                int id = random.nextInt(20_000);
+                if (growing ? random.nextInt(4) != 0 : random.nextInt(4) == 0) {
+                    assertEquals(expected.add(id), tree.add(id));
+                } else {
+                    assertEquals(expected.remove(id), tree.remove(id));
+                }
+            }
+            assertSameAs(expected, tree, random);
+        }
+        for (int id : new ArrayList<>(expected)) {
+            assertTrue(tree.remove(id));
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.after(Integer.MIN_VALUE, 10).length);
+    }
+
+    @Test
+    void bulkBuiltTreeAcceptsLaterChanges() {
+        Random random = new Random(3);
+        NavigableSet<Integer> expected = new TreeSet<>();
+        while (expected.size() < 10_000) {
+            expected.add(random.nextInt(20_000));
+        }
+        IdTree tree = IdTree.build(toArray(expected, Integer.MAX_VALUE));
+        assertSameAs(expected, tree, random);
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(20_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(id), tree.add(id));
+            } else {
+                assertEquals(expected.remove(id), tree.remove(id));
+            }
+        }
+        assertSameAs(expected, tree, random);
+    }
+
+    @Test
+    void cursorNeitherRepeatsNorSkipsAcrossChanges() {
+        IdTree tree = new IdTree();
+        for (int id = 0; id < 1000; id += 2) {
+            tree.add(id);
+        }
+        List<Integer> seen = new ArrayList<>();
+        int cursor = Integer.MIN_VALUE;
+        int[] page;
+        while ((page = tree.after(cursor, 50)).length > 0) {
+            for (int id : page) {
+                seen.add(id);
+            }
+            cursor = page[page.length - 1];
+            // Changes behind and ahead of the cursor between pages
+            tree.remove(cursor - 2);
+            tree.add(cursor - 1);
+            if (cursor < 1000) {
+                tree.add(cursor + 3);
+            }
+        }
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1) < seen.get(i));
+        }
+        for (int id = 0; id < 1000; id += 2) {
+            // Every ID that was there all along was returned
+            if (tree.contains(id)) {
+                assertTrue(seen.contains(id), "skipped " + id);
+            }
+        }
+    }
+
+    @Test
+    void extremeIdsAndEmptyRanges() {
+        IdTree tree = new IdTree();
+        assertTrue(tree.add(Integer.MIN_VALUE));
+        assertTrue(tree.add(Integer.MAX_VALUE));
+        assertFalse(tree.add(Integer.MAX_VALUE));
+        assertArrayEquals(new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE},
+                tree.range(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertArrayEquals(new int[0], tree.after(Integer.MAX_VALUE, 10));
+        assertArrayEquals(new int[0], tree.range(5, 4, 10));
+        assertArrayEquals(new int[0], tree.range(0, 10, 0));
+        assertArrayEquals(new int[0], tree.fromRank(2, 10));
+        assertEquals(1, tree.rank(0));
+    }
+}
@@ -0,0 +1,107 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedCatalogTest {
+    @TempDir
+    Path dir;
+
+    private MappedCatalog write(List<Book> books) throws IOException {
+        Path file = dir.resolve("catalog.dat");
+        MappedCatalog.write(file, 42, books);
+        return MappedCatalog.open(file);
+    }
+
+    @Test
+    void everyRecordIsFoundByItsIdWithItsFieldsIntact() throws IOException {
+        List<Book> books = new ArrayList<>();
+        // Negative, large and consecutive IDs, nulls and multi-byte text
+        books.add(new Book(-7, "Négatif", "Zoë", null, "Available"));
+        books.add(new Book(Integer.MAX_VALUE, "", "Author", "Genre", "Checked Out"));
+        for (int id = 0; id < 1000; id++) {
+            books.add(new Book(id * 1024, "Title " + id, "Author " + id, "Genre", "Available"));
+        }
+        try (MappedCatalog catalog = write(books)) {
+            assertEquals(42, catalog.seq());
+            assertEquals(books.size(), catalog.size());
+            for (int slot = 0; slot < books.size(); slot++) {
+                Book expected = books.get(slot);
+                assertEquals(slot, catalog.slotOf(expected.getId()));
+                assertEquals(expected.getId(), catalog.idAt(slot));
+                Book read = catalog.materialize(slot, Book::new);
+                assertEquals(expected.getTitle(), read.getTitle());
+                assertEquals(expected.getAuthor(), read.getAuthor());
+                assertEquals(expected.getGenre(), read.getGenre());
+                assertEquals(expected.getAvailabilityStatus(), read.getAvailabilityStatus());
+            }
+            assertEquals(-1, catalog.slotOf(1));
+            assertEquals(-1, catalog.slotOf(Integer.MIN_VALUE));
+        }
+    }
+
+    @Test
+    void emptyCatalogHasNoRecords() throws IOException {
+        try (MappedCatalog catalog = write(List.of())) {
+            assertEquals(0, catalog.size());
+            assertEquals(-1, catalog.slotOf(0));
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("other.dat");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> MappedCatalog.open(file));
+    }
+
+    @Test
+    void storeOverABaseReadsChangesAndRemovesItsRecords() throws IOException {
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 5; id++) {
+            books.add(new Book(id, "Title " + id, "Author", "Genre", "Available"));
+        }
+        try (MappedCatalog catalog = write(books)) {
+            BookStore<Book> store = new BookStore<>();
+            store.attachBase(catalog, Book::new);
+            assertEquals(5, store.size());
+            assertEquals("Title 3", store.read(3).getTitle());
+
+            Book changed = store.read(2);
+            changed.setTitle("Changed");
+            store.update(changed);
+            assertSame(changed, store.get(2));
+            assertEquals("Title 4", store.remove(4).getTitle());
+            assertFalse(store.contains(4));
+            assertFalse(store.add(new Book(1, "Duplicate", "Author", "Genre", "Available")));
+            assertTrue(store.add(new Book(9, "Title 9", "Author", "Genre", "Available")));
+
+            assertEquals(5, store.size());
+            assertNull(store.read(4));
+            int[] ids = store.ids();
+            Arrays.sort(ids);
+            assertArrayEquals(new int[] {1, 2, 3, 5, 9}, ids);
+            List<String> titles = new ArrayList<>();
+            for (BookRecord book : store.capture()) {
+                titles.add(book.getTitle());
+            }
+            titles.sort(null);
+            assertEquals(List.of("Changed", "Title 1", "Title 3", "Title 5", "Title 9"), titles);
+        }
+    }
+}
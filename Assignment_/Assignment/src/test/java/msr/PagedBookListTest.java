@@ -0,0 +1,118 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PagedBookListTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void addOverMappedBaseShowsEveryBookInStoreOrder() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            books.add(new Book(id, "Title " + id, "Author " + id, "Genre", "Available"));
+        }
+        Path file = dir.resolve("catalog.snap");
+        MappedCatalog.write(file, 1, books);
+        try (MappedCatalog base = MappedCatalog.open(file)) {
+            CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+            engine.attachBase(base, Book::new);
+            PagedBookList<Book> list = new PagedBookList<>(engine);
+            list.follow(false);
+            // Cache every page, so a stale row would be served from the cache
+            for (int i = 0; i < list.size(); i++) {
+                list.get(i);
+            }
+
+            engine.addBook(1000, "New title", "New author", "Genre", "Available");
+            list.applyChanges();
+
+            assertEquals(301, list.size());
+            int seen = 0;
+            for (int i = 0; i < list.size(); i++) {
+                assertEquals(engine.idAt(i), list.get(i).getId(), "row " + i);
+                if (list.get(i).getId() == 1000) {
+                    seen++;
+                }
+            }
+            assertEquals(1, seen);
+            list.unfollow();
+        }
+    }
+
+    @Test
+    void addToPlainStoreIsAppended() {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        for (int id = 1; id <= 100; id++) {
+            engine.addBook(id, "Title " + id, "Author " + id, "Genre", "Available");
+        }
+        PagedBookList<Book> list = new PagedBookList<>(engine);
+        list.follow(false);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i);
+        }
+        engine.addBook(1000, "New title", "New author", "Genre", "Available");
+        list.applyChanges();
+
+        assertEquals(101, list.size());
+        assertEquals(1000, list.get(100).getId());
+        assertEquals(1, list.get(0).getId());
+        list.unfollow();
+    }
+
+    @Test
+    void sortOvertakenByChangesIsShownWithThemReplayed() throws Exception {
+        CatalogEngine<Book> engine = new CatalogEngine<>(Book::new, new BookStore<>());
+        for (int id = 1; id <= 200; id++) {
+            engine.addBook(id, "Title " + (id * 7919 % 1000), "Author", "Genre", "Available");
+        }
+        // Stands in for the FX thread: finished sorts wait here until the test runs them
+        BlockingQueue<Runnable> fxThread = new LinkedBlockingQueue<>();
+        PagedBookList<Book> list = new PagedBookList<>(engine, fxThread::add);
+        list.follow(false);
+        list.sortBy(BookField.TITLE, true);
+
+        // Changes that land while the sort runs
+        engine.addBook(500, "Aaa new", "Author", "Genre", "Available");
+        engine.deleteBook(3);
+        engine.updateBook(4, "Zzz retitled", null, null, null);
+        list.applyChanges();
+        fxThread.poll(10, TimeUnit.SECONDS).run();
+
+        // The capture's books in order, with the added one after them until the next re-sort
+        assertEquals(engine.size(), list.size());
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            ids.add(list.get(i).getId());
+        }
+        assertEquals(500, ids.get(ids.size() - 1));
+        assertTrue(!ids.contains(3));
+        for (int i = 1; i < ids.size() - 1; i++) {
+            if (ids.get(i) != 4 && ids.get(i - 1) != 4) {
+                assertTrue(list.get(i - 1).getTitle().compareTo(list.get(i).getTitle()) <= 0, "row " + i);
+            }
+        }
+
+        // The re-sort it asked for puts every book in place
+        list.applyChanges();
+        fxThread.poll(10, TimeUnit.SECONDS).run();
+        assertEquals(engine.size(), list.size());
+        assertEquals(500, list.get(0).getId());
+        assertEquals(4, list.get(list.size() - 1).getId());
+        for (int i = 1; i < list.size(); i++) {
+            assertTrue(list.get(i - 1).getTitle().compareTo(list.get(i).getTitle()) <= 0, "row " + i);
+        }
+        list.unfollow();
+    }
+}
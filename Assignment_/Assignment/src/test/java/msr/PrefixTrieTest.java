@@ -0,0 +1,30 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefixTrieTest {
+    @Test
+    void normalizeStripsUnicodeWhitespaceAtEitherEnd() {
+        assertEquals("Tokyo", PrefixTrie.normalize("Tokyo　"));
+        assertEquals("Tokyo", PrefixTrie.normalize("　 Tokyo  "));
+        assertEquals("Tokyo Story", PrefixTrie.normalize(" Tokyo 　\tStory　"));
+        assertEquals("", PrefixTrie.normalize("　"));
+    }
+
+    @Test
+    void valuesWithTrailingUnicodeWhitespaceCanBeAddedFoundAndRemoved() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("Tokyo　");
+        trie.add("Tokyo");
+        assertEquals(2, trie.count("Tokyo "));
+        assertEquals(List.of("Tokyo"), trie.complete("Tok　", 5));
+        assertEquals(List.of("Tokyo"), trie.similar("Tokio　", 1, 5));
+        assertTrue(trie.remove("Tokyo　"));
+        assertEquals(1, trie.count("Tokyo"));
+    }
+}
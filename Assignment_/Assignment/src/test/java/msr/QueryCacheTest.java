@@ -0,0 +1,130 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(String key) {
+        loads.incrementAndGet();
+        return key + "#" + loads.get();
+    }
+
+    // Load key on another thread, running duringLoad while the load is in flight
+    private String loadWhile(QueryCache<String, String> cache, String key,
+                             Consumer<QueryCache<String, String>> duringLoad) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = thread.submit(() -> cache.get(key, k -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return load(k);
+            }));
+            started.await();
+            duringLoad.accept(cache);
+            release.countDown();
+            return result.get();
+        } finally {
+            thread.shutdown();
+        }
+    }
+
+    @Test
+    void secondGetIsAHit() {
+        QueryCache<String, String> cache = new QueryCache<>(10, 100, String::length);
+        assertEquals("dune#1", cache.get("dune", this::load));
+        assertEquals("dune#1", cache.get("dune", this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+
+        cache.invalidate("dune");
+        assertEquals("dune#2", cache.get("dune", this::load));
+        assertEquals(1, cache.stats().getInvalidations());
+    }
+
+    @Test
+    void loadInvalidatedWhileInFlightIsReturnedButNotStored() throws Exception {
+        QueryCache<String, String> cache = new QueryCache<>(10, 100, String::length);
+        assertEquals("dune#1", loadWhile(cache, "dune", c -> c.invalidate("dune")));
+        assertEquals(0, cache.size());
+        assertEquals("dune#2", cache.get("dune", this::load));
+        assertEquals("dune#2", cache.get("dune", this::load));
+
+        cache.invalidate("dune");
+        assertEquals("dune#3", loadWhile(cache, "dune", QueryCache::clear));
+        assertEquals(0, cache.size());
+
+        // Invalidating another key leaves the load alone
+        assertEquals("dune#4", loadWhile(cache, "dune", c -> c.invalidate("emma")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void failedOrEmptyLoadsAreNotStored() {
+        QueryCache<String, String> cache = new QueryCache<>(10, 100, String::length);
+        assertThrows(IllegalStateException.class, () -> cache.get("dune", k -> {
+            throw new IllegalStateException("store failed");
+        }));
+        assertNull(cache.get("dune", k -> null));
+        assertEquals(0, cache.size());
+        assertEquals("dune#1", cache.get("dune", this::load));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void cacheStaysWithinItsBounds() {
+        QueryCache<String, String> byEntries = new QueryCache<>(50, 1_000_000, String::length);
+        QueryCache<String, String> byWeight = new QueryCache<>(1_000_000, 500, String::length);
+        for (int i = 0; i < 2000; i++) {
+            byEntries.get("key" + i, this::load);
+            byWeight.get("key" + i, this::load);
+            assertTrue(byEntries.size() <= 50);
+            assertTrue(byWeight.stats().getWeight() <= 500);
+        }
+        assertTrue(byEntries.stats().getEvictions() > 0);
+
+        // A result heavier than the main space is handed back but never cached
+        String huge = "x".repeat(1000);
+        assertEquals(huge, byWeight.get("huge", k -> huge));
+        assertEquals("small", byWeight.get("huge", k -> "small"));
+    }
+
+    @Test
+    void popularKeysSurviveAScanOfOneOffKeys() {
+        QueryCache<String, String> cache = new QueryCache<>(100, 100, s -> 1);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot" + i, this::load);
+            }
+        }
+        int loadsBefore = loads.get();
+        for (int i = 0; i < 10_000; i++) {
+            cache.get("cold" + i, this::load);
+        }
+        int loadsDuringScan = loads.get() - loadsBefore;
+        for (int i = 0; i < 50; i++) {
+            cache.get("hot" + i, this::load);
+        }
+        // Nearly every hot key is still cached
+        assertTrue(loads.get() - loadsBefore - loadsDuringScan < 5);
+    }
+}
@@ -0,0 +1,132 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoaringBitmapTest {
+    private static int[] toArray(Iterable<Integer> values, int limit) {
+        List<Integer> list = new ArrayList<>();
+        for (int v : values) {
+            if (list.size() == limit) {
+                break;
+            }
+            list.add(v);
+        }
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void assertSameAs(NavigableSet<Integer> expected, RoaringBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        assertArrayEquals(toArray(expected, Integer.MAX_VALUE), bitmap.toArray());
+    }
+
+    // Values in a few chunks: one around zero (negative values too), one dense enough to turn
+    // into a bitmap and back, one sparse
+    private static int randomValue(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return random.nextInt(20_000) - 10_000;
+            case 1:
+                return (3 << 16) + random.nextInt(12_000);
+            default:
+                return random.nextInt(Integer.MAX_VALUE) | Integer.MIN_VALUE;
+        }
+    }
+
+    private static NavigableSet<Integer> randomSet(Random random, RoaringBitmap bitmap, int count) {
+        NavigableSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            int v = randomValue(random);
+            assertEquals(set.add(v), bitmap.add(v));
+        }
+        return set;
+    }
+
+    @Test
+    void addsAndRemovesMatchASortedSetAcrossChunkKinds() {
+        Random random = new Random(17);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        NavigableSet<Integer> expected = randomSet(random, bitmap, 30_000);
+        assertSameAs(expected, bitmap);
+        for (int v : expected) {
+            assertTrue(bitmap.contains(v));
+        }
+        assertFalse(bitmap.contains(3 << 16 | 50_000));
+
+        // Shrink the dense chunk back below the array limit
+        for (int v : new ArrayList<>(expected.subSet(3 << 16, 4 << 16))) {
+            if (random.nextInt(4) != 0) {
+                assertTrue(bitmap.remove(v));
+                expected.remove(v);
+            }
+        }
+        assertFalse(bitmap.remove(3 << 16 | 50_000));
+        assertSameAs(expected, bitmap);
+
+        for (int v : new ArrayList<>(expected)) {
+            assertTrue(bitmap.remove(v));
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.toArray().length);
+    }
+
+    @Test
+    void setOperationsMatchASortedSet() {
+        Random random = new Random(5);
+        for (int round = 0; round < 10; round++) {
+            RoaringBitmap a = new RoaringBitmap();
+            RoaringBitmap b = new RoaringBitmap();
+            NavigableSet<Integer> x = randomSet(random, a, random.nextInt(20_000));
+            NavigableSet<Integer> y = randomSet(random, b, random.nextInt(20_000));
+
+            NavigableSet<Integer> and = new TreeSet<>(x);
+            and.retainAll(y);
+            NavigableSet<Integer> or = new TreeSet<>(x);
+            or.addAll(y);
+            NavigableSet<Integer> andNot = new TreeSet<>(x);
+            andNot.removeAll(y);
+            assertSameAs(and, a.and(b));
+            assertSameAs(or, a.or(b));
+            assertSameAs(andNot, a.andNot(b));
+            // The operands are left as they were
+            assertSameAs(x, a);
+            assertSameAs(y, b);
+        }
+    }
+
+    @Test
+    void pagesWalkTheSetInOrder() {
+        Random random = new Random(9);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        NavigableSet<Integer> expected = randomSet(random, bitmap, 10_000);
+        List<Integer> paged = new ArrayList<>();
+        int after = Integer.MIN_VALUE;
+        int[] page;
+        // Pages start above the cursor, so a cursor of MIN_VALUE never returns MIN_VALUE itself
+        bitmap.remove(Integer.MIN_VALUE);
+        expected.remove(Integer.MIN_VALUE);
+        while ((page = bitmap.page(after, 777)).length > 0) {
+            assertArrayEquals(toArray(expected.tailSet(after, false), 777), page);
+            for (int v : page) {
+                paged.add(v);
+            }
+            after = page[page.length - 1];
+        }
+        assertEquals(new ArrayList<>(expected), paged);
+
+        bitmap.add(Integer.MAX_VALUE);
+        assertEquals(0, bitmap.page(Integer.MAX_VALUE, 10).length);
+        assertArrayEquals(new int[] {Integer.MAX_VALUE}, bitmap.page(Integer.MAX_VALUE - 1, 10));
+    }
+}
@@ -0,0 +1,126 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecondaryIndexTest {
+    private static final String[] AUTHORS = {"Jane Austen", "JANE AUSTEN", "Frank Herbert", "Ursula Le Guin"};
+    private static final String[] GENRES = {"Fiction", "fiction", "Novel", "Poetry"};
+    private static final String[] STATUSES = {"Available", "Checked Out"};
+    private static final BookFilter[] FILTERS = {
+            BookFilter.parse("genre=Fiction"),
+            BookFilter.parse("genre=novel & status=Available"),
+            BookFilter.parse("author=Jane Austen | genre=Poetry"),
+            BookFilter.parse("!author=Frank Herbert & !status=Checked Out"),
+            BookFilter.parse("genre=Drama")
+    };
+
+    private static Book randomBook(Random random, int id) {
+        return new Book(id, "Title", AUTHORS[random.nextInt(AUTHORS.length)], GENRES[random.nextInt(GENRES.length)],
+                STATUSES[random.nextInt(STATUSES.length)]);
+    }
+
+    private static int[] matching(Map<Integer, Book> books, BookFilter filter) {
+        return books.values().stream().filter(filter).mapToInt(Book::getId).toArray();
+    }
+
+    // Every query agrees with a scan of the books the index was told about
+    private static void assertSameAs(Map<Integer, Book> books, SecondaryIndex index) {
+        assertEquals(books.size(), index.size());
+        for (BookFilter filter : FILTERS) {
+            int[] expected = matching(books, filter);
+            assertArrayEquals(expected, index.matching(filter).toArray(), filter.toString());
+
+            List<Integer> paged = new ArrayList<>();
+            int after = Integer.MIN_VALUE;
+            int[] page;
+            while ((page = index.page(filter, after, 250)).length > 0) {
+                for (int id : page) {
+                    paged.add(id);
+                }
+                after = page[page.length - 1];
+            }
+            assertArrayEquals(expected, paged.stream().mapToInt(Integer::intValue).toArray(), filter.toString());
+        }
+        for (String genre : GENRES) {
+            BookFilter inGenre = BookFilter.is(BookField.GENRE, " " + genre + " ");
+            assertArrayEquals(matching(books, inGenre), index.ids(BookField.GENRE, genre));
+            assertEquals(matching(books, inGenre).length, index.count(BookField.GENRE, genre));
+            for (BookStatus status : BookStatus.values()) {
+                BookFilter both = BookFilter.and(inGenre, BookFilter.is(BookField.STATUS, status.label()));
+                assertEquals(matching(books, both).length, index.count(genre, status), genre + " " + status);
+            }
+        }
+        int total = 0;
+        int previous = Integer.MAX_VALUE;
+        for (int count : index.facets(BookField.AUTHOR).values()) {
+            assertTrue(count > 0 && count <= previous);
+            previous = count;
+            total += count;
+        }
+        assertEquals(books.size(), total);
+    }
+
+    @Test
+    void addsChangesAndRemovesMatchAScan() {
+        Random random = new Random(16);
+        SecondaryIndex index = new SecondaryIndex();
+        Map<Integer, Book> books = new TreeMap<>();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3000; i++) {
+                // IDs spread over many 65,536-ID chunks, so pages span several windows
+                int id = random.nextInt(40) * 65_536 + random.nextInt(200) - 100;
+                Book old = books.get(id);
+                int op = random.nextInt(3);
+                if (old == null) {
+                    Book book = randomBook(random, id);
+                    books.put(id, book);
+                    index.added(book);
+                } else if (op == 0) {
+                    books.remove(id);
+                    index.removed(old);
+                } else {
+                    Book book = randomBook(random, id);
+                    books.put(id, book);
+                    index.changed(old, book);
+                }
+            }
+            assertSameAs(books, index);
+        }
+        for (Book book : new ArrayList<>(books.values())) {
+            books.remove(book.getId());
+            index.removed(book);
+        }
+        assertSameAs(books, index);
+        assertEquals(0, index.facets(BookField.GENRE).size());
+    }
+
+    @Test
+    void facetsUseTheFirstSeenSpellingLargestFirst() {
+        SecondaryIndex index = new SecondaryIndex();
+        index.added(new Book(1, "A", "Jane Austen", "Novel", "Available"));
+        index.added(new Book(2, "B", "JANE AUSTEN", "Fiction", "Checked Out"));
+        index.added(new Book(3, "C", "Frank Herbert", "novel", "Available"));
+        assertEquals(Map.of("Novel", 2, "Fiction", 1), index.facets(BookField.GENRE));
+        assertEquals(List.of("Jane Austen", "Frank Herbert"), new ArrayList<>(index.facets(BookField.AUTHOR).keySet()));
+        assertEquals(2, index.count("NOVEL", BookStatus.AVAILABLE));
+        assertEquals(0, index.count("Novel", BookStatus.CHECKED_OUT));
+        assertEquals(0, index.count("Drama", BookStatus.AVAILABLE));
+
+        // A status change within the same genre moves only the per-status count
+        index.changed(new Book(3, "C", "Frank Herbert", "novel", "Available"),
+                new Book(3, "C", "Frank Herbert", "novel", "Checked Out"));
+        assertEquals(1, index.count("Novel", BookStatus.AVAILABLE));
+        assertEquals(1, index.count("Novel", BookStatus.CHECKED_OUT));
+        assertEquals(2, index.count(BookField.GENRE, "novel"));
+    }
+}
@@ -0,0 +1,62 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnapshotListTest {
+    @Test
+    void snapshotsKeepTheirContentsWhileTheListChanges() {
+        SnapshotList<Integer> list = new SnapshotList<>();
+        for (int i = 0; i < SnapshotList.CHUNK * 3; i++) {
+            list.add(i);
+        }
+        List<Integer> before = list.snapshot();
+        list.set(5, -5);
+        list.add(-1);
+        List<Integer> after = list.snapshot();
+        list.set(SnapshotList.CHUNK * 2, -2);
+
+        assertEquals(5, before.get(5));
+        assertEquals(SnapshotList.CHUNK * 3, before.size());
+        assertEquals(-5, after.get(5));
+        assertEquals(SnapshotList.CHUNK * 2, after.get(SnapshotList.CHUNK * 2));
+        assertEquals(-2, list.get(SnapshotList.CHUNK * 2));
+    }
+
+    @Test
+    void snapshotsTakenTogetherAreAllProtectedFromTheNextWrite() throws Exception {
+        SnapshotList<Integer> list = new SnapshotList<>();
+        for (int i = 0; i < SnapshotList.CHUNK * 4; i++) {
+            list.add(i);
+        }
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                // Snapshots run side by side, as captures do under the shared lock; writes never do
+                List<Future<List<Integer>>> taken = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    taken.add(threads.submit(list::snapshot));
+                }
+                List<List<Integer>> snapshots = new ArrayList<>();
+                for (Future<List<Integer>> f : taken) {
+                    snapshots.add(f.get());
+                }
+                int slot = round * 37 % list.size();
+                int old = list.get(slot);
+                list.set(slot, old + 1);
+                for (List<Integer> snapshot : snapshots) {
+                    assertEquals(old, snapshot.get(slot), "round " + round);
+                }
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package msr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    private static Book book(int id, String title) {
+        return new Book(id, title, "Frank Herbert", "Science Fiction", "Available");
+    }
+
+    private List<WriteAheadLog.Entry> replay(long afterSeq) throws IOException {
+        List<WriteAheadLog.Entry> entries = new ArrayList<>();
+        WriteAheadLog.replay(dir, afterSeq, entries::add);
+        return entries;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "wal-*.log")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private long logged() throws IOException {
+        long bytes = 0;
+        for (Path segment : segments()) {
+            bytes += Files.size(segment);
+        }
+        return bytes;
+    }
+
+    @Test
+    void everyKindOfRecordReplaysAsWritten() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_OPERATION, 0)) {
+            assertEquals(1, log.append(WriteAheadLog.Op.ADD, book(1, "Dune")));
+            Book updated = new Book(1, "Dune Messiah", "Frank Herbert", null, "Checked Out");
+            assertEquals(2, log.append(WriteAheadLog.Op.UPDATE, updated));
+            assertEquals(3, log.appendMove(1, book(5, "Dune Messiah")));
+            assertEquals(5, log.appendAll(WriteAheadLog.Op.ADD, List.of(book(6, "Emma"), book(7, "Ulysses"))));
+            assertEquals(7, log.appendDeleteAll(new int[] {6, 7, 8}, 2));
+            assertEquals(8, log.appendDelete(5));
+            assertEquals(8, log.lastSeq());
+        }
+
+        List<WriteAheadLog.Entry> entries = replay(0);
+        assertEquals(8, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getSeq());
+        }
+        WriteAheadLog.Entry update = entries.get(1);
+        assertEquals(WriteAheadLog.Op.UPDATE, update.getOp());
+        assertEquals("Dune Messiah", update.getTitle());
+        assertNull(update.getGenre());
+        assertEquals("Checked Out", update.getAvailabilityStatus());
+        WriteAheadLog.Entry move = entries.get(2);
+        assertEquals(WriteAheadLog.Op.MOVE, move.getOp());
+        assertEquals(1, move.getFromId());
+        assertEquals(5, move.getId());
+        assertEquals("Ulysses", entries.get(4).getTitle());
+        assertEquals(WriteAheadLog.Op.DELETE, entries.get(6).getOp());
+        assertEquals(7, entries.get(6).getId());
+        assertEquals(5, entries.get(7).getId());
+
+        assertEquals(3, replay(5).size());
+        assertEquals(8, WriteAheadLog.replay(dir, 8, e -> { }));
+    }
+
+    @Test
+    void tornOrCorruptTailIsCutOffOnReplay() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_OPERATION, 0)) {
+            log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+            log.append(WriteAheadLog.Op.ADD, book(2, "Emma"));
+        }
+        Path segment = segments().get(0);
+        long end = Files.size(segment);
+        long secondStart = end / 2;
+
+        // Flip one payload byte of the last record: its length still fits, its checksum does not
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, end - 1);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            channel.write(b, end - 1);
+        }
+        List<WriteAheadLog.Entry> entries = replay(0);
+        assertEquals(1, entries.size());
+        assertEquals("Dune", entries.get(0).getTitle());
+        assertEquals(secondStart, Files.size(segment));
+
+        // A record cut short, as by a crash mid-write
+        try (WriteAheadLog log = new WriteAheadLog(dir, 1, Durability.PER_OPERATION, 0)) {
+            log.append(WriteAheadLog.Op.ADD, book(3, "Ulysses"));
+        }
+        Path newest = segments().get(1);
+        try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(newest) - 3);
+        }
+        assertEquals(1, replay(0).size());
+        assertEquals(0, Files.size(newest));
+    }
+
+    @Test
+    void damageBeforeTheNewestSegmentIsAnError() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_OPERATION, 0)) {
+            log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+            log.rotate();
+            log.append(WriteAheadLog.Op.ADD, book(2, "Emma"));
+        }
+        Path oldest = segments().get(0);
+        try (FileChannel channel = FileChannel.open(oldest, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(oldest) - 1);
+        }
+        assertThrows(IOException.class, () -> replay(0));
+    }
+
+    @Test
+    void rotateStartsANewSegmentAndOldOnesCanBeDropped() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_OPERATION, 0)) {
+            log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+            log.append(WriteAheadLog.Op.ADD, book(2, "Emma"));
+            assertEquals(2, log.rotate());
+            log.append(WriteAheadLog.Op.ADD, book(3, "Ulysses"));
+            assertEquals(2, segments().size());
+
+            log.deleteSegmentsUpTo(1);
+            assertEquals(2, segments().size());
+            log.deleteSegmentsUpTo(2);
+            assertEquals(1, segments().size());
+        }
+        List<WriteAheadLog.Entry> entries = replay(2);
+        assertEquals(1, entries.size());
+        assertEquals(3, entries.get(0).getSeq());
+    }
+
+    @Test
+    void perOperationAndPerBatchWriteEachAppendBeforeReturning() throws IOException {
+        for (Durability durability : new Durability[] {Durability.PER_OPERATION, Durability.PER_BATCH}) {
+            Path data = dir.resolve(durability.name());
+            try (WriteAheadLog log = new WriteAheadLog(data, 0, durability, 0)) {
+                log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+                assertEquals(1, WriteAheadLog.replay(data, 0, e -> { }), durability.name());
+            }
+        }
+    }
+
+    @Test
+    void perIntervalHoldsAppendsUntilTheNextSync() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_INTERVAL, 60_000)) {
+            log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+            assertEquals(0, logged());
+            log.sync();
+            assertEquals(1, replay(0).size());
+        }
+    }
+
+    @Test
+    void perIntervalTimerSyncsOnItsOwn() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_INTERVAL, 10)) {
+            log.append(WriteAheadLog.Op.ADD, book(1, "Dune"));
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (logged() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(logged() > 0);
+        }
+    }
+
+    @Test
+    void groupCommitLogsEveryConcurrentAppendOnce() throws Exception {
+        int threads = 8;
+        int perThread = 500;
+        List<Long> seqs = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(dir, 0, Durability.PER_BATCH, 0)) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<List<Long>>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    List<Long> mine = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        int id = thread * perThread + i;
+                        mine.add(log.append(WriteAheadLog.Op.ADD, book(id, "Book " + id)));
+                    }
+                    return mine;
+                }));
+            }
+            for (Future<List<Long>> f : done) {
+                seqs.addAll(f.get());
+            }
+            pool.shutdown();
+        }
+        seqs.sort(null);
+        for (int i = 0; i < seqs.size(); i++) {
+            assertEquals(i + 1, seqs.get(i));
+        }
+
+        List<WriteAheadLog.Entry> entries = replay(0);
+        assertEquals(threads * perThread, entries.size());
+        boolean[] seen = new boolean[threads * perThread];
+        for (WriteAheadLog.Entry entry : entries) {
+            assertEquals("Book " + entry.getId(), entry.getTitle());
+            seen[entry.getId()] = true;
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+    }
+}